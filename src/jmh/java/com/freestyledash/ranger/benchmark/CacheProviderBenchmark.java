@@ -0,0 +1,133 @@
+package com.freestyledash.ranger.benchmark;
+
+import com.freestyledash.ranger.provider.CacheProvider;
+import com.freestyledash.ranger.provider.redis.CacheProviderFactory;
+import com.freestyledash.ranger.provider.redis.MultiplexedRedisTransport;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
+import org.openjdk.jmh.annotations.*;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * CacheProvider单个和批量操作的基准测试
+ * 默认连接jvm内的{@link FakeRedisServer}，通过-Dranger.redis.port指定端口时连接本地的redis-server
+ * lock参数对比不使用锁和使用全局读写锁代理时每次调用的开销
+ * transport参数对比每次调用借出连接池的连接和在两个连接上复用请求
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class CacheProviderBenchmark {
+
+    private static final int TTL = 600;
+
+    @Param({"none", "global"})
+    public String lock;
+
+    @Param({"pool", "multiplexed"})
+    public String transport;
+
+    @Param({"medium"})
+    public String payload;
+
+    @Param({"100"})
+    public int batchSize;
+
+    private FakeRedisServer server;
+
+    private JedisPool pool;
+
+    private MultiplexedRedisTransport multiplexedTransport;
+
+    private CacheProviderFactory factory;
+
+    private CacheProvider provider;
+
+    private Payloads.Order order;
+
+    private List<String> keys;
+
+    private Map<String, Object> batch;
+
+    @Setup
+    public void setUp() throws IOException {
+        int port = Integer.getInteger("ranger.redis.port", -1);
+        if (port < 0) {
+            server = new FakeRedisServer();
+            port = server.getPort();
+        }
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(16);
+        config.setMaxIdle(16);
+        pool = new JedisPool(config, "127.0.0.1", port, 1000);
+        CacheProviderFactory.Builder builder = new CacheProviderFactory.Builder()
+                .setPool(pool)
+                .setSerializationUtil(new ProtostuffSerializationUtil());
+        if ("global".equals(lock)) {
+            builder.setLock(new ReentrantReadWriteLock());
+        }
+        if ("multiplexed".equals(transport)) {
+            multiplexedTransport = new MultiplexedRedisTransport.Builder().setPort(port).setConnections(2).build();
+            builder.setTransport(multiplexedTransport);
+        }
+        factory = builder.build();
+        provider = factory.getProvider();
+        order = Payloads.create(payload);
+        keys = new ArrayList<>(batchSize);
+        batch = new HashMap<>();
+        for (int i = 0; i < batchSize; i++) {
+            String key = "benchmark:batch:" + i;
+            keys.add(key);
+            batch.put(key, order);
+        }
+        provider.setCache("benchmark:single", order, TTL);
+        provider.setCache(batch, TTL);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        factory.close();
+        if (multiplexedTransport != null) {
+            multiplexedTransport.close();
+        }
+        pool.close();
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Benchmark
+    public Payloads.Order getSingle() {
+        return provider.getCache("benchmark:single", Payloads.Order.class);
+    }
+
+    @Benchmark
+    public boolean setSingle() {
+        return provider.setCache("benchmark:single", order, TTL);
+    }
+
+    @Benchmark
+    public List<Payloads.Order> getBatch() {
+        return provider.getCache(keys, Payloads.Order.class);
+    }
+
+    @Benchmark
+    public boolean setBatch() {
+        return provider.setCache(batch, TTL);
+    }
+}
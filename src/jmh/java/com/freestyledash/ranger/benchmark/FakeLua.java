@@ -0,0 +1,1049 @@
+package com.freestyledash.ranger.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * FakeRedisServer执行EVAL使用的lua解释器，只实现缓存脚本用到的lua 5.1子集
+ * <p>
+ * 支持local变量、赋值、if/elseif/else、数值for、while、break、return、算术、比较、逻辑运算、字符串连接、长度、
+ * 表的构造和下标，以及redis.call、redis.pcall、tonumber、tostring、type、string.sub、string.len、table.insert；
+ * 不支持函数定义、泛型for和多返回值
+ * <p>
+ * 字符串按照ISO-8859-1与字节一一对应，数值为double；redis回复与lua值之间的转换规则与真实redis相同
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+final class FakeLua {
+
+    /**
+     * 脚本中redis.call执行命令的方式
+     */
+    interface Redis {
+
+        /**
+         * @param command 命令名和参数
+         * @return FakeRedisServer的回复对象
+         */
+        Object call(List<byte[]> command);
+    }
+
+    /**
+     * 脚本运行错误
+     */
+    static final class LuaError extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        LuaError(String message) {
+            super(message);
+        }
+    }
+
+    private static final Object BREAK = new Object();
+
+    private final Block chunk;
+
+    private FakeLua(Block chunk) {
+        this.chunk = chunk;
+    }
+
+    /**
+     * 编译脚本
+     *
+     * @param source 脚本全文
+     * @return 编译后的脚本，可以多次执行
+     * @throws LuaError 语法错误
+     */
+    static FakeLua compile(String source) {
+        Parser parser = new Parser(tokenize(source));
+        Block block = parser.block();
+        parser.expect(Token.EOF, null);
+        return new FakeLua(block);
+    }
+
+    /**
+     * 执行脚本，返回值按照redis的规则转换为回复
+     *
+     * @param keys  KEYS参数
+     * @param argv  ARGV参数
+     * @param redis 执行redis.call的方式
+     * @return FakeRedisServer的回复对象
+     * @throws LuaError 运行错误
+     */
+    Object run(List<byte[]> keys, List<byte[]> argv, final Redis redis) {
+        Scope globals = new Scope(null);
+        globals.declare("KEYS", toTable(keys));
+        globals.declare("ARGV", toTable(argv));
+        LuaTable redisTable = new LuaTable();
+        redisTable.put("call", (Function) args -> call(redis, args, false));
+        redisTable.put("pcall", (Function) args -> call(redis, args, true));
+        globals.declare("redis", redisTable);
+        LuaTable string = new LuaTable();
+        string.put("sub", (Function) FakeLua::sub);
+        string.put("len", (Function) args -> (double) checkString(arg(args, 0), "len").length());
+        globals.declare("string", string);
+        LuaTable table = new LuaTable();
+        table.put("insert", (Function) args -> {
+            LuaTable target = checkTable(arg(args, 0), "insert");
+            target.put((double) (target.length() + 1), arg(args, 1));
+            return null;
+        });
+        globals.declare("table", table);
+        globals.declare("tonumber", (Function) args -> toNumberOrNil(arg(args, 0)));
+        globals.declare("tostring", (Function) args -> toDisplay(arg(args, 0)));
+        globals.declare("type", (Function) args -> typeName(arg(args, 0)));
+        Object result = chunk.exec(new Scope(globals));
+        return toReply(result instanceof Returned ? ((Returned) result).value : null);
+    }
+
+    private static Object call(Redis redis, List<Object> args, boolean protect) {
+        if (args.isEmpty()) {
+            throw new LuaError("Please specify at least one argument for redis.call()");
+        }
+        List<byte[]> command = new ArrayList<>(args.size());
+        for (Object arg : args) {
+            if (arg instanceof String) {
+                command.add(((String) arg).getBytes(StandardCharsets.ISO_8859_1));
+            } else if (arg instanceof Double) {
+                command.add(toDisplay(arg).getBytes(StandardCharsets.ISO_8859_1));
+            } else {
+                throw new LuaError("Lua redis() command arguments must be strings or integers");
+            }
+        }
+        Object reply = redis.call(command);
+        if (reply instanceof FakeRedisServer.Error) {
+            String message = ((FakeRedisServer.Error) reply).message;
+            if (!protect) {
+                throw new LuaError(message);
+            }
+            LuaTable error = new LuaTable();
+            error.put("err", message);
+            return error;
+        }
+        return fromReply(reply);
+    }
+
+    private static Object sub(List<Object> args) {
+        String s = checkString(arg(args, 0), "sub");
+        int length = s.length();
+        long i = (long) checkNumber(arg(args, 1) == null ? 1.0 : arg(args, 1));
+        long j = (long) checkNumber(arg(args, 2) == null ? -1.0 : arg(args, 2));
+        if (i < 0) {
+            i = Math.max(length + i + 1, 1);
+        } else if (i == 0) {
+            i = 1;
+        }
+        if (j < 0) {
+            j = length + j + 1;
+        } else if (j > length) {
+            j = length;
+        }
+        return i > j ? "" : s.substring((int) i - 1, (int) j);
+    }
+
+    private static LuaTable toTable(List<byte[]> values) {
+        LuaTable table = new LuaTable();
+        for (int i = 0; i < values.size(); i++) {
+            table.put((double) (i + 1), new String(values.get(i), StandardCharsets.ISO_8859_1));
+        }
+        return table;
+    }
+
+    /**
+     * redis回复转换为lua值：整数转为数值，空回复转为false，状态回复转为{ok=...}，数组转为表
+     */
+    private static Object fromReply(Object reply) {
+        if (reply instanceof Long) {
+            return ((Long) reply).doubleValue();
+        }
+        if (reply instanceof byte[]) {
+            return new String((byte[]) reply, StandardCharsets.ISO_8859_1);
+        }
+        if (reply instanceof FakeRedisServer.Status) {
+            LuaTable status = new LuaTable();
+            status.put("ok", ((FakeRedisServer.Status) reply).message);
+            return status;
+        }
+        if (reply instanceof List) {
+            LuaTable table = new LuaTable();
+            List<?> list = (List<?>) reply;
+            for (int i = 0; i < list.size(); i++) {
+                table.put((double) (i + 1), fromReply(list.get(i)));
+            }
+            return table;
+        }
+        return Boolean.FALSE;
+    }
+
+    /**
+     * lua值转换为redis回复：数值截断为整数，false和nil转为空回复，表转为数组并在第一个nil处截断
+     */
+    private static Object toReply(Object value) {
+        if (value instanceof Double) {
+            return (long) (double) (Double) value;
+        }
+        if (value instanceof String) {
+            return ((String) value).getBytes(StandardCharsets.ISO_8859_1);
+        }
+        if (Boolean.TRUE.equals(value)) {
+            return 1L;
+        }
+        if (value instanceof LuaTable) {
+            LuaTable table = (LuaTable) value;
+            if (table.get("err") instanceof String) {
+                return new FakeRedisServer.Error((String) table.get("err"));
+            }
+            if (table.get("ok") instanceof String) {
+                return new FakeRedisServer.Status((String) table.get("ok"));
+            }
+            List<Object> list = new ArrayList<>();
+            for (int i = 1; table.get((double) i) != null; i++) {
+                list.add(toReply(table.get((double) i)));
+            }
+            return list;
+        }
+        return null;
+    }
+
+    private static Object arg(List<Object> args, int index) {
+        return index < args.size() ? args.get(index) : null;
+    }
+
+    private static boolean truthy(Object value) {
+        return value != null && !Boolean.FALSE.equals(value);
+    }
+
+    private static String typeName(Object value) {
+        if (value == null) {
+            return "nil";
+        }
+        if (value instanceof Boolean) {
+            return "boolean";
+        }
+        if (value instanceof Double) {
+            return "number";
+        }
+        if (value instanceof String) {
+            return "string";
+        }
+        if (value instanceof LuaTable) {
+            return "table";
+        }
+        return "function";
+    }
+
+    private static Double toNumberOrNil(Object value) {
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        if (value instanceof String) {
+            try {
+                return Double.valueOf(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static double checkNumber(Object value) {
+        Double number = toNumberOrNil(value);
+        if (number == null) {
+            throw new LuaError("attempt to perform arithmetic on a " + typeName(value) + " value");
+        }
+        return number;
+    }
+
+    private static String checkString(Object value, String function) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Double) {
+            return toDisplay(value);
+        }
+        throw new LuaError("bad argument #1 to '" + function + "' (string expected, got " + typeName(value) + ")");
+    }
+
+    private static LuaTable checkTable(Object value, String function) {
+        if (value instanceof LuaTable) {
+            return (LuaTable) value;
+        }
+        throw new LuaError("bad argument #1 to '" + function + "' (table expected, got " + typeName(value) + ")");
+    }
+
+    private static String toDisplay(Object value) {
+        if (value instanceof Double) {
+            double d = (Double) value;
+            if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+                return String.valueOf((long) d);
+            }
+            return String.valueOf(d);
+        }
+        if (value instanceof String || value instanceof Boolean) {
+            return value.toString();
+        }
+        return value == null ? "nil" : typeName(value);
+    }
+
+    private static boolean luaEquals(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a instanceof LuaTable || a instanceof Function) {
+            return a == b;
+        }
+        return a.equals(b);
+    }
+
+    private static boolean lessThan(Object a, Object b) {
+        if (a instanceof Double && b instanceof Double) {
+            return (Double) a < (Double) b;
+        }
+        if (a instanceof String && b instanceof String) {
+            return ((String) a).compareTo((String) b) < 0;
+        }
+        throw new LuaError("attempt to compare " + typeName(a) + " with " + typeName(b));
+    }
+
+    private static Object binary(String op, Object a, Object b) {
+        switch (op) {
+            case "==":
+                return luaEquals(a, b);
+            case "~=":
+                return !luaEquals(a, b);
+            case "<":
+                return lessThan(a, b);
+            case ">":
+                return lessThan(b, a);
+            case "<=":
+                return !lessThan(b, a);
+            case ">=":
+                return !lessThan(a, b);
+            case "..":
+                if ((a instanceof String || a instanceof Double) && (b instanceof String || b instanceof Double)) {
+                    return toDisplay(a) + toDisplay(b);
+                }
+                throw new LuaError("attempt to concatenate a " + typeName(a instanceof String || a instanceof Double
+                        ? b : a) + " value");
+            case "+":
+                return checkNumber(a) + checkNumber(b);
+            case "-":
+                return checkNumber(a) - checkNumber(b);
+            case "*":
+                return checkNumber(a) * checkNumber(b);
+            case "/":
+                return checkNumber(a) / checkNumber(b);
+            case "%":
+                double x = checkNumber(a);
+                double y = checkNumber(b);
+                return x - Math.floor(x / y) * y;
+            case "^":
+                return Math.pow(checkNumber(a), checkNumber(b));
+            default:
+                throw new LuaError("unsupported operator " + op);
+        }
+    }
+
+    // ---------------------------------------------------------------- 运行时结构
+
+    @FunctionalInterface
+    private interface Function {
+
+        Object call(List<Object> args);
+    }
+
+    private static final class LuaTable {
+
+        private final Map<Object, Object> map = new HashMap<>();
+
+        private Object get(Object key) {
+            return map.get(key);
+        }
+
+        private void put(Object key, Object value) {
+            if (key == null) {
+                throw new LuaError("table index is nil");
+            }
+            if (value == null) {
+                map.remove(key);
+            } else {
+                map.put(key, value);
+            }
+        }
+
+        private int length() {
+            int n = 0;
+            while (map.containsKey((double) (n + 1))) {
+                n++;
+            }
+            return n;
+        }
+    }
+
+    private static final class Scope {
+
+        private final Scope parent;
+
+        private final Map<String, Object> variables = new HashMap<>();
+
+        private Scope(Scope parent) {
+            this.parent = parent;
+        }
+
+        private void declare(String name, Object value) {
+            variables.put(name, value);
+        }
+
+        private Object get(String name) {
+            for (Scope scope = this; scope != null; scope = scope.parent) {
+                if (scope.variables.containsKey(name)) {
+                    return scope.variables.get(name);
+                }
+            }
+            return null;
+        }
+
+        private void set(String name, Object value) {
+            Scope scope = this;
+            while (true) {
+                if (scope.variables.containsKey(name) || scope.parent == null) {
+                    scope.variables.put(name, value);
+                    return;
+                }
+                scope = scope.parent;
+            }
+        }
+    }
+
+    private static final class Returned {
+
+        private final Object value;
+
+        private Returned(Object value) {
+            this.value = value;
+        }
+    }
+
+    // ---------------------------------------------------------------- 语法树
+
+    private interface Expr {
+
+        Object eval(Scope scope);
+    }
+
+    private interface Stat {
+
+        /**
+         * @return null表示继续执行，{@link #BREAK}或{@link Returned}表示跳出
+         */
+        Object exec(Scope scope);
+    }
+
+    /**
+     * 可以赋值的表达式
+     */
+    private interface Target extends Expr {
+
+        void assign(Scope scope, Object value);
+    }
+
+    private static final class Block implements Stat {
+
+        private final List<Stat> stats;
+
+        private Block(List<Stat> stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public Object exec(Scope scope) {
+            for (Stat stat : stats) {
+                Object signal = stat.exec(scope);
+                if (signal != null) {
+                    return signal;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Name implements Target {
+
+        private final String name;
+
+        private Name(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Object eval(Scope scope) {
+            return scope.get(name);
+        }
+
+        @Override
+        public void assign(Scope scope, Object value) {
+            scope.set(name, value);
+        }
+    }
+
+    private static final class Index implements Target {
+
+        private final Expr table;
+
+        private final Expr key;
+
+        private Index(Expr table, Expr key) {
+            this.table = table;
+            this.key = key;
+        }
+
+        @Override
+        public Object eval(Scope scope) {
+            Object target = table.eval(scope);
+            Object k = key.eval(scope);
+            if (target instanceof LuaTable) {
+                return ((LuaTable) target).get(k);
+            }
+            throw new LuaError("attempt to index a " + typeName(target) + " value");
+        }
+
+        @Override
+        public void assign(Scope scope, Object value) {
+            Object target = table.eval(scope);
+            if (!(target instanceof LuaTable)) {
+                throw new LuaError("attempt to index a " + typeName(target) + " value");
+            }
+            ((LuaTable) target).put(key.eval(scope), value);
+        }
+    }
+
+    // ---------------------------------------------------------------- 词法分析
+
+    private static final class Token {
+
+        private static final int NAME = 0;
+
+        private static final int NUMBER = 1;
+
+        private static final int STRING = 2;
+
+        private static final int SYMBOL = 3;
+
+        private static final int EOF = 4;
+
+        private final int type;
+
+        private final String text;
+
+        private Token(int type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+    }
+
+    private static final String[] SYMBOLS = {"...", "..", "==", "~=", "<=", ">=", "(", ")", "{", "}", "[", "]",
+            ",", ";", "=", "<", ">", "+", "-", "*", "/", "%", "^", "#", ".", ":"};
+
+    private static List<Token> tokenize(String source) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        int n = source.length();
+        outer:
+        while (i < n) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (source.startsWith("--", i)) {
+                while (i < n && source.charAt(i) != '\n') {
+                    i++;
+                }
+                continue;
+            }
+            if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < n && (Character.isLetterOrDigit(source.charAt(i)) || source.charAt(i) == '_')) {
+                    i++;
+                }
+                tokens.add(new Token(Token.NAME, source.substring(start, i)));
+                continue;
+            }
+            if (Character.isDigit(c)) {
+                int start = i;
+                while (i < n && (Character.isLetterOrDigit(source.charAt(i)) || source.charAt(i) == '.')) {
+                    i++;
+                }
+                tokens.add(new Token(Token.NUMBER, source.substring(start, i)));
+                continue;
+            }
+            if (c == '\'' || c == '"') {
+                StringBuilder builder = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= n) {
+                        throw new LuaError("unfinished string");
+                    }
+                    char ch = source.charAt(i++);
+                    if (ch == c) {
+                        break;
+                    }
+                    if (ch == '\\' && i < n) {
+                        char escaped = source.charAt(i++);
+                        builder.append(escaped == 'n' ? '\n' : escaped == 't' ? '\t' : escaped == 'r' ? '\r'
+                                : escaped == '0' ? '\0' : escaped);
+                    } else {
+                        builder.append(ch);
+                    }
+                }
+                tokens.add(new Token(Token.STRING, builder.toString()));
+                continue;
+            }
+            for (String symbol : SYMBOLS) {
+                if (source.startsWith(symbol, i)) {
+                    tokens.add(new Token(Token.SYMBOL, symbol));
+                    i += symbol.length();
+                    continue outer;
+                }
+            }
+            throw new LuaError("unexpected symbol near '" + c + "'");
+        }
+        tokens.add(new Token(Token.EOF, "<eof>"));
+        return tokens;
+    }
+
+    // ---------------------------------------------------------------- 语法分析
+
+    private static final Set<String> BLOCK_END = new HashSet<>(Arrays.asList("end", "else", "elseif"));
+
+    private static final Map<String, int[]> BINARY_PRIORITY = new HashMap<>();
+
+    private static final int UNARY_PRIORITY = 8;
+
+    static {
+        BINARY_PRIORITY.put("or", new int[]{1, 1});
+        BINARY_PRIORITY.put("and", new int[]{2, 2});
+        for (String op : new String[]{"<", ">", "<=", ">=", "~=", "=="}) {
+            BINARY_PRIORITY.put(op, new int[]{3, 3});
+        }
+        BINARY_PRIORITY.put("..", new int[]{5, 4});
+        BINARY_PRIORITY.put("+", new int[]{6, 6});
+        BINARY_PRIORITY.put("-", new int[]{6, 6});
+        BINARY_PRIORITY.put("*", new int[]{7, 7});
+        BINARY_PRIORITY.put("/", new int[]{7, 7});
+        BINARY_PRIORITY.put("%", new int[]{7, 7});
+        BINARY_PRIORITY.put("^", new int[]{10, 9});
+    }
+
+    private static final class Parser {
+
+        private final List<Token> tokens;
+
+        private int position;
+
+        private Parser(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        private Token peek() {
+            return tokens.get(position);
+        }
+
+        private boolean check(String text) {
+            Token token = peek();
+            return (token.type == Token.NAME || token.type == Token.SYMBOL) && token.text.equals(text);
+        }
+
+        private boolean accept(String text) {
+            if (check(text)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private Token expect(int type, String text) {
+            Token token = peek();
+            if (token.type != type || (text != null && !token.text.equals(text))) {
+                throw new LuaError("'" + (text == null ? "<eof>" : text) + "' expected near '" + token.text + "'");
+            }
+            position++;
+            return token;
+        }
+
+        private void expect(String text) {
+            if (!accept(text)) {
+                throw new LuaError("'" + text + "' expected near '" + peek().text + "'");
+            }
+        }
+
+        private String name() {
+            return expect(Token.NAME, null).text;
+        }
+
+        private Block block() {
+            List<Stat> stats = new ArrayList<>();
+            while (!blockEnds()) {
+                if (check("return")) {
+                    stats.add(returnStat());
+                    break;
+                }
+                Stat stat = statement();
+                if (stat != null) {
+                    stats.add(stat);
+                }
+            }
+            return new Block(stats);
+        }
+
+        private boolean blockEnds() {
+            Token token = peek();
+            return token.type == Token.EOF || token.type == Token.NAME && BLOCK_END.contains(token.text);
+        }
+
+        private Stat returnStat() {
+            expect("return");
+            final Expr value = blockEnds() || check(";") ? null : expression(0);
+            accept(";");
+            return scope -> new Returned(value == null ? null : value.eval(scope));
+        }
+
+        private Stat statement() {
+            if (accept(";")) {
+                return null;
+            }
+            if (accept("local")) {
+                final List<String> names = new ArrayList<>();
+                names.add(name());
+                while (accept(",")) {
+                    names.add(name());
+                }
+                final List<Expr> values = accept("=") ? expressionList() : Collections.<Expr>emptyList();
+                return scope -> {
+                    List<Object> evaluated = evaluate(values, scope);
+                    for (int i = 0; i < names.size(); i++) {
+                        scope.declare(names.get(i), i < evaluated.size() ? evaluated.get(i) : null);
+                    }
+                    return null;
+                };
+            }
+            if (accept("if")) {
+                final List<Expr> conditions = new ArrayList<>();
+                final List<Block> blocks = new ArrayList<>();
+                conditions.add(expression(0));
+                expect("then");
+                blocks.add(block());
+                Block otherwise = null;
+                while (true) {
+                    if (accept("elseif")) {
+                        conditions.add(expression(0));
+                        expect("then");
+                        blocks.add(block());
+                    } else if (accept("else")) {
+                        otherwise = block();
+                        expect("end");
+                        break;
+                    } else {
+                        expect("end");
+                        break;
+                    }
+                }
+                final Block elseBlock = otherwise;
+                return scope -> {
+                    for (int i = 0; i < conditions.size(); i++) {
+                        if (truthy(conditions.get(i).eval(scope))) {
+                            return blocks.get(i).exec(new Scope(scope));
+                        }
+                    }
+                    return elseBlock == null ? null : elseBlock.exec(new Scope(scope));
+                };
+            }
+            if (accept("for")) {
+                final String variable = name();
+                if (!check("=")) {
+                    throw new LuaError("only numeric for is supported");
+                }
+                expect("=");
+                final Expr from = expression(0);
+                expect(",");
+                final Expr to = expression(0);
+                final Expr step = accept(",") ? expression(0) : null;
+                expect("do");
+                final Block body = block();
+                expect("end");
+                return scope -> {
+                    double i = checkNumber(from.eval(scope));
+                    double limit = checkNumber(to.eval(scope));
+                    double increment = step == null ? 1 : checkNumber(step.eval(scope));
+                    if (increment == 0) {
+                        throw new LuaError("'for' step is zero");
+                    }
+                    for (; increment > 0 ? i <= limit : i >= limit; i += increment) {
+                        Scope inner = new Scope(scope);
+                        inner.declare(variable, i);
+                        Object signal = body.exec(inner);
+                        if (signal == BREAK) {
+                            break;
+                        }
+                        if (signal != null) {
+                            return signal;
+                        }
+                    }
+                    return null;
+                };
+            }
+            if (accept("while")) {
+                final Expr condition = expression(0);
+                expect("do");
+                final Block body = block();
+                expect("end");
+                return scope -> {
+                    while (truthy(condition.eval(scope))) {
+                        Object signal = body.exec(new Scope(scope));
+                        if (signal == BREAK) {
+                            break;
+                        }
+                        if (signal != null) {
+                            return signal;
+                        }
+                    }
+                    return null;
+                };
+            }
+            if (accept("do")) {
+                final Block body = block();
+                expect("end");
+                return scope -> body.exec(new Scope(scope));
+            }
+            if (accept("break")) {
+                return scope -> BREAK;
+            }
+            Expr first = suffixed();
+            if (check("=") || check(",")) {
+                final List<Target> targets = new ArrayList<>();
+                targets.add(target(first));
+                while (accept(",")) {
+                    targets.add(target(suffixed()));
+                }
+                expect("=");
+                final List<Expr> values = expressionList();
+                return scope -> {
+                    List<Object> evaluated = evaluate(values, scope);
+                    for (int i = 0; i < targets.size(); i++) {
+                        targets.get(i).assign(scope, i < evaluated.size() ? evaluated.get(i) : null);
+                    }
+                    return null;
+                };
+            }
+            if (!(first instanceof Call)) {
+                throw new LuaError("syntax error near '" + peek().text + "'");
+            }
+            final Expr call = first;
+            return scope -> {
+                call.eval(scope);
+                return null;
+            };
+        }
+
+        private Target target(Expr expr) {
+            if (expr instanceof Target) {
+                return (Target) expr;
+            }
+            throw new LuaError("syntax error near '='");
+        }
+
+        private List<Expr> expressionList() {
+            List<Expr> list = new ArrayList<>();
+            list.add(expression(0));
+            while (accept(",")) {
+                list.add(expression(0));
+            }
+            return list;
+        }
+
+        private Expr expression(int limit) {
+            Expr left;
+            if (check("not") || check("-") || check("#")) {
+                final String op = peek().text;
+                position++;
+                final Expr operand = expression(UNARY_PRIORITY);
+                left = scope -> {
+                    Object value = operand.eval(scope);
+                    switch (op) {
+                        case "not":
+                            return !truthy(value);
+                        case "-":
+                            return -checkNumber(value);
+                        default:
+                            if (value instanceof String) {
+                                return (double) ((String) value).length();
+                            }
+                            if (value instanceof LuaTable) {
+                                return (double) ((LuaTable) value).length();
+                            }
+                            throw new LuaError("attempt to get length of a " + typeName(value) + " value");
+                    }
+                };
+            } else {
+                left = simple();
+            }
+            while (true) {
+                Token token = peek();
+                int[] priority = token.type == Token.STRING ? null : BINARY_PRIORITY.get(token.text);
+                if (priority == null || priority[0] <= limit) {
+                    return left;
+                }
+                position++;
+                final String op = token.text;
+                final Expr a = left;
+                final Expr b = expression(priority[1]);
+                if ("and".equals(op)) {
+                    left = scope -> {
+                        Object value = a.eval(scope);
+                        return truthy(value) ? b.eval(scope) : value;
+                    };
+                } else if ("or".equals(op)) {
+                    left = scope -> {
+                        Object value = a.eval(scope);
+                        return truthy(value) ? value : b.eval(scope);
+                    };
+                } else {
+                    left = scope -> binary(op, a.eval(scope), b.eval(scope));
+                }
+            }
+        }
+
+        private Expr simple() {
+            Token token = peek();
+            if (token.type == Token.NUMBER) {
+                position++;
+                final Double value = parseNumber(token.text);
+                return scope -> value;
+            }
+            if (token.type == Token.STRING) {
+                position++;
+                final String value = token.text;
+                return scope -> value;
+            }
+            if (accept("nil")) {
+                return scope -> null;
+            }
+            if (accept("true")) {
+                return scope -> Boolean.TRUE;
+            }
+            if (accept("false")) {
+                return scope -> Boolean.FALSE;
+            }
+            if (check("{")) {
+                return constructor();
+            }
+            return suffixed();
+        }
+
+        private Expr constructor() {
+            expect("{");
+            final List<Expr> keys = new ArrayList<>();
+            final List<Expr> values = new ArrayList<>();
+            int arrayIndex = 1;
+            while (!check("}")) {
+                if (accept("[")) {
+                    keys.add(expression(0));
+                    expect("]");
+                    expect("=");
+                    values.add(expression(0));
+                } else if (peek().type == Token.NAME && tokens.get(position + 1).text.equals("=")
+                        && tokens.get(position + 1).type == Token.SYMBOL) {
+                    final String field = name();
+                    expect("=");
+                    keys.add(scope -> field);
+                    values.add(expression(0));
+                } else {
+                    final Double index = (double) arrayIndex++;
+                    keys.add(scope -> index);
+                    values.add(expression(0));
+                }
+                if (!accept(",") && !accept(";")) {
+                    break;
+                }
+            }
+            expect("}");
+            return scope -> {
+                LuaTable table = new LuaTable();
+                for (int i = 0; i < keys.size(); i++) {
+                    table.put(keys.get(i).eval(scope), values.get(i).eval(scope));
+                }
+                return table;
+            };
+        }
+
+        private Expr suffixed() {
+            Expr expr;
+            if (accept("(")) {
+                final Expr inner = expression(0);
+                expect(")");
+                expr = inner::eval;
+            } else {
+                expr = new Name(name());
+            }
+            while (true) {
+                if (accept(".")) {
+                    final String field = name();
+                    expr = new Index(expr, scope -> field);
+                } else if (accept("[")) {
+                    Expr key = expression(0);
+                    expect("]");
+                    expr = new Index(expr, key);
+                } else if (check("(")) {
+                    position++;
+                    List<Expr> args = check(")") ? new ArrayList<Expr>() : expressionList();
+                    expect(")");
+                    expr = new Call(expr, args);
+                } else {
+                    return expr;
+                }
+            }
+        }
+
+        private static Double parseNumber(String text) {
+            try {
+                if (text.startsWith("0x") || text.startsWith("0X")) {
+                    return (double) Long.parseLong(text.substring(2), 16);
+                }
+                return Double.valueOf(text);
+            } catch (NumberFormatException e) {
+                throw new LuaError("malformed number near '" + text + "'");
+            }
+        }
+    }
+
+    private static final class Call implements Expr {
+
+        private final Expr function;
+
+        private final List<Expr> args;
+
+        private Call(Expr function, List<Expr> args) {
+            this.function = function;
+            this.args = args;
+        }
+
+        @Override
+        public Object eval(Scope scope) {
+            Object target = function.eval(scope);
+            if (!(target instanceof Function)) {
+                throw new LuaError("attempt to call a " + typeName(target) + " value");
+            }
+            return ((Function) target).call(evaluate(args, scope));
+        }
+    }
+
+    private static List<Object> evaluate(List<Expr> exprs, Scope scope) {
+        List<Object> values = new ArrayList<>(exprs.size());
+        for (Expr expr : exprs) {
+            values.add(expr.eval(scope));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,826 @@
+package com.freestyledash.ranger.benchmark;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * jvm内的redis替身，只实现基准测试和单元测试用到的命令
+ * 每个连接一个线程，支持pipeline、发布订阅、hash、MULTI/EXEC事务和lua脚本，数据保存在ConcurrentHashMap中
+ * 读写数据的命令在同一把锁中执行，事务和脚本与真实redis一样原子地执行；脚本由{@link FakeLua}解释执行
+ * 用于在没有redis-server的环境下测量客户端的开销，结果不代表真实redis的性能
+ * <p>
+ * 单元测试可以设置密码、回复延迟、逐字节发送回复、让指定命令返回错误以及断开全部连接，用于模拟异常情况
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class FakeRedisServer implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(FakeRedisServer.class);
+
+    private static final String WRONGTYPE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+
+    /**
+     * {@link #hash}遇到非hash类型的键时的返回值
+     */
+    private static final Entry WRONG_TYPE = new Entry(null, -1);
+
+    private final ServerSocket serverSocket;
+
+    private final ConcurrentMap<Key, Entry> data = new ConcurrentHashMap<>();
+
+    private final Set<Client> clients = new CopyOnWriteArraySet<>();
+
+    /**
+     * 脚本的sha1到编译后的脚本，EVAL时缓存，供EVALSHA使用
+     */
+    private final Map<String, FakeLua> scripts = new ConcurrentHashMap<>();
+
+    /**
+     * 命令名到错误信息，收到这些命令时返回错误回复
+     */
+    private final ConcurrentMap<String, String> errors = new ConcurrentHashMap<>();
+
+    private final AtomicLong commandCount = new AtomicLong();
+
+    private final AtomicLong connectionCount = new AtomicLong();
+
+    private volatile String password;
+
+    private volatile long replyDelayMillis;
+
+    private volatile boolean fragmentReplies;
+
+    private volatile boolean running = true;
+
+    public FakeRedisServer() throws IOException {
+        serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "fake-redis-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @param password 设置后除AUTH以外的命令都需要先认证，null表示不需要认证
+     */
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    /**
+     * @param replyDelayMillis 执行每条命令之前等待的时间，单位毫秒
+     */
+    public void setReplyDelay(long replyDelayMillis) {
+        this.replyDelayMillis = replyDelayMillis;
+    }
+
+    /**
+     * @param fragmentReplies 是否逐字节发送回复，让客户端每次只读到回复的一部分
+     */
+    public void setFragmentReplies(boolean fragmentReplies) {
+        this.fragmentReplies = fragmentReplies;
+    }
+
+    /**
+     * 让指定命令返回错误回复
+     *
+     * @param command 命令名，例如SETEX
+     * @param message 错误信息，null表示恢复正常
+     */
+    public void failCommand(String command, String message) {
+        if (message == null) {
+            errors.remove(command.toUpperCase());
+        } else {
+            errors.put(command.toUpperCase(), message);
+        }
+    }
+
+    /**
+     * 断开全部客户端连接，数据保留
+     */
+    public void dropConnections() {
+        for (Client client : clients) {
+            client.close();
+        }
+    }
+
+    /**
+     * @return 执行过的命令数量
+     */
+    public long getCommandCount() {
+        return commandCount.get();
+    }
+
+    /**
+     * @return 接受过的连接数量
+     */
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * @return 当前保存的键数量，包括已经过期但还没有被读取清理的键
+     */
+    public int size() {
+        return data.size();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connectionCount.incrementAndGet();
+                Thread handler = new Thread(() -> handle(socket), "fake-redis-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn("接受连接失败", e);
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        Client client = null;
+        try (Socket s = socket;
+             InputStream in = new BufferedInputStream(s.getInputStream());
+             OutputStream out = new BufferedOutputStream(s.getOutputStream())) {
+            client = new Client(s, out);
+            clients.add(client);
+            while (running) {
+                List<byte[]> command = readCommand(in);
+                if (command == null) {
+                    return;
+                }
+                commandCount.incrementAndGet();
+                long delay = replyDelayMillis;
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                synchronized (client) {
+                    if (fragmentReplies) {
+                        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+                        execute(client, command, reply);
+                        for (byte b : reply.toByteArray()) {
+                            out.write(b);
+                            out.flush();
+                        }
+                    } else {
+                        execute(client, command, out);
+                        //有延迟时逐条回复，否则等pipeline中的命令全部执行后一起发送
+                        if (delay > 0 || in.available() == 0) {
+                            out.flush();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            //连接关闭
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (client != null) {
+                clients.remove(client);
+            }
+        }
+    }
+
+    private void execute(Client client, List<byte[]> command, OutputStream out) throws IOException {
+        String name = new String(command.get(0), StandardCharsets.US_ASCII).toUpperCase();
+        if ("AUTH".equals(name)) {
+            String expected = password;
+            if (expected != null && !expected.equals(new String(command.get(1), StandardCharsets.UTF_8))) {
+                writeError(out, "ERR invalid password");
+            } else {
+                client.authenticated = true;
+                writeSimple(out, "OK");
+            }
+            return;
+        }
+        if (password != null && !client.authenticated) {
+            writeError(out, "NOAUTH Authentication required.");
+            return;
+        }
+        switch (name) {
+            case "SUBSCRIBE":
+                for (int i = 1; i < command.size(); i++) {
+                    client.channels.add(new String(command.get(i), StandardCharsets.UTF_8));
+                    writeArrayHeader(out, 3);
+                    writeBulk(out, "subscribe".getBytes(StandardCharsets.US_ASCII));
+                    writeBulk(out, command.get(i));
+                    writeInteger(out, client.channels.size());
+                }
+                return;
+            case "UNSUBSCRIBE":
+                List<String> channels = new ArrayList<>();
+                for (int i = 1; i < command.size(); i++) {
+                    channels.add(new String(command.get(i), StandardCharsets.UTF_8));
+                }
+                if (channels.isEmpty()) {
+                    channels.addAll(client.channels);
+                }
+                for (String channel : channels) {
+                    client.channels.remove(channel);
+                    writeArrayHeader(out, 3);
+                    writeBulk(out, "unsubscribe".getBytes(StandardCharsets.US_ASCII));
+                    writeBulk(out, channel.getBytes(StandardCharsets.UTF_8));
+                    writeInteger(out, client.channels.size());
+                }
+                return;
+            case "PUBLISH":
+                String error = errors.get(name);
+                if (error != null) {
+                    writeError(out, error);
+                } else {
+                    writeInteger(out, publish(new String(command.get(1), StandardCharsets.UTF_8), command.get(2)));
+                }
+                return;
+            case "MULTI":
+                client.queued = new ArrayList<>();
+                writeSimple(out, "OK");
+                return;
+            case "DISCARD":
+                client.queued = null;
+                writeSimple(out, "OK");
+                return;
+            case "EXEC":
+                List<List<byte[]>> queued = client.queued;
+                client.queued = null;
+                if (queued == null) {
+                    writeError(out, "ERR EXEC without MULTI");
+                    return;
+                }
+                Object reply;
+                synchronized (data) {
+                    String execError = errors.get(name);
+                    if (execError != null) {
+                        reply = new Error(execError);
+                    } else {
+                        List<Object> replies = new ArrayList<>(queued.size());
+                        for (List<byte[]> queuedCommand : queued) {
+                            replies.add(run(queuedCommand));
+                        }
+                        reply = replies;
+                    }
+                }
+                writeReply(out, reply);
+                return;
+            default:
+                if (client.queued != null) {
+                    client.queued.add(command);
+                    writeSimple(out, "QUEUED");
+                    return;
+                }
+                synchronized (data) {
+                    reply = run(command);
+                }
+                writeReply(out, reply);
+        }
+    }
+
+    /**
+     * 执行一条读写数据的命令，调用方持有data的锁，lua脚本和事务中的命令也通过这里执行
+     *
+     * @param command 命令名和参数
+     * @return 回复，byte[]为bulk回复，Long为整数回复，List为数组回复，null为空bulk回复
+     */
+    private Object run(List<byte[]> command) {
+        String name = new String(command.get(0), StandardCharsets.US_ASCII).toUpperCase();
+        String error = errors.get(name);
+        if (error != null) {
+            return new Error(error);
+        }
+        long now = System.currentTimeMillis();
+        Entry entry;
+        switch (name) {
+            case "PING":
+                return new Status("PONG");
+            case "GET":
+                entry = live(command.get(1), now);
+                if (entry != null && entry.hash != null) {
+                    return new Error(WRONGTYPE);
+                }
+                return entry == null ? null : entry.value;
+            case "MGET":
+                List<Object> values = new ArrayList<>(command.size() - 1);
+                for (int i = 1; i < command.size(); i++) {
+                    entry = live(command.get(i), now);
+                    values.add(entry == null ? null : entry.value);
+                }
+                return values;
+            case "SET":
+                long expireAt = -1;
+                boolean nx = false;
+                boolean xx = false;
+                for (int i = 3; i < command.size(); i++) {
+                    String option = new String(command.get(i), StandardCharsets.US_ASCII).toUpperCase();
+                    if ("NX".equals(option)) {
+                        nx = true;
+                    } else if ("XX".equals(option)) {
+                        xx = true;
+                    } else {
+                        long amount = parseLong(command.get(++i));
+                        if (amount <= 0) {
+                            return new Error("ERR invalid expire time in set");
+                        }
+                        expireAt = "EX".equals(option) ? now + amount * 1000 : now + amount;
+                    }
+                }
+                boolean exists = live(command.get(1), now) != null;
+                if (nx && exists || xx && !exists) {
+                    return null;
+                }
+                data.put(new Key(command.get(1)), new Entry(command.get(2), expireAt));
+                return new Status("OK");
+            case "SETEX":
+            case "PSETEX":
+                long amount = parseLong(command.get(2));
+                if (amount <= 0) {
+                    return new Error("ERR invalid expire time in " + name.toLowerCase());
+                }
+                data.put(new Key(command.get(1)), new Entry(command.get(3),
+                        now + ("SETEX".equals(name) ? amount * 1000 : amount)));
+                return new Status("OK");
+            case "DEL":
+                long deleted = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    if (live(command.get(i), now) != null) {
+                        data.remove(new Key(command.get(i)));
+                        deleted++;
+                    }
+                }
+                return deleted;
+            case "EXISTS":
+                long count = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    if (live(command.get(i), now) != null) {
+                        count++;
+                    }
+                }
+                return count;
+            case "EXPIRE":
+            case "PEXPIRE":
+                entry = live(command.get(1), now);
+                long duration = parseLong(command.get(2)) * ("EXPIRE".equals(name) ? 1000 : 1);
+                if (entry == null) {
+                    return 0L;
+                }
+                if (duration <= 0) {
+                    data.remove(new Key(command.get(1)));
+                } else {
+                    entry.expireAt = now + duration;
+                }
+                return 1L;
+            case "PTTL":
+                entry = live(command.get(1), now);
+                if (entry == null) {
+                    return -2L;
+                }
+                return entry.expireAt < 0 ? -1L : entry.expireAt - now;
+            case "INCR":
+                entry = live(command.get(1), now);
+                long incremented;
+                try {
+                    incremented = entry == null ? 1 : parseLong(entry.value) + 1;
+                } catch (RuntimeException e) {
+                    return new Error("ERR value is not an integer or out of range");
+                }
+                data.put(new Key(command.get(1)), new Entry(String.valueOf(incremented)
+                        .getBytes(StandardCharsets.US_ASCII), entry == null ? -1 : entry.expireAt));
+                return incremented;
+            case "GETBIT":
+                entry = live(command.get(1), now);
+                byte[] bitmap = entry == null ? null : entry.value;
+                long offset = parseLong(command.get(2));
+                return bitmap != null && offset / 8 < bitmap.length
+                        && (bitmap[(int) (offset / 8)] & (0x80 >>> (offset % 8))) != 0 ? 1L : 0L;
+            case "SETBIT":
+                return (long) setBit(command.get(1), parseLong(command.get(2)), parseLong(command.get(3)) != 0, now);
+            case "HSET":
+            case "HMSET":
+                entry = hash(command.get(1), now, true);
+                if (entry == null) {
+                    return new Error(WRONGTYPE);
+                }
+                long added = 0;
+                for (int i = 2; i + 1 < command.size(); i += 2) {
+                    if (entry.hash.put(new Key(command.get(i)), command.get(i + 1)) == null) {
+                        added++;
+                    }
+                }
+                return "HSET".equals(name) ? (Object) added : new Status("OK");
+            case "HGET":
+                entry = hash(command.get(1), now, false);
+                if (entry == WRONG_TYPE) {
+                    return new Error(WRONGTYPE);
+                }
+                return entry == null ? null : entry.hash.get(new Key(command.get(2)));
+            case "HMGET":
+                entry = hash(command.get(1), now, false);
+                if (entry == WRONG_TYPE) {
+                    return new Error(WRONGTYPE);
+                }
+                List<Object> fields = new ArrayList<>(command.size() - 2);
+                for (int i = 2; i < command.size(); i++) {
+                    fields.add(entry == null ? null : entry.hash.get(new Key(command.get(i))));
+                }
+                return fields;
+            case "HGETALL":
+                entry = hash(command.get(1), now, false);
+                if (entry == WRONG_TYPE) {
+                    return new Error(WRONGTYPE);
+                }
+                List<Object> all = new ArrayList<>();
+                if (entry != null) {
+                    for (Map.Entry<Key, byte[]> field : entry.hash.entrySet()) {
+                        all.add(field.getKey().bytes);
+                        all.add(field.getValue());
+                    }
+                }
+                return all;
+            case "HDEL":
+                entry = hash(command.get(1), now, false);
+                if (entry == WRONG_TYPE) {
+                    return new Error(WRONGTYPE);
+                }
+                long removed = 0;
+                for (int i = 2; entry != null && i < command.size(); i++) {
+                    if (entry.hash.remove(new Key(command.get(i))) != null) {
+                        removed++;
+                    }
+                }
+                if (entry != null && entry.hash.isEmpty()) {
+                    data.remove(new Key(command.get(1)));
+                }
+                return removed;
+            case "EVAL":
+                String source = new String(command.get(1), StandardCharsets.ISO_8859_1);
+                String sha = sha1Hex(command.get(1));
+                FakeLua script = scripts.get(sha);
+                if (script == null) {
+                    try {
+                        script = FakeLua.compile(source);
+                    } catch (FakeLua.LuaError e) {
+                        return new Error("ERR Error compiling script: " + e.getMessage());
+                    }
+                    scripts.put(sha, script);
+                }
+                return eval(script, command);
+            case "EVALSHA":
+                script = scripts.get(new String(command.get(1), StandardCharsets.US_ASCII).toLowerCase());
+                if (script == null) {
+                    return new Error("NOSCRIPT No matching script. Please use EVAL.");
+                }
+                return eval(script, command);
+            case "SCRIPT":
+                if ("FLUSH".equalsIgnoreCase(new String(command.get(1), StandardCharsets.US_ASCII))) {
+                    scripts.clear();
+                    return new Status("OK");
+                }
+                return new Error("ERR unknown SCRIPT subcommand");
+            case "SELECT":
+            case "QUIT":
+                return new Status("OK");
+            default:
+                return new Error("ERR unknown command '" + name + "'");
+        }
+    }
+
+    /**
+     * 执行lua脚本，脚本中的命令通过{@link #run(List)}执行，整个脚本在data的锁中原子地执行
+     */
+    private Object eval(FakeLua script, List<byte[]> command) {
+        int numKeys = (int) parseLong(command.get(2));
+        List<byte[]> keys = command.subList(3, 3 + numKeys);
+        List<byte[]> args = command.subList(3 + numKeys, command.size());
+        try {
+            return script.run(keys, args, this::run);
+        } catch (FakeLua.LuaError e) {
+            return new Error("ERR Error running script: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return 未过期的键，已经过期的键会被删除
+     */
+    private Entry live(byte[] rawKey, long now) {
+        Key key = new Key(rawKey);
+        Entry entry = data.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expired(now)) {
+            data.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * @param create 键不存在时是否创建空的hash
+     * @return hash类型的键，不存在并且不创建时返回null，键不是hash时返回{@link #WRONG_TYPE}
+     */
+    private Entry hash(byte[] rawKey, long now, boolean create) {
+        Entry entry = live(rawKey, now);
+        if (entry != null) {
+            return entry.hash == null ? (create ? null : WRONG_TYPE) : entry;
+        }
+        if (!create) {
+            return null;
+        }
+        entry = new Entry(new LinkedHashMap<Key, byte[]>());
+        data.put(new Key(rawKey), entry);
+        return entry;
+    }
+
+    /**
+     * 设置bitmap中的一位，返回原来的值，bitmap长度不够时补0，保留原有的过期时间
+     */
+    private int setBit(byte[] rawKey, long offset, boolean bit, long now) {
+        Entry entry = live(rawKey, now);
+        byte[] bitmap = entry == null ? new byte[0] : entry.value;
+        int index = (int) (offset / 8);
+        int mask = 0x80 >>> (offset % 8);
+        int old = index < bitmap.length && (bitmap[index] & mask) != 0 ? 1 : 0;
+        byte[] updated = Arrays.copyOf(bitmap, Math.max(bitmap.length, index + 1));
+        updated[index] = (byte) (bit ? updated[index] | mask : updated[index] & ~mask);
+        data.put(new Key(rawKey), new Entry(updated, entry == null ? -1 : entry.expireAt));
+        return old;
+    }
+
+    /**
+     * 把消息写入订阅了该频道的连接，在发布方的线程中执行
+     */
+    private int publish(String channel, byte[] message) {
+        int receivers = 0;
+        for (Client client : clients) {
+            if (!client.channels.contains(channel)) {
+                continue;
+            }
+            synchronized (client) {
+                try {
+                    writeArrayHeader(client.out, 3);
+                    writeBulk(client.out, "message".getBytes(StandardCharsets.US_ASCII));
+                    writeBulk(client.out, channel.getBytes(StandardCharsets.UTF_8));
+                    writeBulk(client.out, message);
+                    client.out.flush();
+                    receivers++;
+                } catch (IOException e) {
+                    client.close();
+                }
+            }
+        }
+        return receivers;
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        if (first != '*') {
+            throw new IOException("只支持RESP数组格式的命令");
+        }
+        int count = (int) readLong(in);
+        List<byte[]> command = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("命令参数格式错误");
+            }
+            int length = (int) readLong(in);
+            byte[] arg = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int n = in.read(arg, read, length - read);
+                if (n == -1) {
+                    throw new EOFException();
+                }
+                read += n;
+            }
+            in.read();
+            in.read();
+            command.add(arg);
+        }
+        return command;
+    }
+
+    private static long readLong(InputStream in) throws IOException {
+        long value = 0;
+        boolean negative = false;
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == -1) {
+                throw new EOFException();
+            }
+            if (b == '-') {
+                negative = true;
+            } else {
+                value = value * 10 + (b - '0');
+            }
+        }
+        in.read();
+        return negative ? -value : value;
+    }
+
+    private static long parseLong(byte[] bytes) {
+        return Long.parseLong(new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * 按照回复对象的类型写入回复
+     */
+    private static void writeReply(OutputStream out, Object reply) throws IOException {
+        if (reply == null || reply instanceof byte[]) {
+            writeBulk(out, (byte[]) reply);
+        } else if (reply instanceof Long) {
+            writeInteger(out, (Long) reply);
+        } else if (reply instanceof Status) {
+            writeSimple(out, ((Status) reply).message);
+        } else if (reply instanceof Error) {
+            writeError(out, ((Error) reply).message);
+        } else {
+            List<?> list = (List<?>) reply;
+            writeArrayHeader(out, list.size());
+            for (Object element : list) {
+                writeReply(out, element);
+            }
+        }
+    }
+
+    private static String sha1Hex(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeSimple(OutputStream out, String value) throws IOException {
+        out.write(('+' + value + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeError(OutputStream out, String value) throws IOException {
+        out.write(('-' + value + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeInteger(OutputStream out, long value) throws IOException {
+        out.write((":" + value + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeArrayHeader(OutputStream out, int count) throws IOException {
+        out.write(("*" + count + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeBulk(OutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.write("$-1\r\n".getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        out.write(("$" + value.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(value);
+        out.write('\r');
+        out.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        dropConnections();
+    }
+
+    /**
+     * 一个客户端连接，写入时以自身为锁，发布消息的线程也会写入订阅方的连接
+     */
+    private static final class Client {
+
+        private final Socket socket;
+
+        private final OutputStream out;
+
+        private final Set<String> channels = new CopyOnWriteArraySet<>();
+
+        private volatile boolean authenticated;
+
+        /**
+         * MULTI之后排队的命令，不在事务中时为null，只在连接自己的线程中访问
+         */
+        private List<List<byte[]>> queued;
+
+        private Client(Socket socket, OutputStream out) {
+            this.socket = socket;
+            this.out = out;
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //已经关闭
+            }
+        }
+    }
+
+    private static final class Key {
+
+        private final byte[] bytes;
+
+        private final int hash;
+
+        private Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(bytes, ((Key) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 字符串或hash类型的值，在data的锁中修改
+     */
+    private static final class Entry {
+
+        private final byte[] value;
+
+        private final Map<Key, byte[]> hash;
+
+        private long expireAt;
+
+        private Entry(byte[] value, long expireAt) {
+            this.value = value;
+            this.hash = null;
+            this.expireAt = expireAt;
+        }
+
+        private Entry(Map<Key, byte[]> hash) {
+            this.value = null;
+            this.hash = hash;
+            this.expireAt = -1;
+        }
+
+        private boolean expired(long now) {
+            return expireAt >= 0 && expireAt <= now;
+        }
+    }
+
+    /**
+     * 状态回复
+     */
+    static final class Status {
+
+        final String message;
+
+        Status(String message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * 错误回复
+     */
+    static final class Error {
+
+        final String message;
+
+        Error(String message) {
+            this.message = message;
+        }
+    }
+}
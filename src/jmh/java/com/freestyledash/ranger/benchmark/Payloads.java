@@ -0,0 +1,80 @@
+package com.freestyledash.ranger.benchmark;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基准测试使用的对象
+ * small为只有几个字段的对象，medium和large为带有嵌套列表和map的订单对象
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public final class Payloads {
+
+    private Payloads() {
+    }
+
+    /**
+     * @param size small、medium或large
+     * @return 对应大小的对象
+     */
+    public static Order create(String size) {
+        switch (size) {
+            case "small":
+                return order(1, 0);
+            case "medium":
+                return order(20, 10);
+            case "large":
+                return order(500, 100);
+            default:
+                throw new IllegalArgumentException("未知的payload大小" + size);
+        }
+    }
+
+    private static Order order(int items, int attributes) {
+        Order order = new Order();
+        order.id = 1234567890L;
+        order.customer = "customer-" + items;
+        order.items = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            Item item = new Item();
+            item.sku = "sku-" + i;
+            item.quantity = i % 7 + 1;
+            item.price = 9.99 * (i + 1);
+            order.items.add(item);
+        }
+        order.attributes = new HashMap<>();
+        for (int i = 0; i < attributes; i++) {
+            order.attributes.put("attribute-" + i, "value-" + i);
+        }
+        return order;
+    }
+
+    public static class Order implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        public long id;
+
+        public String customer;
+
+        public List<Item> items;
+
+        public Map<String, String> attributes;
+    }
+
+    public static class Item implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        public String sku;
+
+        public int quantity;
+
+        public double price;
+    }
+}
@@ -0,0 +1,64 @@
+package com.freestyledash.ranger.benchmark;
+
+import com.freestyledash.ranger.util.serialization.ClassRegistry;
+import com.freestyledash.ranger.util.serialization.HessianSerializationUtil;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
+import com.freestyledash.ranger.util.serialization.SerializationUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比protostuff(是否使用类型id)和hessian在不同大小对象上的序列化和反序列化性能
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"protostuff", "protostuff-registry", "hessian"})
+    public String serializer;
+
+    @Param({"small", "medium", "large"})
+    public String payload;
+
+    private SerializationUtil util;
+
+    private Payloads.Order order;
+
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() {
+        switch (serializer) {
+            case "protostuff":
+                util = new ProtostuffSerializationUtil();
+                break;
+            case "protostuff-registry":
+                util = new ProtostuffSerializationUtil(new ClassRegistry()
+                        .register(1, Payloads.Order.class)
+                        .register(2, Payloads.Item.class));
+                break;
+            default:
+                util = new HessianSerializationUtil();
+        }
+        order = Payloads.create(payload);
+        serialized = util.serialize(order);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return util.serialize(order);
+    }
+
+    @Benchmark
+    public Payloads.Order deserialize() {
+        return util.deserialize(serialized, Payloads.Order.class);
+    }
+}
@@ -0,0 +1,32 @@
+package com.freestyledash.ranger.metrics;
+
+/**
+ * 缓存指标的收集接口
+ * 实现类可以将指标对接到任意监控系统，调用发生在缓存操作的热路径上，实现必须线程安全并且足够轻量
+ * <p>
+ * 指标名称见{@link MetricNames}，key为本次操作的缓存键(批量操作为第一个键，与键无关的指标为null)，
+ * 实现类可以据此计算键前缀作为标签，只在真正需要时才计算，避免在热路径上创建字符串
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public interface CacheMetrics {
+
+    /**
+     * 计数
+     *
+     * @param name  指标名称
+     * @param key   缓存键，可以为null
+     * @param delta 增加的数量
+     */
+    void increment(String name, String key, long delta);
+
+    /**
+     * 记录一次分布型的取值，例如耗时(纳秒)或大小(字节)
+     *
+     * @param name  指标名称
+     * @param key   缓存键，可以为null
+     * @param value 取值
+     */
+    void record(String name, String key, long value);
+}
@@ -0,0 +1,179 @@
+package com.freestyledash.ranger.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 保存在内存中的指标实现，可以通过{@link #scrape()}定期导出
+ * <p>
+ * 以键前缀作为标签，前缀为键中第一个分隔符之前的部分，例如"user:1"的前缀为"user"；
+ * 没有分隔符或者与键无关的指标前缀为空字符串；不同前缀的数量超过上限后，新的前缀统一记为"other"
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class InMemoryCacheMetrics implements CacheMetrics {
+
+    private static final String OTHER = "other";
+
+    private final char delimiter;
+
+    private final int maxPrefixes;
+
+    private final ConcurrentMap<String, ConcurrentMap<String, LongAdder>> counters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Histogram>> histograms = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Boolean> prefixes = new ConcurrentHashMap<>();
+
+    public InMemoryCacheMetrics() {
+        this(':', 1000);
+    }
+
+    /**
+     * @param delimiter   键前缀的分隔符
+     * @param maxPrefixes 不同前缀数量的上限
+     */
+    public InMemoryCacheMetrics(char delimiter, int maxPrefixes) {
+        this.delimiter = delimiter;
+        this.maxPrefixes = maxPrefixes;
+    }
+
+    @Override
+    public void increment(String name, String key, long delta) {
+        ConcurrentMap<String, LongAdder> byPrefix = counters.get(name);
+        if (byPrefix == null) {
+            byPrefix = counters.computeIfAbsent(name, n -> new ConcurrentHashMap<>());
+        }
+        String prefix = prefixOf(key);
+        LongAdder adder = byPrefix.get(prefix);
+        if (adder == null) {
+            adder = byPrefix.computeIfAbsent(prefix, p -> new LongAdder());
+        }
+        adder.add(delta);
+    }
+
+    @Override
+    public void record(String name, String key, long value) {
+        histogram(name, prefixOf(key)).record(value);
+    }
+
+    private Histogram histogram(String name, String prefix) {
+        ConcurrentMap<String, Histogram> byPrefix = histograms.get(name);
+        if (byPrefix == null) {
+            byPrefix = histograms.computeIfAbsent(name, n -> new ConcurrentHashMap<>());
+        }
+        Histogram histogram = byPrefix.get(prefix);
+        if (histogram == null) {
+            histogram = byPrefix.computeIfAbsent(prefix, p -> new Histogram());
+        }
+        return histogram;
+    }
+
+    private String prefixOf(String key) {
+        if (key == null) {
+            return "";
+        }
+        int index = key.indexOf(delimiter);
+        if (index < 0) {
+            return "";
+        }
+        String prefix = key.substring(0, index);
+        if (prefixes.containsKey(prefix)) {
+            return prefix;
+        }
+        if (prefixes.size() >= maxPrefixes) {
+            return OTHER;
+        }
+        prefixes.putIfAbsent(prefix, Boolean.TRUE);
+        return prefix;
+    }
+
+    /**
+     * @param name   指标名称
+     * @param prefix 键前缀
+     * @return 计数，没有记录时返回0
+     */
+    public long getCount(String name, String prefix) {
+        Map<String, LongAdder> byPrefix = counters.get(name);
+        if (byPrefix == null) {
+            return 0;
+        }
+        LongAdder adder = byPrefix.get(prefix);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * @param name 指标名称
+     * @return 所有前缀的计数之和
+     */
+    public long getCount(String name) {
+        Map<String, LongAdder> byPrefix = counters.get(name);
+        if (byPrefix == null) {
+            return 0;
+        }
+        long sum = 0;
+        for (LongAdder adder : byPrefix.values()) {
+            sum += adder.sum();
+        }
+        return sum;
+    }
+
+    /**
+     * @param name   指标名称
+     * @param prefix 键前缀
+     * @return 直方图，没有记录时返回null
+     */
+    public Histogram getHistogram(String name, String prefix) {
+        Map<String, Histogram> byPrefix = histograms.get(name);
+        return byPrefix == null ? null : byPrefix.get(prefix);
+    }
+
+    /**
+     * 命中率 = 命中 / (命中 + 未命中)
+     *
+     * @param prefix 键前缀
+     * @return 命中率，没有读取时返回0
+     */
+    public double getHitRatio(String prefix) {
+        long hit = getCount(MetricNames.HIT, prefix);
+        long total = hit + getCount(MetricNames.MISS, prefix);
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * 以文本形式导出所有指标，每行一个指标，格式为 name{prefix="..."} value
+     * 直方图导出count、sum、max以及p50、p90、p99、p999
+     *
+     * @return 指标文本
+     */
+    public String scrape() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, ConcurrentMap<String, LongAdder>> entry : new TreeMap<>(counters).entrySet()) {
+            for (Map.Entry<String, LongAdder> counter : new TreeMap<>(entry.getValue()).entrySet()) {
+                line(builder, entry.getKey(), counter.getKey(), counter.getValue().sum());
+            }
+        }
+        for (Map.Entry<String, ConcurrentMap<String, Histogram>> entry : new TreeMap<>(histograms).entrySet()) {
+            for (Map.Entry<String, Histogram> h : new TreeMap<>(entry.getValue()).entrySet()) {
+                String name = entry.getKey();
+                Histogram histogram = h.getValue();
+                line(builder, name + ".count", h.getKey(), histogram.getCount());
+                line(builder, name + ".sum", h.getKey(), histogram.getSum());
+                line(builder, name + ".max", h.getKey(), histogram.getMax());
+                line(builder, name + ".p50", h.getKey(), histogram.getPercentile(50));
+                line(builder, name + ".p90", h.getKey(), histogram.getPercentile(90));
+                line(builder, name + ".p99", h.getKey(), histogram.getPercentile(99));
+                line(builder, name + ".p999", h.getKey(), histogram.getPercentile(99.9));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void line(StringBuilder builder, String name, String prefix, long value) {
+        builder.append(name).append("{prefix=\"").append(prefix).append("\"} ").append(value).append('\n');
+    }
+}
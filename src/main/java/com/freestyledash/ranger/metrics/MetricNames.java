@@ -0,0 +1,224 @@
+package com.freestyledash.ranger.metrics;
+
+/**
+ * 缓存指标的名称
+ * 以latency、time、wait结尾的指标单位为纳秒，以size结尾的指标单位为字节
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public final class MetricNames {
+
+    private MetricNames() {
+    }
+
+    /**
+     * 命中次数
+     */
+    public static final String HIT = "cache.hit";
+
+    /**
+     * 未命中次数
+     */
+    public static final String MISS = "cache.miss";
+
+    /**
+     * 单个读取耗时
+     */
+    public static final String GET_LATENCY = "cache.get.latency";
+
+    /**
+     * 批量读取耗时
+     */
+    public static final String MULTI_GET_LATENCY = "cache.multi_get.latency";
+
+    /**
+     * 单个写入耗时
+     */
+    public static final String SET_LATENCY = "cache.set.latency";
+
+    /**
+     * 批量写入耗时
+     */
+    public static final String MULTI_SET_LATENCY = "cache.multi_set.latency";
+
+    /**
+     * 单个删除耗时
+     */
+    public static final String DELETE_LATENCY = "cache.delete.latency";
+
+    /**
+     * 批量删除耗时
+     */
+    public static final String MULTI_DELETE_LATENCY = "cache.multi_delete.latency";
+
+    /**
+     * 序列化耗时
+     */
+    public static final String SERIALIZE_TIME = "cache.serialize.time";
+
+    /**
+     * 反序列化耗时
+     */
+    public static final String DESERIALIZE_TIME = "cache.deserialize.time";
+
+    /**
+     * 压缩耗时，包括压缩后没有变小的情况
+     */
+    public static final String COMPRESS_TIME = "cache.compress.time";
+
+    /**
+     * 解压耗时
+     */
+    public static final String DECOMPRESS_TIME = "cache.decompress.time";
+
+    /**
+     * 超过阈值、尝试压缩的序列化结果大小
+     */
+    public static final String COMPRESS_INPUT_SIZE = "cache.compress.input.size";
+
+    /**
+     * 压缩后的大小，压缩后没有变小时为原始大小，与cache.compress.input.size总和的比值即压缩比例
+     */
+    public static final String COMPRESS_OUTPUT_SIZE = "cache.compress.output.size";
+
+    /**
+     * 写入redis的序列化结果大小
+     */
+    public static final String WRITE_SIZE = "cache.write.size";
+
+    /**
+     * 从redis读取的数据大小
+     */
+    public static final String READ_SIZE = "cache.read.size";
+
+    /**
+     * 等待全局读写锁的时间
+     */
+    public static final String LOCK_WAIT = "cache.lock.wait";
+
+    /**
+     * 从连接池获取连接的等待时间
+     */
+    public static final String POOL_BORROW_WAIT = "cache.pool.borrow.wait";
+
+    /**
+     * loader加载次数
+     */
+    public static final String LOAD = "cache.load";
+
+    /**
+     * loader加载耗时
+     */
+    public static final String LOAD_LATENCY = "cache.load.latency";
+
+    /**
+     * jvm内缓存命中次数
+     */
+    public static final String NEAR_HIT = "cache.near.hit";
+
+    /**
+     * jvm内缓存未命中次数
+     */
+    public static final String NEAR_MISS = "cache.near.miss";
+
+    /**
+     * 后台提前刷新次数
+     */
+    public static final String REFRESH = "cache.refresh";
+
+    /**
+     * 因刷新线程池已满而放弃的提前刷新次数
+     */
+    public static final String REFRESH_DROPPED = "cache.refresh.dropped";
+
+    /**
+     * 读取到空缓存标记的次数，同时也计入命中次数
+     */
+    public static final String NEGATIVE_HIT = "cache.negative.hit";
+
+    /**
+     * 被布隆过滤器拒绝的查询次数
+     */
+    public static final String FILTER_REJECT = "cache.filter.reject";
+
+    /**
+     * 加载jvm内缓存快照的耗时
+     */
+    public static final String SNAPSHOT_LOAD_TIME = "cache.snapshot.load.time";
+
+    /**
+     * 由热点键本地副本返回的读取次数
+     */
+    public static final String HOT_KEY_HIT = "cache.hotkey.hit";
+
+    /**
+     * 延迟写入每批包含的键数量
+     */
+    public static final String WRITE_BEHIND_FLUSH_SIZE = "cache.write_behind.flush.size";
+
+    /**
+     * 等待跨jvm租约锁的时间，包括超时和放弃的等待
+     */
+    public static final String LEASE_WAIT = "cache.lease.wait";
+
+    /**
+     * 等待跨jvm租约锁超时的次数
+     */
+    public static final String LEASE_TIMEOUT = "cache.lease.timeout";
+
+    /**
+     * 释放时发现租约已经过期的次数，说明租约时长短于加载耗时
+     */
+    public static final String LEASE_LOST = "cache.lease.lost";
+
+    /**
+     * 堆外缓存命中次数
+     */
+    public static final String OFFHEAP_HIT = "cache.offheap.hit";
+
+    /**
+     * 堆外缓存未命中次数
+     */
+    public static final String OFFHEAP_MISS = "cache.offheap.miss";
+
+    /**
+     * 版本号比较失败的次数，按键统计
+     */
+    public static final String CAS_CONFLICT = "cache.cas.conflict";
+
+    /**
+     * 冲突后重试策略放弃修改的次数
+     */
+    public static final String CAS_ABORT = "cache.cas.abort";
+
+    /**
+     * 超过时间预算的调用次数
+     */
+    public static final String DEADLINE_EXCEEDED = "cache.deadline.exceeded";
+
+    /**
+     * 发送对冲读取的次数
+     */
+    public static final String HEDGE_SENT = "cache.hedge.sent";
+
+    /**
+     * 对冲读取先于主读取返回的次数
+     */
+    public static final String HEDGE_WIN = "cache.hedge.win";
+
+    /**
+     * 熔断器离开关闭状态时加1，回到关闭状态时减1，当前值为1表示熔断中
+     */
+    public static final String BREAKER_OPEN = "cache.breaker.open";
+
+    /**
+     * 熔断器打开的次数
+     */
+    public static final String BREAKER_TRIP = "cache.breaker.trip";
+
+    /**
+     * 熔断期间被直接拒绝的调用次数
+     */
+    public static final String BREAKER_REJECTED = "cache.breaker.rejected";
+}
@@ -0,0 +1,23 @@
+package com.freestyledash.ranger.metrics;
+
+/**
+ * 不收集任何指标的默认实现
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public final class NoopCacheMetrics implements CacheMetrics {
+
+    public static final NoopCacheMetrics INSTANCE = new NoopCacheMetrics();
+
+    private NoopCacheMetrics() {
+    }
+
+    @Override
+    public void increment(String name, String key, long delta) {
+    }
+
+    @Override
+    public void record(String name, String key, long value) {
+    }
+}
@@ -0,0 +1,41 @@
+package com.freestyledash.ranger.provider;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步的cache服务提供者
+ * 方法立即返回，结果通过CompletableFuture通知，实现类可以将并发的请求合并成批量请求发送
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public interface AsyncCacheProvider {
+
+    /**
+     * 从缓存容器中获得单个缓存对象
+     *
+     * @param key   缓存的键
+     * @param clazz 缓存对象的类型
+     * @param <T>   缓存的类型
+     * @return 被缓存的对象，未命中时结果为null
+     */
+    <T> CompletableFuture<T> getCache(String key, Class<T> clazz);
+
+    /**
+     * 设置缓存的对象
+     *
+     * @param key     键
+     * @param toStore 需要存储的对象
+     * @param ttl     过期时间 -1 永不过期 ，单位是秒
+     * @return 是否设置成功
+     */
+    CompletableFuture<Boolean> setCache(String key, Object toStore, int ttl);
+
+    /**
+     * 单个删除缓存
+     *
+     * @param key 单个键
+     * @return 删除完成的通知
+     */
+    CompletableFuture<Void> deleteCache(String key);
+}
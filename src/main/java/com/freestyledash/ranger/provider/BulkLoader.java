@@ -0,0 +1,24 @@
+package com.freestyledash.ranger.provider;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 批量读取时一次加载全部未命中键的回调
+ * 通常由调用方实现，用一次查询(例如where id in (...))从数据源中读取对象
+ *
+ * @param <T> 加载对象的类型
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public interface BulkLoader<T> {
+
+    /**
+     * 加载一批键对应的对象
+     *
+     * @param keys 未命中的键，不包含重复的键
+     * @return 键和加载的对象，数据源中不存在的键不放入map或者值为null，此时不写入该对象；
+     * 开启了空值缓存时为这些键写入空缓存标记，过期之前不会再交给loader
+     */
+    Map<String, T> load(Collection<String> keys);
+}
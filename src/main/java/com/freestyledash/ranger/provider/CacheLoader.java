@@ -0,0 +1,20 @@
+package com.freestyledash.ranger.provider;
+
+/**
+ * 缓存未命中时用于加载数据的回调
+ * 通常由调用方实现，从数据库等数据源中读取对象
+ *
+ * @param <T> 加载对象的类型
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public interface CacheLoader<T> {
+
+    /**
+     * 加载键对应的对象
+     *
+     * @param key 缓存的键
+     * @return 加载的对象，返回null表示数据源中也不存在，此时不写入缓存
+     */
+    T load(String key);
+}
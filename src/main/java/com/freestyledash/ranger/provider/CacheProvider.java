@@ -1,7 +1,14 @@
 package com.freestyledash.ranger.provider;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 /**
  * cache服务提供者
@@ -22,6 +29,20 @@ public interface CacheProvider {
      */
     <T> T getCache(String key, Class<T> clazz);
 
+    /**
+     * 在时间预算内获得单个缓存对象，超过预算时当作未命中
+     * 默认实现不限制时间，只有设置了时间预算的provider(见CacheProviderFactory.Builder#setDeadlines)会覆盖该方法
+     *
+     * @param key     缓存的键
+     * @param clazz   缓存对象的类型
+     * @param timeout 本次调用的时间预算
+     * @param unit    时间单位
+     * @param <T>     缓存的类型
+     * @return 被缓存的对象，未命中或超过预算时返回null
+     */
+    default <T> T getCache(String key, Class<T> clazz, long timeout, TimeUnit unit) {
+        return getCache(key, clazz);
+    }
 
     /**
      * 从缓存容器中批量获得缓存对象，对象类型只能是同一种
@@ -33,12 +54,29 @@ public interface CacheProvider {
      */
     <T> List<T> getCache(List<String> keys, Class<T> clazz);
 
+    /**
+     * 从缓存容器中批量获得缓存对象，并逐个交给consumer处理，对象类型只能是同一种
+     * 支持分段执行的实现可以在后续分段仍在执行时就开始回调，调用方不需要持有全部结果
+     * consumer在调用线程中执行，分段完成的先后顺序不一定与keys一致
+     *
+     * @param keys     缓存的键
+     * @param clazz    缓存对象的类型
+     * @param consumer 接收键和被缓存的对象，未命中时对象为null
+     * @param <T>      缓存的类型
+     */
+    default <T> void getCache(List<String> keys, Class<T> clazz, BiConsumer<String, T> consumer) {
+        List<T> values = getCache(keys, clazz);
+        for (int i = 0; i < keys.size(); i++) {
+            consumer.accept(keys.get(i), values.get(i));
+        }
+    }
+
     /**
      * 设置缓存的对象
      *
      * @param key     键
      * @param toStore 需要存储的对象
-     * @param ttl     过期时间 -1 永不过期 ，单位是秒
+     * @param ttl     过期时间 -1 永不过期 ，0或其它负数表示删除该键，单位是秒
      * @return 是否设置成功
      */
     boolean setCache(String key, Object toStore, int ttl);
@@ -48,7 +86,7 @@ public interface CacheProvider {
      * 批量设置缓存的对象
      *
      * @param params 需要设置的对象
-     * @param ttl 对象存活时间
+     * @param ttl 对象存活时间 -1 永不过期 ，0或其它负数表示删除这些键，单位是秒
      * @return 是否设置成功
      */
     boolean setCache(Map<String, Object> params, int ttl);
@@ -69,5 +107,91 @@ public interface CacheProvider {
      */
     void deleteCache(String key);
 
+    /**
+     * 获得缓存对象，未命中时使用loader加载并写入缓存
+     * 同一个键的并发未命中只会触发一次加载，其余调用等待并共享结果，不同键之间互不阻塞，用于防止缓存击穿
+     * 默认实现只是先读取再加载和写入，不合并并发的加载，需要防止缓存击穿的实现应该覆盖该方法
+     *
+     * @param key    缓存的键
+     * @param clazz  缓存对象的类型
+     * @param loader 未命中时的加载逻辑
+     * @param ttl    加载结果的过期时间 -1 永不过期 ，单位是秒
+     * @param <T>    缓存的类型
+     * @return 缓存或加载的对象，loader返回null时返回null
+     */
+    default <T> T getOrLoad(String key, Class<T> clazz, CacheLoader<T> loader, int ttl) {
+        T cached = getCache(key, clazz);
+        if (cached != null) {
+            return cached;
+        }
+        T loaded = loader.load(key);
+        if (loaded != null) {
+            setCache(key, loaded, ttl);
+        }
+        return loaded;
+    }
+
+    /**
+     * 在时间预算内获得缓存对象，超过预算时直接调用loader，加载结果不写入缓存
+     * 预算只限制访问缓存的时间，loader开始执行之后不再受预算限制
+     * 默认实现不限制时间，只有设置了时间预算的provider会覆盖该方法
+     *
+     * @param key     缓存的键
+     * @param clazz   缓存对象的类型
+     * @param loader  未命中或超过预算时的加载逻辑
+     * @param ttl     加载结果的过期时间 -1 永不过期 ，单位是秒
+     * @param timeout 本次调用的时间预算
+     * @param unit    时间单位
+     * @param <T>     缓存的类型
+     * @return 缓存或加载的对象
+     */
+    default <T> T getOrLoad(String key, Class<T> clazz, CacheLoader<T> loader, int ttl, long timeout, TimeUnit unit) {
+        return getOrLoad(key, clazz, loader, ttl);
+    }
+
+    /**
+     * 批量获得缓存对象，未命中的键只调用一次loader加载，加载结果批量写入缓存
+     * 与{@link #getCache(List, Class)}不同，返回结果可以直接按键查找，无法反序列化的键当作未命中重新加载，不会导致整批失败
+     *
+     * @param keys   缓存的键，重复的键只处理一次
+     * @param clazz  缓存对象的类型
+     * @param loader 一次加载全部未命中键的逻辑
+     * @param ttl    加载结果的过期时间 -1 永不过期 ，单位是秒
+     * @param <T>    缓存的类型
+     * @return 键和缓存或加载的对象，顺序与keys一致，缓存和数据源中都不存在的键不在map中
+     */
+    default <T> Map<String, T> getAll(Collection<String> keys, Class<T> clazz, BulkLoader<T> loader, int ttl) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        Map<String, T> returnMap = new LinkedHashMap<>();
+        if (distinct.isEmpty()) {
+            return returnMap;
+        }
+        List<T> values = getCache(distinct, clazz);
+        List<String> missed = new ArrayList<>();
+        for (int i = 0; i < distinct.size(); i++) {
+            if (values.get(i) == null) {
+                missed.add(distinct.get(i));
+            }
+        }
+        Map<String, T> loaded = missed.isEmpty() ? null : loader.load(missed);
+        Map<String, Object> toStore = new HashMap<>();
+        for (int i = 0; i < distinct.size(); i++) {
+            String key = distinct.get(i);
+            T value = values.get(i);
+            if (value == null && loaded != null) {
+                value = loaded.get(key);
+                if (value != null) {
+                    toStore.put(key, value);
+                }
+            }
+            if (value != null) {
+                returnMap.put(key, value);
+            }
+        }
+        if (!toStore.isEmpty()) {
+            setCache(toStore, ttl);
+        }
+        return returnMap;
+    }
 
 }
@@ -0,0 +1,74 @@
+package com.freestyledash.ranger.provider;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * 将所有调用转发给另一个CacheProvider的装饰器基类
+ * 子类只需要覆盖需要增强的方法，例如在远程缓存前增加本地缓存
+ * 覆盖了批量读取的子类也需要覆盖回调形式的批量读取，否则回调形式会绕过子类直接读取被装饰的provider
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public abstract class ForwardingCacheProvider implements CacheProvider {
+
+    /**
+     * 被装饰的CacheProvider
+     */
+    protected final CacheProvider delegate;
+
+    protected ForwardingCacheProvider(CacheProvider delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate不能为空");
+        }
+        this.delegate = delegate;
+    }
+
+    @Override
+    public <T> T getCache(String key, Class<T> clazz) {
+        return delegate.getCache(key, clazz);
+    }
+
+    @Override
+    public <T> List<T> getCache(List<String> keys, Class<T> clazz) {
+        return delegate.getCache(keys, clazz);
+    }
+
+    @Override
+    public <T> void getCache(List<String> keys, Class<T> clazz, BiConsumer<String, T> consumer) {
+        delegate.getCache(keys, clazz, consumer);
+    }
+
+    @Override
+    public boolean setCache(String key, Object toStore, int ttl) {
+        return delegate.setCache(key, toStore, ttl);
+    }
+
+    @Override
+    public boolean setCache(Map<String, Object> params, int ttl) {
+        return delegate.setCache(params, ttl);
+    }
+
+    @Override
+    public void deleteCache(List<String> keys) {
+        delegate.deleteCache(keys);
+    }
+
+    @Override
+    public void deleteCache(String key) {
+        delegate.deleteCache(key);
+    }
+
+    @Override
+    public <T> T getOrLoad(String key, Class<T> clazz, CacheLoader<T> loader, int ttl) {
+        return delegate.getOrLoad(key, clazz, loader, ttl);
+    }
+
+    @Override
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> clazz, BulkLoader<T> loader, int ttl) {
+        return delegate.getAll(keys, clazz, loader, ttl);
+    }
+}
@@ -0,0 +1,106 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.provider.CacheProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+/**
+ * 批量操作拆分后的并行执行工具
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+final class BatchTasks {
+
+    private BatchTasks() {
+    }
+
+    /**
+     * 将列表按照固定大小切分，返回的子列表是原列表的视图
+     *
+     * @param list      需要切分的列表
+     * @param chunkSize 每段的大小
+     * @return 切分结果
+     */
+    static <E> List<List<E>> partition(List<E> list, int chunkSize) {
+        List<List<E>> chunks = new ArrayList<>((list.size() + chunkSize - 1) / chunkSize);
+        for (int from = 0; from < list.size(); from += chunkSize) {
+            chunks.add(list.subList(from, Math.min(list.size(), from + chunkSize)));
+        }
+        return chunks;
+    }
+
+    /**
+     * 按段依次批量读取并回调，每次只持有一段的结果，用于需要先查找本地条目、不能直接转发回调的装饰器
+     *
+     * @param provider  执行每段批量读取的provider
+     * @param keys      缓存的键
+     * @param clazz     缓存对象的类型
+     * @param chunkSize 每段的大小
+     * @param consumer  接收键和被缓存的对象，未命中时对象为null
+     */
+    static <T> void getInChunks(CacheProvider provider, List<String> keys, Class<T> clazz, int chunkSize,
+                                BiConsumer<String, T> consumer) {
+        for (List<String> chunk : partition(keys, chunkSize)) {
+            List<T> values = provider.getCache(chunk, clazz);
+            for (int i = 0; i < chunk.size(); i++) {
+                consumer.accept(chunk.get(i), values.get(i));
+            }
+        }
+    }
+
+    /**
+     * 并行执行任务，最后一个任务在调用线程中执行；executor为null时全部在调用线程中顺序执行
+     * 所有任务结束后抛出第一个失败任务的异常
+     *
+     * @param executor 线程池
+     * @param tasks    任务
+     */
+    static void runAll(ExecutorService executor, List<Callable<Void>> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        List<Future<Void>> futures = new ArrayList<>(tasks.size() - 1);
+        if (executor != null) {
+            for (int i = 0; i < tasks.size() - 1; i++) {
+                futures.add(executor.submit(tasks.get(i)));
+            }
+        }
+        RuntimeException failure = null;
+        for (int i = executor == null ? 0 : tasks.size() - 1; i < tasks.size(); i++) {
+            try {
+                tasks.get(i).call();
+            } catch (RuntimeException e) {
+                failure = e;
+                break;
+            } catch (Exception e) {
+                failure = new RuntimeException(e);
+                break;
+            }
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = new RuntimeException("等待批量操作执行结果被中断", e);
+                }
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.metrics.MetricNames;
+import com.freestyledash.ranger.provider.AsyncCacheProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 将并发的单键请求合并为pipeline批量执行的异步CacheProvider
+ * <p>
+ * 调用方线程只负责序列化并把请求放入队列，后台的分发线程从队列中取出一批请求，
+ * 在同一个连接上通过一个pipeline按提交顺序执行，同一批中的GET、SET和DEL只需要一次网络往返
+ * 请求越密集，每批包含的请求越多，吞吐量随请求速率增长而不是随连接池大小增长
+ * <p>
+ * 反序列化在completionExecutor中执行，不占用分发线程
+ * 该对象直接访问redis，不经过jvm内缓存读取，但写入和删除仍会让jvm内缓存、堆外缓存和热点键的本地副本失效，
+ * 失效广播与写入在同一个pipeline中发送
+ * 队列已满或者已经关闭时请求不会阻塞，返回的future直接以异常结束
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class BatchingAsyncCacheProvider implements AsyncCacheProvider {
+
+    private static Logger logger = LoggerFactory.getLogger(BatchingAsyncCacheProvider.class);
+
+    private final CacheProviderCore core;
+
+    /**
+     * jvm内缓存，可以为null
+     */
+    private final NearCacheProvider nearCacheProvider;
+
+    /**
+     * 堆外缓存，可以为null
+     */
+    private final OffHeapCacheProvider offHeapCacheProvider;
+
+    private final BlockingQueue<Operation> queue;
+
+    /**
+     * 每批最多包含的请求数量
+     */
+    private final int maxBatchSize;
+
+    /**
+     * 取到第一个请求后继续等待后续请求的时间，单位纳秒，0表示只合并已经在队列中的请求
+     */
+    private final long windowNanos;
+
+    private final Executor completionExecutor;
+
+    private final Thread[] dispatchers;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param core                 redis缓存
+     * @param nearCacheProvider    jvm内缓存，可以为null
+     * @param offHeapCacheProvider 堆外缓存，可以为null
+     * @param maxBatchSize         每批最多包含的请求数量
+     * @param windowMicros         合并窗口，单位微秒，0表示不等待
+     * @param queueCapacity        等待队列容量，队列满时请求直接失败
+     * @param connections          分发线程数量，每个分发线程同一时刻占用一个连接
+     * @param completionExecutor   反序列化和回调使用的线程池
+     */
+    BatchingAsyncCacheProvider(CacheProviderCore core, NearCacheProvider nearCacheProvider,
+                               OffHeapCacheProvider offHeapCacheProvider, int maxBatchSize, long windowMicros,
+                               int queueCapacity, int connections, Executor completionExecutor) {
+        if (maxBatchSize < 1 || connections < 1 || windowMicros < 0) {
+            throw new IllegalArgumentException("maxBatchSize和connections必须大于0,windowMicros不能小于0");
+        }
+        this.core = core;
+        this.nearCacheProvider = nearCacheProvider;
+        this.offHeapCacheProvider = offHeapCacheProvider;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.completionExecutor = completionExecutor;
+        this.dispatchers = new Thread[connections];
+        for (int i = 0; i < connections; i++) {
+            dispatchers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    dispatchLoop();
+                }
+            }, "ranger-async-dispatcher-" + i);
+            dispatchers[i].setDaemon(true);
+            dispatchers[i].start();
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<T> getCache(final String key, final Class<T> clazz) {
+        GetOperation operation = new GetOperation(SafeEncoder.encode(key));
+        submit(operation);
+        return operation.future.thenApplyAsync(bytes -> {
+            if (bytes == null) {
+                core.getMetrics().increment(MetricNames.MISS, key, 1);
+                return null;
+            }
+            core.getMetrics().increment(MetricNames.HIT, key, 1);
+            return core.deserialize(key, bytes, clazz);
+        }, completionExecutor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> setCache(final String key, Object toStore, int ttl) {
+        byte[] value;
+        try {
+            value = core.serialize(key, toStore);
+        } catch (RuntimeException e) {
+            CompletableFuture<Boolean> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        SetOperation operation = new SetOperation(key, value, ttl);
+        submit(operation);
+        return operation.future.thenApply(ignored -> true);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteCache(final String key) {
+        DeleteOperation operation = new DeleteOperation(key);
+        submit(operation);
+        return operation.future.thenApply(ignored -> null);
+    }
+
+    /**
+     * 放入等待队列，队列已满时直接失败
+     * 放入之后再次检查是否已经关闭：close()可能在第一次检查之后清空了队列，此时没有分发线程会执行该请求
+     */
+    private void submit(Operation operation) {
+        if (!running) {
+            operation.fail(new IllegalStateException("AsyncCacheProvider已关闭"));
+            return;
+        }
+        if (!queue.offer(operation)) {
+            operation.fail(new RejectedExecutionException("AsyncCacheProvider等待队列已满"));
+            return;
+        }
+        //没能从队列中移除说明已经被分发线程或者close()取走，由它们结束
+        if (!running && queue.remove(operation)) {
+            operation.fail(new IllegalStateException("AsyncCacheProvider已关闭"));
+        }
+    }
+
+    /**
+     * 写入或删除完成后让本地的副本失效，与WriteBehindCacheProvider写入之后的处理相同
+     */
+    private void invalidateLocal(String key) {
+        core.unpin(key);
+        if (nearCacheProvider != null) {
+            //同时让堆外缓存的条目失效
+            nearCacheProvider.invalidateLocal(key);
+        } else if (offHeapCacheProvider != null) {
+            offHeapCacheProvider.invalidateLocal(key);
+        }
+    }
+
+    /**
+     * 分发线程：取出一批请求，通过一个pipeline执行
+     */
+    private void dispatchLoop() {
+        List<Operation> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Operation first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    queue.drainTo(batch);
+                }
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                core.pipelined(batch);
+                for (Operation operation : batch) {
+                    operation.complete();
+                }
+            } catch (RuntimeException e) {
+                logger.warn("批量执行{}个缓存请求失败", batch.size(), e);
+                for (Operation operation : batch) {
+                    operation.fail(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * 在合并窗口内继续收集请求，直到达到每批最大数量
+     */
+    private void collect(List<Operation> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            if (batch.size() >= maxBatchSize) {
+                return;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            Operation next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * 停止接收新请求，等待队列中已有的请求执行完毕
+     */
+    public void close() {
+        running = false;
+        for (Thread dispatcher : dispatchers) {
+            dispatcher.interrupt();
+        }
+        for (Thread dispatcher : dispatchers) {
+            try {
+                dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        Operation operation;
+        while ((operation = queue.poll()) != null) {
+            operation.fail(new IllegalStateException("AsyncCacheProvider已关闭"));
+        }
+    }
+
+    /**
+     * @return 等待执行的请求数量
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * 队列中的请求，pipeline同步之后读取结果并通知调用方
+     */
+    private abstract static class Operation implements PipelineOperation {
+
+        abstract void complete();
+
+        abstract void fail(Throwable e);
+    }
+
+    private static final class GetOperation extends Operation {
+
+        private final byte[] key;
+
+        private final CompletableFuture<byte[]> future = new CompletableFuture<>();
+
+        private Response<byte[]> response;
+
+        private GetOperation(byte[] key) {
+            this.key = key;
+        }
+
+        @Override
+        public void apply(Pipeline pipeline) {
+            response = pipeline.get(key);
+        }
+
+        @Override
+        void complete() {
+            try {
+                future.complete(response.get());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        void fail(Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private final class SetOperation extends Operation {
+
+        private final String key;
+
+        private final byte[] value;
+
+        private final int ttl;
+
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        private Response<?> response;
+
+        private SetOperation(String key, byte[] value, int ttl) {
+            this.key = key;
+            this.value = value;
+            this.ttl = ttl;
+        }
+
+        @Override
+        public void apply(Pipeline pipeline) {
+            byte[] rawKey = SafeEncoder.encode(key);
+            response = core.set(pipeline, rawKey, value, ttl);
+            if (nearCacheProvider != null) {
+                nearCacheProvider.publish(pipeline, key);
+            }
+        }
+
+        @Override
+        void complete() {
+            invalidateLocal(key);
+            try {
+                future.complete(response.get());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        void fail(Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private final class DeleteOperation extends Operation {
+
+        private final String key;
+
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        private Response<Long> response;
+
+        private DeleteOperation(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void apply(Pipeline pipeline) {
+            response = pipeline.del(SafeEncoder.encode(key));
+            if (nearCacheProvider != null) {
+                nearCacheProvider.publish(pipeline, key);
+            }
+        }
+
+        @Override
+        void complete() {
+            invalidateLocal(key);
+            try {
+                future.complete(response.get());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        void fail(Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.freestyledash.ranger.provider.redis;
+
+import redis.clients.util.Hashing;
+import redis.clients.util.SafeEncoder;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 布隆过滤器，用于在查询缓存和调用loader之前拒绝一定不存在的键
+ * 判断为不存在时键一定没有被加入过，判断为存在时有一定概率误判
+ * 不支持删除，数据被删除后只会让误判率变高，需要时可以创建新的过滤器重新加入全部键
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public abstract class BloomFilter {
+
+    /**
+     * 位数组长度
+     */
+    protected final long bitSize;
+
+    /**
+     * 每个键对应的位数量
+     */
+    protected final int hashCount;
+
+    /**
+     * @param expectedInsertions 预计加入的键数量
+     * @param fpp                期望的误判率，例如0.01
+     */
+    protected BloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions < 1 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("expectedInsertions必须大于0,fpp必须在0和1之间");
+        }
+        this.bitSize = Math.max(64, (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * @param key 缓存的键
+     * @return 键可能存在时返回true，一定不存在时返回false
+     */
+    public boolean mightContain(String key) {
+        return allSet(positions(key));
+    }
+
+    /**
+     * 批量判断，子类可以覆盖该方法减少访问存储的次数
+     *
+     * @param keys 缓存的键
+     * @return 与keys顺序一致，键可能存在时为true，一定不存在时为false
+     */
+    public boolean[] mightContain(List<String> keys) {
+        boolean[] result = new boolean[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            result[i] = mightContain(keys.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 加入一个键
+     *
+     * @param key 缓存的键
+     */
+    public void put(String key) {
+        setAll(positions(key));
+    }
+
+    /**
+     * 批量加入键，用于初始化或者增量补充过滤器
+     *
+     * @param keys 缓存的键
+     */
+    public void putAll(Collection<String> keys) {
+        for (String key : keys) {
+            put(key);
+        }
+    }
+
+    /**
+     * 使用两个hash值组合出hashCount个位置
+     */
+    protected long[] positions(String key) {
+        long hash = Hashing.MURMUR_HASH.hash(SafeEncoder.encode(key));
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        long[] positions = new long[hashCount];
+        for (int i = 0; i < hashCount; i++) {
+            long combined = hash1 + (long) (i + 1) * hash2;
+            if (combined < 0) {
+                combined = ~combined;
+            }
+            positions[i] = combined % bitSize;
+        }
+        return positions;
+    }
+
+    /**
+     * @param positions 位置
+     * @return 所有位置是否都为1
+     */
+    protected abstract boolean allSet(long[] positions);
+
+    /**
+     * 将所有位置设置为1
+     *
+     * @param positions 位置
+     */
+    protected abstract void setAll(long[] positions);
+
+    public long getBitSize() {
+        return bitSize;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+}
@@ -0,0 +1,219 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.metrics.CacheMetrics;
+import com.freestyledash.ranger.metrics.MetricNames;
+import com.freestyledash.ranger.provider.BulkLoader;
+import com.freestyledash.ranger.provider.CacheLoader;
+import com.freestyledash.ranger.provider.CacheProvider;
+import com.freestyledash.ranger.provider.ForwardingCacheProvider;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 使用布隆过滤器拒绝一定不存在的键的CacheProvider，防止缓存穿透
+ * 被拒绝的键读取时直接返回null，不会访问redis
+ * 通过本对象写入的键会自动加入过滤器；数据源中已有的键需要在启动时通过{@link BloomFilter#putAll}加入
+ * <p>
+ * 过滤器可能不完整：{@link LocalBloomFilter}不包含其他jvm写入的键，启动之后才加入数据源的键也不在其中，
+ * 因此默认情况下getOrLoad和getAll仍然为被拒绝的键调用loader，加载成功后把键加入过滤器，
+ * 数据源中确实不存在的键由空值缓存防止反复回源；
+ * 只有所有写入方共享同一个过滤器(多个jvm时使用{@link RedisBloomFilter})、并且数据源的写入也会加入过滤器时，
+ * 才可以声明过滤器是完整的，此时被拒绝的键不会交给loader
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class BloomFilterCacheProvider extends ForwardingCacheProvider {
+
+    private final BloomFilter filter;
+
+    private final CacheMetrics metrics;
+
+    /**
+     * 过滤器是否包含全部存在的键，为true时被拒绝的键不会交给loader
+     */
+    private final boolean authoritative;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    BloomFilterCacheProvider(CacheProvider delegate, BloomFilter filter, CacheMetrics metrics) {
+        this(delegate, filter, false, metrics);
+    }
+
+    /**
+     * @param delegate      被装饰的provider
+     * @param filter        布隆过滤器
+     * @param authoritative 过滤器是否包含全部存在的键，为true时被拒绝的键不会交给loader
+     * @param metrics       指标收集
+     */
+    BloomFilterCacheProvider(CacheProvider delegate, BloomFilter filter, boolean authoritative, CacheMetrics metrics) {
+        super(delegate);
+        if (filter == null) {
+            throw new IllegalArgumentException("filter不能为空");
+        }
+        this.filter = filter;
+        this.authoritative = authoritative;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public <T> T getCache(String key, Class<T> clazz) {
+        if (reject(key)) {
+            return null;
+        }
+        return delegate.getCache(key, clazz);
+    }
+
+    @Override
+    public <T> List<T> getCache(List<String> keys, Class<T> clazz) {
+        boolean[] rejectedKeys = reject(keys);
+        List<String> accepted = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            if (!rejectedKeys[i]) {
+                accepted.add(keys.get(i));
+            }
+        }
+        if (accepted.size() == keys.size()) {
+            return delegate.getCache(keys, clazz);
+        }
+        List<T> values = accepted.isEmpty() ? Collections.<T>emptyList() : delegate.getCache(accepted, clazz);
+        List<T> returnList = new ArrayList<>(keys.size());
+        int next = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            returnList.add(rejectedKeys[i] ? null : values.get(next++));
+        }
+        return returnList;
+    }
+
+    /**
+     * 被拒绝的键直接回调null，其余的键交给delegate分段读取
+     */
+    @Override
+    public <T> void getCache(List<String> keys, Class<T> clazz, BiConsumer<String, T> consumer) {
+        boolean[] rejectedKeys = reject(keys);
+        List<String> accepted = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            if (rejectedKeys[i]) {
+                consumer.accept(keys.get(i), null);
+            } else {
+                accepted.add(keys.get(i));
+            }
+        }
+        if (!accepted.isEmpty()) {
+            delegate.getCache(accepted, clazz, consumer);
+        }
+    }
+
+    @Override
+    public boolean setCache(String key, Object toStore, int ttl) {
+        filter.put(key);
+        return delegate.setCache(key, toStore, ttl);
+    }
+
+    @Override
+    public boolean setCache(Map<String, Object> params, int ttl) {
+        filter.putAll(params.keySet());
+        return delegate.setCache(params, ttl);
+    }
+
+    /**
+     * 过滤器不是完整的时，被拒绝的键仍然交给delegate加载，加载成功后加入过滤器
+     */
+    @Override
+    public <T> T getOrLoad(String key, Class<T> clazz, CacheLoader<T> loader, int ttl) {
+        if (!reject(key)) {
+            return delegate.getOrLoad(key, clazz, loader, ttl);
+        }
+        if (authoritative) {
+            return null;
+        }
+        T value = delegate.getOrLoad(key, clazz, loader, ttl);
+        if (value != null) {
+            filter.put(key);
+        }
+        return value;
+    }
+
+    /**
+     * 过滤器不是完整的时，被拒绝的键仍然交给delegate加载，加载成功的键加入过滤器；
+     * 过滤器是完整的时被拒绝的键不会交给loader
+     */
+    @Override
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> clazz, BulkLoader<T> loader, int ttl) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        boolean[] rejectedKeys = reject(distinct);
+        if (!authoritative) {
+            Map<String, T> returnMap = delegate.getAll(distinct, clazz, loader, ttl);
+            List<String> found = new ArrayList<>();
+            for (int i = 0; i < distinct.size(); i++) {
+                if (rejectedKeys[i] && returnMap.containsKey(distinct.get(i))) {
+                    found.add(distinct.get(i));
+                }
+            }
+            if (!found.isEmpty()) {
+                filter.putAll(found);
+            }
+            return returnMap;
+        }
+        List<String> accepted = new ArrayList<>(distinct.size());
+        for (int i = 0; i < distinct.size(); i++) {
+            if (!rejectedKeys[i]) {
+                accepted.add(distinct.get(i));
+            }
+        }
+        if (accepted.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+        return delegate.getAll(accepted, clazz, loader, ttl);
+    }
+
+    private boolean reject(String key) {
+        if (filter.mightContain(key)) {
+            return false;
+        }
+        rejected.incrementAndGet();
+        metrics.increment(MetricNames.FILTER_REJECT, key, 1);
+        return true;
+    }
+
+    /**
+     * 通过一次批量判断检查全部键
+     *
+     * @return 与keys顺序一致，被拒绝的键为true
+     */
+    private boolean[] reject(List<String> keys) {
+        boolean[] contains = filter.mightContain(keys);
+        boolean[] rejectedKeys = new boolean[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            if (!contains[i]) {
+                rejectedKeys[i] = true;
+                rejected.incrementAndGet();
+                metrics.increment(MetricNames.FILTER_REJECT, keys.get(i), 1);
+            }
+        }
+        return rejectedKeys;
+    }
+
+    /**
+     * @return 过滤器，可以用于加入数据源中已有的键
+     */
+    public BloomFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return 过滤器是否被声明为包含全部存在的键
+     */
+    public boolean isAuthoritative() {
+        return authoritative;
+    }
+
+    /**
+     * @return 被拒绝的查询次数
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+}
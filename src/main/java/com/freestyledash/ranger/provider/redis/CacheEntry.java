@@ -0,0 +1,50 @@
+package com.freestyledash.ranger.provider.redis;
+
+/**
+ * 从redis中读取的缓存对象以及它的过期时间
+ *
+ * @param <T> 缓存对象的类型
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+final class CacheEntry<T> {
+
+    /**
+     * 永不过期
+     */
+    static final long NEVER = -1;
+
+    private final T value;
+
+    /**
+     * 过期的时间点，单位毫秒，{@link #NEVER}表示永不过期
+     */
+    private final long expireAt;
+
+    CacheEntry(T value, long expireAt) {
+        this.value = value;
+        this.expireAt = expireAt;
+    }
+
+    /**
+     * 根据redis返回的pttl计算过期时间点
+     *
+     * @param pttl redis返回的剩余存活时间，单位毫秒，负数表示永不过期
+     * @param now  当前时间
+     * @return 过期时间点
+     */
+    static long expireAt(Long pttl, long now) {
+        if (pttl == null || pttl < 0) {
+            return NEVER;
+        }
+        return now + pttl;
+    }
+
+    T getValue() {
+        return value;
+    }
+
+    long getExpireAt() {
+        return expireAt;
+    }
+}
@@ -1,5 +1,10 @@
 package com.freestyledash.ranger.provider.redis;
 
+import com.freestyledash.ranger.metrics.CacheMetrics;
+import com.freestyledash.ranger.metrics.MetricNames;
+import com.freestyledash.ranger.metrics.NoopCacheMetrics;
+import com.freestyledash.ranger.provider.BulkLoader;
+import com.freestyledash.ranger.provider.CacheLoader;
 import com.freestyledash.ranger.provider.CacheProvider;
 import com.freestyledash.ranger.util.serialization.SerializationUtil;
 import org.slf4j.Logger;
@@ -7,9 +12,16 @@ import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.util.SafeEncoder;
 
-import java.io.UnsupportedEncodingException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
  * 使用redis实现的cache提供者核心类
@@ -24,10 +36,23 @@ class CacheProviderCore implements CacheProvider {
     public CacheProviderCore(JedisPool pool, SerializationUtil util) {
         this.pool = pool;
         this.serializationUtil = util;
+        this.transport = new JedisPoolTransport(this);
     }
 
     private static Logger logger = LoggerFactory.getLogger(CacheProviderCore.class);
 
+    /**
+     * 默认的批量操作分段大小
+     */
+    static final int DEFAULT_BATCH_CHUNK_SIZE = 1000;
+
+    /**
+     * 批量读取时每个键的状态
+     */
+    private static final byte FOUND = 1;
+
+    private static final byte MISSED = 2;
+
     /**
      * redis连接池，在运行时依赖注入
      * <p>
@@ -45,15 +70,76 @@ class CacheProviderCore implements CacheProvider {
      */
     private JedisPool pool;
 
+    /**
+     * 读写键值使用的传输层，默认通过pool借出连接
+     */
+    private RedisTransport transport;
+
     /**
      * 序列化工具
      */
     private SerializationUtil serializationUtil;
 
     /**
-     * 在redis中无法存储byte，可以存储string类型的数据，在使用缓存相关方法前，需要确定使用什么字符串编码的方式,默认使用iso8859-1
+     * 是否兼容旧版本使用iso8859-1字符串写入的数据，默认开启
+     * 所有旧数据过期或被重新写入后可以关闭，省去读取时的格式检查
+     */
+    private boolean legacyCompatible = true;
+
+    /**
+     * 写入前调整过期时间的策略，默认不调整
+     */
+    private TtlPolicy ttlPolicy = TtlPolicy.NONE;
+
+    /**
+     * 指标收集，默认不收集
+     */
+    private CacheMetrics metrics = NoopCacheMetrics.INSTANCE;
+
+    /**
+     * 合并同一个键的并发加载
+     */
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * 跨jvm的按键租约锁，未开启时为null，只在本jvm内合并加载
+     */
+    private RedisLeaseLock leaseLock;
+
+    /**
+     * 等待其他jvm完成加载的最长时间，单位毫秒，超时后本jvm自行加载
+     */
+    private long leaseWaitMillis;
+
+    /**
+     * 提前刷新，未开启时为null
+     */
+    private RefreshAhead refreshAhead;
+
+    /**
+     * 提前刷新完成后写入缓存使用的provider，开启jvm内缓存时为外层的provider，以便其他jvm丢弃旧的对象
+     */
+    private CacheProvider refreshWriter = this;
+
+    /**
+     * loader返回null时写入空缓存标记的过期时间，单位是秒，小于1表示不缓存空值
+     */
+    private int negativeTtl;
+
+    /**
+     * 热点键检测，未开启时为null
+     */
+    private HotKeyDetector hotKeyDetector;
+
+    /**
+     * 批量操作每段包含的键数量，每段使用一个连接和一个pipeline，避免超大pipeline占用一个连接过久、缓冲全部回复
+     */
+    private int batchChunkSize = DEFAULT_BATCH_CHUNK_SIZE;
+
+    /**
+     * 并行执行批量操作各段的线程池，为null时各段在调用线程中顺序执行
      */
-    private static final String CHARACTERENCODING = "iso8859-1";
+    private ExecutorService batchExecutor;
 
     /**
      * 从缓存容器中获得单个缓存对象
@@ -64,59 +150,333 @@ class CacheProviderCore implements CacheProvider {
      */
     @Override
     public <T> T getCache(String key, Class<T> clazz) {
-        Jedis resource = pool.getResource();
-        String s = resource.get(key);
-        if (s.isEmpty()) {
-            logger.info("查询缓存{},未命中", key);
-            return null;
+        long start = System.nanoTime();
+        byte[] bytes = read(key);
+        T result = bytes == null ? null : deserialize(key, bytes, clazz);
+        metrics.record(MetricNames.GET_LATENCY, key, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * 读取序列化后的值，并记录命中情况
+     *
+     * @param key 缓存的键
+     * @return 序列化后的值，未命中返回null
+     */
+    private byte[] read(String key) {
+        boolean hot = false;
+        long now = 0;
+        if (hotKeyDetector != null) {
+            now = System.currentTimeMillis();
+            hot = hotKeyDetector.record(key, now);
+            byte[] pinned = hot ? hotKeyDetector.getPinned(key, now) : null;
+            if (pinned != null) {
+                metrics.increment(MetricNames.HIT, key, 1);
+                metrics.increment(MetricNames.HOT_KEY_HIT, key, 1);
+                return pinned;
+            }
         }
-        byte[] bytes = null;
-        try {
-            bytes = s.getBytes(CHARACTERENCODING);
-        } catch (UnsupportedEncodingException e) {
-            logger.error(e.getMessage());
-            return null;
+        //读取期间本jvm修改了该键时不保存读到的旧值
+        long stamp = hot ? hotKeyDetector.stamp(key) : 0;
+        byte[] bytes = transport.get(Collections.singletonList(SafeEncoder.encode(key))).get(0);
+        metrics.increment(bytes == null ? MetricNames.MISS : MetricNames.HIT, key, 1);
+        if (hot && bytes != null) {
+            hotKeyDetector.pin(key, bytes, now, stamp);
+        }
+        return bytes;
+    }
+
+    /**
+     * 本jvm修改了键，删除热点键的本地副本，在修改完成后调用
+     */
+    void unpin(String key) {
+        if (hotKeyDetector != null) {
+            hotKeyDetector.unpin(key);
+        }
+    }
+
+    private void unpin(List<String> keys) {
+        if (hotKeyDetector != null) {
+            for (String key : keys) {
+                hotKeyDetector.unpin(key);
+            }
         }
-        logger.info("查询缓存{},命中", key);
-        resource.close();
-        return serializationUtil.deserialize(bytes, clazz);
     }
 
     /**
      * 从缓存容器中批量获得缓存对象,对象类型只能是同一种
-     * 使用pipeline
+     * 使用pipeline，键的数量超过batchChunkSize时切分为多段，设置了batchExecutor时各段使用不同的连接并行执行
      *
      * @param keys  缓存的键
      * @param clazz 缓存对象的类型
-     * @return 被缓存的对象
+     * @return 被缓存的对象，顺序与keys一致，未命中的位置为null
      */
     @Override
-    public <T> List<T> getCache(List<String> keys, Class<T> clazz) {
+    public <T> List<T> getCache(List<String> keys, final Class<T> clazz) {
         if (keys.isEmpty()) {
             return new ArrayList<>();
         }
-        List returnList = new ArrayList<T>(20);
-        Jedis resource = pool.getResource();
-        Pipeline pipelined = resource.pipelined();
-        Iterator<String> iterator = keys.iterator();
-        while (iterator.hasNext()) {
-            String next = iterator.next();
-            pipelined.get(next);
-        }
-        List<Object> objects = pipelined.syncAndReturnAll();
-        Iterator<Object> returnObjects = objects.iterator();
-        while (returnObjects.hasNext()) {
-            Object next = returnObjects.next();
+        long start = System.nanoTime();
+        List<T> returnList;
+        if (keys.size() <= batchChunkSize) {
+            returnList = getChunk(keys, clazz);
+        } else {
+            final List<T> values = new ArrayList<>(Collections.<T>nCopies(keys.size(), null));
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int from = 0; from < keys.size(); from += batchChunkSize) {
+                final int offset = from;
+                final List<String> chunk = keys.subList(from, Math.min(keys.size(), from + batchChunkSize));
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        List<T> chunkValues = getChunk(chunk, clazz);
+                        for (int i = 0; i < chunkValues.size(); i++) {
+                            values.set(offset + i, chunkValues.get(i));
+                        }
+                        return null;
+                    }
+                });
+            }
+            BatchTasks.runAll(batchExecutor, tasks);
+            returnList = values;
+        }
+        metrics.record(MetricNames.MULTI_GET_LATENCY, keys.get(0), System.nanoTime() - start);
+        return returnList;
+    }
+
+    /**
+     * 分段批量获得缓存对象，每段完成后立即回调，不需要等待全部分段完成
+     *
+     * @param keys     缓存的键
+     * @param clazz    缓存对象的类型
+     * @param consumer 接收键和被缓存的对象，未命中时对象为null
+     */
+    @Override
+    public <T> void getCache(List<String> keys, final Class<T> clazz, BiConsumer<String, T> consumer) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        final List<List<String>> chunks = BatchTasks.partition(keys, batchChunkSize);
+        if (batchExecutor == null || chunks.size() == 1) {
+            for (List<String> chunk : chunks) {
+                accept(chunk, getChunk(chunk, clazz), consumer);
+            }
+        } else {
+            CompletionService<Integer> completionService = new ExecutorCompletionService<>(batchExecutor);
+            final List<List<T>> results = new ArrayList<>(Collections.<List<T>>nCopies(chunks.size(), null));
+            List<Future<Integer>> futures = new ArrayList<>(chunks.size());
+            for (int i = 0; i < chunks.size(); i++) {
+                final int index = i;
+                futures.add(completionService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        results.set(index, getChunk(chunks.get(index), clazz));
+                        return index;
+                    }
+                }));
+            }
             try {
-                returnList.add(serializationUtil.deserialize(((String) next).getBytes(CHARACTERENCODING), clazz));
-            } catch (UnsupportedEncodingException e) {
-                logger.error(e.getMessage());
-                return new ArrayList<>();
+                for (int i = 0; i < chunks.size(); i++) {
+                    int index = completionService.take().get();
+                    accept(chunks.get(index), results.get(index), consumer);
+                    results.set(index, null);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("等待批量读取结果被中断", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+            } finally {
+                for (Future<Integer> future : futures) {
+                    future.cancel(false);
+                }
             }
         }
+        metrics.record(MetricNames.MULTI_GET_LATENCY, keys.get(0), System.nanoTime() - start);
+    }
+
+    private static <T> void accept(List<String> keys, List<T> values, BiConsumer<String, T> consumer) {
+        for (int i = 0; i < keys.size(); i++) {
+            consumer.accept(keys.get(i), values.get(i));
+        }
+    }
+
+    /**
+     * 在一个连接上通过pipeline读取一段键
+     */
+    private <T> List<T> getChunk(List<String> keys, Class<T> clazz) {
+        List<T> returnList = new ArrayList<>(keys.size());
+        List<byte[]> objects = readChunk(keys);
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] next = objects.get(i);
+            returnList.add(next == null ? null : deserialize(keys.get(i), next, clazz));
+        }
         return returnList;
     }
 
+    /**
+     * 在一个连接上通过pipeline读取一段键的原始数据，并记录命中和未命中次数
+     */
+    private List<byte[]> readChunk(List<String> keys) {
+        List<byte[]> objects = transport.get(encode(keys));
+        for (int i = 0; i < keys.size(); i++) {
+            metrics.increment(objects.get(i) == null ? MetricNames.MISS : MetricNames.HIT, keys.get(i), 1);
+        }
+        return objects;
+    }
+
+    /**
+     * 批量获得缓存对象，未命中的键只调用一次loader加载，加载结果通过pipeline写入
+     * 无法反序列化的键当作未命中重新加载；值为空缓存标记的键当作命中，不在返回结果中，也不会再次加载
+     *
+     * @param keys   缓存的键，重复的键只处理一次
+     * @param clazz  缓存对象的类型
+     * @param loader 一次加载全部未命中键的逻辑
+     * @param ttl    加载结果的过期时间 -1 永不过期 ，单位是秒
+     * @return 键和缓存或加载的对象，顺序与keys一致
+     */
+    @Override
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> clazz, BulkLoader<T> loader, int ttl) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        Map<String, T> found = new HashMap<>();
+        List<String> missed = readAll(distinct, clazz, found);
+        if (!missed.isEmpty()) {
+            Map<String, T> loaded = loadAll(missed, loader, metrics);
+            writeBack(missed, loaded, ttl);
+            found.putAll(loaded);
+        }
+        Map<String, T> returnMap = new LinkedHashMap<>();
+        for (String key : distinct) {
+            T value = found.get(key);
+            if (value != null) {
+                returnMap.put(key, value);
+            }
+        }
+        return returnMap;
+    }
+
+    /**
+     * 分段读取并反序列化，命中的对象放入found
+     *
+     * @param keys  不重复的键
+     * @param clazz 缓存对象的类型
+     * @param found 接收命中的对象
+     * @return 未命中以及无法反序列化的键
+     */
+    <T> List<String> readAll(final List<String> keys, final Class<T> clazz, Map<String, T> found) {
+        List<String> missed = new ArrayList<>();
+        if (keys.isEmpty()) {
+            return missed;
+        }
+        long start = System.nanoTime();
+        final Object[] values = new Object[keys.size()];
+        final byte[] states = new byte[keys.size()];
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < keys.size(); from += batchChunkSize) {
+            final int offset = from;
+            final List<String> chunk = keys.subList(from, Math.min(keys.size(), from + batchChunkSize));
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    List<byte[]> objects = readChunk(chunk);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        byte[] bytes = objects.get(i);
+                        if (bytes == null) {
+                            states[offset + i] = MISSED;
+                            continue;
+                        }
+                        try {
+                            values[offset + i] = deserialize(chunk.get(i), bytes, clazz);
+                            states[offset + i] = FOUND;
+                        } catch (RuntimeException e) {
+                            logger.warn("反序列化" + chunk.get(i) + "失败,重新加载", e);
+                            states[offset + i] = MISSED;
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        BatchTasks.runAll(batchExecutor, tasks);
+        for (int i = 0; i < keys.size(); i++) {
+            if (states[i] == MISSED) {
+                missed.add(keys.get(i));
+            } else if (values[i] != null) {
+                found.put(keys.get(i), clazz.cast(values[i]));
+            }
+        }
+        metrics.record(MetricNames.MULTI_GET_LATENCY, keys.get(0), System.nanoTime() - start);
+        return missed;
+    }
+
+    /**
+     * 调用一次loader加载全部未命中的键并记录耗时，只保留请求的键中值不为null的结果
+     */
+    static <T> Map<String, T> loadAll(List<String> keys, BulkLoader<T> loader, CacheMetrics metrics) {
+        long start = System.nanoTime();
+        Map<String, T> loaded = loader.load(Collections.unmodifiableList(keys));
+        metrics.increment(MetricNames.LOAD, keys.get(0), keys.size());
+        metrics.record(MetricNames.LOAD_LATENCY, keys.get(0), System.nanoTime() - start);
+        Map<String, T> returnMap = new HashMap<>();
+        if (loaded != null) {
+            for (String key : keys) {
+                T value = loaded.get(key);
+                if (value != null) {
+                    returnMap.put(key, value);
+                }
+            }
+        }
+        return returnMap;
+    }
+
+    /**
+     * 写入批量加载的结果，开启了空值缓存时数据源中不存在的键写入空缓存标记
+     * 每段通过一次传输层调用写入
+     *
+     * @param keys   未命中的键
+     * @param loaded 加载结果
+     * @param ttl    加载结果的过期时间，单位是秒
+     */
+    <T> void writeBack(List<String> keys, final Map<String, T> loaded, final int ttl) {
+        if (negativeTtl <= 0) {
+            keys = new ArrayList<>(loaded.keySet());
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        final Map<String, byte[]> serialized = new HashMap<>();
+        for (Map.Entry<String, T> entry : loaded.entrySet()) {
+            serialized.put(entry.getKey(), serialize(entry.getKey(), entry.getValue()));
+        }
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (final List<String> chunk : BatchTasks.partition(keys, batchChunkSize)) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    List<byte[]> values = new ArrayList<>(chunk.size());
+                    int[] expires = new int[chunk.size()];
+                    for (int i = 0; i < chunk.size(); i++) {
+                        byte[] value = serialized.get(chunk.get(i));
+                        //未开启空值缓存时chunk中只有加载到的键
+                        values.add(value != null ? value : NegativeCache.SENTINEL);
+                        expires[i] = value != null ? ttlPolicy.apply(ttl) : negativeTtl;
+                    }
+                    try {
+                        transport.set(encode(chunk), values, expires);
+                    } finally {
+                        unpin(chunk);
+                    }
+                    return null;
+                }
+            });
+        }
+        BatchTasks.runAll(batchExecutor, tasks);
+        metrics.record(MetricNames.MULTI_SET_LATENCY, keys.get(0), System.nanoTime() - start);
+    }
+
     /**
      * 设置缓存的对象
      *
@@ -127,59 +487,122 @@ class CacheProviderCore implements CacheProvider {
      */
     @Override
     public boolean setCache(String key, Object toStore, int ttl) {
-        byte[] serializationDate = serializationUtil.serialize(toStore);
-        String s = null;
+        long start = System.nanoTime();
+        byte[] serializationDate = serialize(key, toStore);
+        byte[] rawKey = SafeEncoder.encode(key);
         try {
-            s = new String(serializationDate, CHARACTERENCODING);
-        } catch (UnsupportedEncodingException e) {
-            logger.error(e.getMessage());
-            return false;
-        }
-        Jedis resource = pool.getResource();
-        resource.set(key, s);
-        if (ttl != -1) {
-            resource.expire(key, ttl);
+            transport.set(Collections.singletonList(rawKey), Collections.singletonList(serializationDate),
+                    new int[]{ttlPolicy.apply(ttl)});
+        } finally {
+            unpin(key);
         }
-        logger.info("设置缓存{}", key);
-        resource.close();
+        metrics.record(MetricNames.SET_LATENCY, key, System.nanoTime() - start);
         return true;
     }
 
     /**
      * 批量设置缓存的对象
-     * 使用pipeline
+     * 使用pipeline，每个键只需要一条SETEX命令，数量超过batchChunkSize时切分为多段
+     * 各段分别写入，不是原子的：有段失败时删除已经写入的段再返回false，写入redis出错时删除全部的键再抛出异常，
+     * 之后读取这些键都不会命中，不会读到只写入了一部分的结果
      *
      * @param params
      * @param ttl
      * @return 是否设置成功
      */
     @Override
-    public boolean setCache(Map<String, Object> params, int ttl) {
+    public boolean setCache(Map<String, Object> params, final int ttl) {
         if (params.size() < 1) {
             return true;
         }
-        Jedis resource = pool.getResource();
-        Pipeline pipelined = resource.pipelined();
-        Set<Map.Entry<String, Object>> entries = params.entrySet();
-        Iterator<Map.Entry<String, Object>> iterator = entries.iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<String, Object> next = iterator.next();
-            String key = next.getKey();
-            Object value = next.getValue();
-            String s = null;
+        long start = System.nanoTime();
+        List<Map.Entry<String, Object>> entries = new ArrayList<>(params.entrySet());
+        boolean result;
+        if (entries.size() <= batchChunkSize) {
+            result = setChunk(entries, ttl);
+        } else {
+            final List<List<Map.Entry<String, Object>>> chunks = BatchTasks.partition(entries, batchChunkSize);
+            final boolean[] results = new boolean[chunks.size()];
+            List<Callable<Void>> tasks = new ArrayList<>(chunks.size());
+            for (int i = 0; i < chunks.size(); i++) {
+                final int index = i;
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        results[index] = setChunk(chunks.get(index), ttl);
+                        return null;
+                    }
+                });
+            }
+            try {
+                BatchTasks.runAll(batchExecutor, tasks);
+            } catch (RuntimeException e) {
+                //无法确定出错的段写入了哪些键
+                Arrays.fill(results, true);
+                deleteWritten(chunks, results);
+                throw e;
+            }
+            result = true;
+            for (boolean chunkResult : results) {
+                result &= chunkResult;
+            }
+            if (!result) {
+                deleteWritten(chunks, results);
+            }
+        }
+        metrics.record(MetricNames.MULTI_SET_LATENCY, entries.get(0).getKey(), System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * 删除批量写入中已经写入的段，删除失败时只记录日志
+     *
+     * @param chunks  切分后的各段
+     * @param written 各段是否已经写入
+     */
+    private void deleteWritten(List<List<Map.Entry<String, Object>>> chunks, boolean[] written) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            if (written[i]) {
+                for (Map.Entry<String, Object> entry : chunks.get(i)) {
+                    keys.add(entry.getKey());
+                }
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            deleteCache(keys);
+        } catch (RuntimeException e) {
+            logger.error("删除批量写入中已经写入的" + keys.size() + "个键失败", e);
+        }
+    }
+
+    /**
+     * 在一个连接上通过pipeline写入一段对象，有对象序列化失败时整段都不写入
+     */
+    private boolean setChunk(List<Map.Entry<String, Object>> entries, int ttl) {
+        List<byte[]> values = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Object> entry : entries) {
             try {
-                s = new String(serializationUtil.serialize(value), CHARACTERENCODING);
+                values.add(serialize(entry.getKey(), entry.getValue()));
             } catch (Exception e) {
                 logger.error(e.getMessage());
                 return false;
             }
-            pipelined.set(key, s);
-            if (ttl != -1) {
-                pipelined.expire(key, ttl);
-            }
         }
-        pipelined.sync();
-        resource.close();
+        List<String> keys = new ArrayList<>(entries.size());
+        int[] expires = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            keys.add(entries.get(i).getKey());
+            expires[i] = ttlPolicy.apply(ttl);
+        }
+        try {
+            transport.set(encode(keys), values, expires);
+        } finally {
+            unpin(keys);
+        }
         return true;
     }
 
@@ -193,15 +616,23 @@ class CacheProviderCore implements CacheProvider {
         if (keys.isEmpty()) {
             return;
         }
-        Jedis resource = pool.getResource();
-        Pipeline pipelined = resource.pipelined();
-        Iterator<String> iterator = keys.iterator();
-        while (iterator.hasNext()) {
-            String next = iterator.next();
-            pipelined.del(next);
+        long start = System.nanoTime();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (final List<String> chunk : BatchTasks.partition(keys, batchChunkSize)) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    try {
+                        transport.delete(encode(chunk));
+                    } finally {
+                        unpin(chunk);
+                    }
+                    return null;
+                }
+            });
         }
-        pipelined.sync();
-        resource.close();
+        BatchTasks.runAll(batchExecutor, tasks);
+        metrics.record(MetricNames.MULTI_DELETE_LATENCY, keys.get(0), System.nanoTime() - start);
     }
 
     /**
@@ -211,12 +642,476 @@ class CacheProviderCore implements CacheProvider {
      */
     @Override
     public void deleteCache(String key) {
-        logger.info("删除缓存{}", key);
+        long start = System.nanoTime();
+        try {
+            transport.delete(Collections.singletonList(SafeEncoder.encode(key)));
+        } finally {
+            unpin(key);
+        }
+        metrics.record(MetricNames.DELETE_LATENCY, key, System.nanoTime() - start);
+    }
+
+    /**
+     * 获得缓存对象，未命中时使用loader加载并写入缓存
+     * 同一个键的并发未命中共享一次加载，不同键之间互不阻塞
+     * 开启租约锁时整个集群同一时刻只有一个jvm加载同一个键，其余jvm等待其写入缓存
+     *
+     * @param key    缓存的键
+     * @param clazz  缓存对象的类型
+     * @param loader 未命中时的加载逻辑
+     * @param ttl    加载结果的过期时间 -1 永不过期 ，单位是秒
+     * @return 缓存或加载的对象
+     */
+    @Override
+    public <T> T getOrLoad(final String key, final Class<T> clazz, final CacheLoader<T> loader, final int ttl) {
+        if (refreshAhead != null) {
+            CacheEntry<T> entry = getEntry(key, clazz);
+            if (entry != null) {
+                refreshIfNeeded(key, entry, loader, ttl);
+                //刷新完成之前继续返回旧的对象
+                return entry.getValue();
+            }
+        } else {
+            byte[] cached = read(key);
+            if (cached != null) {
+                //值为空缓存标记时返回null，不再调用loader
+                return deserialize(key, cached, clazz);
+            }
+        }
+        //同一个键以不同类型读取时不能共享结果
+        return singleFlight.execute(key + '@' + clazz.getName(), new Callable<T>() {
+            @Override
+            public T call() {
+                //等待期间可能已经有其他线程完成了加载
+                byte[] again = read(key);
+                if (again != null) {
+                    return deserialize(key, again, clazz);
+                }
+                if (leaseLock != null) {
+                    return loadWithLease(key, clazz, loader, ttl);
+                }
+                T loaded = load(key, loader);
+                store(key, loaded, ttl, CacheProviderCore.this);
+                return loaded;
+            }
+        });
+    }
+
+    /**
+     * 持有租约时加载，加载期间在后台续约；其他jvm持有租约时等待，对方写入缓存后直接读取，等待超时后不再等待，自行加载
+     */
+    private <T> T loadWithLease(String key, Class<T> clazz, CacheLoader<T> loader, int ttl) {
+        final byte[] rawKey = SafeEncoder.encode(key);
+        RedisLeaseLock.Lease lease = leaseLock.acquire(key, leaseWaitMillis, new BooleanSupplier() {
+            @Override
+            public boolean getAsBoolean() {
+                return transport.exists(rawKey);
+            }
+        });
+        if (lease != null) {
+            //加载时间超过租约时长时其他jvm不会进入
+            lease.keepAlive();
+        }
+        try {
+            //获取租约之前其他jvm可能已经完成了加载
+            byte[] again = read(key);
+            if (again != null) {
+                return deserialize(key, again, clazz);
+            }
+            if (lease == null) {
+                logger.warn("等待其他节点加载" + key + "超时,直接加载");
+            }
+            T loaded = load(key, loader);
+            store(key, loaded, ttl, CacheProviderCore.this);
+            return loaded;
+        } finally {
+            if (lease != null) {
+                lease.release();
+            }
+        }
+    }
+
+    /**
+     * 使用SCAN遍历键，每页的值通过一个pipeline读取后交给consumer，空缓存标记和遍历期间过期的键会被跳过
+     * 每次只在内存中保留一页，对象类型只能是同一种，遍历期间被修改的键可能被遍历多次或者遗漏
+     * 遍历直接读取redis，不经过本地缓存和全局锁
+     *
+     * @param pattern  键的匹配规则，例如"user:*"
+     * @param pageSize 每页的键数量，作为SCAN的COUNT参数
+     * @param clazz    缓存对象的类型
+     * @param consumer 接收键和被缓存的对象，在调用线程中执行
+     * @param <T>      缓存的类型
+     */
+    public <T> void scan(String pattern, int pageSize, final Class<T> clazz, final BiConsumer<String, T> consumer) {
+        scanKeys(pattern, pageSize, new Consumer<List<String>>() {
+            @Override
+            public void accept(List<String> keys) {
+                List<T> values = getChunk(keys, clazz);
+                for (int i = 0; i < keys.size(); i++) {
+                    if (values.get(i) != null) {
+                        consumer.accept(keys.get(i), values.get(i));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 使用SCAN遍历键，每页交给consumer，不读取值
+     *
+     * @param pattern  键的匹配规则
+     * @param pageSize 每页的键数量，作为SCAN的COUNT参数
+     * @param consumer 接收每页的键，空页不会回调
+     */
+    void scanKeys(String pattern, int pageSize, Consumer<List<String>> consumer) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize必须大于0");
+        }
+        ScanParams params = new ScanParams().match(SafeEncoder.encode(pattern)).count(pageSize);
+        byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+        do {
+            ScanResult<byte[]> result;
+            Jedis resource = borrow();
+            try {
+                result = resource.scan(cursor, params);
+            } finally {
+                resource.close();
+            }
+            cursor = result.getCursorAsBytes();
+            if (!result.getResult().isEmpty()) {
+                List<String> keys = new ArrayList<>(result.getResult().size());
+                for (byte[] rawKey : result.getResult()) {
+                    keys.add(SafeEncoder.encode(rawKey));
+                }
+                consumer.accept(keys);
+            }
+        } while (!Arrays.equals(cursor, ScanParams.SCAN_POINTER_START_BINARY));
+    }
+
+    /**
+     * 写入加载结果，loader返回null且开启了空值缓存时写入空缓存标记
+     *
+     * @param key    缓存的键
+     * @param loaded 加载结果
+     * @param ttl    加载结果的过期时间，单位是秒
+     * @param writer 写入使用的provider
+     */
+    private void store(String key, Object loaded, int ttl, CacheProvider writer) {
+        if (loaded != null) {
+            writer.setCache(key, loaded, ttl);
+        } else if (negativeTtl > 0) {
+            transport.set(Collections.singletonList(SafeEncoder.encode(key)),
+                    Collections.singletonList(NegativeCache.SENTINEL), new int[]{negativeTtl});
+        }
+    }
+
+    /**
+     * 未开启提前刷新时不做任何事；对象即将过期时提交后台刷新任务
+     *
+     * @param key    缓存的键
+     * @param entry  从redis读取的对象
+     * @param loader 加载逻辑
+     * @param ttl    加载结果的过期时间，单位是秒
+     */
+    <T> void refreshIfNeeded(final String key, CacheEntry<T> entry, final CacheLoader<T> loader, final int ttl) {
+        //空缓存标记使用单独的过期时间，到期后自然重新加载
+        if (refreshAhead == null || entry.getValue() == null
+                || !refreshAhead.shouldRefresh(key, entry, ttl, System.currentTimeMillis())) {
+            return;
+        }
+        refreshAhead.schedule(key, new Runnable() {
+            @Override
+            public void run() {
+                if (leaseLock == null) {
+                    store(key, load(key, loader), ttl, refreshWriter);
+                    return;
+                }
+                //其他jvm正在刷新时放弃，旧的对象还未过期
+                RedisLeaseLock.Lease lease = leaseLock.tryAcquire(key);
+                if (lease == null) {
+                    return;
+                }
+                lease.keepAlive();
+                try {
+                    store(key, load(key, loader), ttl, refreshWriter);
+                } finally {
+                    lease.release();
+                }
+            }
+        }, metrics);
+    }
+
+    /**
+     * 调用loader加载对象并记录耗时
+     */
+    <T> T load(String key, CacheLoader<T> loader) {
+        long start = System.nanoTime();
+        T loaded = loader.load(key);
+        long elapsed = System.nanoTime() - start;
+        metrics.increment(MetricNames.LOAD, key, 1);
+        metrics.record(MetricNames.LOAD_LATENCY, key, elapsed);
+        if (refreshAhead != null) {
+            refreshAhead.recordLoad(key, elapsed);
+        }
+        return loaded;
+    }
+
+    /**
+     * 获得单个缓存对象以及它在redis中的过期时间
+     * 通过pipeline同时发送GET和PTTL，只需要一次网络往返
+     *
+     * @param key   缓存的键
+     * @param clazz 缓存对象的类型
+     * @return 缓存对象，未命中返回null
+     */
+    <T> CacheEntry<T> getEntry(String key, Class<T> clazz) {
+        return getEntries(Collections.singletonList(key), clazz).get(0);
+    }
+
+    /**
+     * 批量获得缓存对象以及它们在redis中的过期时间
+     *
+     * @param keys  缓存的键
+     * @param clazz 缓存对象的类型
+     * @return 缓存对象，顺序与keys一致，未命中的位置为null
+     */
+    <T> List<CacheEntry<T>> getEntries(List<String> keys, Class<T> clazz) {
+        List<CacheEntry<byte[]>> rawEntries = getRawEntries(keys);
+        List<CacheEntry<T>> returnList = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            CacheEntry<byte[]> raw = rawEntries.get(i);
+            returnList.add(raw == null ? null
+                    : new CacheEntry<>(deserialize(keys.get(i), raw.getValue(), clazz), raw.getExpireAt()));
+        }
+        return returnList;
+    }
+
+    /**
+     * 批量获得未反序列化的缓存数据以及它们在redis中的过期时间
+     *
+     * @param keys 缓存的键
+     * @return redis中保存的数据，顺序与keys一致，未命中的位置为null
+     */
+    List<CacheEntry<byte[]>> getRawEntries(List<String> keys) {
+        List<CacheEntry<byte[]>> returnList = new ArrayList<>(keys.size());
+        if (keys.isEmpty()) {
+            return returnList;
+        }
+        long[] pttls = new long[keys.size()];
+        List<byte[]> values = transport.getWithTtl(encode(keys), pttls);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            byte[] bytes = values.get(i);
+            if (bytes == null) {
+                metrics.increment(MetricNames.MISS, key, 1);
+                returnList.add(null);
+            } else {
+                metrics.increment(MetricNames.HIT, key, 1);
+                returnList.add(new CacheEntry<>(bytes, CacheEntry.expireAt(pttls[i], now)));
+            }
+        }
+        return returnList;
+    }
+
+    /**
+     * 将写入命令加入pipeline，过期时间经过ttlPolicy调整后通过SETEX与值一起原子写入
+     * 过期时间为0或-1以外的负数时与旧版本的expire一样直接删除该键
+     *
+     * @param pipeline 当前连接的pipeline
+     * @param key      键
+     * @param value    序列化后的值
+     * @param ttl      过期时间 -1 永不过期 单位是秒
+     * @return 写入结果
+     */
+    Response<?> set(Pipeline pipeline, byte[] key, byte[] value, int ttl) {
+        int expire = ttlPolicy.apply(ttl);
+        if (expire == -1) {
+            return pipeline.set(key, value);
+        }
+        if (expire < 1) {
+            return pipeline.del(key);
+        }
+        return pipeline.setex(key, expire, value);
+    }
+
+    /**
+     * 在同一个连接上通过一个pipeline按顺序执行一批操作
+     *
+     * @param operations 需要执行的操作
+     */
+    void pipelined(List<? extends PipelineOperation> operations) {
+        if (operations.isEmpty()) {
+            return;
+        }
+        Jedis resource = borrow();
+        try {
+            Pipeline pipelined = resource.pipelined();
+            for (PipelineOperation operation : operations) {
+                operation.apply(pipelined);
+            }
+            pipelined.sync();
+        } finally {
+            resource.close();
+        }
+    }
+
+    private static List<byte[]> encode(List<String> keys) {
+        List<byte[]> rawKeys = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            rawKeys.add(SafeEncoder.encode(key));
+        }
+        return rawKeys;
+    }
+
+    /**
+     * 从连接池获取连接，并记录等待时间
+     *
+     * @return 连接，使用之后需要close
+     */
+    Jedis borrow() {
+        long start = System.nanoTime();
         Jedis resource = pool.getResource();
-        resource.del(key);
-        resource.close();
+        metrics.record(MetricNames.POOL_BORROW_WAIT, null, System.nanoTime() - start);
+        return resource;
+    }
+
+    /**
+     * 序列化需要写入redis的对象，并记录耗时和大小
+     *
+     * @param key   缓存的键
+     * @param value 需要存储的对象
+     * @return 序列化结果
+     */
+    byte[] serialize(String key, Object value) {
+        long start = System.nanoTime();
+        byte[] bytes = serializationUtil.serialize(value);
+        metrics.record(MetricNames.SERIALIZE_TIME, key, System.nanoTime() - start);
+        metrics.record(MetricNames.WRITE_SIZE, key, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * 反序列化从redis中读取的数据，并记录耗时和大小
+     * 开启兼容模式时，按照新格式反序列化失败并且数据符合旧格式时，再按照旧格式还原
+     * 新格式优先，新写入的数据即使恰好符合旧格式的特征（例如包含拉丁字母的utf-8文本）也不会被误还原
+     *
+     * @param key   缓存的键
+     * @param bytes redis中读取的数据
+     * @param clazz 目标类型
+     * @return 反序列化后的对象
+     */
+    <T> T deserialize(String key, byte[] bytes, Class<T> clazz) {
+        if (NegativeCache.isSentinel(bytes)) {
+            metrics.increment(MetricNames.NEGATIVE_HIT, key, 1);
+            return null;
+        }
+        long start = System.nanoTime();
+        metrics.record(MetricNames.READ_SIZE, key, bytes.length);
+        try {
+            try {
+                return serializationUtil.deserialize(bytes, clazz);
+            } catch (RuntimeException e) {
+                if (!legacyCompatible || !LegacyEncoding.isLegacy(bytes)) {
+                    throw e;
+                }
+                logger.debug("按照新格式反序列化失败,使用旧格式", e);
+                return serializationUtil.deserialize(LegacyEncoding.decode(bytes), clazz);
+            }
+        } finally {
+            metrics.record(MetricNames.DESERIALIZE_TIME, key, System.nanoTime() - start);
+        }
+    }
+
+    public int getNegativeTtl() {
+        return negativeTtl;
+    }
+
+    public void setNegativeTtl(int negativeTtl) {
+        this.negativeTtl = negativeTtl;
+    }
+
+    public int getBatchChunkSize() {
+        return batchChunkSize;
+    }
+
+    public void setBatchChunkSize(int batchChunkSize) {
+        if (batchChunkSize < 1) {
+            throw new IllegalArgumentException("batchChunkSize必须大于0");
+        }
+        this.batchChunkSize = batchChunkSize;
+    }
+
+    /**
+     * 设置并行执行批量操作各段的线程池，由调用方负责关闭
+     * 同时执行的段数还受连接池大小限制
+     *
+     * @param batchExecutor 线程池，为null时顺序执行
+     */
+    public void setBatchExecutor(ExecutorService batchExecutor) {
+        this.batchExecutor = batchExecutor;
+    }
+
+    /**
+     * @return 热点键检测，未开启时为null
+     */
+    public HotKeyDetector getHotKeyDetector() {
+        return hotKeyDetector;
+    }
+
+    void setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+    }
+
+    /**
+     * @return 跨jvm的按键租约锁，未开启时为null
+     */
+    public RedisLeaseLock getLeaseLock() {
+        return leaseLock;
+    }
+
+    /**
+     * 开启跨jvm的按键租约锁，getOrLoad未命中时整个集群同一个键只有一个jvm调用loader
+     *
+     * @param leaseLock       租约锁，为null时关闭
+     * @param leaseWaitMillis 等待其他jvm完成加载的最长时间，单位毫秒
+     */
+    public void setLeaseLock(RedisLeaseLock leaseLock, long leaseWaitMillis) {
+        this.leaseLock = leaseLock;
+        this.leaseWaitMillis = leaseWaitMillis;
+    }
+
+    void setRefreshAhead(RefreshAhead refreshAhead) {
+        this.refreshAhead = refreshAhead;
+    }
+
+    void setRefreshWriter(CacheProvider refreshWriter) {
+        this.refreshWriter = refreshWriter;
+    }
+
+    public CacheMetrics getMetrics() {
+        return metrics;
     }
 
+    public void setMetrics(CacheMetrics metrics) {
+        this.metrics = metrics == null ? NoopCacheMetrics.INSTANCE : metrics;
+    }
+
+    public TtlPolicy getTtlPolicy() {
+        return ttlPolicy;
+    }
+
+    public void setTtlPolicy(TtlPolicy ttlPolicy) {
+        this.ttlPolicy = ttlPolicy == null ? TtlPolicy.NONE : ttlPolicy;
+    }
+
+    public boolean isLegacyCompatible() {
+        return legacyCompatible;
+    }
+
+    public void setLegacyCompatible(boolean legacyCompatible) {
+        this.legacyCompatible = legacyCompatible;
+    }
 
     public SerializationUtil getSerializationUtil() {
         return serializationUtil;
@@ -226,6 +1121,23 @@ class CacheProviderCore implements CacheProvider {
         this.serializationUtil = serializationUtil;
     }
 
+    /**
+     * @return 读写键值使用的传输层
+     */
+    public RedisTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * 替换读写键值使用的传输层，由调用方负责关闭
+     * 只有GET、SET、DEL等键值命令经过传输层，SCAN、脚本、订阅和hash存储仍然使用连接池
+     *
+     * @param transport 传输层，为null时恢复使用连接池
+     */
+    public void setTransport(RedisTransport transport) {
+        this.transport = transport == null ? new JedisPoolTransport(this) : transport;
+    }
+
     public JedisPool getPool() {
         return pool;
     }
@@ -1,27 +1,57 @@
 package com.freestyledash.ranger.provider.redis;
 
+import com.freestyledash.ranger.metrics.CacheMetrics;
+import com.freestyledash.ranger.metrics.MetricNames;
+import com.freestyledash.ranger.metrics.NoopCacheMetrics;
+import com.freestyledash.ranger.provider.AsyncCacheProvider;
 import com.freestyledash.ranger.provider.CacheProvider;
+import com.freestyledash.ranger.util.serialization.CompressingSerializationUtil;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
 import com.freestyledash.ranger.util.serialization.SerializationUtil;
 import redis.clients.jedis.JedisPool;
 
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.Deflater;
 
 /**
  * 根据策略创建RedisCache的工厂
  * 根据配置
- * 创建只有单个jvm访问数据库场景的CacheProvider
- * 创建存在jvm访问数据库场景的CacheProvider
+ * 创建不使用全局锁的CacheProvider(默认)
+ * 创建使用全局读写锁的CacheProvider
  *
  * @author zhangyanqi
  * @since 1.0 2017/12/22
  */
 public class CacheProviderFactory {
 
-    private final static String READMETHOD = "get";
+    /**
+     * 需要上写锁的方法，其余方法上读锁
+     */
+    private final static Set<String> WRITEMETHODS = new HashSet<>(Arrays.asList("setCache", "deleteCache"));
+
+    /**
+     * 会调用loader的方法，不使用全局锁，避免查询数据源期间阻塞全部写操作
+     */
+    private final static Set<String> LOCKFREEMETHODS = new HashSet<>(Arrays.asList("getOrLoad", "getAll"));
+
+    /**
+     * 加载快照之前等待订阅失效频道的最长时间，单位毫秒
+     */
+    private final static long SNAPSHOT_SUBSCRIBE_TIMEOUT = 3000;
 
     /**
      * 提供缓存服务和核心
@@ -34,72 +64,249 @@ public class CacheProviderFactory {
     private CacheProvider proxyProvider;
 
     /**
-     * 读写锁,用于防止出现缓存雪崩情况
-     * 默认使用ReentrantReadWriteLock
-     * 在单个jvm使用数据库的情况下，可以使用默认锁
-     * 当在集群情况下推荐使用一种可以协调多个jvm的锁
+     * 全局读写锁，可选
+     * 默认不使用全局锁，防止缓存击穿请使用{@link CacheProvider#getOrLoad}，它只在同一个键上合并并发加载
+     * 设置之后所有读操作共享读锁，写操作独占写锁，写操作较多时性能较差，仅为兼容旧的使用方式保留
+     * 集群情况下请使用{@link Builder#setLeaseLock}，它在redis中按键加锁，只协调同一个键的加载
      */
     private final ReadWriteLock lock;
 
+    /**
+     * jvm内缓存，未开启时为null
+     */
+    private final NearCacheProvider nearCacheProvider;
+
+    /**
+     * 堆外缓存，未开启时为null
+     */
+    private final OffHeapCacheProvider offHeapCacheProvider;
+
+    /**
+     * jvm内缓存的快照，未开启时为null
+     */
+    private final NearCacheSnapshot nearCacheSnapshot;
+
+    /**
+     * 按字段保存对象的hash存储，序列化工具不是protostuff时为null
+     */
+    private final RedisHashCache hashCache;
+
+    /**
+     * 带版本号的缓存
+     */
+    private final VersionedCache versionedCache;
+
+    /**
+     * 延迟写入，未开启时为null
+     */
+    private final WriteBehindCacheProvider writeBehindCacheProvider;
+
+    /**
+     * 布隆过滤器，未开启时为null
+     */
+    private final BloomFilterCacheProvider bloomFilterCacheProvider;
+
+    /**
+     * 时间预算、对冲读取和熔断，未开启时为null
+     */
+    private final ResilientCacheProvider resilientCacheProvider;
+
+    /**
+     * 压缩序列化结果的装饰器，未开启时为null
+     */
+    private final CompressingSerializationUtil compressingSerializationUtil;
+
+    /**
+     * 提前刷新，未开启时为null
+     */
+    private final RefreshAhead refreshAhead;
+
+    /**
+     * 并行执行批量操作各段的线程池，未开启时为null
+     */
+    private final ExecutorService batchExecutor;
+
+    /**
+     * 异步provider的配置，首次调用{@link #getAsyncProvider()}时才创建
+     */
+    private final Builder builder;
+
+    private BatchingAsyncCacheProvider asyncProvider;
+
     public CacheProviderFactory(JedisPool pool, SerializationUtil util, final ReadWriteLock lock) {
-        this.lock = lock;
+        this(new Builder().setPool(pool).setSerializationUtil(util).setLock(checkLock(lock)));
+    }
+
+    public CacheProviderFactory(JedisPool pool, SerializationUtil util) {
+        this(new Builder().setPool(pool).setSerializationUtil(util));
+    }
+
+    private CacheProviderFactory(Builder builder) {
+        this.builder = builder;
+        SerializationUtil util = builder.serializationUtil;
+        if (builder.compressionThreshold >= 0) {
+            compressingSerializationUtil = new CompressingSerializationUtil(util, builder.compressionThreshold,
+                    builder.compressionLevel, builder.metrics);
+            util = compressingSerializationUtil;
+        } else {
+            compressingSerializationUtil = null;
+        }
+        cacheProviderCore = new CacheProviderCore(builder.pool, util);
+        cacheProviderCore.setLegacyCompatible(builder.legacyCompatible);
+        cacheProviderCore.setTtlPolicy(builder.ttlPolicy);
+        cacheProviderCore.setMetrics(builder.metrics);
+        cacheProviderCore.setBatchChunkSize(builder.batchChunkSize);
+        cacheProviderCore.setTransport(builder.transport);
+        cacheProviderCore.setNegativeTtl(builder.negativeTtl);
+        if (builder.leaseMillis > 0) {
+            cacheProviderCore.setLeaseLock(new RedisLeaseLock(builder.pool, RedisLeaseLock.DEFAULT_PREFIX,
+                    builder.leaseMillis, builder.metrics), builder.leaseWaitMillis);
+        }
+        if (builder.hotKeyThreshold > 0) {
+            cacheProviderCore.setHotKeyDetector(new HotKeyDetector(builder.hotKeyThreshold,
+                    builder.hotKeyWindowMillis, builder.hotKeyPinMillis, builder.maxHotKeys));
+        }
+        if (builder.batchParallelism > 1) {
+            batchExecutor = Executors.newFixedThreadPool(builder.batchParallelism - 1, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ranger-batch-" + count.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            cacheProviderCore.setBatchExecutor(batchExecutor);
+        } else {
+            batchExecutor = null;
+        }
+        if (builder.serializationUtil instanceof ProtostuffSerializationUtil) {
+            hashCache = new RedisHashCache(cacheProviderCore, (ProtostuffSerializationUtil) builder.serializationUtil);
+        } else {
+            hashCache = null;
+        }
+        versionedCache = new VersionedCache(cacheProviderCore, builder.casRetryPolicy);
+        CacheProvider provider = cacheProviderCore;
+        if (builder.offHeapCapacity > 0) {
+            offHeapCacheProvider = new OffHeapCacheProvider(cacheProviderCore, builder.offHeapCapacity,
+                    builder.offHeapPageSize, builder.offHeapTtl);
+            provider = offHeapCacheProvider;
+        } else {
+            offHeapCacheProvider = null;
+        }
+        if (builder.nearCacheSize > 0) {
+            nearCacheProvider = new NearCacheProvider(cacheProviderCore, offHeapCacheProvider, builder.nearCacheSize,
+                    builder.nearCacheTtl, builder.nearCacheChannel);
+            provider = nearCacheProvider;
+        } else {
+            nearCacheProvider = null;
+        }
+        if (nearCacheProvider != null && builder.snapshotFile != null) {
+            nearCacheSnapshot = new NearCacheSnapshot(nearCacheProvider, Paths.get(builder.snapshotFile),
+                    builder.snapshotSize, builder.metrics);
+            //订阅成功时会清空本地缓存，之后再加载快照
+            nearCacheProvider.awaitSubscribed(SNAPSHOT_SUBSCRIBE_TIMEOUT);
+            nearCacheSnapshot.load();
+            if (builder.snapshotPeriod > 0) {
+                nearCacheSnapshot.start(builder.snapshotPeriod);
+            }
+        } else {
+            nearCacheSnapshot = null;
+        }
+        if (builder.refreshPolicy != null) {
+            refreshAhead = new RefreshAhead(builder.refreshPolicy, builder.refreshThreads, builder.refreshQueueCapacity);
+            cacheProviderCore.setRefreshAhead(refreshAhead);
+            cacheProviderCore.setRefreshWriter(provider);
+        } else {
+            refreshAhead = null;
+        }
+        if (builder.writeBehindCapacity > 0) {
+            writeBehindCacheProvider = new WriteBehindCacheProvider(provider, cacheProviderCore, nearCacheProvider,
+                    offHeapCacheProvider, builder.writeBehindCapacity, builder.writeBehindFlushSize, builder.writeBehindFlushInterval);
+            provider = writeBehindCacheProvider;
+        } else {
+            writeBehindCacheProvider = null;
+        }
+        if (builder.bloomFilter != null) {
+            bloomFilterCacheProvider = new BloomFilterCacheProvider(provider, builder.bloomFilter,
+                    builder.bloomFilterAuthoritative, builder.metrics);
+            provider = bloomFilterCacheProvider;
+        } else {
+            bloomFilterCacheProvider = null;
+        }
+        this.lock = builder.lock;
+        proxyProvider = lock == null ? provider : createLockProxy(provider, lock, cacheProviderCore.getMetrics());
+        //放在全局锁之外，等待全局锁的时间也计入时间预算
+        if (builder.readTimeoutMillis > 0 || builder.writeTimeoutMillis > 0 || builder.hedgePool != null
+                || builder.breakerWindowSize > 0) {
+            CacheProviderCore replica = null;
+            if (builder.hedgePool != null) {
+                replica = new CacheProviderCore(builder.hedgePool, util);
+                replica.setLegacyCompatible(builder.legacyCompatible);
+                replica.setBatchChunkSize(builder.batchChunkSize);
+            }
+            CircuitBreaker breaker = builder.breakerWindowSize > 0 ? new CircuitBreaker(builder.breakerWindowSize,
+                    builder.breakerFailureRate, builder.breakerSlowCallMillis, builder.breakerOpenMillis,
+                    builder.metrics) : null;
+            resilientCacheProvider = new ResilientCacheProvider(proxyProvider, replica, builder.hedgeDelayMillis,
+                    builder.readTimeoutMillis, builder.writeTimeoutMillis, breaker, builder.metrics);
+            proxyProvider = resilientCacheProvider;
+        } else {
+            resilientCacheProvider = null;
+        }
+    }
+
+    private static ReadWriteLock checkLock(ReadWriteLock lock) {
         if (lock == null) {
             throw new IllegalArgumentException("ReadWriteLock对象不能为空");
         }
-        cacheProviderCore = new CacheProviderCore(pool, util);
-        proxyProvider = (CacheProvider) Proxy.newProxyInstance(
+        return lock;
+    }
+
+    /**
+     * 使用全局读写锁包装provider
+     */
+    private static CacheProvider createLockProxy(final CacheProvider target, final ReadWriteLock lock,
+                                                 final CacheMetrics metrics) {
+        return (CacheProvider) Proxy.newProxyInstance(
                 Thread.currentThread().getContextClassLoader(),
                 new Class[]{CacheProvider.class},
                 new InvocationHandler() {
                     @Override
                     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-                        Object result = null;
-                        //读取操作上读锁，写入操作上写锁
                         //如果是Object的方法，放行
                         if (Object.class.equals(method.getDeclaringClass())) {
                             return method.invoke(this, args);
                         }
-                        //如果是读,则上读锁
-                        if (method.getName().contains(READMETHOD)) {
-                            try {
-                                lock.readLock().lock();
-                            } catch (Exception e) {
-                                throw new RuntimeException("上锁失败");
-                            }
-                            try {
-                                result = method.invoke(cacheProviderCore, args);
-                            } catch (Exception e) {
-                                throw new RuntimeException(method.getName() + "执行失败");
-                            } finally {
-                                lock.readLock().unlock();
-                            }
-                            return result;
-                        } else {
-                            //插入和删除操作，写锁
-                            try {
-                                lock.writeLock().lock();
-                            } catch (Exception e) {
-                                throw new RuntimeException("上锁失败");
-                            }
+                        if (LOCKFREEMETHODS.contains(method.getName())) {
                             try {
-                                result = method.invoke(cacheProviderCore, args);
-                            } catch (Exception e) {
-                                throw new RuntimeException(method.getName() + "执行失败");
-                            } finally {
-                                lock.writeLock().unlock();
+                                return method.invoke(target, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
                             }
-                            return result;
+                        }
+                        //读取操作上读锁，插入和删除操作上写锁
+                        Lock l = WRITEMETHODS.contains(method.getName()) ? lock.writeLock() : lock.readLock();
+                        long start = System.nanoTime();
+                        try {
+                            l.lock();
+                        } catch (Exception e) {
+                            throw new RuntimeException("上锁失败");
+                        }
+                        metrics.record(MetricNames.LOCK_WAIT, null, System.nanoTime() - start);
+                        try {
+                            return method.invoke(target, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        } finally {
+                            l.unlock();
                         }
                     }
                 }
         );
     }
 
-    public CacheProviderFactory(JedisPool pool, SerializationUtil util) {
-        this(pool, util, new ReentrantReadWriteLock());
-    }
-
-
     /**
      * 获得CacheProvider
      *
@@ -112,6 +319,155 @@ public class CacheProviderFactory {
         return proxyProvider;
     }
 
+    /**
+     * 获得异步CacheProvider，并发的单键请求会被合并为pipeline批量执行
+     * 首次调用时启动后台分发线程
+     *
+     * @return AsyncCacheProvider
+     */
+    public synchronized AsyncCacheProvider getAsyncProvider() {
+        if (asyncProvider == null) {
+            asyncProvider = new BatchingAsyncCacheProvider(cacheProviderCore, nearCacheProvider,
+                    offHeapCacheProvider, builder.asyncBatchSize, builder.asyncWindowMicros, builder.asyncQueueCapacity,
+                    builder.asyncConnections, ForkJoinPool.commonPool());
+        }
+        return asyncProvider;
+    }
+
+    CacheProviderCore getCore() {
+        return cacheProviderCore;
+    }
+
+    /**
+     * 获得jvm内缓存，可以用于查看命中率等统计数据
+     *
+     * @return jvm内缓存，未开启时为null
+     */
+    public NearCacheProvider getNearCacheProvider() {
+        return nearCacheProvider;
+    }
+
+    /**
+     * 获得热点键检测，可以用于查看当前的热点键
+     *
+     * @return 热点键检测，未开启时为null
+     */
+    public HotKeyDetector getHotKeyDetector() {
+        return cacheProviderCore.getHotKeyDetector();
+    }
+
+    /**
+     * 获得jvm内缓存的快照，可以用于手动保存和查看加载耗时
+     *
+     * @return 快照，未开启时为null
+     */
+    public NearCacheSnapshot getNearCacheSnapshot() {
+        return nearCacheSnapshot;
+    }
+
+    /**
+     * 获得堆外缓存provider，可以用于查看容量、碎片率和淘汰统计
+     *
+     * @return 堆外缓存provider，未开启时为null
+     */
+    public OffHeapCacheProvider getOffHeapCacheProvider() {
+        return offHeapCacheProvider;
+    }
+
+    /**
+     * 获得按字段保存对象的hash存储，可以只读取或只修改对象的部分字段
+     * hash存储不经过jvm内缓存、延迟写入和锁代理，字段不压缩
+     *
+     * @return hash存储
+     * @throws IllegalStateException 序列化工具不是{@link ProtostuffSerializationUtil}
+     */
+    public RedisHashCache getHashCache() {
+        if (hashCache == null) {
+            throw new IllegalStateException("hash存储需要使用ProtostuffSerializationUtil");
+        }
+        return hashCache;
+    }
+
+    /**
+     * 获得带版本号的缓存，通过比较版本号实现跨jvm的乐观并发控制，不需要全局写锁
+     * 不经过jvm内缓存、延迟写入和锁代理
+     *
+     * @return 带版本号的缓存
+     */
+    public VersionedCache getVersionedCache() {
+        return versionedCache;
+    }
+
+    /**
+     * 获得时间预算、对冲读取和熔断的装饰器，可以用于查看熔断状态和超时次数
+     *
+     * @return 装饰器，未设置时间预算、对冲读取和熔断时为null
+     */
+    public ResilientCacheProvider getResilientCacheProvider() {
+        return resilientCacheProvider;
+    }
+
+    /**
+     * 获得延迟写入provider，可以用于手动写入缓冲区中的修改和查看统计数据
+     *
+     * @return 延迟写入provider，未开启时为null
+     */
+    public WriteBehindCacheProvider getWriteBehindCacheProvider() {
+        return writeBehindCacheProvider;
+    }
+
+    /**
+     * 获得布隆过滤器provider，可以用于加入数据源中已有的键和查看拒绝次数
+     *
+     * @return 布隆过滤器provider，未开启时为null
+     */
+    public BloomFilterCacheProvider getBloomFilterCacheProvider() {
+        return bloomFilterCacheProvider;
+    }
+
+    /**
+     * 获得压缩序列化工具，可以用于查看压缩比例和耗时
+     *
+     * @return 压缩序列化工具，未开启时为null
+     */
+    public CompressingSerializationUtil getCompressingSerializationUtil() {
+        return compressingSerializationUtil;
+    }
+
+    /**
+     * 释放工厂创建的后台资源，例如异步provider的分发线程、提前刷新和批量操作的线程池以及jvm内缓存的失效订阅
+     * 不会关闭连接池
+     */
+    public synchronized void close() {
+        if (resilientCacheProvider != null) {
+            resilientCacheProvider.close();
+        }
+        if (writeBehindCacheProvider != null) {
+            writeBehindCacheProvider.close();
+        }
+        if (asyncProvider != null) {
+            asyncProvider.close();
+        }
+        if (refreshAhead != null) {
+            refreshAhead.close();
+        }
+        if (batchExecutor != null) {
+            batchExecutor.shutdown();
+        }
+        if (nearCacheSnapshot != null) {
+            nearCacheSnapshot.close();
+        }
+        if (nearCacheProvider != null) {
+            nearCacheProvider.close();
+        }
+        if (offHeapCacheProvider != null) {
+            offHeapCacheProvider.close();
+        }
+        if (cacheProviderCore.getLeaseLock() != null) {
+            cacheProviderCore.getLeaseLock().close();
+        }
+    }
+
 
     public static class Builder {
 
@@ -121,6 +477,96 @@ public class CacheProviderFactory {
 
         private ReadWriteLock lock;
 
+        private boolean legacyCompatible = true;
+
+        private TtlPolicy ttlPolicy = TtlPolicy.NONE;
+
+        private CacheMetrics metrics = NoopCacheMetrics.INSTANCE;
+
+        private int compressionThreshold = -1;
+
+        private int compressionLevel = Deflater.BEST_SPEED;
+
+        private int nearCacheSize;
+
+        private int nearCacheTtl = 60;
+
+        private String nearCacheChannel = NearCacheProvider.DEFAULT_CHANNEL;
+
+        private int asyncBatchSize = 512;
+
+        private long asyncWindowMicros = 0;
+
+        private int asyncQueueCapacity = 65536;
+
+        private int asyncConnections = 1;
+
+        private int batchChunkSize = CacheProviderCore.DEFAULT_BATCH_CHUNK_SIZE;
+
+        private int batchParallelism = 1;
+
+        private RedisTransport transport;
+
+        private RetryPolicy casRetryPolicy = RetryPolicy.exponential(5, 2, 50);
+
+        private long readTimeoutMillis;
+
+        private long writeTimeoutMillis;
+
+        private JedisPool hedgePool;
+
+        private long hedgeDelayMillis;
+
+        private int breakerWindowSize;
+
+        private double breakerFailureRate;
+
+        private long breakerSlowCallMillis;
+
+        private long breakerOpenMillis;
+
+        private RefreshPolicy refreshPolicy;
+
+        private int negativeTtl;
+
+        private long offHeapCapacity;
+
+        private int offHeapPageSize = OffHeapStore.DEFAULT_PAGE_SIZE;
+
+        private int offHeapTtl;
+
+        private long leaseMillis;
+
+        private long leaseWaitMillis;
+
+        private int writeBehindCapacity;
+
+        private int writeBehindFlushSize;
+
+        private long writeBehindFlushInterval;
+
+        private int hotKeyThreshold;
+
+        private long hotKeyWindowMillis;
+
+        private long hotKeyPinMillis;
+
+        private int maxHotKeys;
+
+        private String snapshotFile;
+
+        private int snapshotSize;
+
+        private int snapshotPeriod;
+
+        private BloomFilter bloomFilter;
+
+        private boolean bloomFilterAuthoritative;
+
+        private int refreshThreads = 2;
+
+        private int refreshQueueCapacity = 1024;
+
         public CacheProviderFactory.Builder setPool(JedisPool pool) {
             this.pool = pool;
             return this;
@@ -136,15 +582,345 @@ public class CacheProviderFactory {
             return this;
         }
 
+        /**
+         * 是否兼容旧版本使用iso8859-1字符串写入的数据，默认开启
+         * 开启时只有按照新格式反序列化失败的数据才会尝试按照旧格式还原
+         *
+         * @param legacyCompatible 是否兼容
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setLegacyCompatible(boolean legacyCompatible) {
+            this.legacyCompatible = legacyCompatible;
+            return this;
+        }
+
+        /**
+         * 开启压缩，超过阈值的序列化结果使用deflate压缩后再写入redis，默认不开启
+         * 开启后写入的数据带有格式头，开启之前写入的数据仍然可以读取
+         *
+         * @param threshold 超过该大小的序列化结果才会被压缩，单位字节，小于0表示不开启
+         * @param level     deflate压缩级别，0-9
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setCompression(int threshold, int level) {
+            this.compressionThreshold = threshold;
+            this.compressionLevel = level;
+            return this;
+        }
+
+        /**
+         * 设置指标收集，默认不收集
+         *
+         * @param metrics 指标收集的实现，例如{@link com.freestyledash.ranger.metrics.InMemoryCacheMetrics}
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setMetrics(CacheMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * 设置写入前调整过期时间的策略，默认不调整
+         *
+         * @param ttlPolicy 策略
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setTtlPolicy(TtlPolicy ttlPolicy) {
+            this.ttlPolicy = ttlPolicy;
+            return this;
+        }
+
+        /**
+         * 为过期时间增加随机抖动，避免批量写入的键在同一时刻过期
+         *
+         * @param ratio     抖动占ttl的最大比例，例如0.1表示最多延长10%
+         * @param maxJitter 抖动的上限，单位是秒
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setTtlJitter(double ratio, int maxJitter) {
+            this.ttlPolicy = new JitterTtlPolicy(ratio, maxJitter);
+            return this;
+        }
+
+        /**
+         * 开启jvm内缓存，默认不开启
+         *
+         * @param maxEntries 本地最多缓存的条目数量，超过后按照LRU淘汰，小于1表示不开启
+         * @param maxTtl     本地条目最长存活时间，单位秒，实际存活时间不会超过redis中的过期时间
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setNearCache(int maxEntries, int maxTtl) {
+            this.nearCacheSize = maxEntries;
+            this.nearCacheTtl = maxTtl;
+            return this;
+        }
+
+        /**
+         * 设置jvm内缓存失效广播使用的redis频道，默认为{@link NearCacheProvider#DEFAULT_CHANNEL}
+         *
+         * @param channel 频道
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setNearCacheChannel(String channel) {
+            this.nearCacheChannel = channel;
+            return this;
+        }
+
+        /**
+         * 开启堆外缓存，默认不开启
+         * 在堆外内存中保存从redis读取的原始数据，命中时重新反序列化，可以缓存大量数据而不增加gc停顿；
+         * 同时开启jvm内缓存时作为它的第二级，并一起接收其他jvm的失效消息
+         *
+         * @param capacity    最多使用的堆外内存，单位字节，至少16MB，需要同时调整-XX:MaxDirectMemorySize
+         * @param maxLocalTtl 本地条目最长存活时间，单位秒
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setOffHeapCache(long capacity, int maxLocalTtl) {
+            this.offHeapCapacity = capacity;
+            this.offHeapTtl = maxLocalTtl;
+            return this;
+        }
+
+        /**
+         * 开启跨jvm的按键租约锁，默认不开启
+         * getOrLoad未命中时先在redis中获取该键的租约，整个集群同一个键只有一个jvm调用loader，其他键不受影响；
+         * 没有获得租约的jvm等待持有者写入缓存后直接读取，等待超过leaseWaitMillis后自行加载
+         *
+         * @param leaseMillis     租约时长，单位毫秒，应大于loader的耗时，持有者崩溃时租约到期自动释放
+         * @param leaseWaitMillis 等待其他jvm完成加载的最长时间，单位毫秒
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setLeaseLock(long leaseMillis, long leaseWaitMillis) {
+            this.leaseMillis = leaseMillis;
+            this.leaseWaitMillis = leaseWaitMillis;
+            return this;
+        }
+
+        /**
+         * 开启延迟写入，默认不开启
+         * setCache和deleteCache只放入缓冲区，同一个键的多次修改只保留最后一次，由后台线程批量写入redis；
+         * 本jvm可以立即读到自己的修改，其他jvm要等到写入之后，进程异常退出时未写入的修改会丢失
+         *
+         * @param capacity        缓冲区最多容纳的键数量，已满时写入方阻塞
+         * @param flushSize       缓冲区达到该数量时立即写入
+         * @param flushIntervalMs 最长等待多久写入一次，单位毫秒
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setWriteBehind(int capacity, int flushSize, long flushIntervalMs) {
+            this.writeBehindCapacity = capacity;
+            this.writeBehindFlushSize = flushSize;
+            this.writeBehindFlushInterval = flushIntervalMs;
+            return this;
+        }
+
+        /**
+         * 开启热点键检测，默认不开启
+         * 窗口内读取次数达到阈值的键成为热点键，它的值在本地保留pinMillis，期间单键读取不再访问redis；
+         * 本jvm的写入和删除会立即删除本地副本，其他jvm的修改最多延迟pinMillis可见
+         *
+         * @param threshold    成为热点键需要的窗口内读取次数
+         * @param windowMillis 计数衰减的窗口，每经过一个窗口计数减半，单位毫秒
+         * @param pinMillis    本地副本的存活时间，单位毫秒，应当很短，例如100
+         * @param maxHotKeys   最多同时存在的热点键数量
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setHotKeyDetection(int threshold, long windowMillis, long pinMillis,
+                                                               int maxHotKeys) {
+            this.hotKeyThreshold = threshold;
+            this.hotKeyWindowMillis = windowMillis;
+            this.hotKeyPinMillis = pinMillis;
+            this.maxHotKeys = maxHotKeys;
+            return this;
+        }
+
+        /**
+         * 开启jvm内缓存的快照，需要同时开启jvm内缓存
+         * 创建工厂时从快照文件加载未过期的条目，之后定期保存最近访问的条目，关闭工厂时再保存一次
+         *
+         * @param file          快照文件路径
+         * @param maxEntries    快照最多保存的条目数量
+         * @param periodSeconds 定期保存的间隔，单位秒，小于1表示只在关闭工厂时保存
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setNearCacheSnapshot(String file, int maxEntries, int periodSeconds) {
+            this.snapshotFile = file;
+            this.snapshotSize = maxEntries;
+            this.snapshotPeriod = periodSeconds;
+            return this;
+        }
+
+        /**
+         * 设置异步provider的合并策略
+         *
+         * @param maxBatchSize 每批最多包含的请求数量，默认512
+         * @param windowMicros 取到第一个请求后继续等待后续请求的时间，单位微秒，默认0，即只合并已经排队的请求
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setAsyncBatch(int maxBatchSize, long windowMicros) {
+            this.asyncBatchSize = maxBatchSize;
+            this.asyncWindowMicros = windowMicros;
+            return this;
+        }
+
+        /**
+         * 设置异步provider的并发度
+         *
+         * @param connections   同时执行批量请求的连接数，默认1
+         * @param queueCapacity 等待队列容量，队列满时请求直接失败，默认65536
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setAsyncConcurrency(int connections, int queueCapacity) {
+            this.asyncConnections = connections;
+            this.asyncQueueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * 设置批量读写和删除的分段策略
+         * 键的数量超过chunkSize时切分为多段，每段使用一个连接和一个pipeline，最多parallelism段同时执行
+         *
+         * @param chunkSize   每段包含的键数量，默认1000
+         * @param parallelism 同时执行的段数，包含调用线程，默认1，即各段在调用线程中顺序执行；不应超过连接池大小
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setBatchParallelism(int chunkSize, int parallelism) {
+            this.batchChunkSize = chunkSize;
+            this.batchParallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * 设置读写键值使用的传输层，默认每次调用从连接池借出一个连接
+         * 使用{@link MultiplexedRedisTransport}时并发调用复用少量连接，不再受连接池大小限制；
+         * 仍然需要设置连接池，SCAN、脚本、订阅、hash存储和异步provider使用连接池；传输层由调用方负责关闭
+         *
+         * @param transport 传输层
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setTransport(RedisTransport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * 设置{@link VersionedCache#update}写入冲突后的重试策略
+         * 默认最多尝试5次，每次重试前等待的上限从2ms开始翻倍，最多50ms
+         *
+         * @param retryPolicy 重试策略，为null时不重试
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setCasRetryPolicy(RetryPolicy retryPolicy) {
+            this.casRetryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * 设置每次调用的默认时间预算，调用方最多等待这么久，redis停顿时不会阻塞在socket超时或全局锁上
+         * 超过预算时读取当作未命中，getOrLoad和getAll直接调用loader，写入返回false，删除抛出异常；
+         * 也可以通过{@link CacheProvider#getCache(String, Class, long, java.util.concurrent.TimeUnit)}为单次调用指定预算
+         *
+         * @param readTimeoutMillis  读取的时间预算，单位毫秒，小于1表示不限制
+         * @param writeTimeoutMillis 写入和删除的时间预算，单位毫秒，小于1表示不限制
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setDeadlines(long readTimeoutMillis, long writeTimeoutMillis) {
+            this.readTimeoutMillis = readTimeoutMillis;
+            this.writeTimeoutMillis = writeTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * 开启对冲读取，getCache超过hedgeDelayMillis仍未返回或出错时，从第二个连接池读取相同的键，使用先返回的结果
+         * 对冲读取直接访问redis，不经过jvm内缓存
+         *
+         * @param replicaPool      第二个连接池，例如只读副本
+         * @param hedgeDelayMillis 发送对冲读取前等待的时间，单位毫秒，通常取读取耗时的p95
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setHedgedReads(JedisPool replicaPool, long hedgeDelayMillis) {
+            this.hedgePool = replicaPool;
+            this.hedgeDelayMillis = hedgeDelayMillis;
+            return this;
+        }
+
+        /**
+         * 开启熔断，最近windowSize次调用中失败的比例达到failureRate时打开，打开期间调用直接失败，降级方式与超过时间预算相同
+         *
+         * @param windowSize     统计失败比例的调用次数
+         * @param failureRate    打开的失败比例，0到1之间
+         * @param slowCallMillis 耗时超过该值的调用算作失败，单位毫秒，小于1表示不按耗时判断
+         * @param openMillis     打开后经过多久放行一次试探调用，单位毫秒
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setCircuitBreaker(int windowSize, double failureRate, long slowCallMillis,
+                                                              long openMillis) {
+            this.breakerWindowSize = windowSize;
+            this.breakerFailureRate = failureRate;
+            this.breakerSlowCallMillis = slowCallMillis;
+            this.breakerOpenMillis = openMillis;
+            return this;
+        }
+
+        /**
+         * 开启空值缓存，默认不开启
+         * getOrLoad的loader返回null时写入一个很小的空缓存标记，过期之前读取该键直接返回null，不再调用loader
+         *
+         * @param ttl 空缓存标记的过期时间，单位是秒，应远小于正常对象的过期时间，小于1表示不开启
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setNegativeCaching(int ttl) {
+            this.negativeTtl = ttl;
+            return this;
+        }
+
+        /**
+         * 使用布隆过滤器拒绝一定不存在的键，默认不开启
+         * 被拒绝的键读取时不会访问redis；写入的键自动加入过滤器，数据源中已有的键需要启动时加入
+         * 过滤器可能不包含其他jvm写入的键，getOrLoad和getAll仍然为被拒绝的键调用loader，加载成功后加入过滤器
+         *
+         * @param bloomFilter {@link LocalBloomFilter}或{@link RedisBloomFilter}
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setBloomFilter(BloomFilter bloomFilter) {
+            return setBloomFilter(bloomFilter, false);
+        }
+
+        /**
+         * 使用布隆过滤器拒绝一定不存在的键，默认不开启
+         *
+         * @param bloomFilter   {@link LocalBloomFilter}或{@link RedisBloomFilter}
+         * @param authoritative 过滤器是否包含全部存在的键，为true时被拒绝的键也不会交给loader；
+         *                      只有所有写入方共享同一个过滤器时才能设置为true，多个jvm时需要使用{@link RedisBloomFilter}
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setBloomFilter(BloomFilter bloomFilter, boolean authoritative) {
+            this.bloomFilter = bloomFilter;
+            this.bloomFilterAuthoritative = authoritative;
+            return this;
+        }
+
+        /**
+         * 开启提前刷新，默认不开启
+         * 通过{@link CacheProvider#getOrLoad}读取到即将过期的对象时，在后台使用同一个loader重新加载，
+         * 加载完成之前继续返回旧的对象；队列已满时放弃本次刷新
+         *
+         * @param policy        判断是否需要刷新的策略，例如{@link RefreshPolicy#xfetch(double)}
+         * @param threads       执行刷新的线程数，默认2
+         * @param queueCapacity 等待刷新的任务数量上限，默认1024
+         * @return builder
+         */
+        public CacheProviderFactory.Builder setRefreshAhead(RefreshPolicy policy, int threads, int queueCapacity) {
+            this.refreshPolicy = policy;
+            this.refreshThreads = threads;
+            this.refreshQueueCapacity = queueCapacity;
+            return this;
+        }
+
         public CacheProviderFactory build() {
             if (pool == null || serializationUtil == null) {
                 throw new IllegalStateException("pool和serializationUtil未初始化");
             }
-            if (lock == null) {
-                return new CacheProviderFactory(pool, serializationUtil);
-            } else {
-                return new CacheProviderFactory(pool, serializationUtil, lock);
-            }
+            return new CacheProviderFactory(this);
         }
     }
 }
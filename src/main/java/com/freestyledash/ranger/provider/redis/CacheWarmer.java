@@ -0,0 +1,254 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.provider.CacheProvider;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * 缓存预热工具，例如在发布之后提前填充jvm内缓存，或者将一个前缀下的数据复制到新的provider
+ * 键的遍历在调用线程中按页进行，每页的读取和写入交给线程池并行执行，同时在处理的页数有上限，内存占用不随数据量增长
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public final class CacheWarmer {
+
+    private CacheWarmer() {
+    }
+
+    /**
+     * 将redis中键匹配pattern的对象放入jvm内缓存
+     *
+     * @param nearCacheProvider jvm内缓存
+     * @param pattern           键的匹配规则，例如"user:*"
+     * @param pageSize          每页的键数量
+     * @param clazz             缓存对象的类型
+     * @param parallelism       并行读取的页数
+     * @return 放入本地缓存的数量
+     */
+    public static <T> long warmUp(final NearCacheProvider nearCacheProvider, String pattern, int pageSize,
+                                  final Class<T> clazz, int parallelism) {
+        final AtomicLong count = new AtomicLong();
+        final PageExecutor executor = new PageExecutor(parallelism);
+        try {
+            nearCacheProvider.getCore().scanKeys(pattern, pageSize, new Consumer<List<String>>() {
+                @Override
+                public void accept(final List<String> keys) {
+                    executor.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            count.addAndGet(nearCacheProvider.preload(keys, clazz));
+                        }
+                    });
+                }
+            });
+            executor.await();
+        } finally {
+            executor.shutdown();
+        }
+        return count.get();
+    }
+
+    /**
+     * 遍历factory使用的redis中键匹配pattern的全部缓存对象，见{@link CacheProviderCore#scan}
+     * 遍历直接读取redis，不经过本地缓存，也不持有全局锁
+     *
+     * @param factory  缓存工厂
+     * @param pattern  键的匹配规则，例如"user:*"
+     * @param pageSize 每页的键数量
+     * @param clazz    缓存对象的类型
+     * @param consumer 接收键和被缓存的对象，在调用线程中执行
+     */
+    public static <T> void scan(CacheProviderFactory factory, String pattern, int pageSize, Class<T> clazz,
+                                BiConsumer<String, T> consumer) {
+        factory.getCore().scan(pattern, pageSize, clazz, consumer);
+    }
+
+    /**
+     * 将factory使用的redis中键匹配pattern的对象写入target
+     *
+     * @param source      数据来源
+     * @param pattern     键的匹配规则，例如"user:*"
+     * @param pageSize    每页的键数量
+     * @param clazz       缓存对象的类型
+     * @param target      写入的目标
+     * @param ttl         写入的过期时间 -1 永不过期 ，单位是秒
+     * @param parallelism 并行写入的页数
+     * @return 写入的数量
+     */
+    public static <T> long copy(CacheProviderFactory source, String pattern, int pageSize, Class<T> clazz,
+                                CacheProvider target, int ttl, int parallelism) {
+        return copy(source.getCore(), pattern, pageSize, clazz, target, ttl, parallelism);
+    }
+
+    /**
+     * 将source中键匹配pattern的对象写入target
+     *
+     * @param source      数据来源
+     * @param pattern     键的匹配规则，例如"user:*"
+     * @param pageSize    每页的键数量
+     * @param clazz       缓存对象的类型
+     * @param target      写入的目标
+     * @param ttl         写入的过期时间 -1 永不过期 ，单位是秒
+     * @param parallelism 并行写入的页数
+     * @return 写入的数量
+     */
+    public static <T> long copy(final CacheProviderCore source, final String pattern, final int pageSize,
+                                final Class<T> clazz, CacheProvider target, int ttl, int parallelism) {
+        return copy(new Source<T>() {
+            @Override
+            public void scan(BiConsumer<String, T> consumer) {
+                source.scan(pattern, pageSize, clazz, consumer);
+            }
+        }, pageSize, target, ttl, parallelism);
+    }
+
+    /**
+     * 将分片集群中键匹配pattern的对象写入target，依次遍历每个节点
+     *
+     * @param source      数据来源
+     * @param pattern     键的匹配规则，例如"user:*"
+     * @param pageSize    每页的键数量
+     * @param clazz       缓存对象的类型
+     * @param target      写入的目标
+     * @param ttl         写入的过期时间 -1 永不过期 ，单位是秒
+     * @param parallelism 并行写入的页数
+     * @return 写入的数量
+     */
+    public static <T> long copy(final ShardedCacheProvider source, final String pattern, final int pageSize,
+                                final Class<T> clazz, CacheProvider target, int ttl, int parallelism) {
+        return copy(new Source<T>() {
+            @Override
+            public void scan(BiConsumer<String, T> consumer) {
+                source.scan(pattern, pageSize, clazz, consumer);
+            }
+        }, pageSize, target, ttl, parallelism);
+    }
+
+    private static <T> long copy(Source<T> source, final int pageSize, final CacheProvider target, final int ttl,
+                                 int parallelism) {
+        final AtomicLong count = new AtomicLong();
+        final PageExecutor executor = new PageExecutor(parallelism);
+        final List<Map<String, Object>> page = new ArrayList<>(1);
+        page.add(new HashMap<String, Object>());
+        try {
+            source.scan(new BiConsumer<String, T>() {
+                @Override
+                public void accept(String key, T value) {
+                    page.get(0).put(key, value);
+                    if (page.get(0).size() >= pageSize) {
+                        submit(executor, page.set(0, new HashMap<String, Object>()), target, ttl, count);
+                    }
+                }
+            });
+            submit(executor, page.get(0), target, ttl, count);
+            executor.await();
+        } finally {
+            executor.shutdown();
+        }
+        return count.get();
+    }
+
+    private static void submit(PageExecutor executor, final Map<String, Object> values, final CacheProvider target,
+                               final int ttl, final AtomicLong count) {
+        if (values.isEmpty()) {
+            return;
+        }
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                target.setCache(values, ttl);
+                count.addAndGet(values.size());
+            }
+        });
+    }
+
+    /**
+     * 可以遍历的数据来源
+     */
+    private interface Source<T> {
+
+        void scan(BiConsumer<String, T> consumer);
+    }
+
+    /**
+     * 同时最多执行parallelism页、最多等待parallelism页的线程池，提交时超过上限会阻塞
+     */
+    private static final class PageExecutor {
+
+        private final ExecutorService executor;
+
+        private final Semaphore permits;
+
+        private final List<Future<?>> futures = new ArrayList<>();
+
+        private PageExecutor(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("parallelism必须大于0");
+            }
+            executor = Executors.newFixedThreadPool(parallelism);
+            permits = new Semaphore(parallelism * 2);
+        }
+
+        private void submit(final Runnable task) {
+            permits.acquireUninterruptibly();
+            try {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            task.run();
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+            //已完成的任务不再保留
+            if (futures.size() > 1024) {
+                List<Future<?>> pending = new ArrayList<>();
+                for (Future<?> future : futures) {
+                    if (!future.isDone()) {
+                        pending.add(future);
+                    } else {
+                        get(future);
+                    }
+                }
+                futures.clear();
+                futures.addAll(pending);
+            }
+        }
+
+        private void await() {
+            for (Future<?> future : futures) {
+                get(future);
+            }
+        }
+
+        private static void get(Future<?> future) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("等待预热结果被中断", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+            }
+        }
+
+        private void shutdown() {
+            executor.shutdownNow();
+        }
+    }
+}
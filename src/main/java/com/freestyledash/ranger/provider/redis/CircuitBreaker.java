@@ -0,0 +1,197 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.metrics.CacheMetrics;
+import com.freestyledash.ranger.metrics.MetricNames;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 访问redis的熔断器
+ * <p>
+ * 记录最近windowSize次调用的结果，出错或耗时超过slowCallMillis都算作失败，失败比例达到阈值时打开，
+ * 打开期间调用直接失败，不再访问redis；经过openMillis后进入半开状态，只放行一次试探调用，
+ * 试探成功时关闭，失败时再次打开
+ * <p>
+ * 每次状态变化都会更换一代，{@link #tryAcquire}返回放行时所在的代，只有同一代的调用结果才会被记录：
+ * 打开之前放行的慢调用在半开期间返回时不会被当作试探结果
+ * <p>
+ * 打开的次数记录在cache.breaker.trip；cache.breaker.open在离开关闭状态时加1，回到关闭状态时减1，当前值即是否处于熔断中
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        /**
+         * 正常访问redis
+         */
+        CLOSED,
+        /**
+         * 直接失败，不访问redis
+         */
+        OPEN,
+        /**
+         * 放行一次试探调用
+         */
+        HALF_OPEN
+    }
+
+    private final int windowSize;
+
+    private final double failureRate;
+
+    private final long slowCallNanos;
+
+    private final long openNanos;
+
+    /**
+     * 不放行时{@link #tryAcquire}的返回值
+     */
+    static final long REJECTED = -1;
+
+    private final CacheMetrics metrics;
+
+    /**
+     * 最近windowSize次调用是否失败，循环写入
+     */
+    private final boolean[] outcomes;
+
+    private int next;
+
+    private int calls;
+
+    private int failures;
+
+    private volatile State state = State.CLOSED;
+
+    /**
+     * 状态变化的次数，先于state修改
+     */
+    private volatile long generation;
+
+    private long openedAt;
+
+    /**
+     * 半开状态下是否已经放行了试探调用
+     */
+    private boolean probing;
+
+    private long tripCount;
+
+    /**
+     * @param windowSize     统计失败比例的调用次数，调用次数不足时不会打开
+     * @param failureRate    打开的失败比例，0到1之间
+     * @param slowCallMillis 耗时超过该值的调用算作失败，单位毫秒，小于1表示不按耗时判断
+     * @param openMillis     打开后经过多久进入半开状态，单位毫秒
+     * @param metrics        指标收集
+     */
+    CircuitBreaker(int windowSize, double failureRate, long slowCallMillis, long openMillis, CacheMetrics metrics) {
+        if (windowSize < 1 || failureRate <= 0 || failureRate > 1 || openMillis < 1) {
+            throw new IllegalArgumentException("windowSize和openMillis必须大于0,failureRate必须在0和1之间");
+        }
+        this.windowSize = windowSize;
+        this.failureRate = failureRate;
+        this.slowCallNanos = slowCallMillis < 1 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.metrics = metrics;
+        this.outcomes = new boolean[windowSize];
+    }
+
+    /**
+     * 调用之前检查是否放行
+     *
+     * @return 放行时返回当前的代，调用结束后必须以该值调用{@link #onResult}；不放行时返回{@link #REJECTED}
+     */
+    long tryAcquire() {
+        long permit = generation;
+        if (state == State.CLOSED) {
+            return permit;
+        }
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                return generation;
+            }
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                generation++;
+                state = State.HALF_OPEN;
+                probing = false;
+            }
+            if (state == State.HALF_OPEN && !probing) {
+                probing = true;
+                return generation;
+            }
+            return REJECTED;
+        }
+    }
+
+    /**
+     * 记录调用结果
+     *
+     * @param permit       {@link #tryAcquire}的返回值
+     * @param failed       是否出错
+     * @param elapsedNanos 调用耗时，单位纳秒
+     */
+    synchronized void onResult(long permit, boolean failed, long elapsedNanos) {
+        if (permit != generation) {
+            //状态变化之前放行的调用，结果已经没有意义
+            return;
+        }
+        boolean failure = failed || elapsedNanos > slowCallNanos;
+        if (state == State.HALF_OPEN) {
+            //半开状态的一代只放行了一次试探调用
+            if (failure) {
+                open();
+            } else {
+                close();
+            }
+            return;
+        }
+        if (calls == windowSize) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        outcomes[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % windowSize;
+        if (calls == windowSize && failures >= failureRate * windowSize) {
+            open();
+        }
+    }
+
+    private void open() {
+        if (state == State.CLOSED) {
+            metrics.increment(MetricNames.BREAKER_OPEN, null, 1);
+        }
+        generation++;
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        tripCount++;
+        metrics.increment(MetricNames.BREAKER_TRIP, null, 1);
+    }
+
+    private void close() {
+        generation++;
+        state = State.CLOSED;
+        next = 0;
+        calls = 0;
+        failures = 0;
+        metrics.increment(MetricNames.BREAKER_OPEN, null, -1);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return 打开的次数，包括半开试探失败后再次打开
+     */
+    public synchronized long getTripCount() {
+        return tripCount;
+    }
+}
@@ -0,0 +1,277 @@
+package com.freestyledash.ranger.provider.redis;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 热点键检测
+ * <p>
+ * 使用count-min sketch估计每个键在当前窗口内的读取次数，内存占用固定，与键的数量无关；
+ * 每经过一个窗口所有计数减半，读取量下降的键会逐渐冷却
+ * 估计次数达到阈值的键成为热点键，它在redis中的值会在本地保留很短的时间，期间的读取不再访问redis；
+ * 计数衰减到阈值以下时自动降级
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public final class HotKeyDetector {
+
+    private static final int DEPTH = 4;
+
+    private static final int[] SEEDS = {0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F};
+
+    /**
+     * 每行的计数器数量，必须是2的幂
+     */
+    private final int width;
+
+    private final AtomicIntegerArray counters;
+
+    /**
+     * 成为热点键需要的窗口内读取次数
+     */
+    private final int threshold;
+
+    /**
+     * 衰减窗口，单位毫秒
+     */
+    private final long windowMillis;
+
+    /**
+     * 本地副本的存活时间，单位毫秒
+     */
+    private final long pinMillis;
+
+    private final int maxHotKeys;
+
+    private final AtomicLong lastDecay;
+
+    /**
+     * 本地副本的版本号来源，每次创建热点键或删除本地副本时递增
+     */
+    private final AtomicLong versions = new AtomicLong();
+
+    /**
+     * 当前的热点键
+     */
+    private final ConcurrentMap<String, Pin> hotKeys = new ConcurrentHashMap<>();
+
+    /**
+     * @param threshold    成为热点键需要的窗口内读取次数
+     * @param windowMillis 衰减窗口，单位毫秒
+     * @param pinMillis    热点键本地副本的存活时间，单位毫秒
+     * @param maxHotKeys   最多同时存在的热点键数量
+     */
+    HotKeyDetector(int threshold, long windowMillis, long pinMillis, int maxHotKeys) {
+        if (threshold < 1 || windowMillis < 1 || pinMillis < 1 || maxHotKeys < 1) {
+            throw new IllegalArgumentException("threshold、windowMillis、pinMillis和maxHotKeys必须大于0");
+        }
+        this.threshold = threshold;
+        this.windowMillis = windowMillis;
+        this.pinMillis = pinMillis;
+        this.maxHotKeys = maxHotKeys;
+        //计数器数量约为热点键数量的16倍，误差可以忽略
+        this.width = Integer.highestOneBit(Math.max(1024, maxHotKeys * 16 - 1)) << 1;
+        this.counters = new AtomicIntegerArray(width * DEPTH);
+        this.lastDecay = new AtomicLong(System.currentTimeMillis());
+    }
+
+    /**
+     * 记录一次读取
+     *
+     * @param key 缓存的键
+     * @param now 当前时间
+     * @return 是否为热点键
+     */
+    boolean record(String key, long now) {
+        decayIfNeeded(now);
+        int hash = spread(key.hashCode());
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = row * width + (mix(hash, SEEDS[row]) & (width - 1));
+            int count = counters.incrementAndGet(index);
+            if (count < 0) {
+                counters.set(index, Integer.MAX_VALUE);
+                count = Integer.MAX_VALUE;
+            }
+            estimate = Math.min(estimate, count);
+        }
+        if (estimate < threshold) {
+            return false;
+        }
+        Pin pin = hotKeys.get(key);
+        if (pin == null) {
+            if (hotKeys.size() >= maxHotKeys) {
+                return false;
+            }
+            Pin created = new Pin(versions.incrementAndGet());
+            pin = hotKeys.putIfAbsent(key, created);
+            if (pin == null) {
+                pin = created;
+            }
+        }
+        pin.count = estimate;
+        return true;
+    }
+
+    /**
+     * @param key 缓存的键
+     * @param now 当前时间
+     * @return 未过期的本地副本，不存在返回null
+     */
+    byte[] getPinned(String key, long now) {
+        Pin pin = hotKeys.get(key);
+        if (pin == null) {
+            return null;
+        }
+        byte[] bytes = pin.bytes;
+        return bytes != null && pin.expireAt > now ? bytes : null;
+    }
+
+    /**
+     * 在读取redis之前调用，得到的版本号交给{@link #pin(String, byte[], long, long)}
+     *
+     * @param key 缓存的键
+     * @return 热点键本地副本的当前版本号，不是热点键时返回0
+     */
+    long stamp(String key) {
+        Pin pin = hotKeys.get(key);
+        return pin == null ? 0 : pin.version;
+    }
+
+    /**
+     * 为热点键保存本地副本，读取redis期间该键的本地副本被删除过时不保存，避免保存写入之前的旧值
+     *
+     * @param key   缓存的键
+     * @param bytes redis中的值
+     * @param now   当前时间
+     * @param stamp 读取redis之前通过{@link #stamp(String)}得到的版本号
+     */
+    void pin(String key, byte[] bytes, long now, long stamp) {
+        Pin pin = hotKeys.get(key);
+        if (pin == null) {
+            return;
+        }
+        synchronized (pin) {
+            if (pin.version == stamp) {
+                pin.expireAt = now + pinMillis;
+                pin.bytes = bytes;
+            }
+        }
+    }
+
+    /**
+     * 删除本地副本，在本jvm写入或删除该键完成后调用
+     *
+     * @param key 缓存的键
+     */
+    void unpin(String key) {
+        Pin pin = hotKeys.get(key);
+        if (pin == null) {
+            return;
+        }
+        synchronized (pin) {
+            pin.version = versions.incrementAndGet();
+            pin.bytes = null;
+        }
+    }
+
+    /**
+     * 每经过一个窗口所有计数减半，并降级计数低于阈值的热点键
+     */
+    private void decayIfNeeded(long now) {
+        long last = lastDecay.get();
+        long windows = (now - last) / windowMillis;
+        if (windows < 1 || !lastDecay.compareAndSet(last, last + windows * windowMillis)) {
+            return;
+        }
+        int shift = (int) Math.min(31, windows);
+        for (int i = 0; i < counters.length(); i++) {
+            int count = counters.get(i);
+            if (count != 0) {
+                counters.set(i, count >>> shift);
+            }
+        }
+        Iterator<Map.Entry<String, Pin>> iterator = hotKeys.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Pin> entry = iterator.next();
+            long estimate = estimate(entry.getKey());
+            if (estimate < threshold) {
+                iterator.remove();
+            } else {
+                entry.getValue().count = estimate;
+            }
+        }
+    }
+
+    /**
+     * @param key 缓存的键
+     * @return 当前窗口内读取次数的估计值，可能偏大，不会偏小
+     */
+    public long estimate(String key) {
+        int hash = spread(key.hashCode());
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.get(row * width + (mix(hash, SEEDS[row]) & (width - 1))));
+        }
+        return estimate;
+    }
+
+    /**
+     * @return 当前的热点键及其读取次数的估计值，按照次数从大到小排列
+     */
+    public Map<String, Long> getHotKeys() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(hotKeys.size());
+        for (Map.Entry<String, Pin> entry : hotKeys.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().count));
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+                return Long.compare(o2.getValue(), o1.getValue());
+            }
+        });
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private static int mix(int hash, int seed) {
+        int h = hash * seed;
+        return h ^ (h >>> 15);
+    }
+
+    private static final class Pin {
+
+        /**
+         * 本地副本的版本号，在Pin上同步修改
+         */
+        private volatile long version;
+
+        private volatile long count;
+
+        private volatile byte[] bytes;
+
+        private volatile long expireAt;
+
+        Pin(long version) {
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.freestyledash.ranger.provider.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 默认的传输层，每次调用从连接池借出一个连接，多条命令通过一个pipeline发送
+ * 连接池属于调用方，close不会关闭连接池
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+class JedisPoolTransport implements RedisTransport {
+
+    /**
+     * 通过core借出连接，以便记录等待连接的时间
+     */
+    private final CacheProviderCore core;
+
+    JedisPoolTransport(CacheProviderCore core) {
+        this.core = core;
+    }
+
+    @Override
+    public List<byte[]> get(List<byte[]> keys) {
+        Jedis resource = core.borrow();
+        try {
+            if (keys.size() == 1) {
+                List<byte[]> values = new ArrayList<>(1);
+                values.add(resource.get(keys.get(0)));
+                return values;
+            }
+            List<Response<byte[]>> responses = new ArrayList<>(keys.size());
+            Pipeline pipelined = resource.pipelined();
+            for (byte[] key : keys) {
+                responses.add(pipelined.get(key));
+            }
+            pipelined.sync();
+            List<byte[]> values = new ArrayList<>(keys.size());
+            for (Response<byte[]> response : responses) {
+                values.add(response.get());
+            }
+            return values;
+        } finally {
+            resource.close();
+        }
+    }
+
+    @Override
+    public List<byte[]> getWithTtl(List<byte[]> keys, long[] pttls) {
+        List<Response<byte[]>> values = new ArrayList<>(keys.size());
+        List<Response<Long>> ttls = new ArrayList<>(keys.size());
+        Jedis resource = core.borrow();
+        try {
+            Pipeline pipelined = resource.pipelined();
+            for (byte[] key : keys) {
+                values.add(pipelined.get(key));
+                ttls.add(pipelined.pttl(key));
+            }
+            pipelined.sync();
+        } finally {
+            resource.close();
+        }
+        List<byte[]> returnList = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            returnList.add(values.get(i).get());
+            Long pttl = ttls.get(i).get();
+            pttls[i] = pttl == null ? -1 : pttl;
+        }
+        return returnList;
+    }
+
+    @Override
+    public void set(List<byte[]> keys, List<byte[]> values, int[] expires) {
+        Jedis resource = core.borrow();
+        try {
+            if (keys.size() == 1) {
+                if (expires[0] == -1) {
+                    resource.set(keys.get(0), values.get(0));
+                } else if (expires[0] < 1) {
+                    resource.del(keys.get(0));
+                } else {
+                    resource.setex(keys.get(0), expires[0], values.get(0));
+                }
+                return;
+            }
+            Pipeline pipelined = resource.pipelined();
+            for (int i = 0; i < keys.size(); i++) {
+                if (expires[i] == -1) {
+                    pipelined.set(keys.get(i), values.get(i));
+                } else if (expires[i] < 1) {
+                    pipelined.del(keys.get(i));
+                } else {
+                    pipelined.setex(keys.get(i), expires[i], values.get(i));
+                }
+            }
+            sync(pipelined);
+        } finally {
+            resource.close();
+        }
+    }
+
+    @Override
+    public void delete(List<byte[]> keys) {
+        Jedis resource = core.borrow();
+        try {
+            if (keys.size() == 1) {
+                resource.del(keys.get(0));
+                return;
+            }
+            Pipeline pipelined = resource.pipelined();
+            for (byte[] key : keys) {
+                pipelined.del(key);
+            }
+            sync(pipelined);
+        } finally {
+            resource.close();
+        }
+    }
+
+    @Override
+    public boolean exists(byte[] key) {
+        Jedis resource = core.borrow();
+        try {
+            return resource.exists(key);
+        } finally {
+            resource.close();
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * 执行pipeline并检查每条命令的回复，出错时抛出第一个错误，与{@link MultiplexedRedisTransport}的行为一致
+     */
+    private static void sync(Pipeline pipelined) {
+        for (Object reply : pipelined.syncAndReturnAll()) {
+            if (reply instanceof JedisDataException) {
+                throw (JedisDataException) reply;
+            }
+        }
+    }
+}
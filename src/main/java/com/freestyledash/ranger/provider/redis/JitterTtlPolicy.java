@@ -0,0 +1,48 @@
+package com.freestyledash.ranger.provider.redis;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 在过期时间上增加随机抖动的策略
+ * 实际过期时间在[ttl, ttl + min(ttl * ratio, maxJitter)]之间均匀分布，只会延长不会缩短，永不过期的键不受影响
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class JitterTtlPolicy implements TtlPolicy {
+
+    /**
+     * 抖动占ttl的最大比例
+     */
+    private final double ratio;
+
+    /**
+     * 抖动的上限，单位是秒
+     */
+    private final int maxJitter;
+
+    /**
+     * @param ratio     抖动占ttl的最大比例，例如0.1表示最多延长10%
+     * @param maxJitter 抖动的上限，单位是秒
+     */
+    public JitterTtlPolicy(double ratio, int maxJitter) {
+        if (ratio < 0 || maxJitter < 0) {
+            throw new IllegalArgumentException("ratio和maxJitter不能小于0");
+        }
+        this.ratio = ratio;
+        this.maxJitter = maxJitter;
+    }
+
+    @Override
+    public int apply(int ttl) {
+        if (ttl <= 0) {
+            return ttl;
+        }
+        int bound = (int) Math.min(ttl * ratio, maxJitter);
+        if (bound < 1) {
+            return ttl;
+        }
+        long jittered = (long) ttl + ThreadLocalRandom.current().nextInt(bound + 1);
+        return (int) Math.min(jittered, Integer.MAX_VALUE);
+    }
+}
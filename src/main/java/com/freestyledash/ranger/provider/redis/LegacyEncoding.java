@@ -0,0 +1,79 @@
+package com.freestyledash.ranger.provider.redis;
+
+/**
+ * 兼容旧版本写入的缓存数据
+ * <p>
+ * 旧版本先将序列化结果用iso8859-1转成String，再由jedis以utf-8编码写入redis，
+ * 因此redis中保存的是"iso8859-1字符串的utf-8编码"：小于0x80的字节原样保存，
+ * 大于等于0x80的字节被展开为0xC2/0xC3开头的两个字节
+ * <p>
+ * 新版本直接存取byte[]，读取时先按照新格式反序列化，失败后才通过该类识别旧格式并还原为原始的序列化结果
+ * 旧格式的识别只是特征判断，新格式的数据也可能符合，因此不能在新格式之前使用
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+final class LegacyEncoding {
+
+    private LegacyEncoding() {
+    }
+
+    /**
+     * 判断数据是否可能是旧版本写入的
+     * 只有当所有大于等于0x80的字节都是合法的0xC2/0xC3双字节序列，并且至少出现一次时才认为是旧格式
+     * 全部小于0x80的数据两种格式完全一致，不需要转换
+     *
+     * @param data redis中读取的原始数据
+     * @return 是否为旧格式
+     */
+    static boolean isLegacy(byte[] data) {
+        boolean found = false;
+        int i = 0;
+        while (i < data.length) {
+            int b = data[i] & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            if ((b != 0xC2 && b != 0xC3) || i + 1 >= data.length) {
+                return false;
+            }
+            int next = data[i + 1] & 0xFF;
+            if (next < 0x80 || next > 0xBF) {
+                return false;
+            }
+            found = true;
+            i += 2;
+        }
+        return found;
+    }
+
+    /**
+     * 将旧格式数据还原为原始的序列化结果
+     *
+     * @param data 旧格式数据，调用前需要使用{@link #isLegacy(byte[])}判断
+     * @return 原始的序列化结果
+     */
+    static byte[] decode(byte[] data) {
+        int length = 0;
+        for (int i = 0; i < data.length; i++) {
+            if ((data[i] & 0xFF) < 0x80 || (data[i] & 0xC0) != 0x80) {
+                length++;
+            }
+        }
+        byte[] result = new byte[length];
+        int j = 0;
+        int i = 0;
+        while (i < data.length) {
+            int b = data[i] & 0xFF;
+            if (b < 0x80) {
+                result[j++] = (byte) b;
+                i++;
+            } else {
+                result[j++] = (byte) (((b & 0x03) << 6) | (data[i + 1] & 0x3F));
+                i += 2;
+            }
+        }
+        return result;
+    }
+}
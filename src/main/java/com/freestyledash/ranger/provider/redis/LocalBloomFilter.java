@@ -0,0 +1,53 @@
+package com.freestyledash.ranger.provider.redis;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 保存在jvm内的布隆过滤器，判断不需要网络请求
+ * 每个jvm各自维护，其他jvm写入的键不会自动加入，适合由同一份数据源初始化、只增不删的键集合
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class LocalBloomFilter extends BloomFilter {
+
+    private final AtomicLongArray words;
+
+    /**
+     * @param expectedInsertions 预计加入的键数量
+     * @param fpp                期望的误判率，例如0.01
+     */
+    public LocalBloomFilter(long expectedInsertions, double fpp) {
+        super(expectedInsertions, fpp);
+        long wordCount = (bitSize + 63) >>> 6;
+        if (wordCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("expectedInsertions过大");
+        }
+        words = new AtomicLongArray((int) wordCount);
+    }
+
+    @Override
+    protected boolean allSet(long[] positions) {
+        for (long position : positions) {
+            if ((words.get((int) (position >>> 6)) & (1L << position)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void setAll(long[] positions) {
+        for (long position : positions) {
+            int index = (int) (position >>> 6);
+            long mask = 1L << position;
+            long word;
+            do {
+                word = words.get(index);
+                if ((word & mask) != 0) {
+                    break;
+                }
+            } while (!words.compareAndSet(index, word, word | mask));
+        }
+    }
+}
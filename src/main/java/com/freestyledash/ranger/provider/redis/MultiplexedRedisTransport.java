@@ -0,0 +1,792 @@
+package com.freestyledash.ranger.provider.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在少量非阻塞连接上复用并发请求的传输层
+ * <p>
+ * 调用线程把命令编码后放入某个连接的发送队列并等待回复，一个io线程负责全部连接的读写：
+ * 每次可写时把队列中积累的命令合并为一次写入(自动pipeline)，redis按接收顺序回复，
+ * io线程按发送顺序把回复交给对应的请求，并发越高每次写入包含的命令越多，几个连接就可以支撑数千个并发调用
+ * <p>
+ * 同一次调用的命令发送到同一个连接，保证按顺序执行；等待回复超时只让本次调用失败，连接保持不变，
+ * 迟到的回复到达后按顺序对应到原来的请求并丢弃；只有读写出错或redis关闭连接时才断开连接，其上未完成的请求全部失败，
+ * 之后的请求自动重新建立连接
+ * <p>
+ * example:
+ * MultiplexedRedisTransport transport = new MultiplexedRedisTransport.Builder()
+ * .setHost("127.0.0.1").setPort(6379).setConnections(2).build();
+ * new CacheProviderFactory.Builder().setPool(pool).setTransport(transport)...
+ * transport.close();//不再使用时关闭
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class MultiplexedRedisTransport implements RedisTransport {
+
+    private static Logger logger = LoggerFactory.getLogger(MultiplexedRedisTransport.class);
+
+    /**
+     * 默认的连接数量
+     */
+    public static final int DEFAULT_CONNECTIONS = 2;
+
+    /**
+     * 默认的等待回复时间，单位毫秒
+     */
+    public static final int DEFAULT_TIMEOUT = 2000;
+
+    private static final byte[] GET = SafeEncoder.encode("GET");
+
+    private static final byte[] PTTL = SafeEncoder.encode("PTTL");
+
+    private static final byte[] SET = SafeEncoder.encode("SET");
+
+    private static final byte[] SETEX = SafeEncoder.encode("SETEX");
+
+    private static final byte[] DEL = SafeEncoder.encode("DEL");
+
+    private static final byte[] EXISTS = SafeEncoder.encode("EXISTS");
+
+    private static final byte[] AUTH = SafeEncoder.encode("AUTH");
+
+    private static final byte[] SELECT = SafeEncoder.encode("SELECT");
+
+    /**
+     * 回复不完整，需要继续读取
+     */
+    static final Object INCOMPLETE = new Object();
+
+    private final InetSocketAddress address;
+
+    private final int timeoutMillis;
+
+    /**
+     * 每次建立连接后首先发送的AUTH和SELECT命令
+     */
+    private final List<byte[]> handshake;
+
+    private final Connection[] connections;
+
+    /**
+     * 发送队列有新命令的连接
+     */
+    private final Queue<Connection> ready = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final Selector selector;
+
+    private final Thread ioThread;
+
+    private final AtomicLong writeCount = new AtomicLong();
+
+    private final AtomicLong commandCount = new AtomicLong();
+
+    private volatile boolean closed;
+
+    private MultiplexedRedisTransport(Builder builder) {
+        if (builder.connections < 1 || builder.timeout < 1) {
+            throw new IllegalArgumentException("connections和timeout必须大于0");
+        }
+        this.address = new InetSocketAddress(builder.host, builder.port);
+        this.timeoutMillis = builder.timeout;
+        this.handshake = new ArrayList<>();
+        if (builder.password != null) {
+            handshake.add(encode(AUTH, SafeEncoder.encode(builder.password)));
+        }
+        if (builder.database != 0) {
+            handshake.add(encode(SELECT, SafeEncoder.encode(String.valueOf(builder.database))));
+        }
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new RuntimeException("创建selector失败", e);
+        }
+        this.connections = new Connection[builder.connections];
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = new Connection();
+        }
+        this.ioThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ioLoop();
+            }
+        }, "ranger-transport-io");
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    @Override
+    public List<byte[]> get(List<byte[]> keys) {
+        List<byte[]> commands = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            commands.add(encode(GET, key));
+        }
+        Object[] replies = execute(commands);
+        List<byte[]> values = new ArrayList<>(keys.size());
+        for (Object reply : replies) {
+            values.add((byte[]) reply);
+        }
+        return values;
+    }
+
+    @Override
+    public List<byte[]> getWithTtl(List<byte[]> keys, long[] pttls) {
+        List<byte[]> commands = new ArrayList<>(keys.size() * 2);
+        for (byte[] key : keys) {
+            commands.add(encode(GET, key));
+            commands.add(encode(PTTL, key));
+        }
+        Object[] replies = execute(commands);
+        List<byte[]> values = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            values.add((byte[]) replies[i * 2]);
+            pttls[i] = (Long) replies[i * 2 + 1];
+        }
+        return values;
+    }
+
+    @Override
+    public void set(List<byte[]> keys, List<byte[]> values, int[] expires) {
+        List<byte[]> commands = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            if (expires[i] == -1) {
+                commands.add(encode(SET, keys.get(i), values.get(i)));
+            } else if (expires[i] < 1) {
+                commands.add(encode(DEL, keys.get(i)));
+            } else {
+                commands.add(encode(SETEX, keys.get(i), SafeEncoder.encode(String.valueOf(expires[i])), values.get(i)));
+            }
+        }
+        execute(commands);
+    }
+
+    @Override
+    public void delete(List<byte[]> keys) {
+        byte[][] args = new byte[keys.size() + 1][];
+        args[0] = DEL;
+        for (int i = 0; i < keys.size(); i++) {
+            args[i + 1] = keys.get(i);
+        }
+        List<byte[]> commands = new ArrayList<>(1);
+        commands.add(encode(args));
+        execute(commands);
+    }
+
+    @Override
+    public boolean exists(byte[] key) {
+        List<byte[]> commands = new ArrayList<>(1);
+        commands.add(encode(EXISTS, key));
+        return (Long) execute(commands)[0] > 0;
+    }
+
+    /**
+     * 在同一个连接上按顺序发送一批命令并等待全部回复
+     *
+     * @param commands 编码后的命令
+     * @return 回复，顺序与commands一致
+     */
+    private Object[] execute(List<byte[]> commands) {
+        if (closed) {
+            throw new JedisConnectionException("传输层已经关闭");
+        }
+        Connection connection = connections[(next.getAndIncrement() & Integer.MAX_VALUE) % connections.length];
+        Batch batch = new Batch(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            connection.pending.add(new Request(commands.get(i), batch, i));
+        }
+        schedule(connection);
+        if (closed) {
+            //io线程可能已经退出，由调用线程让剩余的请求失败
+            connection.failPending(new JedisConnectionException("传输层已经关闭"));
+        }
+        Object[] replies;
+        try {
+            replies = batch.await(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JedisConnectionException("等待redis回复被中断", e);
+        }
+        if (replies == null) {
+            //请求仍然留在连接上，回复到达时被丢弃，不影响同一连接上的其它请求
+            throw new JedisConnectionException("等待redis回复超时" + timeoutMillis + "ms");
+        }
+        for (Object reply : replies) {
+            if (reply instanceof JedisConnectionException) {
+                throw new JedisConnectionException(((JedisConnectionException) reply).getMessage(),
+                        (JedisConnectionException) reply);
+            }
+            if (reply instanceof ErrorReply) {
+                throw new JedisDataException(((ErrorReply) reply).message);
+            }
+        }
+        return replies;
+    }
+
+    private void schedule(Connection connection) {
+        if (connection.scheduled.compareAndSet(false, true)) {
+            ready.add(connection);
+            selector.wakeup();
+        }
+    }
+
+    private void ioLoop() {
+        while (!closed) {
+            try {
+                selector.select();
+                Connection connection;
+                while ((connection = ready.poll()) != null) {
+                    connection.scheduled.set(false);
+                    connection.flush();
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    ((Connection) key.attachment()).handle(key);
+                }
+                selector.selectedKeys().clear();
+            } catch (IOException | RuntimeException e) {
+                logger.error("传输层io线程异常", e);
+            }
+        }
+        JedisConnectionException closedException = new JedisConnectionException("传输层已经关闭");
+        for (Connection connection : connections) {
+            connection.disconnect(closedException);
+            connection.failPending(closedException);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.warn("关闭selector失败", e);
+        }
+    }
+
+    /**
+     * @return 写入socket的次数
+     */
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    /**
+     * @return 发送的命令数量，除以{@link #getWriteCount()}为平均每次写入合并的命令数量
+     */
+    public long getCommandCount() {
+        return commandCount.get();
+    }
+
+    /**
+     * 关闭全部连接，未完成的请求全部失败
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            ioThread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 编码为RESP数组
+     */
+    static byte[] encode(byte[]... args) {
+        int size = 1 + digits(args.length) + 2;
+        for (byte[] arg : args) {
+            size += 1 + digits(arg.length) + 2 + arg.length + 2;
+        }
+        byte[] bytes = new byte[size];
+        int position = writeHeader(bytes, 0, (byte) '*', args.length);
+        for (byte[] arg : args) {
+            position = writeHeader(bytes, position, (byte) '$', arg.length);
+            System.arraycopy(arg, 0, bytes, position, arg.length);
+            position += arg.length;
+            bytes[position++] = '\r';
+            bytes[position++] = '\n';
+        }
+        return bytes;
+    }
+
+    private static int writeHeader(byte[] bytes, int position, byte type, int value) {
+        bytes[position++] = type;
+        int length = digits(value);
+        for (int i = position + length - 1; i >= position; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += length;
+        bytes[position++] = '\r';
+        bytes[position++] = '\n';
+        return position;
+    }
+
+    private static int digits(int value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * 解析一个完整的回复，数据不完整时返回{@link #INCOMPLETE}并且不移动读取位置
+     * 状态回复为String，错误回复为{@link ErrorReply}，整数回复为Long，批量回复为byte[]，数组回复为List
+     */
+    static Object parse(ByteBuffer in) {
+        int start = in.position();
+        Object reply = parseReply(in);
+        if (reply == INCOMPLETE) {
+            ((Buffer) in).position(start);
+        }
+        return reply;
+    }
+
+    private static Object parseReply(ByteBuffer in) {
+        if (!in.hasRemaining()) {
+            return INCOMPLETE;
+        }
+        byte type = in.get();
+        int end = lineEnd(in);
+        if (end < 0) {
+            return INCOMPLETE;
+        }
+        switch (type) {
+            case '+':
+                return readLine(in, end);
+            case '-':
+                return new ErrorReply(readLine(in, end));
+            case ':':
+                return readLong(in, end);
+            case '$': {
+                int length = (int) readLong(in, end);
+                if (length < 0) {
+                    return null;
+                }
+                if (in.remaining() < length + 2) {
+                    return INCOMPLETE;
+                }
+                byte[] bytes = new byte[length];
+                in.get(bytes);
+                ((Buffer) in).position(in.position() + 2);
+                return bytes;
+            }
+            case '*': {
+                int count = (int) readLong(in, end);
+                if (count < 0) {
+                    return null;
+                }
+                List<Object> elements = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    Object element = parseReply(in);
+                    if (element == INCOMPLETE) {
+                        return INCOMPLETE;
+                    }
+                    elements.add(element);
+                }
+                return elements;
+            }
+            default:
+                throw new JedisConnectionException("无法识别的回复类型" + (char) type);
+        }
+    }
+
+    /**
+     * @return 当前位置之后第一个\r\n中\r的位置，没有时返回-1
+     */
+    private static int lineEnd(ByteBuffer in) {
+        for (int i = in.position(); i < in.limit() - 1; i++) {
+            if (in.get(i) == '\r' && in.get(i + 1) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String readLine(ByteBuffer in, int end) {
+        byte[] bytes = new byte[end - in.position()];
+        in.get(bytes);
+        ((Buffer) in).position(end + 2);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long readLong(ByteBuffer in, int end) {
+        long value = 0;
+        boolean negative = false;
+        for (int i = in.position(); i < end; i++) {
+            byte b = in.get(i);
+            if (b == '-') {
+                negative = true;
+            } else {
+                value = value * 10 + (b - '0');
+            }
+        }
+        ((Buffer) in).position(end + 2);
+        return negative ? -value : value;
+    }
+
+    /**
+     * 一个连接，除了发送队列和状态标记，其余字段只由io线程访问
+     */
+    private final class Connection {
+
+        private final Queue<Request> pending = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * 已经发送，等待回复的请求，顺序与发送顺序一致
+         */
+        private final ArrayDeque<Request> inFlight = new ArrayDeque<>();
+
+        private SocketChannel channel;
+
+        private SelectionKey key;
+
+        /**
+         * 读模式，position到limit为尚未写入socket的数据
+         */
+        private ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+
+        /**
+         * 写模式，0到position为尚未解析的数据
+         */
+        private ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+
+        private Connection() {
+            ((Buffer) out).flip();
+        }
+
+        /**
+         * 把发送队列中的命令写入socket，需要时先建立连接
+         */
+        private void flush() {
+            if (pending.isEmpty() && !out.hasRemaining()) {
+                return;
+            }
+            if (channel == null) {
+                connect();
+            }
+            if (channel == null || !channel.isConnected()) {
+                return;
+            }
+            Request request;
+            int commands = 0;
+            out.compact();
+            while ((request = pending.poll()) != null) {
+                put(request.command);
+                inFlight.add(request);
+                commands++;
+            }
+            ((Buffer) out).flip();
+            commandCount.addAndGet(commands);
+            try {
+                write();
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void connect() {
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                boolean connected = channel.connect(address);
+                key = channel.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+            } catch (IOException e) {
+                disconnect(new JedisConnectionException("连接redis失败" + address, e));
+                failPending(new JedisConnectionException("连接redis失败" + address, e));
+                return;
+            }
+            for (byte[] command : handshake) {
+                append(command);
+                inFlight.add(new Request(command, null, 0));
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            if (!key.isValid()) {
+                return;
+            }
+            try {
+                if (key.isConnectable()) {
+                    if (!channel.finishConnect()) {
+                        return;
+                    }
+                    key.interestOps(SelectionKey.OP_READ);
+                    flush();
+                    return;
+                }
+                if (key.isWritable()) {
+                    write();
+                }
+                if (key.isReadable()) {
+                    read();
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * 连接异常，已经发送的请求全部失败；尚未发送的请求留在队列中，在重新建立的连接上发送，
+         * 包括断开连接后被唤醒的调用方立即发起的新请求
+         */
+        private void fail(Exception e) {
+            JedisConnectionException failure = e instanceof JedisConnectionException
+                    ? (JedisConnectionException) e : new JedisConnectionException("redis连接异常" + address, e);
+            logger.warn(failure.getMessage());
+            disconnect(failure);
+            if (!pending.isEmpty()) {
+                schedule(this);
+            }
+        }
+
+        /**
+         * 追加一条命令，调用前后out都处于读模式
+         */
+        private void append(byte[] command) {
+            out.compact();
+            put(command);
+            ((Buffer) out).flip();
+        }
+
+        /**
+         * out处于写模式时追加一条命令，空间不足时扩容
+         */
+        private void put(byte[] command) {
+            if (out.remaining() < command.length) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + command.length));
+                ((Buffer) out).flip();
+                bigger.put(out);
+                out = bigger;
+            }
+            out.put(command);
+        }
+
+        private void write() {
+            if (!out.hasRemaining()) {
+                return;
+            }
+            try {
+                channel.write(out);
+            } catch (IOException e) {
+                throw new JedisConnectionException("写入redis失败" + address, e);
+            }
+            writeCount.incrementAndGet();
+            key.interestOps(out.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        private void read() throws IOException {
+            int read;
+            while ((read = channel.read(in)) > 0) {
+                ((Buffer) in).flip();
+                Object reply;
+                while ((reply = parse(in)) != INCOMPLETE) {
+                    complete(reply);
+                }
+                in.compact();
+                if (!in.hasRemaining()) {
+                    //一个回复比缓冲区大
+                    ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+                    ((Buffer) in).flip();
+                    bigger.put(in);
+                    in = bigger;
+                }
+            }
+            if (read < 0) {
+                throw new JedisConnectionException("redis关闭了连接" + address);
+            }
+        }
+
+        private void complete(Object reply) {
+            Request request = inFlight.poll();
+            if (request == null) {
+                throw new JedisConnectionException("收到了没有对应请求的回复");
+            }
+            if (request.batch != null) {
+                request.batch.complete(request.index, reply);
+            } else if (reply instanceof ErrorReply) {
+                throw new JedisConnectionException("初始化连接失败:" + ((ErrorReply) reply).message);
+            }
+        }
+
+        /**
+         * 关闭socket，已经发送的请求全部失败
+         */
+        private void disconnect(JedisConnectionException failure) {
+            if (channel != null) {
+                if (key != null) {
+                    key.cancel();
+                }
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.warn("关闭redis连接失败", e);
+                }
+                channel = null;
+                key = null;
+            }
+            ((Buffer) out).clear().flip();
+            ((Buffer) in).clear();
+            Request request;
+            while ((request = inFlight.poll()) != null) {
+                if (request.batch != null) {
+                    request.batch.complete(request.index, failure);
+                }
+            }
+        }
+
+        private void failPending(JedisConnectionException failure) {
+            Request request;
+            while ((request = pending.poll()) != null) {
+                request.batch.complete(request.index, failure);
+            }
+        }
+    }
+
+    private static final class Request {
+
+        private final byte[] command;
+
+        /**
+         * 连接初始化命令为null
+         */
+        private final Batch batch;
+
+        private final int index;
+
+        private Request(byte[] command, Batch batch, int index) {
+            this.command = command;
+            this.batch = batch;
+            this.index = index;
+        }
+    }
+
+    /**
+     * 一次调用的全部回复，调用方等待超时后仍然可能被io线程写入，写入的回复不再被读取
+     */
+    private static final class Batch {
+
+        private final Object[] replies;
+
+        private int remaining;
+
+        private Batch(int size) {
+            this.replies = new Object[size];
+            this.remaining = size;
+        }
+
+        private synchronized void complete(int index, Object reply) {
+            replies[index] = reply;
+            if (--remaining == 0) {
+                notifyAll();
+            }
+        }
+
+        /**
+         * @return 全部回复，超时返回null
+         */
+        private synchronized Object[] await(long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (remaining > 0) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return null;
+                }
+                wait(wait);
+            }
+            return replies;
+        }
+    }
+
+    /**
+     * 错误回复，在调用线程中转换为JedisDataException
+     */
+    static final class ErrorReply {
+
+        private final String message;
+
+        private ErrorReply(String message) {
+            this.message = message;
+        }
+    }
+
+    public static class Builder {
+
+        private String host = "127.0.0.1";
+
+        private int port = 6379;
+
+        private int connections = DEFAULT_CONNECTIONS;
+
+        private int timeout = DEFAULT_TIMEOUT;
+
+        private String password;
+
+        private int database;
+
+        public Builder setHost(String host) {
+            this.host = host;
+            return this;
+        }
+
+        public Builder setPort(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * @param connections 复用的连接数量
+         */
+        public Builder setConnections(int connections) {
+            this.connections = connections;
+            return this;
+        }
+
+        /**
+         * @param timeout 等待回复的时间，单位毫秒
+         */
+        public Builder setTimeout(int timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public Builder setPassword(String password) {
+            this.password = password;
+            return this;
+        }
+
+        public Builder setDatabase(int database) {
+            this.database = database;
+            return this;
+        }
+
+        public MultiplexedRedisTransport build() {
+            return new MultiplexedRedisTransport(this);
+        }
+    }
+}
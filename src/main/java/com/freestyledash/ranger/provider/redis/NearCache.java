@@ -0,0 +1,208 @@
+package com.freestyledash.ranger.provider.redis;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * jvm内的有界LRU缓存
+ * 按键的hash分为多个段，每个段是一个按访问顺序排列的LinkedHashMap，段之间互不阻塞
+ * 条目带有过期时间点，读取时发现过期立即删除
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+final class NearCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+
+    /**
+     * 失效操作的计数，用于避免"读取远程数据期间发生失效"时写入过期的数据
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries 最多缓存的条目数量
+     */
+    NearCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries必须大于0");
+        }
+        segments = new Segment[SEGMENTS];
+        int perSegment = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    /**
+     * @param key 键
+     * @param now 当前时间
+     * @return 未过期的对象，不存在返回null
+     */
+    Object get(String key, long now) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Node node = segment.get(key);
+            if (node == null) {
+                return null;
+            }
+            if (node.expireAt != CacheEntry.NEVER && node.expireAt <= now) {
+                segment.remove(key);
+                return null;
+            }
+            return node.value;
+        }
+    }
+
+    /**
+     * 获得当前的失效计数，在读取远程数据之前调用，并传给{@link #put(String, Object, long, long)}
+     *
+     * @return 失效计数
+     */
+    long stamp() {
+        return invalidations.get();
+    }
+
+    /**
+     * 写入对象，如果从stamp之后发生过失效操作则放弃写入
+     *
+     * @param key      键
+     * @param value    对象
+     * @param expireAt 过期时间点
+     * @param stamp    读取远程数据之前的失效计数
+     */
+    void put(String key, Object value, long expireAt, long stamp) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            if (invalidations.get() != stamp) {
+                return;
+            }
+            segment.put(key, new Node(value, expireAt));
+        }
+    }
+
+    /**
+     * 如果键对应的对象仍然是expected，则替换为value，过期时间不变
+     *
+     * @param key      键
+     * @param expected 期望的旧对象
+     * @param value    新对象
+     */
+    void replace(String key, Object expected, Object value) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Node node = segment.get(key);
+            if (node != null && node.value == expected) {
+                segment.put(key, new Node(value, node.expireAt));
+            }
+        }
+    }
+
+    /**
+     * 按照最近访问的顺序遍历未过期的条目，每个段最多limit / 段数个
+     * 遍历时逐个段复制条目，不会长时间阻塞读写
+     *
+     * @param limit   最多遍历的条目数量
+     * @param now     当前时间
+     * @param visitor 接收条目
+     */
+    void forEachRecent(int limit, long now, Visitor visitor) {
+        int perSegment = Math.max(1, limit / SEGMENTS);
+        for (Segment segment : segments) {
+            List<Map.Entry<String, Node>> entries;
+            synchronized (segment) {
+                entries = new ArrayList<>(segment.entrySet());
+            }
+            int visited = 0;
+            for (int i = entries.size() - 1; i >= 0 && visited < perSegment; i--) {
+                Node node = entries.get(i).getValue();
+                if (node.expireAt == CacheEntry.NEVER || node.expireAt > now) {
+                    visitor.visit(entries.get(i).getKey(), node.value, node.expireAt);
+                    visited++;
+                }
+            }
+        }
+    }
+
+    void invalidate(String key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            invalidations.incrementAndGet();
+            segment.remove(key);
+        }
+    }
+
+    void clear() {
+        invalidations.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    long getEvictionCount() {
+        return evictions.get();
+    }
+
+    interface Visitor {
+
+        void visit(String key, Object value, long expireAt);
+    }
+
+    private static final class Node {
+
+        private final Object value;
+
+        private final long expireAt;
+
+        private Node(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private final class Segment extends LinkedHashMap<String, Node> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        private Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Node> eldest) {
+            if (size() > maxEntries) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
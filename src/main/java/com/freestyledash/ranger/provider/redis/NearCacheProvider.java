@@ -0,0 +1,578 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.metrics.MetricNames;
+import com.freestyledash.ranger.provider.BulkLoader;
+import com.freestyledash.ranger.provider.CacheLoader;
+import com.freestyledash.ranger.provider.ForwardingCacheProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 在redis前增加一层jvm内缓存(near cache)的CacheProvider
+ * <p>
+ * 本地条目的过期时间不会超过redis中的过期时间，也不会超过配置的本地最长存活时间
+ * 通过本对象执行的写入和删除会先让本地条目失效，再通过redis频道广播给其他jvm，
+ * 其他jvm收到消息后删除对应的本地条目；订阅断开期间无法收到消息，因此重新订阅时会清空本地缓存
+ * <p>
+ * 本地缓存直接返回同一个对象实例，调用方不能修改读取到的对象
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class NearCacheProvider extends ForwardingCacheProvider {
+
+    private static Logger logger = LoggerFactory.getLogger(NearCacheProvider.class);
+
+    /**
+     * 默认的失效广播频道
+     */
+    public static final String DEFAULT_CHANNEL = "ranger:invalidate";
+
+    /**
+     * 消息中实例id与键的分隔符
+     */
+    private static final String SEPARATOR = ":";
+
+    /**
+     * 订阅断开后重新订阅的间隔，单位毫秒
+     */
+    private static final long RESUBSCRIBE_INTERVAL = 1000;
+
+    private final CacheProviderCore core;
+
+    /**
+     * 堆外缓存，作为本地缓存的第二级，未开启时为null
+     */
+    private final OffHeapCacheProvider offHeapCacheProvider;
+
+    private final NearCache nearCache;
+
+    /**
+     * 本地条目最长存活时间，单位毫秒
+     */
+    private final long maxLocalTtl;
+
+    private final String channel;
+
+    /**
+     * 当前实例的id，用于忽略自己发出的失效消息
+     */
+    private final String instanceId = UUID.randomUUID().toString().replace("-", "");
+
+    private final AtomicLong localHits = new AtomicLong();
+
+    private final AtomicLong localMisses = new AtomicLong();
+
+    private final AtomicLong remoteHits = new AtomicLong();
+
+    private final AtomicLong remoteMisses = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    private volatile JedisPubSub subscriber;
+
+    private final CountDownLatch subscribed = new CountDownLatch(1);
+
+    private final Thread subscribeThread;
+
+    /**
+     * @param core        redis缓存
+     * @param maxEntries  本地最多缓存的条目数量
+     * @param maxLocalTtl 本地条目最长存活时间，单位秒
+     * @param channel     失效广播频道
+     */
+    NearCacheProvider(CacheProviderCore core, int maxEntries, int maxLocalTtl, String channel) {
+        this(core, null, maxEntries, maxLocalTtl, channel);
+    }
+
+    /**
+     * @param core                 redis缓存
+     * @param offHeapCacheProvider 堆外缓存，本地未命中时先查找这里，写入也经过它，可以为null
+     * @param maxEntries           本地最多缓存的条目数量
+     * @param maxLocalTtl          本地条目最长存活时间，单位秒
+     * @param channel              失效广播频道
+     */
+    NearCacheProvider(CacheProviderCore core, OffHeapCacheProvider offHeapCacheProvider, int maxEntries,
+                      int maxLocalTtl, String channel) {
+        super(offHeapCacheProvider != null ? offHeapCacheProvider : core);
+        if (maxLocalTtl < 1) {
+            throw new IllegalArgumentException("maxLocalTtl必须大于0");
+        }
+        this.core = core;
+        this.offHeapCacheProvider = offHeapCacheProvider;
+        this.nearCache = new NearCache(maxEntries);
+        this.maxLocalTtl = maxLocalTtl * 1000L;
+        this.channel = channel;
+        subscribeThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                subscribeLoop();
+            }
+        }, "ranger-near-cache-invalidation");
+        subscribeThread.setDaemon(true);
+        subscribeThread.start();
+    }
+
+    @Override
+    public <T> T getCache(String key, Class<T> clazz) {
+        long now = System.currentTimeMillis();
+        T local = getLocal(key, clazz, now);
+        if (local != null) {
+            localHits.incrementAndGet();
+            core.getMetrics().increment(MetricNames.NEAR_HIT, key, 1);
+            return local;
+        }
+        localMisses.incrementAndGet();
+        core.getMetrics().increment(MetricNames.NEAR_MISS, key, 1);
+        long stamp = nearCache.stamp();
+        CacheEntry<T> entry = fetch(Collections.singletonList(key), clazz).get(0);
+        if (entry == null || entry.getValue() == null) {
+            remoteMisses.incrementAndGet();
+            return null;
+        }
+        remoteHits.incrementAndGet();
+        nearCache.put(key, entry.getValue(), localExpireAt(entry.getExpireAt(), now), stamp);
+        return entry.getValue();
+    }
+
+    @Override
+    public <T> List<T> getCache(List<String> keys, Class<T> clazz) {
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long now = System.currentTimeMillis();
+        List<T> returnList = new ArrayList<>(keys.size());
+        List<String> missed = new ArrayList<>();
+        List<Integer> missedIndexes = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            T local = getLocal(keys.get(i), clazz, now);
+            if (local != null) {
+                localHits.incrementAndGet();
+                core.getMetrics().increment(MetricNames.NEAR_HIT, keys.get(i), 1);
+                returnList.add(local);
+            } else {
+                localMisses.incrementAndGet();
+                core.getMetrics().increment(MetricNames.NEAR_MISS, keys.get(i), 1);
+                returnList.add(null);
+                missed.add(keys.get(i));
+                missedIndexes.add(i);
+            }
+        }
+        if (missed.isEmpty()) {
+            return returnList;
+        }
+        long stamp = nearCache.stamp();
+        List<CacheEntry<T>> entries = fetch(missed, clazz);
+        for (int i = 0; i < missed.size(); i++) {
+            CacheEntry<T> entry = entries.get(i);
+            if (entry == null || entry.getValue() == null) {
+                remoteMisses.incrementAndGet();
+                continue;
+            }
+            remoteHits.incrementAndGet();
+            nearCache.put(missed.get(i), entry.getValue(), localExpireAt(entry.getExpireAt(), now), stamp);
+            returnList.set(missedIndexes.get(i), entry.getValue());
+        }
+        return returnList;
+    }
+
+    /**
+     * 按分段大小依次读取，每段先查找本地条目，未命中的键读取redis后放入本地再回调
+     */
+    @Override
+    public <T> void getCache(List<String> keys, Class<T> clazz, BiConsumer<String, T> consumer) {
+        BatchTasks.getInChunks(this, keys, clazz, core.getBatchChunkSize(), consumer);
+    }
+
+    @Override
+    public boolean setCache(String key, Object toStore, int ttl) {
+        boolean result = delegate.setCache(key, toStore, ttl);
+        invalidate(Collections.singletonList(key));
+        return result;
+    }
+
+    @Override
+    public boolean setCache(Map<String, Object> params, int ttl) {
+        boolean result = delegate.setCache(params, ttl);
+        invalidate(params.keySet());
+        return result;
+    }
+
+    @Override
+    public void deleteCache(List<String> keys) {
+        delegate.deleteCache(keys);
+        invalidate(keys);
+    }
+
+    @Override
+    public void deleteCache(String key) {
+        delegate.deleteCache(key);
+        invalidate(Collections.singletonList(key));
+    }
+
+    @Override
+    public <T> T getOrLoad(String key, Class<T> clazz, CacheLoader<T> loader, int ttl) {
+        long now = System.currentTimeMillis();
+        T local = getLocal(key, clazz, now);
+        if (local != null) {
+            localHits.incrementAndGet();
+            core.getMetrics().increment(MetricNames.NEAR_HIT, key, 1);
+            return local;
+        }
+        localMisses.incrementAndGet();
+        core.getMetrics().increment(MetricNames.NEAR_MISS, key, 1);
+        long stamp = nearCache.stamp();
+        CacheEntry<T> entry = fetch(Collections.singletonList(key), clazz).get(0);
+        if (entry != null && entry.getValue() == null) {
+            //空缓存标记，不在本地缓存
+            remoteHits.incrementAndGet();
+            return null;
+        }
+        if (entry != null) {
+            remoteHits.incrementAndGet();
+            core.refreshIfNeeded(key, entry, loader, ttl);
+            nearCache.put(key, entry.getValue(), localExpireAt(entry.getExpireAt(), now), stamp);
+            return entry.getValue();
+        }
+        remoteMisses.incrementAndGet();
+        T loaded = delegate.getOrLoad(key, clazz, loader, ttl);
+        if (loaded != null) {
+            long expireAt = ttl == -1 ? CacheEntry.NEVER : now + ttl * 1000L;
+            nearCache.put(key, loaded, localExpireAt(expireAt, now), stamp);
+        }
+        return loaded;
+    }
+
+    /**
+     * 本地命中的键直接返回，其余交给redis；loader加载的对象同时放入本地缓存
+     */
+    @Override
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> clazz, final BulkLoader<T> loader, int ttl) {
+        long now = System.currentTimeMillis();
+        Map<String, T> local = new HashMap<>();
+        List<String> missed = new ArrayList<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            T value = getLocal(key, clazz, now);
+            if (value != null) {
+                localHits.incrementAndGet();
+                core.getMetrics().increment(MetricNames.NEAR_HIT, key, 1);
+                local.put(key, value);
+            } else {
+                localMisses.incrementAndGet();
+                core.getMetrics().increment(MetricNames.NEAR_MISS, key, 1);
+                missed.add(key);
+            }
+        }
+        Map<String, T> remote = Collections.emptyMap();
+        if (!missed.isEmpty()) {
+            long stamp = nearCache.stamp();
+            final Map<String, T> loaded = new HashMap<>();
+            remote = delegate.getAll(missed, clazz, new BulkLoader<T>() {
+                @Override
+                public Map<String, T> load(Collection<String> loadKeys) {
+                    Map<String, T> result = loader.load(loadKeys);
+                    if (result != null) {
+                        loaded.putAll(result);
+                    }
+                    return result;
+                }
+            }, ttl);
+            long expireAt = ttl == -1 ? CacheEntry.NEVER : now + ttl * 1000L;
+            for (Map.Entry<String, T> entry : loaded.entrySet()) {
+                if (entry.getValue() != null && remote.containsKey(entry.getKey())) {
+                    nearCache.put(entry.getKey(), entry.getValue(), localExpireAt(expireAt, now), stamp);
+                }
+            }
+        }
+        Map<String, T> returnMap = new LinkedHashMap<>();
+        for (String key : keys) {
+            T value = local.containsKey(key) ? local.get(key) : remote.get(key);
+            if (value != null) {
+                returnMap.put(key, value);
+            }
+        }
+        return returnMap;
+    }
+
+    /**
+     * 读取本地条目，快照中加载的条目在首次读取时反序列化
+     *
+     * @return 本地条目，不存在或者类型不符时返回null
+     */
+    private <T> T getLocal(String key, Class<T> clazz, long now) {
+        Object local = nearCache.get(key, now);
+        if (local instanceof SerializedValue) {
+            try {
+                T value = core.getSerializationUtil().deserialize(((SerializedValue) local).buffer(), clazz);
+                nearCache.replace(key, local, value);
+                return value;
+            } catch (RuntimeException e) {
+                logger.debug("快照条目{}反序列化失败", key, e);
+                nearCache.invalidate(key);
+                return null;
+            }
+        }
+        return clazz.isInstance(local) ? clazz.cast(local) : null;
+    }
+
+    /**
+     * 放入快照中加载的条目
+     *
+     * @param key      缓存的键
+     * @param value    序列化后的值
+     * @param expireAt 本地过期时间点
+     * @param stamp    加载快照之前的失效计数
+     */
+    void putSerialized(String key, SerializedValue value, long expireAt, long stamp) {
+        nearCache.put(key, value, localExpireAt(expireAt, System.currentTimeMillis()), stamp);
+    }
+
+    long stamp() {
+        return nearCache.stamp();
+    }
+
+    /**
+     * 按照最近访问的顺序遍历本地条目
+     */
+    void forEachRecent(int limit, NearCache.Visitor visitor) {
+        nearCache.forEachRecent(limit, System.currentTimeMillis(), visitor);
+    }
+
+    /**
+     * 等待首次订阅失效频道成功，订阅成功时会清空本地缓存，此后放入的条目才能通过失效消息保持一致
+     *
+     * @param timeoutMillis 最长等待时间，单位毫秒
+     * @return 是否已经订阅成功
+     */
+    boolean awaitSubscribed(long timeoutMillis) {
+        try {
+            return subscribed.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 从redis读取一批键并放入本地缓存，本地条目的过期时间不超过redis中的过期时间
+     *
+     * @param keys  缓存的键
+     * @param clazz 缓存对象的类型
+     * @return 放入本地缓存的数量
+     */
+    <T> int preload(List<String> keys, Class<T> clazz) {
+        long now = System.currentTimeMillis();
+        long stamp = nearCache.stamp();
+        List<CacheEntry<T>> entries = fetch(keys, clazz);
+        int loaded = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            CacheEntry<T> entry = entries.get(i);
+            if (entry != null && entry.getValue() != null) {
+                nearCache.put(keys.get(i), entry.getValue(), localExpireAt(entry.getExpireAt(), now), stamp);
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    CacheProviderCore getCore() {
+        return core;
+    }
+
+    /**
+     * 本地未命中时读取，开启堆外缓存时先查找堆外缓存
+     */
+    private <T> List<CacheEntry<T>> fetch(List<String> keys, Class<T> clazz) {
+        return offHeapCacheProvider != null ? offHeapCacheProvider.getEntries(keys, clazz) : core.getEntries(keys, clazz);
+    }
+
+    private void invalidateAll(String key) {
+        nearCache.invalidate(key);
+        if (offHeapCacheProvider != null) {
+            offHeapCacheProvider.invalidateLocal(key);
+        }
+    }
+
+    private void clearAll() {
+        nearCache.clear();
+        if (offHeapCacheProvider != null) {
+            offHeapCacheProvider.clearLocal();
+        }
+    }
+
+    /**
+     * 让本地条目失效并通知其他jvm
+     *
+     * @param keys 被修改的键
+     */
+    void invalidate(Collection<String> keys) {
+        for (String key : keys) {
+            nearCache.invalidate(key);
+        }
+        publish(keys);
+    }
+
+    /**
+     * 只让本地条目失效，不广播
+     *
+     * @param key 被修改的键
+     */
+    void invalidateLocal(String key) {
+        invalidateAll(key);
+    }
+
+    /**
+     * 将失效广播加入pipeline，用于在批量写入的同一次往返中通知其他jvm
+     *
+     * @param pipeline 当前连接的pipeline
+     * @param key      被修改的键
+     */
+    void publish(Pipeline pipeline, String key) {
+        pipeline.publish(channel, instanceId + SEPARATOR + key);
+    }
+
+    /**
+     * 本地条目的过期时间点，取redis过期时间与本地最长存活时间中较早的一个
+     */
+    private long localExpireAt(long remoteExpireAt, long now) {
+        long localExpireAt = now + maxLocalTtl;
+        if (remoteExpireAt == CacheEntry.NEVER) {
+            return localExpireAt;
+        }
+        return Math.min(remoteExpireAt, localExpireAt);
+    }
+
+    /**
+     * 广播失效消息
+     */
+    private void publish(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        Jedis resource = core.getPool().getResource();
+        try {
+            Pipeline pipelined = resource.pipelined();
+            for (String key : keys) {
+                publish(pipelined, key);
+            }
+            pipelined.sync();
+        } catch (RuntimeException e) {
+            logger.warn("广播缓存失效消息失败", e);
+        } finally {
+            resource.close();
+        }
+    }
+
+    /**
+     * 持续订阅失效频道，断开后重新订阅
+     * 订阅期间会占用连接池中的一个连接
+     */
+    private void subscribeLoop() {
+        while (running) {
+            JedisPubSub pubSub = new JedisPubSub() {
+                @Override
+                public void onSubscribe(String channel, int subscribedChannels) {
+                    //断开期间可能错过了失效消息
+                    clearAll();
+                    subscribed.countDown();
+                }
+
+                @Override
+                public void onMessage(String channel, String message) {
+                    int index = message.indexOf(SEPARATOR);
+                    if (index < 0 || instanceId.equals(message.substring(0, index))) {
+                        return;
+                    }
+                    invalidateAll(message.substring(index + 1));
+                }
+            };
+            subscriber = pubSub;
+            Jedis resource = null;
+            try {
+                resource = core.getPool().getResource();
+                resource.subscribe(pubSub, channel);
+            } catch (RuntimeException e) {
+                if (running) {
+                    logger.warn("订阅缓存失效频道失败", e);
+                }
+            } finally {
+                if (resource != null) {
+                    resource.close();
+                }
+            }
+            if (running) {
+                clearAll();
+                try {
+                    Thread.sleep(RESUBSCRIBE_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 停止订阅失效频道，并清空本地缓存
+     */
+    public void close() {
+        running = false;
+        JedisPubSub pubSub = subscriber;
+        if (pubSub != null && pubSub.isSubscribed()) {
+            pubSub.unsubscribe();
+        }
+        subscribeThread.interrupt();
+        nearCache.clear();
+    }
+
+    /**
+     * @return 本地缓存命中次数
+     */
+    public long getLocalHitCount() {
+        return localHits.get();
+    }
+
+    /**
+     * @return 本地缓存未命中次数
+     */
+    public long getLocalMissCount() {
+        return localMisses.get();
+    }
+
+    /**
+     * @return 本地未命中后redis命中次数
+     */
+    public long getRemoteHitCount() {
+        return remoteHits.get();
+    }
+
+    /**
+     * @return 本地未命中后redis也未命中的次数
+     */
+    public long getRemoteMissCount() {
+        return remoteMisses.get();
+    }
+
+    /**
+     * @return 因容量不足被淘汰的本地条目数量
+     */
+    public long getEvictionCount() {
+        return nearCache.getEvictionCount();
+    }
+
+    /**
+     * @return 本地缓存当前的条目数量
+     */
+    public int getLocalSize() {
+        return nearCache.size();
+    }
+}
@@ -0,0 +1,268 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.metrics.CacheMetrics;
+import com.freestyledash.ranger.metrics.MetricNames;
+import com.freestyledash.ranger.util.serialization.CompressingSerializationUtil;
+import com.freestyledash.ranger.util.serialization.SerializationUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * jvm内缓存的快照，用于重启之后直接从本地文件恢复热点数据，减少启动初期对redis和数据源的压力
+ * <p>
+ * 快照保存最近访问的条目序列化后的值、过期时间以及序列化工具的标识，先写入临时文件再替换，不会读到写了一半的文件
+ * 加载时通过FileChannel将文件映射到内存，条目直接引用映射内存中的数据，首次被读取时才反序列化；
+ * 已经过期的条目和序列化工具不一致的快照会被跳过
+ * <p>
+ * 进程停止期间其他jvm发出的失效消息无法收到，快照条目的本地过期时间仍然受jvm内缓存最长存活时间限制
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class NearCacheSnapshot {
+
+    private static Logger logger = LoggerFactory.getLogger(NearCacheSnapshot.class);
+
+    private static final int MAGIC = 0x52475331;
+
+    private static final int VERSION = 1;
+
+    private final NearCacheProvider nearCacheProvider;
+
+    private final Path file;
+
+    private final int maxEntries;
+
+    private final CacheMetrics metrics;
+
+    /**
+     * 序列化工具的标识，与快照中的不一致时不加载
+     */
+    private final String serializerId;
+
+    private ScheduledExecutorService scheduler;
+
+    private volatile long lastLoadMillis = -1;
+
+    /**
+     * @param nearCacheProvider jvm内缓存
+     * @param file              快照文件
+     * @param maxEntries        快照最多保存的条目数量
+     * @param metrics           指标收集
+     */
+    NearCacheSnapshot(NearCacheProvider nearCacheProvider, Path file, int maxEntries, CacheMetrics metrics) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries必须大于0");
+        }
+        this.nearCacheProvider = nearCacheProvider;
+        this.file = file;
+        this.maxEntries = maxEntries;
+        this.metrics = metrics;
+        this.serializerId = serializerId(nearCacheProvider.getCore().getSerializationUtil());
+    }
+
+    private static String serializerId(SerializationUtil util) {
+        if (util instanceof CompressingSerializationUtil) {
+            return util.getClass().getName() + "(" + serializerId(((CompressingSerializationUtil) util).getDelegate()) + ")";
+        }
+        return util.getClass().getName();
+    }
+
+    /**
+     * 将最近访问的条目写入快照文件
+     *
+     * @return 写入的条目数量
+     */
+    public synchronized int save() {
+        final SerializationUtil util = nearCacheProvider.getCore().getSerializationUtil();
+        final List<String> keys = new ArrayList<>();
+        final List<Long> expireAts = new ArrayList<>();
+        final List<byte[]> values = new ArrayList<>();
+        nearCacheProvider.forEachRecent(maxEntries, new NearCache.Visitor() {
+            @Override
+            public void visit(String key, Object value, long expireAt) {
+                byte[] bytes;
+                if (value instanceof SerializedValue) {
+                    ByteBuffer buffer = ((SerializedValue) value).buffer();
+                    bytes = new byte[buffer.remaining()];
+                    buffer.get(bytes);
+                } else {
+                    try {
+                        bytes = util.serialize(value);
+                    } catch (RuntimeException e) {
+                        logger.debug("快照条目{}序列化失败", key, e);
+                        return;
+                    }
+                }
+                keys.add(key);
+                expireAts.add(expireAt);
+                values.add(bytes);
+            }
+        });
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeBytes(out, serializerId.getBytes(StandardCharsets.UTF_8));
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(keys.size());
+                for (int i = 0; i < keys.size(); i++) {
+                    writeBytes(out, keys.get(i).getBytes(StandardCharsets.UTF_8));
+                    out.writeLong(expireAts.get(i));
+                    writeBytes(out, values.get(i));
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("写入快照" + file + "失败", e);
+        }
+        return keys.size();
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * 从快照文件加载未过期的条目，文件不存在、格式不正确或者序列化工具不一致时不加载
+     *
+     * @return 加载的条目数量
+     */
+    public synchronized int load() {
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        int loaded = 0;
+        int expired = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            //关闭channel之后映射仍然有效，直到所有条目都不再被引用
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                logger.warn("快照{}格式不正确,不加载", file);
+                return 0;
+            }
+            String id = new String(readBytes(buffer), StandardCharsets.UTF_8);
+            if (!serializerId.equals(id)) {
+                logger.warn("快照{}使用的序列化工具{}与当前{}不一致,不加载", file, id, serializerId);
+                return 0;
+            }
+            buffer.getLong();
+            int count = buffer.getInt();
+            long now = System.currentTimeMillis();
+            long stamp = nearCacheProvider.stamp();
+            for (int i = 0; i < count; i++) {
+                String key = new String(readBytes(buffer), StandardCharsets.UTF_8);
+                long expireAt = buffer.getLong();
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                if (expireAt != CacheEntry.NEVER && expireAt <= now) {
+                    buffer.position(buffer.position() + length);
+                    expired++;
+                    continue;
+                }
+                ByteBuffer value = buffer.duplicate();
+                value.limit(buffer.position() + length);
+                buffer.position(buffer.position() + length);
+                nearCacheProvider.putSerialized(key, new SerializedValue(value.slice()), expireAt, stamp);
+                loaded++;
+            }
+        } catch (IOException | BufferUnderflowException e) {
+            logger.warn("读取快照{}失败,已加载{}个条目", file, loaded, e);
+        }
+        long elapsed = System.nanoTime() - start;
+        lastLoadMillis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+        metrics.record(MetricNames.SNAPSHOT_LOAD_TIME, null, elapsed);
+        logger.info("从快照{}加载{}个条目,跳过{}个已过期条目,耗时{}ms", file, loaded, expired, lastLoadMillis);
+        return loaded;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 开始定期保存快照
+     *
+     * @param periodSeconds 保存间隔，单位秒
+     */
+    synchronized void start(int periodSeconds) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ranger-near-cache-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    save();
+                } catch (RuntimeException e) {
+                    logger.warn("定期保存快照失败", e);
+                }
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 停止定期保存并保存最后一次快照
+     */
+    void close() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdown();
+            }
+        }
+        try {
+            save();
+        } catch (RuntimeException e) {
+            logger.warn("保存快照失败", e);
+        }
+    }
+
+    /**
+     * @return 最近一次加载快照的耗时，单位毫秒，没有加载过时返回-1
+     */
+    public long getLastLoadMillis() {
+        return lastLoadMillis;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
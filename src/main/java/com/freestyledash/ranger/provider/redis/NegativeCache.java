@@ -0,0 +1,21 @@
+package com.freestyledash.ranger.provider.redis;
+
+/**
+ * 空值缓存的标记
+ * loader返回null时写入该标记，读取时当作命中但返回null，避免不存在的键反复回源
+ * 标记以压缩格式头的魔数开头，但类型字节不是任何一种压缩格式，不会与正常的序列化结果冲突
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+final class NegativeCache {
+
+    static final byte[] SENTINEL = {(byte) 0xC7, (byte) 'N'};
+
+    private NegativeCache() {
+    }
+
+    static boolean isSentinel(byte[] bytes) {
+        return bytes.length == 2 && bytes[0] == SENTINEL[0] && bytes[1] == SENTINEL[1];
+    }
+}
@@ -0,0 +1,315 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.metrics.MetricNames;
+import com.freestyledash.ranger.provider.BulkLoader;
+import com.freestyledash.ranger.provider.CacheLoader;
+import com.freestyledash.ranger.provider.ForwardingCacheProvider;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 在堆外内存中保存序列化结果的本地缓存
+ * <p>
+ * 与{@link NearCacheProvider}保存对象不同，这里保存从redis读取的原始数据，每次命中时重新反序列化，
+ * 可以在不增加gc停顿的前提下缓存几个GB的数据；同时开启jvm内缓存时作为它的第二级，jvm内缓存未命中时先查找这里，
+ * 并且与jvm内缓存一起接收其他jvm的失效消息；单独使用时本地条目只依靠最长存活时间和本jvm的写入失效
+ * <p>
+ * 本地条目的过期时间不会超过redis中的过期时间和最长存活时间中较早的一个
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class OffHeapCacheProvider extends ForwardingCacheProvider {
+
+    private final CacheProviderCore core;
+
+    private final OffHeapStore store;
+
+    /**
+     * 本地条目最长存活时间，单位毫秒
+     */
+    private final long maxLocalTtl;
+
+    private final AtomicLong localHits = new AtomicLong();
+
+    private final AtomicLong localMisses = new AtomicLong();
+
+    /**
+     * @param core        redis缓存
+     * @param capacity    最多使用的堆外内存，单位字节
+     * @param pageSize    每页的大小，单位字节，也是单个条目的上限
+     * @param maxLocalTtl 本地条目最长存活时间，单位秒
+     */
+    OffHeapCacheProvider(CacheProviderCore core, long capacity, int pageSize, int maxLocalTtl) {
+        super(core);
+        if (maxLocalTtl < 1) {
+            throw new IllegalArgumentException("maxLocalTtl必须大于0");
+        }
+        this.core = core;
+        this.store = new OffHeapStore(capacity, pageSize);
+        this.maxLocalTtl = maxLocalTtl * 1000L;
+    }
+
+    @Override
+    public <T> T getCache(String key, Class<T> clazz) {
+        CacheEntry<T> entry = getEntries(Collections.singletonList(key), clazz).get(0);
+        return entry == null ? null : entry.getValue();
+    }
+
+    @Override
+    public <T> List<T> getCache(List<String> keys, Class<T> clazz) {
+        List<CacheEntry<T>> entries = getEntries(keys, clazz);
+        List<T> returnList = new ArrayList<>(keys.size());
+        for (CacheEntry<T> entry : entries) {
+            returnList.add(entry == null ? null : entry.getValue());
+        }
+        return returnList;
+    }
+
+    /**
+     * 按分段大小依次读取，每段先查找本地条目，未命中的键读取redis后放入本地再回调
+     */
+    @Override
+    public <T> void getCache(List<String> keys, Class<T> clazz, BiConsumer<String, T> consumer) {
+        BatchTasks.getInChunks(this, keys, clazz, core.getBatchChunkSize(), consumer);
+    }
+
+    @Override
+    public boolean setCache(String key, Object toStore, int ttl) {
+        boolean result = delegate.setCache(key, toStore, ttl);
+        store.invalidate(key);
+        return result;
+    }
+
+    @Override
+    public boolean setCache(Map<String, Object> params, int ttl) {
+        boolean result = delegate.setCache(params, ttl);
+        for (String key : params.keySet()) {
+            store.invalidate(key);
+        }
+        return result;
+    }
+
+    @Override
+    public void deleteCache(List<String> keys) {
+        delegate.deleteCache(keys);
+        for (String key : keys) {
+            store.invalidate(key);
+        }
+    }
+
+    @Override
+    public void deleteCache(String key) {
+        delegate.deleteCache(key);
+        store.invalidate(key);
+    }
+
+    /**
+     * 本地未命中时与{@link #getEntries}一样从redis读取并放入本地，redis也未命中时交给delegate加载，
+     * 加载的对象序列化后放入本地
+     */
+    @Override
+    public <T> T getOrLoad(String key, Class<T> clazz, CacheLoader<T> loader, int ttl) {
+        long now = System.currentTimeMillis();
+        CacheEntry<byte[]> local = getLocal(key, now);
+        if (local != null) {
+            //值为空缓存标记时返回null
+            return core.deserialize(key, local.getValue(), clazz);
+        }
+        long stamp = store.stamp();
+        CacheEntry<byte[]> raw = core.getRawEntries(Collections.singletonList(key)).get(0);
+        if (raw != null) {
+            store.put(key, raw.getValue(), localExpireAt(raw.getExpireAt(), now), stamp);
+            CacheEntry<T> entry = new CacheEntry<>(core.deserialize(key, raw.getValue(), clazz), raw.getExpireAt());
+            core.refreshIfNeeded(key, entry, loader, ttl);
+            return entry.getValue();
+        }
+        T loaded = delegate.getOrLoad(key, clazz, loader, ttl);
+        if (loaded != null && (ttl == -1 || ttl > 0)) {
+            long expireAt = ttl == -1 ? CacheEntry.NEVER : now + ttl * 1000L;
+            store.put(key, core.serialize(key, loaded), localExpireAt(expireAt, now), stamp);
+        }
+        return loaded;
+    }
+
+    @Override
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> clazz, BulkLoader<T> loader, int ttl) {
+        long now = System.currentTimeMillis();
+        Map<String, CacheEntry<byte[]>> local = new HashMap<>();
+        List<String> missed = new ArrayList<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            CacheEntry<byte[]> entry = getLocal(key, now);
+            if (entry != null) {
+                local.put(key, entry);
+            } else {
+                missed.add(key);
+            }
+        }
+        Map<String, T> remote = missed.isEmpty() ? Collections.<String, T>emptyMap()
+                : delegate.getAll(missed, clazz, loader, ttl);
+        Map<String, T> returnMap = new LinkedHashMap<>();
+        for (String key : keys) {
+            T value = local.containsKey(key) ? core.deserialize(key, local.get(key).getValue(), clazz) : remote.get(key);
+            if (value != null) {
+                returnMap.put(key, value);
+            }
+        }
+        return returnMap;
+    }
+
+    /**
+     * 批量获得缓存对象以及过期时间，本地未命中的键通过一个pipeline从redis读取后放入本地
+     *
+     * @param keys  缓存的键
+     * @param clazz 缓存对象的类型
+     * @return 缓存对象，顺序与keys一致，未命中的位置为null，空缓存标记的值为null
+     */
+    <T> List<CacheEntry<T>> getEntries(List<String> keys, Class<T> clazz) {
+        long now = System.currentTimeMillis();
+        List<CacheEntry<T>> returnList = new ArrayList<>(keys.size());
+        List<String> missed = new ArrayList<>();
+        List<Integer> missedIndexes = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            CacheEntry<byte[]> local = getLocal(keys.get(i), now);
+            if (local != null) {
+                returnList.add(new CacheEntry<>(core.deserialize(keys.get(i), local.getValue(), clazz), local.getExpireAt()));
+            } else {
+                returnList.add(null);
+                missed.add(keys.get(i));
+                missedIndexes.add(i);
+            }
+        }
+        if (missed.isEmpty()) {
+            return returnList;
+        }
+        long stamp = store.stamp();
+        List<CacheEntry<byte[]>> rawEntries = core.getRawEntries(missed);
+        for (int i = 0; i < missed.size(); i++) {
+            CacheEntry<byte[]> raw = rawEntries.get(i);
+            if (raw == null) {
+                continue;
+            }
+            String key = missed.get(i);
+            long expireAt = localExpireAt(raw.getExpireAt(), now);
+            store.put(key, raw.getValue(), expireAt, stamp);
+            returnList.set(missedIndexes.get(i), new CacheEntry<>(core.deserialize(key, raw.getValue(), clazz), expireAt));
+        }
+        return returnList;
+    }
+
+    private CacheEntry<byte[]> getLocal(String key, long now) {
+        CacheEntry<byte[]> local = store.get(key, now);
+        if (local != null) {
+            localHits.incrementAndGet();
+            core.getMetrics().increment(MetricNames.OFFHEAP_HIT, key, 1);
+        } else {
+            localMisses.incrementAndGet();
+            core.getMetrics().increment(MetricNames.OFFHEAP_MISS, key, 1);
+        }
+        return local;
+    }
+
+    private long localExpireAt(long remoteExpireAt, long now) {
+        long localExpireAt = now + maxLocalTtl;
+        if (remoteExpireAt == CacheEntry.NEVER) {
+            return localExpireAt;
+        }
+        return Math.min(remoteExpireAt, localExpireAt);
+    }
+
+    /**
+     * 只删除本地条目，用于其他jvm修改了键或者修改已经直接写入redis的场景
+     */
+    void invalidateLocal(String key) {
+        store.invalidate(key);
+    }
+
+    /**
+     * 清空本地条目，用于失效消息可能丢失的场景
+     */
+    void clearLocal() {
+        store.clear();
+    }
+
+    /**
+     * 清空本地条目，堆外内存在ByteBuffer被回收时释放
+     */
+    public void close() {
+        store.clear();
+    }
+
+    /**
+     * @return 本地命中次数
+     */
+    public long getLocalHitCount() {
+        return localHits.get();
+    }
+
+    /**
+     * @return 本地未命中次数
+     */
+    public long getLocalMissCount() {
+        return localMisses.get();
+    }
+
+    /**
+     * @return 因空间不足被淘汰的条目数量
+     */
+    public long getEvictionCount() {
+        return store.getEvictionCount();
+    }
+
+    /**
+     * @return 因过期被删除的条目数量
+     */
+    public long getExpirationCount() {
+        return store.getExpirationCount();
+    }
+
+    /**
+     * @return 超过单页大小或无法分配空间而没有放入本地的次数
+     */
+    public long getRejectionCount() {
+        return store.getRejectionCount();
+    }
+
+    /**
+     * @return 本地条目数量
+     */
+    public int getLocalSize() {
+        return store.size();
+    }
+
+    /**
+     * @return 最多使用的堆外内存，单位字节
+     */
+    public long getCapacity() {
+        return store.getCapacity();
+    }
+
+    /**
+     * @return 已经申请的堆外内存，单位字节
+     */
+    public long getAllocatedBytes() {
+        return store.getAllocatedBytes();
+    }
+
+    /**
+     * @return 条目实际占用的字节数，包括头部和键
+     */
+    public long getUsedBytes() {
+        return store.getUsedBytes();
+    }
+
+    /**
+     * 已申请的内存中没有被条目使用的比例，包括块内的剩余空间和空闲的块
+     *
+     * @return 碎片率，0到1之间，还没有申请内存时为0
+     */
+    public double getFragmentation() {
+        long allocated = store.getAllocatedBytes();
+        return allocated == 0 ? 0 : 1 - (double) store.getUsedBytes() / allocated;
+    }
+}
@@ -0,0 +1,606 @@
+package com.freestyledash.ranger.provider.redis;
+
+import redis.clients.util.Hashing;
+import redis.clients.util.SafeEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 保存序列化结果的堆外缓存
+ * <p>
+ * 内存按页(默认1MB)通过{@link ByteBuffer#allocateDirect}申请，每页切分为同一大小的块，块大小按1.25倍递增分为多个级别，
+ * 条目放入能容纳它的最小级别的块中；键和值都保存在块内，堆上只有按键hash建立的开放寻址索引(两个long数组)，
+ * 条目数量不会增加gc扫描的对象数量
+ * <p>
+ * 按键的hash分为多个段，每段独立加锁并拥有自己的页；某个级别没有空闲块时优先淘汰已过期的条目，
+ * 否则按照CLOCK算法淘汰最近没有被访问的条目；某个级别还没有任何页且内存已经用完时，从页最多的级别回收一整页，
+ * 即使那是该级别唯一的一页，否则内存较小时先申请到页的级别会独占全部内存
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+final class OffHeapStore {
+
+    static final int DEFAULT_PAGE_SIZE = 1 << 20;
+
+    private static final int SEGMENTS = 16;
+
+    private static final int MIN_CHUNK_SIZE = 64;
+
+    private static final double GROWTH_FACTOR = 1.25;
+
+    /**
+     * 块头部: hash(8) 过期时间(8) 键长度(4) 值长度(4) 标记(1)，之后是键和值
+     */
+    private static final int HASH_OFFSET = 0;
+
+    private static final int EXPIRE_OFFSET = 8;
+
+    private static final int KEY_LENGTH_OFFSET = 16;
+
+    private static final int VALUE_LENGTH_OFFSET = 20;
+
+    private static final int FLAGS_OFFSET = 24;
+
+    private static final int HEADER_SIZE = 25;
+
+    private static final byte USED = 1;
+
+    private static final byte REFERENCED = 2;
+
+    private final int pageSize;
+
+    /**
+     * 各级别的块大小
+     */
+    private final int[] chunkSizes;
+
+    private final Segment[] segments;
+
+    /**
+     * 失效操作的计数，用于避免"读取远程数据期间发生失效"时写入过期的数据
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong expirations = new AtomicLong();
+
+    private final AtomicLong rejections = new AtomicLong();
+
+    /**
+     * @param capacity 最多使用的堆外内存，单位字节，至少为每段一页
+     * @param pageSize 每页的大小，也是单个条目(包括键和头部)的上限
+     */
+    OffHeapStore(long capacity, int pageSize) {
+        if (pageSize < MIN_CHUNK_SIZE * 2) {
+            throw new IllegalArgumentException("pageSize不能小于" + MIN_CHUNK_SIZE * 2);
+        }
+        long pagesPerSegment = capacity / pageSize / SEGMENTS;
+        if (pagesPerSegment < 1 || pagesPerSegment > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("capacity至少为" + (long) pageSize * SEGMENTS + "字节");
+        }
+        this.pageSize = pageSize;
+        List<Integer> sizes = new ArrayList<>();
+        for (double size = MIN_CHUNK_SIZE; size < pageSize; size *= GROWTH_FACTOR) {
+            //块大小按8字节对齐
+            int aligned = ((int) size + 7) & ~7;
+            if (sizes.isEmpty() || aligned > sizes.get(sizes.size() - 1)) {
+                sizes.add(aligned);
+            }
+        }
+        sizes.add(pageSize);
+        chunkSizes = new int[sizes.size()];
+        for (int i = 0; i < chunkSizes.length; i++) {
+            chunkSizes[i] = sizes.get(i);
+        }
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment((int) pagesPerSegment);
+        }
+    }
+
+    private static long hash(byte[] key) {
+        long hash = Hashing.MURMUR_HASH.hash(key);
+        //0表示索引中的空位
+        return hash == 0 ? 1 : hash;
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> 60) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * 获得当前的失效计数，在读取远程数据之前调用，并传给{@link #put}
+     *
+     * @return 失效计数
+     */
+    long stamp() {
+        return invalidations.get();
+    }
+
+    /**
+     * @param key 键
+     * @param now 当前时间
+     * @return 未过期条目的值和过期时间，不存在返回null
+     */
+    CacheEntry<byte[]> get(String key, long now) {
+        byte[] rawKey = SafeEncoder.encode(key);
+        long hash = hash(rawKey);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            return segment.get(hash, rawKey, now);
+        }
+    }
+
+    /**
+     * 写入条目，如果从stamp之后发生过失效操作则放弃写入
+     *
+     * @param key      键
+     * @param value    序列化结果
+     * @param expireAt 过期时间点
+     * @param stamp    读取远程数据之前的失效计数
+     * @return 是否写入，条目超过一页或者无法分配空间时返回false
+     */
+    boolean put(String key, byte[] value, long expireAt, long stamp) {
+        byte[] rawKey = SafeEncoder.encode(key);
+        int size = HEADER_SIZE + rawKey.length + value.length;
+        int sizeClass = sizeClassOf(size);
+        if (sizeClass < 0) {
+            rejections.incrementAndGet();
+            return false;
+        }
+        long hash = hash(rawKey);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            if (invalidations.get() != stamp) {
+                return false;
+            }
+            segment.remove(hash);
+            if (!segment.put(hash, rawKey, value, expireAt, sizeClass)) {
+                rejections.incrementAndGet();
+                return false;
+            }
+            return true;
+        }
+    }
+
+    void invalidate(String key) {
+        long hash = hash(SafeEncoder.encode(key));
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            invalidations.incrementAndGet();
+            segment.remove(hash);
+        }
+    }
+
+    void clear() {
+        invalidations.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    private int sizeClassOf(int size) {
+        int index = Arrays.binarySearch(chunkSizes, size);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < chunkSizes.length ? index : -1;
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.count;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return 最多使用的堆外内存，单位字节
+     */
+    long getCapacity() {
+        return (long) segments[0].maxPages * pageSize * SEGMENTS;
+    }
+
+    /**
+     * @return 已经申请的堆外内存，单位字节
+     */
+    long getAllocatedBytes() {
+        long pages = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                pages += segment.pages.size();
+            }
+        }
+        return pages * pageSize;
+    }
+
+    /**
+     * @return 条目实际占用的字节数，包括头部和键
+     */
+    long getUsedBytes() {
+        long used = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                used += segment.usedBytes;
+            }
+        }
+        return used;
+    }
+
+    long getEvictionCount() {
+        return evictions.get();
+    }
+
+    long getExpirationCount() {
+        return expirations.get();
+    }
+
+    long getRejectionCount() {
+        return rejections.get();
+    }
+
+    /**
+     * 一个段，所有方法都需要在持有段的锁时调用
+     */
+    private final class Segment {
+
+        private final int maxPages;
+
+        private final List<ByteBuffer> pages = new ArrayList<>();
+
+        /**
+         * 每页所属的级别
+         */
+        private final List<Integer> pageClasses = new ArrayList<>();
+
+        /**
+         * 每个级别的页，按申请顺序排列
+         */
+        private final List<List<Integer>> classPages = new ArrayList<>();
+
+        /**
+         * 每个级别的空闲块，位置编码为页号 << 32 | 页内偏移
+         */
+        private final LongStack[] freeChunks;
+
+        /**
+         * 每个级别的CLOCK指针，编码同块的位置
+         */
+        private final long[] hands;
+
+        /**
+         * 开放寻址索引，hashes为0的位置为空
+         */
+        private long[] hashes = new long[64];
+
+        private long[] locations = new long[64];
+
+        private int count;
+
+        private long usedBytes;
+
+        private Segment(int maxPages) {
+            this.maxPages = maxPages;
+            freeChunks = new LongStack[chunkSizes.length];
+            hands = new long[chunkSizes.length];
+            for (int i = 0; i < chunkSizes.length; i++) {
+                freeChunks[i] = new LongStack();
+                classPages.add(new ArrayList<Integer>());
+            }
+        }
+
+        private CacheEntry<byte[]> get(long hash, byte[] rawKey, long now) {
+            int slot = find(hash);
+            if (slot < 0) {
+                return null;
+            }
+            long location = locations[slot];
+            ByteBuffer page = pages.get(page(location));
+            int offset = offset(location);
+            long expireAt = page.getLong(offset + EXPIRE_OFFSET);
+            if (expireAt != CacheEntry.NEVER && expireAt <= now) {
+                expirations.incrementAndGet();
+                remove(hash);
+                return null;
+            }
+            int keyLength = page.getInt(offset + KEY_LENGTH_OFFSET);
+            if (keyLength != rawKey.length) {
+                return null;
+            }
+            byte[] storedKey = new byte[keyLength];
+            page.position(offset + HEADER_SIZE);
+            page.get(storedKey);
+            if (!Arrays.equals(storedKey, rawKey)) {
+                //64位hash冲突
+                return null;
+            }
+            byte[] value = new byte[page.getInt(offset + VALUE_LENGTH_OFFSET)];
+            page.get(value);
+            page.put(offset + FLAGS_OFFSET, (byte) (USED | REFERENCED));
+            return new CacheEntry<>(value, expireAt);
+        }
+
+        private boolean put(long hash, byte[] rawKey, byte[] value, long expireAt, int sizeClass) {
+            long location = allocate(sizeClass, System.currentTimeMillis());
+            if (location < 0) {
+                return false;
+            }
+            ByteBuffer page = pages.get(page(location));
+            int offset = offset(location);
+            page.putLong(offset + HASH_OFFSET, hash);
+            page.putLong(offset + EXPIRE_OFFSET, expireAt);
+            page.putInt(offset + KEY_LENGTH_OFFSET, rawKey.length);
+            page.putInt(offset + VALUE_LENGTH_OFFSET, value.length);
+            page.put(offset + FLAGS_OFFSET, USED);
+            page.position(offset + HEADER_SIZE);
+            page.put(rawKey);
+            page.put(value);
+            insert(hash, location);
+            usedBytes += HEADER_SIZE + rawKey.length + value.length;
+            return true;
+        }
+
+        /**
+         * 删除条目并释放它的块
+         */
+        private void remove(long hash) {
+            int slot = find(hash);
+            if (slot < 0) {
+                return;
+            }
+            long location = locations[slot];
+            delete(slot);
+            ByteBuffer page = pages.get(page(location));
+            int offset = offset(location);
+            usedBytes -= HEADER_SIZE + page.getInt(offset + KEY_LENGTH_OFFSET) + page.getInt(offset + VALUE_LENGTH_OFFSET);
+            page.put(offset + FLAGS_OFFSET, (byte) 0);
+            freeChunks[pageClasses.get(page(location))].push(location);
+        }
+
+        private void clear() {
+            pages.clear();
+            pageClasses.clear();
+            for (int i = 0; i < chunkSizes.length; i++) {
+                classPages.get(i).clear();
+                freeChunks[i].clear();
+                hands[i] = 0;
+            }
+            hashes = new long[64];
+            locations = new long[64];
+            count = 0;
+            usedBytes = 0;
+        }
+
+        /**
+         * 分配一个块：空闲块、新页、淘汰同级别的条目、回收其他级别的页，依次尝试
+         */
+        private long allocate(int sizeClass, long now) {
+            LongStack free = freeChunks[sizeClass];
+            if (free.isEmpty()) {
+                if (pages.size() < maxPages) {
+                    addPage(ByteBuffer.allocateDirect(pageSize), sizeClass);
+                } else if (classPages.get(sizeClass).isEmpty()) {
+                    if (!reassignPage(sizeClass)) {
+                        return -1;
+                    }
+                } else {
+                    evict(sizeClass, now);
+                }
+            }
+            return free.isEmpty() ? -1 : free.pop();
+        }
+
+        private void addPage(ByteBuffer buffer, int sizeClass) {
+            int pageIndex = pages.size();
+            pages.add(buffer);
+            pageClasses.add(sizeClass);
+            carve(pageIndex, sizeClass);
+        }
+
+        private void carve(int pageIndex, int sizeClass) {
+            classPages.get(sizeClass).add(pageIndex);
+            int chunkSize = chunkSizes[sizeClass];
+            ByteBuffer page = pages.get(pageIndex);
+            //倒序压入，先使用页开头的块
+            for (int offset = (pageSize / chunkSize - 1) * chunkSize; offset >= 0; offset -= chunkSize) {
+                page.put(offset + FLAGS_OFFSET, (byte) 0);
+                freeChunks[sizeClass].push(location(pageIndex, offset));
+            }
+        }
+
+        /**
+         * CLOCK：跳过最近被访问过的条目并清除它的访问标记，淘汰第一个已过期或者最近没有被访问的条目
+         */
+        private void evict(int sizeClass, long now) {
+            List<Integer> owned = classPages.get(sizeClass);
+            int chunkSize = chunkSizes[sizeClass];
+            int chunksPerPage = pageSize / chunkSize;
+            int total = owned.size() * chunksPerPage;
+            long hand = hands[sizeClass];
+            int pageSlot = page(hand);
+            int chunk = offset(hand) / chunkSize;
+            for (int step = 0; step <= total * 2; step++) {
+                if (chunk >= chunksPerPage) {
+                    chunk = 0;
+                    pageSlot++;
+                }
+                if (pageSlot >= owned.size()) {
+                    pageSlot = 0;
+                }
+                ByteBuffer page = pages.get(owned.get(pageSlot));
+                int offset = chunk * chunkSize;
+                chunk++;
+                byte flags = page.get(offset + FLAGS_OFFSET);
+                if ((flags & USED) == 0) {
+                    continue;
+                }
+                long expireAt = page.getLong(offset + EXPIRE_OFFSET);
+                boolean expired = expireAt != CacheEntry.NEVER && expireAt <= now;
+                if (!expired && (flags & REFERENCED) != 0) {
+                    page.put(offset + FLAGS_OFFSET, USED);
+                    continue;
+                }
+                hands[sizeClass] = location(pageSlot, chunk * chunkSize);
+                (expired ? expirations : evictions).incrementAndGet();
+                remove(page.getLong(offset + HASH_OFFSET));
+                return;
+            }
+        }
+
+        /**
+         * 从页最多的级别回收最早申请的一页，淘汰其中的全部条目后切分为sizeClass的块
+         * 每段只有一页时回收的是其他级别唯一的一页，多个级别交替使用时条目会被频繁淘汰，但都可以放入
+         */
+        private boolean reassignPage(int sizeClass) {
+            int victimClass = -1;
+            for (int i = 0; i < chunkSizes.length; i++) {
+                if (i != sizeClass && (victimClass < 0 || classPages.get(i).size() > classPages.get(victimClass).size())) {
+                    victimClass = i;
+                }
+            }
+            if (victimClass < 0 || classPages.get(victimClass).isEmpty()) {
+                return false;
+            }
+            int pageIndex = classPages.get(victimClass).remove(0);
+            hands[victimClass] = 0;
+            ByteBuffer page = pages.get(pageIndex);
+            int chunkSize = chunkSizes[victimClass];
+            for (int offset = 0; offset + chunkSize <= pageSize; offset += chunkSize) {
+                if ((page.get(offset + FLAGS_OFFSET) & USED) != 0) {
+                    evictions.incrementAndGet();
+                    remove(page.getLong(offset + HASH_OFFSET));
+                }
+            }
+            freeChunks[victimClass].removePage(pageIndex);
+            pageClasses.set(pageIndex, sizeClass);
+            carve(pageIndex, sizeClass);
+            return true;
+        }
+
+        private int find(long hash) {
+            int mask = hashes.length - 1;
+            for (int slot = index(hash, mask); hashes[slot] != 0; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(long hash, long location) {
+            if ((count + 1) * 2 > hashes.length) {
+                resize();
+            }
+            int mask = hashes.length - 1;
+            int slot = index(hash, mask);
+            while (hashes[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = hash;
+            locations[slot] = location;
+            count++;
+        }
+
+        /**
+         * 删除后把同一探测序列中后面的条目前移，不使用墓碑
+         */
+        private void delete(int slot) {
+            int mask = hashes.length - 1;
+            int hole = slot;
+            for (int next = (hole + 1) & mask; hashes[next] != 0; next = (next + 1) & mask) {
+                int home = index(hashes[next], mask);
+                //home不在(hole, next]之间时可以移动到hole
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    hashes[hole] = hashes[next];
+                    locations[hole] = locations[next];
+                    hole = next;
+                }
+            }
+            hashes[hole] = 0;
+            locations[hole] = 0;
+            count--;
+        }
+
+        private void resize() {
+            long[] oldHashes = hashes;
+            long[] oldLocations = locations;
+            hashes = new long[oldHashes.length * 2];
+            locations = new long[oldLocations.length * 2];
+            count = 0;
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldHashes[i] != 0) {
+                    insert(oldHashes[i], oldLocations[i]);
+                }
+            }
+        }
+
+        private int index(long hash, int mask) {
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+
+    private static long location(int page, int offset) {
+        return ((long) page << 32) | offset;
+    }
+
+    private static int page(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    /**
+     * long的栈，避免装箱
+     */
+    private static final class LongStack {
+
+        private long[] values = new long[16];
+
+        private int size;
+
+        void push(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long pop() {
+            return values[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        /**
+         * 删除属于某一页的全部位置
+         */
+        void removePage(int page) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (page(values[i]) != page) {
+                    values[kept++] = values[i];
+                }
+            }
+            size = kept;
+        }
+    }
+}
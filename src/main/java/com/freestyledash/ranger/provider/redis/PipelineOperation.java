@@ -0,0 +1,19 @@
+package com.freestyledash.ranger.provider.redis;
+
+import redis.clients.jedis.Pipeline;
+
+/**
+ * 可以加入pipeline批量执行的操作
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+interface PipelineOperation {
+
+    /**
+     * 将命令加入pipeline，执行结果在pipeline同步之后才能读取
+     *
+     * @param pipeline 当前连接的pipeline
+     */
+    void apply(Pipeline pipeline);
+}
@@ -0,0 +1,137 @@
+package com.freestyledash.ranger.provider.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 保存在redis bitmap中的布隆过滤器，多个jvm共享同一份数据
+ * 每次判断需要一次网络往返(GETBIT通过pipeline发送)，批量判断时全部键的GETBIT在同一个pipeline中发送，
+ * 但可以避免对不存在的键调用loader
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class RedisBloomFilter extends BloomFilter {
+
+    /**
+     * redis bitmap最大长度
+     */
+    private static final long MAX_BITS = 1L << 32;
+
+    /**
+     * 批量加入和批量判断时每个pipeline包含的键数量
+     */
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final byte[] ONE = SafeEncoder.encode("1");
+
+    private final JedisPool pool;
+
+    private final byte[] redisKey;
+
+    /**
+     * @param pool               连接池
+     * @param redisKey           保存bitmap的键
+     * @param expectedInsertions 预计加入的键数量
+     * @param fpp                期望的误判率，例如0.01
+     */
+    public RedisBloomFilter(JedisPool pool, String redisKey, long expectedInsertions, double fpp) {
+        super(expectedInsertions, fpp);
+        if (bitSize > MAX_BITS) {
+            throw new IllegalArgumentException("expectedInsertions过大,bitmap超过redis上限");
+        }
+        this.pool = pool;
+        this.redisKey = SafeEncoder.encode(redisKey);
+    }
+
+    @Override
+    protected boolean allSet(long[] positions) {
+        List<Response<Boolean>> bits = new ArrayList<>(positions.length);
+        Jedis resource = pool.getResource();
+        try {
+            Pipeline pipelined = resource.pipelined();
+            for (long position : positions) {
+                bits.add(pipelined.getbit(redisKey, position));
+            }
+            pipelined.sync();
+        } finally {
+            resource.close();
+        }
+        for (Response<Boolean> bit : bits) {
+            if (!bit.get()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean[] mightContain(List<String> keys) {
+        boolean[] result = new boolean[keys.size()];
+        int offset = 0;
+        for (List<String> chunk : BatchTasks.partition(keys, CHUNK_SIZE)) {
+            List<Response<Boolean>> bits = new ArrayList<>(chunk.size() * hashCount);
+            Jedis resource = pool.getResource();
+            try {
+                Pipeline pipelined = resource.pipelined();
+                for (String key : chunk) {
+                    for (long position : positions(key)) {
+                        bits.add(pipelined.getbit(redisKey, position));
+                    }
+                }
+                pipelined.sync();
+            } finally {
+                resource.close();
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                boolean contains = true;
+                for (int j = i * hashCount; j < (i + 1) * hashCount && contains; j++) {
+                    contains = bits.get(j).get();
+                }
+                result[offset + i] = contains;
+            }
+            offset += chunk.size();
+        }
+        return result;
+    }
+
+    @Override
+    protected void setAll(long[] positions) {
+        Jedis resource = pool.getResource();
+        try {
+            Pipeline pipelined = resource.pipelined();
+            for (long position : positions) {
+                pipelined.setbit(redisKey, position, ONE);
+            }
+            pipelined.sync();
+        } finally {
+            resource.close();
+        }
+    }
+
+    @Override
+    public void putAll(Collection<String> keys) {
+        List<String> list = new ArrayList<>(keys);
+        for (List<String> chunk : BatchTasks.partition(list, CHUNK_SIZE)) {
+            Jedis resource = pool.getResource();
+            try {
+                Pipeline pipelined = resource.pipelined();
+                for (String key : chunk) {
+                    for (long position : positions(key)) {
+                        pipelined.setbit(redisKey, position, ONE);
+                    }
+                }
+                pipelined.sync();
+            } finally {
+                resource.close();
+            }
+        }
+    }
+}
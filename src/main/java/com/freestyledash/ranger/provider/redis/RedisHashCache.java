@@ -0,0 +1,259 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.metrics.CacheMetrics;
+import com.freestyledash.ranger.metrics.MetricNames;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.*;
+
+/**
+ * 使用redis hash按字段保存对象
+ * <p>
+ * 对象的每个顶层字段保存为hash中的一个field，值为该字段的protostuff编码；
+ * 可以只读取需要的字段(HMGET)，也可以只修改变化的字段(HSET)，不需要读取和重写整个对象，适合字段多、单个字段经常变化的对象
+ * <p>
+ * 字段名来自protostuff的schema，与{@link ProtostuffSerializationUtil}缓存的schema相同；
+ * 使用hash保存的键只能通过本对象读写，使用{@link com.freestyledash.ranger.provider.CacheProvider#getCache}读取会失败
+ * 不支持循环引用，所有字段都为null的对象不会被保存
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class RedisHashCache {
+
+    private static Logger logger = LoggerFactory.getLogger(RedisHashCache.class);
+
+    /**
+     * 键存在时写入和删除指定字段，键不存在时不做任何事，避免创建没有过期时间的残缺对象
+     * ARGV[1]为写入的字段数量n，之后是n对字段和值，剩余的为需要删除的字段
+     */
+    private static final RedisScript UPDATE = new RedisScript(
+            "if redis.call('exists', KEYS[1]) == 0 then return 0 end "
+                    + "local n = tonumber(ARGV[1]) "
+                    + "for i = 2, n * 2, 2 do redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) end "
+                    + "for i = n * 2 + 2, #ARGV do redis.call('hdel', KEYS[1], ARGV[i]) end "
+                    + "return 1");
+
+    private final CacheProviderCore core;
+
+    private final ProtostuffSerializationUtil serializationUtil;
+
+    RedisHashCache(CacheProviderCore core, ProtostuffSerializationUtil serializationUtil) {
+        this.core = core;
+        this.serializationUtil = serializationUtil;
+    }
+
+    /**
+     * 保存整个对象，替换已有的全部字段
+     *
+     * @param key   缓存的键
+     * @param value 需要存储的对象
+     * @param ttl   过期时间 -1 永不过期 ，单位是秒
+     * @return 是否写入成功，事务被redis放弃或其中的命令出错时返回false，此时键可能已经被删除
+     */
+    public boolean set(String key, Object value, int ttl) {
+        long start = System.nanoTime();
+        CacheMetrics metrics = core.getMetrics();
+        Map<byte[], byte[]> hash = encode(key, serializationUtil.serializeFields(value));
+        byte[] rawKey = SafeEncoder.encode(key);
+        int expire = core.getTtlPolicy().apply(ttl);
+        Response<List<Object>> replies;
+        Jedis resource = core.borrow();
+        try {
+            //在事务中删除并重建，读取方不会看到新旧字段混合的对象
+            Pipeline pipelined = resource.pipelined();
+            pipelined.multi();
+            pipelined.del(rawKey);
+            if (!hash.isEmpty()) {
+                pipelined.hmset(rawKey, hash);
+                if (expire != -1) {
+                    pipelined.expire(rawKey, expire);
+                }
+            }
+            replies = pipelined.exec();
+            pipelined.sync();
+        } finally {
+            resource.close();
+        }
+        boolean result = succeeded(key, replies);
+        metrics.record(MetricNames.SET_LATENCY, key, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * 检查EXEC的回复，事务被放弃时回复为错误或null，执行出错的命令在回复中对应一个异常
+     */
+    private static boolean succeeded(String key, Response<List<Object>> replies) {
+        List<Object> results;
+        try {
+            results = replies.get();
+        } catch (JedisDataException e) {
+            logger.warn("写入hash " + key + "的事务被放弃:" + e.getMessage());
+            return false;
+        }
+        if (results == null) {
+            logger.warn("写入hash " + key + "的事务被放弃");
+            return false;
+        }
+        for (Object result : results) {
+            if (result instanceof Exception) {
+                logger.warn("写入hash " + key + "出错:" + ((Exception) result).getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读取整个对象
+     *
+     * @param key   缓存的键
+     * @param clazz 缓存对象的类型
+     * @return 被缓存的对象，未命中返回null
+     */
+    public <T> T get(String key, Class<T> clazz) {
+        long start = System.nanoTime();
+        Map<byte[], byte[]> hash;
+        Jedis resource = core.borrow();
+        try {
+            hash = resource.hgetAll(SafeEncoder.encode(key));
+        } finally {
+            resource.close();
+        }
+        T result = hash.isEmpty() ? null : decode(key, hash.values(), clazz);
+        record(key, hash.isEmpty(), start);
+        return result;
+    }
+
+    /**
+     * 只读取部分字段，其他字段保持默认值
+     *
+     * @param key    缓存的键
+     * @param clazz  缓存对象的类型
+     * @param fields 需要读取的字段名
+     * @return 只包含这些字段的对象，未命中返回null
+     */
+    public <T> T get(String key, Class<T> clazz, String... fields) {
+        if (fields.length == 0) {
+            throw new IllegalArgumentException("至少需要读取一个字段");
+        }
+        long start = System.nanoTime();
+        byte[] rawKey = SafeEncoder.encode(key);
+        Response<List<byte[]>> values;
+        Response<Boolean> exists;
+        Jedis resource = core.borrow();
+        try {
+            Pipeline pipelined = resource.pipelined();
+            values = pipelined.hmget(rawKey, fieldNames(clazz, fields));
+            //选中的字段都为null时需要区分对象不存在
+            exists = pipelined.exists(rawKey);
+            pipelined.sync();
+        } finally {
+            resource.close();
+        }
+        boolean missed = !exists.get();
+        T result = missed ? null : decode(key, values.get(), clazz);
+        record(key, missed, start);
+        return result;
+    }
+
+    /**
+     * 只修改部分字段，partial中这些字段为null时删除对应的field
+     *
+     * @param key     缓存的键
+     * @param partial 包含新字段值的对象，其他字段会被忽略
+     * @param fields  需要修改的字段名
+     * @return 是否修改成功，键不存在时返回false，此时需要使用{@link #set}保存整个对象
+     */
+    public boolean update(String key, Object partial, String... fields) {
+        if (fields.length == 0) {
+            throw new IllegalArgumentException("至少需要修改一个字段");
+        }
+        long start = System.nanoTime();
+        fieldNames(partial.getClass(), fields);
+        Map<String, byte[]> encoded = serializationUtil.serializeFields(partial);
+        List<byte[]> updated = new ArrayList<>();
+        List<byte[]> removed = new ArrayList<>();
+        for (String field : new LinkedHashSet<>(Arrays.asList(fields))) {
+            byte[] value = encoded.get(field);
+            if (value != null) {
+                updated.add(SafeEncoder.encode(field));
+                updated.add(value);
+                core.getMetrics().record(MetricNames.WRITE_SIZE, key, value.length);
+            } else {
+                removed.add(SafeEncoder.encode(field));
+            }
+        }
+        List<byte[]> args = new ArrayList<>(updated.size() + removed.size() + 1);
+        args.add(SafeEncoder.encode(String.valueOf(updated.size() / 2)));
+        args.addAll(updated);
+        args.addAll(removed);
+        Object result;
+        Jedis resource = core.borrow();
+        try {
+            result = UPDATE.eval(resource, Collections.singletonList(SafeEncoder.encode(key)), args);
+        } finally {
+            resource.close();
+        }
+        core.getMetrics().record(MetricNames.SET_LATENCY, key, System.nanoTime() - start);
+        return Long.valueOf(1).equals(result);
+    }
+
+    /**
+     * 删除整个对象
+     *
+     * @param key 缓存的键
+     */
+    public void delete(String key) {
+        core.deleteCache(key);
+    }
+
+    private static Map<byte[], byte[]> encode(String key, Map<String, byte[]> fields) {
+        Map<byte[], byte[]> hash = new HashMap<>(fields.size() * 2);
+        for (Map.Entry<String, byte[]> entry : fields.entrySet()) {
+            hash.put(SafeEncoder.encode(entry.getKey()), entry.getValue());
+        }
+        return hash;
+    }
+
+    private <T> T decode(String key, Collection<byte[]> values, Class<T> clazz) {
+        long start = System.nanoTime();
+        int size = 0;
+        for (byte[] value : values) {
+            size += value == null ? 0 : value.length;
+        }
+        try {
+            return serializationUtil.deserializeFields(values, clazz);
+        } finally {
+            core.getMetrics().record(MetricNames.READ_SIZE, key, size);
+            core.getMetrics().record(MetricNames.DESERIALIZE_TIME, key, System.nanoTime() - start);
+        }
+    }
+
+    private void record(String key, boolean missed, long start) {
+        CacheMetrics metrics = core.getMetrics();
+        metrics.increment(missed ? MetricNames.MISS : MetricNames.HIT, key, 1);
+        metrics.record(MetricNames.GET_LATENCY, key, System.nanoTime() - start);
+    }
+
+    /**
+     * 检查字段名并编码
+     */
+    private byte[][] fieldNames(Class<?> clazz, String... fields) {
+        byte[][] names = new byte[fields.length][];
+        for (int i = 0; i < fields.length; i++) {
+            if (!serializationUtil.hasField(clazz, fields[i])) {
+                throw new IllegalArgumentException(clazz.getName() + "没有字段" + fields[i]);
+            }
+            names[i] = SafeEncoder.encode(fields[i]);
+        }
+        return names;
+    }
+}
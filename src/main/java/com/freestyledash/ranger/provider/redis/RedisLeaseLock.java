@@ -0,0 +1,326 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.metrics.CacheMetrics;
+import com.freestyledash.ranger.metrics.MetricNames;
+import com.freestyledash.ranger.metrics.NoopCacheMetrics;
+import redis.clients.jedis.Jedis;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.SafeEncoder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 保存在redis中、可以协调多个jvm的按键租约锁
+ * <p>
+ * 通过SET NX PX获取，租约到期后自动释放，持有者崩溃也不会永久占用；释放和续约使用lua脚本，只有持有者本身可以操作
+ * 持有者的工作可能超过租约时长时调用{@link Lease#keepAlive()}，释放之前在后台定期续约
+ * <p>
+ * 每次获取成功会从全局计数器得到一个单调递增的fencing token，持有者写入自己的外部资源时可以带上token，
+ * 由资源方拒绝比已见过的token更小的请求；本对象和缓存的写入都不检查token，
+ * jvm停顿超过租约时长导致续约不及时时，租约仍然会过期，旧的持有者恢复后的写入可能覆盖新持有者的结果
+ * <p>
+ * 不同的键使用不同的锁，互不影响
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class RedisLeaseLock {
+
+    private static Logger logger = LoggerFactory.getLogger(RedisLeaseLock.class);
+
+    /**
+     * 默认的锁键前缀
+     */
+    public static final String DEFAULT_PREFIX = "ranger:lease:";
+
+    /**
+     * 获取失败后第一次重试前等待的毫秒数，之后每次加倍
+     */
+    private static final long MIN_BACKOFF_MILLIS = 2;
+
+    private static final long MAX_BACKOFF_MILLIS = 50;
+
+    private static final RedisScript ACQUIRE = new RedisScript(
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then "
+                    + "return redis.call('incr', KEYS[2]) end return 0");
+
+    private static final RedisScript RELEASE = new RedisScript(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end return 0");
+
+    private static final RedisScript EXTEND = new RedisScript(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) end return 0");
+
+    private final JedisPool pool;
+
+    private final String prefix;
+
+    private final byte[] fenceKey;
+
+    private final long leaseMillis;
+
+    private final CacheMetrics metrics;
+
+    /**
+     * 续约的后台线程，第一次调用{@link Lease#keepAlive()}时创建
+     */
+    private ScheduledExecutorService renewer;
+
+    private boolean closed;
+
+    /**
+     * @param pool        连接池
+     * @param leaseMillis 租约时长，单位毫秒，应大于持有者完成工作所需的时间
+     */
+    public RedisLeaseLock(JedisPool pool, long leaseMillis) {
+        this(pool, DEFAULT_PREFIX, leaseMillis, NoopCacheMetrics.INSTANCE);
+    }
+
+    /**
+     * @param pool        连接池
+     * @param prefix      锁键的前缀，锁键为前缀加缓存的键
+     * @param leaseMillis 租约时长，单位毫秒，应大于持有者完成工作所需的时间
+     * @param metrics     指标收集
+     */
+    public RedisLeaseLock(JedisPool pool, String prefix, long leaseMillis, CacheMetrics metrics) {
+        if (leaseMillis < 1) {
+            throw new IllegalArgumentException("leaseMillis必须大于0");
+        }
+        this.pool = pool;
+        this.prefix = prefix;
+        this.fenceKey = SafeEncoder.encode(prefix + "fence");
+        this.leaseMillis = leaseMillis;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 尝试获取一次，不等待
+     *
+     * @param key 要锁住的键
+     * @return 租约，已被其他持有者占用时返回null
+     */
+    public Lease tryAcquire(String key) {
+        byte[] owner = SafeEncoder.encode(UUID.randomUUID().toString());
+        Object token;
+        Jedis resource = pool.getResource();
+        try {
+            token = ACQUIRE.eval(resource, Arrays.asList(lockKey(key), fenceKey),
+                    Arrays.asList(owner, SafeEncoder.encode(String.valueOf(leaseMillis))));
+        } finally {
+            resource.close();
+        }
+        long fencingToken = (Long) token;
+        return fencingToken > 0 ? new Lease(key, owner, fencingToken) : null;
+    }
+
+    /**
+     * 获取租约，被占用时等待
+     *
+     * @param key     要锁住的键
+     * @param timeout 最长等待时间
+     * @param unit    时间单位
+     * @return 租约，超时返回null
+     */
+    public Lease acquire(String key, long timeout, TimeUnit unit) {
+        return acquire(key, unit.toMillis(timeout), (BooleanSupplier) null);
+    }
+
+    /**
+     * 获取租约，被占用时按照指数退避重试
+     *
+     * @param key           要锁住的键
+     * @param timeoutMillis 最长等待时间，单位毫秒
+     * @param abandon       每次重试前检查，返回true时放弃等待，例如其他持有者已经完成了工作，可以为null
+     * @return 租约，超时或放弃时返回null
+     */
+    Lease acquire(String key, long timeoutMillis, BooleanSupplier abandon) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long backoff = MIN_BACKOFF_MILLIS;
+        try {
+            while (true) {
+                Lease lease = tryAcquire(key);
+                if (lease != null) {
+                    return lease;
+                }
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    metrics.increment(MetricNames.LEASE_TIMEOUT, key, 1);
+                    return null;
+                }
+                try {
+                    Thread.sleep(Math.min(remaining, ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("等待" + key + "的租约被中断", e);
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+                if (abandon != null && abandon.getAsBoolean()) {
+                    return null;
+                }
+            }
+        } finally {
+            metrics.record(MetricNames.LEASE_WAIT, key, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return 租约时长，单位毫秒
+     */
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    /**
+     * 停止续约的后台线程，之后{@link Lease#keepAlive()}不再续约，已经获取的租约仍然可以释放
+     */
+    public synchronized void close() {
+        closed = true;
+        if (renewer != null) {
+            renewer.shutdownNow();
+        }
+    }
+
+    /**
+     * @return 续约的后台线程，已关闭时返回null
+     */
+    private synchronized ScheduledExecutorService renewer() {
+        if (closed) {
+            return null;
+        }
+        if (renewer == null) {
+            renewer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ranger-lease-renewer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return renewer;
+    }
+
+    private byte[] lockKey(String key) {
+        return SafeEncoder.encode(prefix + key);
+    }
+
+    /**
+     * 一次成功获取的租约
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final String key;
+
+        private final byte[] owner;
+
+        private final long fencingToken;
+
+        /**
+         * 后台续约任务，未开启续约时为null
+         */
+        private ScheduledFuture<?> renewal;
+
+        private Lease(String key, byte[] owner, long fencingToken) {
+            this.key = key;
+            this.owner = owner;
+            this.fencingToken = fencingToken;
+        }
+
+        /**
+         * @return 被锁住的键
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return 单调递增的fencing token，较新的租约一定大于较旧的租约
+         */
+        public long getFencingToken() {
+            return fencingToken;
+        }
+
+        /**
+         * 将租约延长为从现在开始的一个完整租约时长
+         *
+         * @return 是否仍然持有，租约已经过期并被其他持有者获取时返回false
+         */
+        public boolean extend() {
+            return run(EXTEND, SafeEncoder.encode(String.valueOf(leaseMillis))) == 1;
+        }
+
+        /**
+         * 释放之前每隔三分之一租约时长在后台续约一次，持有者的工作超过租约时长时租约也不会过期
+         * 续约发现租约已经丢失时停止续约；多次调用只有第一次有效
+         */
+        public synchronized void keepAlive() {
+            if (renewal != null) {
+                return;
+            }
+            ScheduledExecutorService scheduler = renewer();
+            if (scheduler == null) {
+                return;
+            }
+            long period = Math.max(1, leaseMillis / 3);
+            renewal = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!extend()) {
+                            logger.warn(key + "的租约已经丢失,停止续约");
+                            stopRenewal();
+                        }
+                    } catch (RuntimeException e) {
+                        logger.warn("续约" + key + "的租约失败", e);
+                    }
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 释放租约，同时停止续约
+         *
+         * @return 释放时是否仍然持有，返回false说明租约已经过期，期间可能有其他持有者进入
+         */
+        public boolean release() {
+            stopRenewal();
+            boolean held = run(RELEASE, null) == 1;
+            if (!held) {
+                metrics.increment(MetricNames.LEASE_LOST, key, 1);
+            }
+            return held;
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+
+        private synchronized void stopRenewal() {
+            if (renewal != null) {
+                renewal.cancel(false);
+            }
+        }
+
+        private long run(RedisScript script, byte[] arg) {
+            Jedis resource = pool.getResource();
+            try {
+                return (Long) script.eval(resource, Collections.singletonList(lockKey(key)),
+                        arg == null ? Collections.singletonList(owner) : Arrays.asList(owner, arg));
+            } finally {
+                resource.close();
+            }
+        }
+    }
+}
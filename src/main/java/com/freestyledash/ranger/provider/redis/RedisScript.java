@@ -0,0 +1,60 @@
+package com.freestyledash.ranger.provider.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * redis中执行的lua脚本
+ * 优先使用EVALSHA只发送脚本的sha1，服务端没有缓存该脚本(重启或执行过SCRIPT FLUSH)时改用EVAL发送全文
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+final class RedisScript {
+
+    private final byte[] script;
+
+    private final byte[] sha;
+
+    RedisScript(String script) {
+        this.script = SafeEncoder.encode(script);
+        this.sha = SafeEncoder.encode(sha1Hex(this.script));
+    }
+
+    /**
+     * 执行脚本
+     *
+     * @param resource 连接
+     * @param keys     KEYS参数
+     * @param args     ARGV参数
+     * @return 脚本的返回值
+     */
+    Object eval(Jedis resource, List<byte[]> keys, List<byte[]> args) {
+        try {
+            return resource.evalsha(sha, keys, args);
+        } catch (JedisDataException e) {
+            if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+                throw e;
+            }
+            return resource.eval(script, keys, args);
+        }
+    }
+
+    private static String sha1Hex(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("jvm不支持SHA-1", e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.freestyledash.ranger.provider.redis;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * CacheProviderCore读写键值使用的传输层
+ * 默认实现每次调用从JedisPool借出一个连接，也可以替换为在少量连接上复用请求的实现，例如{@link MultiplexedRedisTransport}
+ * <p>
+ * 同一次调用中的多条命令需要按顺序发送到同一个连接，调用返回时全部命令已经执行完成
+ * 实现必须是线程安全的
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public interface RedisTransport extends Closeable {
+
+    /**
+     * 批量读取，每个键一条GET命令
+     *
+     * @param keys 键
+     * @return 值，顺序与keys一致，不存在的位置为null
+     */
+    List<byte[]> get(List<byte[]> keys);
+
+    /**
+     * 批量读取值和剩余存活时间，每个键一条GET和一条PTTL命令
+     *
+     * @param keys  键
+     * @param pttls 长度与keys相同，用于接收每个键的剩余存活时间，单位毫秒，负数表示永不过期或不存在
+     * @return 值，顺序与keys一致，不存在的位置为null
+     */
+    List<byte[]> getWithTtl(List<byte[]> keys, long[] pttls);
+
+    /**
+     * 批量写入，expire为-1时使用SET，大于0时使用SETEX，其它值与旧版本的expire一样删除该键
+     *
+     * @param keys    键
+     * @param values  值，顺序与keys一致
+     * @param expires 过期时间，顺序与keys一致，-1 永不过期，0或其它负数表示删除，单位是秒
+     */
+    void set(List<byte[]> keys, List<byte[]> values, int[] expires);
+
+    /**
+     * 批量删除
+     *
+     * @param keys 键
+     */
+    void delete(List<byte[]> keys);
+
+    /**
+     * @param key 键
+     * @return 键是否存在
+     */
+    boolean exists(byte[] key);
+}
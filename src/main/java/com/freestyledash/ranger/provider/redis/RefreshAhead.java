@@ -0,0 +1,157 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.metrics.CacheMetrics;
+import com.freestyledash.ranger.metrics.MetricNames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * 在后台提前刷新即将过期的缓存对象
+ * 同一个键同一时刻只有一个刷新任务；线程池队列满时放弃刷新，对象过期后由读取方同步加载
+ * 每个键单独记录加载耗时，交给策略的是正在读取的键的重新加载代价，不同loader的耗时互不影响
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+final class RefreshAhead {
+
+    private static Logger logger = LoggerFactory.getLogger(RefreshAhead.class);
+
+    /**
+     * 最多记录加载耗时的键数量，超过后随机淘汰一个键
+     */
+    static final int MAX_TRACKED_KEYS = 10000;
+
+    private final RefreshPolicy policy;
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 正在刷新的键
+     */
+    private final ConcurrentMap<String, Boolean> refreshing = new ConcurrentHashMap<>();
+
+    /**
+     * 每个键加载耗时的指数移动平均，单位毫秒
+     */
+    private final ConcurrentMap<String, Double> loadMillis = new ConcurrentHashMap<>();
+
+    /**
+     * 全部键加载耗时的指数移动平均，单位毫秒，用于本jvm没有加载过的键
+     */
+    private volatile double defaultLoadMillis;
+
+    RefreshAhead(RefreshPolicy policy, int threads, int queueCapacity) {
+        if (policy == null || threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("policy不能为空,threads和queueCapacity必须大于0");
+        }
+        this.policy = policy;
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ranger-refresh-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param key   缓存的键
+     * @param entry 从redis读取的对象
+     * @param ttl   写入时的存活时间，单位秒
+     * @param now   当前时间
+     * @return 是否需要刷新
+     */
+    boolean shouldRefresh(String key, CacheEntry<?> entry, int ttl, long now) {
+        if (ttl <= 0 || entry.getExpireAt() == CacheEntry.NEVER) {
+            return false;
+        }
+        long remaining = entry.getExpireAt() - now;
+        return policy.shouldRefresh(remaining, ttl * 1000L, getLoadMillis(key));
+    }
+
+    /**
+     * @param key 缓存的键
+     * @return 该键加载耗时的平均值，本jvm没有加载过时为全部键的平均值，单位毫秒
+     */
+    long getLoadMillis(String key) {
+        Double millis = loadMillis.get(key);
+        return (long) (millis == null ? defaultLoadMillis : millis);
+    }
+
+    /**
+     * 提交刷新任务，该键已经在刷新或队列已满时忽略
+     *
+     * @param key     缓存的键
+     * @param task    刷新逻辑
+     * @param metrics 指标收集
+     */
+    void schedule(final String key, final Runnable task, final CacheMetrics metrics) {
+        if (refreshing.putIfAbsent(key, Boolean.TRUE) != null) {
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                        metrics.increment(MetricNames.REFRESH, key, 1);
+                    } catch (RuntimeException e) {
+                        logger.warn("提前刷新缓存{}失败", key, e);
+                    } finally {
+                        refreshing.remove(key);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+            metrics.increment(MetricNames.REFRESH_DROPPED, key, 1);
+        }
+    }
+
+    /**
+     * @return 记录了加载耗时的键数量
+     */
+    int getTrackedKeyCount() {
+        return loadMillis.size();
+    }
+
+    /**
+     * 记录一次加载的耗时
+     *
+     * @param key   缓存的键
+     * @param nanos 耗时，单位纳秒
+     */
+    void recordLoad(String key, long nanos) {
+        final double millis = nanos / 1_000_000.0;
+        if (loadMillis.size() >= MAX_TRACKED_KEYS && !loadMillis.containsKey(key)) {
+            Iterator<String> iterator = loadMillis.keySet().iterator();
+            if (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        loadMillis.merge(key, millis, new BiFunction<Double, Double, Double>() {
+            @Override
+            public Double apply(Double current, Double latest) {
+                return current * 0.8 + latest * 0.2;
+            }
+        });
+        double current = defaultLoadMillis;
+        defaultLoadMillis = current == 0 ? millis : current * 0.8 + millis * 0.2;
+    }
+
+    void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,61 @@
+package com.freestyledash.ranger.provider.redis;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 判断缓存对象是否需要提前刷新的策略
+ * 读取时如果策略认为对象即将过期，会在后台重新加载，加载完成之前继续返回旧的对象
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public interface RefreshPolicy {
+
+    /**
+     * @param remainingMillis 对象在redis中的剩余存活时间，单位毫秒
+     * @param ttlMillis       写入时的存活时间，单位毫秒
+     * @param loadMillis      该键最近加载耗时的平均值，本jvm没有加载过该键时为全部键的平均值，单位毫秒
+     * @return 是否需要刷新
+     */
+    boolean shouldRefresh(long remainingMillis, long ttlMillis, long loadMillis);
+
+    /**
+     * 剩余存活时间不足ttl的一定比例时刷新
+     *
+     * @param fraction 比例，例如0.2表示剩余时间不足20%时刷新
+     * @return 策略
+     */
+    static RefreshPolicy fraction(final double fraction) {
+        if (fraction <= 0 || fraction >= 1) {
+            throw new IllegalArgumentException("fraction必须在0和1之间");
+        }
+        return new RefreshPolicy() {
+            @Override
+            public boolean shouldRefresh(long remainingMillis, long ttlMillis, long loadMillis) {
+                return remainingMillis <= ttlMillis * fraction;
+            }
+        };
+    }
+
+    /**
+     * 概率提前刷新(XFetch)
+     * 每次读取以 -loadMillis * beta * ln(random) 作为提前量，越接近过期、加载越慢，刷新的概率越大，
+     * 并发读取同一个键时只有少数请求会触发刷新
+     *
+     * @param beta 大于1时更倾向于提前刷新，通常取1
+     * @return 策略
+     */
+    static RefreshPolicy xfetch(final double beta) {
+        if (beta <= 0) {
+            throw new IllegalArgumentException("beta必须大于0");
+        }
+        return new RefreshPolicy() {
+            @Override
+            public boolean shouldRefresh(long remainingMillis, long ttlMillis, long loadMillis) {
+                double random = 1 - ThreadLocalRandom.current().nextDouble();
+                double gap = -Math.max(1, loadMillis) * beta * Math.log(random);
+                return gap >= remainingMillis;
+            }
+        };
+    }
+}
@@ -0,0 +1,544 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.metrics.CacheMetrics;
+import com.freestyledash.ranger.metrics.MetricNames;
+import com.freestyledash.ranger.provider.BulkLoader;
+import com.freestyledash.ranger.provider.CacheLoader;
+import com.freestyledash.ranger.provider.CacheProvider;
+import com.freestyledash.ranger.provider.ForwardingCacheProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 为每次调用设置时间预算、对慢读取发送对冲请求并在redis异常时熔断的装饰器
+ * <p>
+ * 设置了时间预算或对冲读取时，调用在独立的线程中执行，调用方最多等待预算时间，
+ * 不会因为redis停顿而阻塞在socket超时或全局锁上；超过预算、出错或熔断时：
+ * 读取当作未命中，getOrLoad和getAll直接调用loader(结果不写入缓存)，写入返回false，删除抛出异常
+ * <p>
+ * 读取超过对冲延迟仍未返回时，向第二个连接池(例如只读副本)发送相同的读取，使用先返回的结果
+ * <p>
+ * 执行调用的线程数量有上限，redis停顿时被占用的线程不会无限增长，线程用尽时调用直接失败
+ * <p>
+ * 超过预算的写入不会被取消，仍然在线程池中执行完毕；调用方之后对同一个键的写入可能先到达redis，
+ * 随后被这次迟到的写入覆盖，因此迟到的写入完成后会删除它写入的键，之后的读取当作未命中
+ * 迟到的删除最多让之后写入的值被删除，同样只会造成未命中
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class ResilientCacheProvider extends ForwardingCacheProvider {
+
+    private static Logger logger = LoggerFactory.getLogger(ResilientCacheProvider.class);
+
+    /**
+     * 执行调用的最大线程数
+     */
+    static final int MAX_THREADS = 256;
+
+    /**
+     * 对冲读取使用的provider，未开启时为null
+     */
+    private final CacheProvider hedge;
+
+    private final long hedgeDelayNanos;
+
+    private final long readTimeoutMillis;
+
+    private final long writeTimeoutMillis;
+
+    /**
+     * 熔断器，未开启时为null
+     */
+    private final CircuitBreaker breaker;
+
+    private final CacheMetrics metrics;
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private final AtomicLong hedgeCount = new AtomicLong();
+
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+
+    /**
+     * @param delegate           被装饰的provider
+     * @param hedge              对冲读取使用的provider，为null时不对冲
+     * @param hedgeDelayMillis   读取超过该时间仍未返回时发送对冲请求，单位毫秒
+     * @param readTimeoutMillis  读取的默认时间预算，单位毫秒，小于1表示不限制
+     * @param writeTimeoutMillis 写入和删除的默认时间预算，单位毫秒，小于1表示不限制
+     * @param breaker            熔断器，为null时不熔断
+     * @param metrics            指标收集
+     */
+    ResilientCacheProvider(CacheProvider delegate, CacheProvider hedge, long hedgeDelayMillis, long readTimeoutMillis,
+                           long writeTimeoutMillis, CircuitBreaker breaker, CacheMetrics metrics) {
+        super(delegate);
+        this.hedge = hedge;
+        this.hedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, hedgeDelayMillis));
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        this.breaker = breaker;
+        this.metrics = metrics;
+        this.executor = new ThreadPoolExecutor(0, MAX_THREADS, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ranger-resilient-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public <T> T getCache(String key, Class<T> clazz) {
+        return getCache(key, clazz, readTimeoutMillis);
+    }
+
+    @Override
+    public <T> T getCache(String key, Class<T> clazz, long timeout, TimeUnit unit) {
+        return getCache(key, clazz, Math.max(1, unit.toMillis(timeout)));
+    }
+
+    private <T> T getCache(final String key, final Class<T> clazz, long timeoutMillis) {
+        try {
+            return execute(key, new Callable<T>() {
+                @Override
+                public T call() {
+                    return delegate.getCache(key, clazz);
+                }
+            }, hedge == null ? null : new Callable<T>() {
+                @Override
+                public T call() {
+                    return hedge.getCache(key, clazz);
+                }
+            }, timeoutMillis, null);
+        } catch (Unavailable e) {
+            return null;
+        }
+    }
+
+    @Override
+    public <T> List<T> getCache(final List<String> keys, final Class<T> clazz) {
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try {
+            return execute(keys.get(0), new Callable<List<T>>() {
+                @Override
+                public List<T> call() {
+                    return delegate.getCache(keys, clazz);
+                }
+            }, hedge == null ? null : new Callable<List<T>>() {
+                @Override
+                public List<T> call() {
+                    return hedge.getCache(keys, clazz);
+                }
+            }, readTimeoutMillis, null);
+        } catch (Unavailable e) {
+            return new ArrayList<>(Collections.<T>nCopies(keys.size(), null));
+        }
+    }
+
+    /**
+     * 时间预算针对整批读取，读取在独立的线程中执行，因此不分段回调：整批读取完成后再在调用线程中逐个回调，
+     * 超过预算时全部当作未命中
+     */
+    @Override
+    public <T> void getCache(List<String> keys, Class<T> clazz, BiConsumer<String, T> consumer) {
+        List<T> values = getCache(keys, clazz);
+        for (int i = 0; i < keys.size(); i++) {
+            consumer.accept(keys.get(i), values.get(i));
+        }
+    }
+
+    @Override
+    public boolean setCache(final String key, final Object toStore, final int ttl) {
+        LoadGuard guard = new LoadGuard();
+        try {
+            return execute(key, guardedWrite(Collections.singletonList(key), new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return delegate.setCache(key, toStore, ttl);
+                }
+            }, guard), null, writeTimeoutMillis, guard);
+        } catch (Unavailable e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean setCache(final Map<String, Object> params, final int ttl) {
+        if (params.isEmpty()) {
+            return true;
+        }
+        LoadGuard guard = new LoadGuard();
+        try {
+            return execute(params.keySet().iterator().next(), guardedWrite(new ArrayList<>(params.keySet()),
+                    new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            return delegate.setCache(params, ttl);
+                        }
+                    }, guard), null, writeTimeoutMillis, guard);
+        } catch (Unavailable e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void deleteCache(final List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            execute(keys.get(0), new Callable<Void>() {
+                @Override
+                public Void call() {
+                    delegate.deleteCache(keys);
+                    return null;
+                }
+            }, null, writeTimeoutMillis, null);
+        } catch (Unavailable e) {
+            throw new RuntimeException("批量删除缓存失败:" + e.getMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public void deleteCache(final String key) {
+        try {
+            execute(key, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    delegate.deleteCache(key);
+                    return null;
+                }
+            }, null, writeTimeoutMillis, null);
+        } catch (Unavailable e) {
+            throw new RuntimeException("删除缓存" + key + "失败:" + e.getMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public <T> T getOrLoad(String key, Class<T> clazz, CacheLoader<T> loader, int ttl) {
+        return getOrLoad(key, clazz, loader, ttl, readTimeoutMillis);
+    }
+
+    @Override
+    public <T> T getOrLoad(String key, Class<T> clazz, CacheLoader<T> loader, int ttl, long timeout, TimeUnit unit) {
+        return getOrLoad(key, clazz, loader, ttl, Math.max(1, unit.toMillis(timeout)));
+    }
+
+    private <T> T getOrLoad(final String key, final Class<T> clazz, final CacheLoader<T> loader, final int ttl,
+                            long timeoutMillis) {
+        final LoadGuard guard = new LoadGuard();
+        final CacheLoader<T> guarded = new CacheLoader<T>() {
+            @Override
+            public T load(String k) {
+                guard.start();
+                try {
+                    return loader.load(k);
+                } catch (RuntimeException e) {
+                    throw new LoaderFailure(e);
+                }
+            }
+        };
+        try {
+            return execute(key, new Callable<T>() {
+                @Override
+                public T call() {
+                    return delegate.getOrLoad(key, clazz, guarded, ttl);
+                }
+            }, null, timeoutMillis, guard);
+        } catch (Unavailable e) {
+            return loader.load(key);
+        }
+    }
+
+    @Override
+    public <T> Map<String, T> getAll(final Collection<String> keys, final Class<T> clazz, final BulkLoader<T> loader,
+                                     final int ttl) {
+        if (keys.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+        final LoadGuard guard = new LoadGuard();
+        final BulkLoader<T> guarded = new BulkLoader<T>() {
+            @Override
+            public Map<String, T> load(Collection<String> missed) {
+                guard.start();
+                try {
+                    return loader.load(missed);
+                } catch (RuntimeException e) {
+                    throw new LoaderFailure(e);
+                }
+            }
+        };
+        try {
+            return execute(keys.iterator().next(), new Callable<Map<String, T>>() {
+                @Override
+                public Map<String, T> call() {
+                    return delegate.getAll(keys, clazz, guarded, ttl);
+                }
+            }, null, readTimeoutMillis, guard);
+        } catch (Unavailable e) {
+            List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+            Map<String, T> loaded = loader.load(Collections.unmodifiableList(distinct));
+            Map<String, T> returnMap = new LinkedHashMap<>();
+            if (loaded != null) {
+                for (String key : distinct) {
+                    T value = loaded.get(key);
+                    if (value != null) {
+                        returnMap.put(key, value);
+                    }
+                }
+            }
+            return returnMap;
+        }
+    }
+
+    /**
+     * 包装写入：写入完成时通过guard通知调用方，调用方已经放弃等待时删除写入的键，防止迟到的写入覆盖之后的写入
+     * 没有设置时间预算时guard不会被放弃，不会发生删除
+     */
+    private Callable<Boolean> guardedWrite(final List<String> keys, final Callable<Boolean> write,
+                                           final LoadGuard guard) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                Boolean result = write.call();
+                try {
+                    guard.start();
+                } catch (Unavailable e) {
+                    try {
+                        delegate.deleteCache(keys);
+                    } catch (RuntimeException deleteFailure) {
+                        logger.warn("删除超过时间预算的写入失败,键:" + keys.get(0), deleteFailure);
+                    }
+                }
+                return result;
+            }
+        };
+    }
+
+    /**
+     * 经过熔断器执行一次调用
+     *
+     * @param key           用于指标的键
+     * @param primary       访问redis的调用
+     * @param secondary     对冲调用，为null时不对冲
+     * @param timeoutMillis 时间预算，单位毫秒，小于1表示不限制
+     * @param guard         调用中包含加载或写入时不为null，加载开始或写入完成之后不再受时间预算限制
+     * @return 调用结果
+     * @throws Unavailable 熔断、超过预算或访问redis出错
+     */
+    private <R> R execute(String key, Callable<R> primary, Callable<R> secondary, long timeoutMillis, LoadGuard guard) {
+        long permit = breaker == null ? CircuitBreaker.REJECTED : breaker.tryAcquire();
+        if (breaker != null && permit == CircuitBreaker.REJECTED) {
+            metrics.increment(MetricNames.BREAKER_REJECTED, key, 1);
+            throw new Unavailable("redis熔断中", null);
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            R result = timeoutMillis < 1 && secondary == null
+                    ? primary.call() : race(key, primary, secondary, timeoutMillis, start, guard);
+            failed = false;
+            return result;
+        } catch (Unavailable e) {
+            throw e;
+        } catch (Exception e) {
+            RuntimeException loaderFailure = loaderFailure(e);
+            if (loaderFailure != null) {
+                //loader的异常与redis无关，原样抛给调用方
+                failed = false;
+                throw loaderFailure;
+            }
+            throw new Unavailable(String.valueOf(e.getMessage()), e);
+        } finally {
+            if (breaker != null) {
+                //加载的耗时不计入redis的耗时
+                long end = guard != null && guard.startedAt != 0 ? guard.startedAt : System.nanoTime();
+                breaker.onResult(permit, failed, end - start);
+            }
+        }
+    }
+
+    /**
+     * 在线程池中执行调用，等待到时间预算用尽；超过对冲延迟仍未返回或主调用出错时发送对冲调用，使用先成功的结果
+     */
+    private <R> R race(String key, Callable<R> primary, Callable<R> secondary, long timeoutMillis, long start,
+                       LoadGuard guard) throws Exception {
+        CompletionService<R> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<R>> futures = new ArrayList<>(2);
+        boolean bounded = timeoutMillis >= 1;
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long hedgeAt = start + hedgeDelayNanos;
+        boolean hedged = secondary == null;
+        int running = 0;
+        try {
+            futures.add(completionService.submit(primary));
+            running++;
+            while (true) {
+                long now = System.nanoTime();
+                if (bounded && now - deadline >= 0) {
+                    if (guard != null && !guard.abandon()) {
+                        //loader已经开始执行，等待它完成
+                        bounded = false;
+                        continue;
+                    }
+                    timeoutCount.incrementAndGet();
+                    metrics.increment(MetricNames.DEADLINE_EXCEEDED, key, 1);
+                    throw new Unavailable("超过时间预算" + timeoutMillis + "ms", null);
+                }
+                if (!hedged && now - hedgeAt >= 0) {
+                    hedged = true;
+                    futures.add(completionService.submit(secondary));
+                    running++;
+                    hedgeCount.incrementAndGet();
+                    metrics.increment(MetricNames.HEDGE_SENT, key, 1);
+                    continue;
+                }
+                long wait = bounded ? deadline - now : Long.MAX_VALUE;
+                if (!hedged) {
+                    wait = Math.min(wait, hedgeAt - now);
+                }
+                Future<R> done = completionService.poll(wait, TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    continue;
+                }
+                running--;
+                try {
+                    R result = done.get();
+                    if (done != futures.get(0)) {
+                        hedgeWinCount.incrementAndGet();
+                        metrics.increment(MetricNames.HEDGE_WIN, key, 1);
+                    }
+                    return result;
+                } catch (ExecutionException e) {
+                    if (loaderFailure(e) != null || (hedged && running == 0)) {
+                        throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                    //主调用出错时立即对冲
+                    hedgeAt = now;
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            throw new Unavailable("执行调用的线程已经用尽", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Unavailable("等待调用结果被中断", e);
+        } finally {
+            for (Future<R> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private static RuntimeException loaderFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof LoaderFailure) {
+                return (RuntimeException) cause.getCause();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 熔断器，未开启时为null
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    /**
+     * @return 超过时间预算的调用次数
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * @return 发送对冲读取的次数
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * @return 对冲读取先于主读取返回的次数
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+
+    /**
+     * 停止执行调用的线程池，正在执行的调用不受影响
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * 记录loader是否已经开始执行，调用方放弃等待之后loader不会再被执行，避免同一次调用加载两次
+     * 写入时记录写入是否已经完成，调用方放弃等待之后才完成的写入需要删除写入的键
+     */
+    private static final class LoadGuard {
+
+        private static final int WAITING = 0;
+
+        private static final int LOADING = 1;
+
+        private static final int ABANDONED = 2;
+
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        private volatile long startedAt;
+
+        void start() {
+            if (!state.compareAndSet(WAITING, LOADING)) {
+                throw new Unavailable("调用方已经放弃等待", null);
+            }
+            startedAt = System.nanoTime();
+        }
+
+        /**
+         * @return 是否成功放弃，loader已经开始执行时返回false
+         */
+        boolean abandon() {
+            return state.compareAndSet(WAITING, ABANDONED);
+        }
+    }
+
+    /**
+     * redis不可用，调用方需要降级
+     */
+    private static final class Unavailable extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private Unavailable(String message, Throwable cause) {
+            super(message, cause, false, false);
+        }
+    }
+
+    /**
+     * 包装loader抛出的异常，与redis的异常区分
+     */
+    private static final class LoaderFailure extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private LoaderFailure(RuntimeException cause) {
+            super(cause.getMessage(), cause, false, false);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.freestyledash.ranger.provider.redis;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 乐观写入发生冲突后的重试策略
+ * 每次冲突后询问策略需要等待多久再重试，返回负数时放弃
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public interface RetryPolicy {
+
+    /**
+     * 不重试，第一次冲突就放弃
+     */
+    RetryPolicy NONE = new RetryPolicy() {
+        @Override
+        public long backoff(int attempt) {
+            return -1;
+        }
+    };
+
+    /**
+     * @param attempt 已经冲突的次数，从1开始
+     * @return 重试前等待的时间，单位毫秒，0表示立即重试，负数表示放弃
+     */
+    long backoff(int attempt);
+
+    /**
+     * 指数退避，等待时间在上限的一半到上限之间随机，避免冲突的写入方同时重试再次冲突
+     *
+     * @param maxAttempts 最多尝试的次数，包括第一次
+     * @param minMillis   第一次重试的等待上限，单位毫秒
+     * @param maxMillis   等待上限的最大值，单位毫秒
+     * @return 策略
+     */
+    static RetryPolicy exponential(final int maxAttempts, final long minMillis, final long maxMillis) {
+        if (maxAttempts < 1 || minMillis < 1 || maxMillis < minMillis) {
+            throw new IllegalArgumentException("maxAttempts和minMillis必须大于0,maxMillis不能小于minMillis");
+        }
+        return new RetryPolicy() {
+            @Override
+            public long backoff(int attempt) {
+                if (attempt >= maxAttempts) {
+                    return -1;
+                }
+                long ceiling = Math.min(maxMillis, minMillis << Math.min(attempt - 1, 30));
+                return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+            }
+        };
+    }
+}
@@ -0,0 +1,30 @@
+package com.freestyledash.ranger.provider.redis;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 尚未反序列化的本地缓存值，例如从快照文件中加载的条目
+ * 数据是快照文件映射内存的一段视图，首次被读取时才按照调用方的类型反序列化
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+final class SerializedValue {
+
+    private final ByteBuffer data;
+
+    SerializedValue(ByteBuffer data) {
+        this.data = data;
+    }
+
+    /**
+     * @return 独立position的只读视图，可以在多个线程中同时使用
+     */
+    ByteBuffer buffer() {
+        return data.duplicate();
+    }
+
+    int length() {
+        return data.remaining();
+    }
+}
@@ -0,0 +1,478 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.metrics.CacheMetrics;
+import com.freestyledash.ranger.metrics.NoopCacheMetrics;
+import com.freestyledash.ranger.provider.BulkLoader;
+import com.freestyledash.ranger.provider.CacheLoader;
+import com.freestyledash.ranger.provider.CacheProvider;
+import com.freestyledash.ranger.util.serialization.SerializationUtil;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.Hashing;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+
+/**
+ * 使用客户端一致性hash将键分布到多个redis节点的CacheProvider
+ * <p>
+ * 每个节点对应一个{@link CacheProviderCore}，单键操作直接路由到所在节点；
+ * 批量操作先按节点分组，每个节点一个pipeline并行执行，最后按照输入顺序组装结果
+ * <p>
+ * 与redis cluster一样支持hash tag：键中包含"{...}"时只使用括号内的部分计算hash，可以让相关的键落在同一个节点
+ * 节点在hash环上的位置由节点名称决定，调整节点顺序不会改变键的分布
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class ShardedCacheProvider implements CacheProvider {
+
+    /**
+     * 每个节点在hash环上的虚拟节点数量
+     */
+    private static final int VIRTUAL_NODES = 160;
+
+    private final List<CacheProviderCore> shards;
+
+    /**
+     * hash环，值为节点下标
+     */
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+
+    /**
+     * 执行各节点pipeline的线程池
+     */
+    private final ExecutorService executor;
+
+    private ShardedCacheProvider(Builder builder) {
+        shards = new ArrayList<>(builder.pools.size());
+        int index = 0;
+        for (Map.Entry<String, JedisPool> entry : builder.pools.entrySet()) {
+            CacheProviderCore core = new CacheProviderCore(entry.getValue(), builder.serializationUtil);
+            core.setLegacyCompatible(builder.legacyCompatible);
+            core.setTtlPolicy(builder.ttlPolicy);
+            core.setMetrics(builder.metrics);
+            core.setNegativeTtl(builder.negativeTtl);
+            shards.add(core);
+            for (int n = 0; n < VIRTUAL_NODES; n++) {
+                ring.put(Hashing.MURMUR_HASH.hash("SHARD-" + entry.getKey() + "-NODE-" + n), index);
+            }
+            index++;
+        }
+        executor = Executors.newFixedThreadPool(builder.parallelism, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ranger-shard-" + count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 计算键所在的节点
+     *
+     * @param key 缓存的键
+     * @return 节点下标
+     */
+    int shardOf(String key) {
+        Map.Entry<Long, Integer> entry = ring.ceilingEntry(Hashing.MURMUR_HASH.hash(hashTagOf(key)));
+        if (entry == null) {
+            entry = ring.firstEntry();
+        }
+        return entry.getValue();
+    }
+
+    private static String hashTagOf(String key) {
+        int start = key.indexOf('{');
+        if (start >= 0) {
+            int end = key.indexOf('}', start + 1);
+            if (end > start + 1) {
+                return key.substring(start + 1, end);
+            }
+        }
+        return key;
+    }
+
+    @Override
+    public <T> T getCache(String key, Class<T> clazz) {
+        return shards.get(shardOf(key)).getCache(key, clazz);
+    }
+
+    @Override
+    public <T> List<T> getCache(List<String> keys, final Class<T> clazz) {
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final Map<Integer, List<Integer>> groups = groupByShard(keys);
+        if (groups.size() == 1) {
+            return shards.get(groups.keySet().iterator().next()).getCache(keys, clazz);
+        }
+        final List<T> returnList = new ArrayList<>(Collections.<T>nCopies(keys.size(), null));
+        List<Callable<Void>> tasks = new ArrayList<>(groups.size());
+        for (final Map.Entry<Integer, List<Integer>> group : groups.entrySet()) {
+            final List<String> shardKeys = new ArrayList<>(group.getValue().size());
+            for (Integer position : group.getValue()) {
+                shardKeys.add(keys.get(position));
+            }
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    List<T> values = shards.get(group.getKey()).getCache(shardKeys, clazz);
+                    List<Integer> positions = group.getValue();
+                    for (int i = 0; i < positions.size(); i++) {
+                        returnList.set(positions.get(i), values.get(i));
+                    }
+                    return null;
+                }
+            });
+        }
+        runAll(tasks);
+        return returnList;
+    }
+
+    /**
+     * 每个节点的键按节点的分段大小切分，所有分段并行读取，每段完成后立即在调用线程中回调
+     */
+    @Override
+    public <T> void getCache(List<String> keys, final Class<T> clazz, BiConsumer<String, T> consumer) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<Integer>> groups = groupByShard(keys);
+        if (groups.size() == 1) {
+            shards.get(groups.keySet().iterator().next()).getCache(keys, clazz, consumer);
+            return;
+        }
+        final List<List<String>> chunks = new ArrayList<>();
+        final List<CacheProviderCore> owners = new ArrayList<>();
+        for (Map.Entry<Integer, List<Integer>> group : groups.entrySet()) {
+            CacheProviderCore shard = shards.get(group.getKey());
+            List<String> shardKeys = new ArrayList<>(group.getValue().size());
+            for (Integer position : group.getValue()) {
+                shardKeys.add(keys.get(position));
+            }
+            for (List<String> chunk : BatchTasks.partition(shardKeys, shard.getBatchChunkSize())) {
+                chunks.add(chunk);
+                owners.add(shard);
+            }
+        }
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+        final List<List<T>> results = new ArrayList<>(Collections.<List<T>>nCopies(chunks.size(), null));
+        List<Future<Integer>> futures = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            final int index = i;
+            futures.add(completionService.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    results.set(index, owners.get(index).getCache(chunks.get(index), clazz));
+                    return index;
+                }
+            }));
+        }
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                int index = completionService.take().get();
+                List<String> chunk = chunks.get(index);
+                List<T> values = results.get(index);
+                for (int j = 0; j < chunk.size(); j++) {
+                    consumer.accept(chunk.get(j), values.get(j));
+                }
+                results.set(index, null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待批量读取结果被中断", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        } finally {
+            for (Future<Integer> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    @Override
+    public boolean setCache(String key, Object toStore, int ttl) {
+        return shards.get(shardOf(key)).setCache(key, toStore, ttl);
+    }
+
+    @Override
+    public boolean setCache(Map<String, Object> params, final int ttl) {
+        if (params.isEmpty()) {
+            return true;
+        }
+        Map<Integer, Map<String, Object>> groups = new HashMap<>();
+        for (Map.Entry<String, Object> entry : params.entrySet()) {
+            int shard = shardOf(entry.getKey());
+            Map<String, Object> group = groups.get(shard);
+            if (group == null) {
+                group = new HashMap<>();
+                groups.put(shard, group);
+            }
+            group.put(entry.getKey(), entry.getValue());
+        }
+        final boolean[] results = new boolean[shards.size()];
+        List<Callable<Void>> tasks = new ArrayList<>(groups.size());
+        for (final Map.Entry<Integer, Map<String, Object>> group : groups.entrySet()) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    results[group.getKey()] = shards.get(group.getKey()).setCache(group.getValue(), ttl);
+                    return null;
+                }
+            });
+        }
+        runAll(tasks);
+        for (Integer shard : groups.keySet()) {
+            if (!results[shard]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void deleteCache(List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<Integer>> groups = groupByShard(keys);
+        List<Callable<Void>> tasks = new ArrayList<>(groups.size());
+        for (final Map.Entry<Integer, List<Integer>> group : groups.entrySet()) {
+            final List<String> shardKeys = new ArrayList<>(group.getValue().size());
+            for (Integer position : group.getValue()) {
+                shardKeys.add(keys.get(position));
+            }
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    shards.get(group.getKey()).deleteCache(shardKeys);
+                    return null;
+                }
+            });
+        }
+        runAll(tasks);
+    }
+
+    @Override
+    public void deleteCache(String key) {
+        shards.get(shardOf(key)).deleteCache(key);
+    }
+
+    @Override
+    public <T> T getOrLoad(String key, Class<T> clazz, CacheLoader<T> loader, int ttl) {
+        return shards.get(shardOf(key)).getOrLoad(key, clazz, loader, ttl);
+    }
+
+    /**
+     * 各节点并行读取，全部节点的未命中键合并后只调用一次loader，加载结果按节点并行写入
+     */
+    @Override
+    public <T> Map<String, T> getAll(Collection<String> keys, final Class<T> clazz, BulkLoader<T> loader,
+                                     final int ttl) {
+        final List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        Map<String, T> returnMap = new LinkedHashMap<>();
+        if (distinct.isEmpty()) {
+            return returnMap;
+        }
+        final Map<Integer, List<String>> groups = new HashMap<>();
+        for (Map.Entry<Integer, List<Integer>> group : groupByShard(distinct).entrySet()) {
+            List<String> shardKeys = new ArrayList<>(group.getValue().size());
+            for (Integer position : group.getValue()) {
+                shardKeys.add(distinct.get(position));
+            }
+            groups.put(group.getKey(), shardKeys);
+        }
+        final Map<String, T> found = new ConcurrentHashMap<>();
+        final Map<Integer, List<String>> missedGroups = new ConcurrentHashMap<>();
+        List<Callable<Void>> tasks = new ArrayList<>(groups.size());
+        for (final Map.Entry<Integer, List<String>> group : groups.entrySet()) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    Map<String, T> shardFound = new HashMap<>();
+                    List<String> missed = shards.get(group.getKey()).readAll(group.getValue(), clazz, shardFound);
+                    found.putAll(shardFound);
+                    if (!missed.isEmpty()) {
+                        missedGroups.put(group.getKey(), missed);
+                    }
+                    return null;
+                }
+            });
+        }
+        runAll(tasks);
+        if (!missedGroups.isEmpty()) {
+            List<String> missed = new ArrayList<>();
+            for (List<String> shardMissed : missedGroups.values()) {
+                missed.addAll(shardMissed);
+            }
+            final Map<String, T> loaded = CacheProviderCore.loadAll(missed, loader, shards.get(0).getMetrics());
+            tasks = new ArrayList<>(missedGroups.size());
+            for (final Map.Entry<Integer, List<String>> group : missedGroups.entrySet()) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        Map<String, T> shardLoaded = new HashMap<>();
+                        for (String key : group.getValue()) {
+                            if (loaded.containsKey(key)) {
+                                shardLoaded.put(key, loaded.get(key));
+                            }
+                        }
+                        shards.get(group.getKey()).writeBack(group.getValue(), shardLoaded, ttl);
+                        return null;
+                    }
+                });
+            }
+            runAll(tasks);
+            found.putAll(loaded);
+        }
+        for (String key : distinct) {
+            T value = found.get(key);
+            if (value != null) {
+                returnMap.put(key, value);
+            }
+        }
+        return returnMap;
+    }
+
+    /**
+     * 依次遍历每个节点，见{@link CacheProviderCore#scan}
+     */
+    public <T> void scan(String pattern, int pageSize, Class<T> clazz, BiConsumer<String, T> consumer) {
+        for (CacheProviderCore shard : shards) {
+            shard.scan(pattern, pageSize, clazz, consumer);
+        }
+    }
+
+    /**
+     * 按节点分组，保留每个键在输入中的位置
+     */
+    private Map<Integer, List<Integer>> groupByShard(List<String> keys) {
+        Map<Integer, List<Integer>> groups = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            int shard = shardOf(keys.get(i));
+            List<Integer> positions = groups.get(shard);
+            if (positions == null) {
+                positions = new ArrayList<>();
+                groups.put(shard, positions);
+            }
+            positions.add(i);
+        }
+        return groups;
+    }
+
+    /**
+     * 并行执行各节点的任务，最后一个任务在调用线程中执行
+     */
+    private void runAll(List<Callable<Void>> tasks) {
+        BatchTasks.runAll(executor, tasks);
+    }
+
+    /**
+     * @return 节点数量
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * 停止执行批量操作的线程池，不会关闭连接池
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    public static class Builder {
+
+        private final Map<String, JedisPool> pools = new LinkedHashMap<>();
+
+        private SerializationUtil serializationUtil;
+
+        private TtlPolicy ttlPolicy = TtlPolicy.NONE;
+
+        private CacheMetrics metrics = NoopCacheMetrics.INSTANCE;
+
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        private boolean legacyCompatible = true;
+
+        private int negativeTtl;
+
+        /**
+         * 添加一个节点
+         *
+         * @param name 节点名称，决定节点在hash环上的位置，例如"redis-1"
+         * @param pool 节点的连接池
+         * @return builder
+         */
+        public Builder addShard(String name, JedisPool pool) {
+            if (pools.containsKey(name)) {
+                throw new IllegalArgumentException("节点名称重复:" + name);
+            }
+            pools.put(name, pool);
+            return this;
+        }
+
+        public Builder setSerializationUtil(SerializationUtil util) {
+            this.serializationUtil = util;
+            return this;
+        }
+
+        public Builder setTtlPolicy(TtlPolicy ttlPolicy) {
+            this.ttlPolicy = ttlPolicy;
+            return this;
+        }
+
+        public Builder setMetrics(CacheMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * 是否兼容旧版本使用iso8859-1字符串写入的数据，与{@link CacheProviderFactory.Builder#setLegacyCompatible}相同
+         *
+         * @param legacyCompatible 是否兼容
+         * @return builder
+         */
+        public Builder setLegacyCompatible(boolean legacyCompatible) {
+            this.legacyCompatible = legacyCompatible;
+            return this;
+        }
+
+        /**
+         * 开启空值缓存，与{@link CacheProviderFactory.Builder#setNegativeCaching}相同，默认不开启
+         *
+         * @param ttl 空缓存标记的过期时间，单位是秒，小于1表示不开启
+         * @return builder
+         */
+        public Builder setNegativeCaching(int ttl) {
+            this.negativeTtl = ttl;
+            return this;
+        }
+
+        /**
+         * 设置并行执行批量操作的线程数，默认为cpu核数
+         *
+         * @param parallelism 线程数
+         * @return builder
+         */
+        public Builder setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public ShardedCacheProvider build() {
+            if (pools.isEmpty() || serializationUtil == null) {
+                throw new IllegalStateException("节点和serializationUtil未初始化");
+            }
+            if (parallelism < 1) {
+                throw new IllegalStateException("parallelism必须大于0");
+            }
+            return new ShardedCacheProvider(this);
+        }
+    }
+}
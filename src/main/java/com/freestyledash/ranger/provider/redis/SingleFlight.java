@@ -0,0 +1,66 @@
+package com.freestyledash.ranger.provider.redis;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 按键合并并发的加载操作
+ * 同一个键同一时刻只有一个线程执行加载，其余线程等待并共享结果；不同的键之间互不影响
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+final class SingleFlight {
+
+    /**
+     * 正在执行的加载任务，任务完成后立即移除
+     */
+    private final ConcurrentMap<String, FutureTask<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 执行加载，如果该键已经有加载任务在执行，则等待其结果
+     *
+     * @param key      键
+     * @param callable 加载逻辑
+     * @param <T>      结果类型
+     * @return 加载结果
+     */
+    @SuppressWarnings("unchecked")
+    <T> T execute(String key, Callable<T> callable) {
+        FutureTask<Object> task = new FutureTask<>((Callable<Object>) callable);
+        FutureTask<Object> existing = inFlight.putIfAbsent(key, task);
+        if (existing == null) {
+            existing = task;
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+        }
+        try {
+            return (T) existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待加载" + key + "被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * @return 正在执行的加载任务数量
+     */
+    int size() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,29 @@
+package com.freestyledash.ranger.provider.redis;
+
+/**
+ * 写入缓存前对过期时间进行调整的策略
+ * 例如为批量写入的键增加随机的过期时间，避免它们在同一时刻过期造成缓存雪崩
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public interface TtlPolicy {
+
+    /**
+     * 不做任何调整
+     */
+    TtlPolicy NONE = new TtlPolicy() {
+        @Override
+        public int apply(int ttl) {
+            return ttl;
+        }
+    };
+
+    /**
+     * 计算实际写入redis的过期时间
+     *
+     * @param ttl 调用方指定的过期时间 -1 永不过期 ，单位是秒
+     * @return 实际的过期时间，-1 永不过期，单位是秒
+     */
+    int apply(int ttl);
+}
@@ -0,0 +1,283 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.metrics.CacheMetrics;
+import com.freestyledash.ranger.metrics.MetricNames;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.SafeEncoder;
+
+import java.util.*;
+import java.util.function.UnaryOperator;
+
+/**
+ * 带版本号的缓存对象，通过比较版本号实现跨jvm的乐观并发控制
+ * <p>
+ * 值的前9个字节为版本头(1字节标记和8字节版本号)，之后是序列化后的对象；
+ * 写入时在redis中通过lua脚本比较当前版本与期望版本，一致时写入并把版本号加1，不一致时不写入，
+ * 多个jvm并发修改同一个键时不需要加锁，失败的一方重新读取后再次尝试
+ * <p>
+ * 版本号0表示键不存在；使用本对象保存的键只能通过本对象读写，
+ * 通过{@link com.freestyledash.ranger.provider.CacheProvider#setCache}写入的值没有版本头，比较时总是冲突
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class VersionedCache {
+
+    /**
+     * 写入冲突时{@link #compareAndSet(String, long, Object, int)}的返回值
+     */
+    public static final long CONFLICT = -1;
+
+    private static final byte MAGIC = (byte) 0xCA;
+
+    private static final int HEADER_LENGTH = 9;
+
+    private static final byte[] ABSENT = new byte[0];
+
+    /**
+     * KEYS为需要写入的键，ARGV每三个一组：期望的版本头(空表示键不存在)、带新版本头的值、过期时间(-1表示永不过期，0或其它负数表示删除)
+     * 任意一个键的版本不一致时不写入任何键，返回这些键的序号(从1开始)，全部写入时返回空数组
+     */
+    private static final RedisScript COMPARE_AND_SET = new RedisScript(
+            "local conflicts = {} "
+                    + "for i = 1, #KEYS do "
+                    + "local current = redis.call('get', KEYS[i]) "
+                    + "local expected = ARGV[i * 3 - 2] "
+                    + "if (current and string.sub(current, 1, 9) ~= expected) or (not current and expected ~= '') then "
+                    + "conflicts[#conflicts + 1] = i end end "
+                    + "if #conflicts > 0 then return conflicts end "
+                    + "for i = 1, #KEYS do "
+                    + "local ttl = tonumber(ARGV[i * 3]) "
+                    + "if ttl > 0 then redis.call('set', KEYS[i], ARGV[i * 3 - 1], 'ex', ttl) "
+                    + "elseif ttl == -1 then redis.call('set', KEYS[i], ARGV[i * 3 - 1]) "
+                    + "else redis.call('del', KEYS[i]) end end "
+                    + "return conflicts");
+
+    private final CacheProviderCore core;
+
+    private final RetryPolicy retryPolicy;
+
+    VersionedCache(CacheProviderCore core, RetryPolicy retryPolicy) {
+        this.core = core;
+        this.retryPolicy = retryPolicy == null ? RetryPolicy.NONE : retryPolicy;
+    }
+
+    /**
+     * 读取对象和它的版本号
+     *
+     * @param key   缓存的键
+     * @param clazz 缓存对象的类型
+     * @return 对象和版本号，未命中返回null
+     */
+    public <T> Versioned<T> get(String key, Class<T> clazz) {
+        return get(Collections.singletonList(key), clazz).get(0);
+    }
+
+    /**
+     * 通过一次pipeline批量读取对象和它们的版本号
+     *
+     * @param keys  缓存的键
+     * @param clazz 缓存对象的类型
+     * @return 对象和版本号，顺序与keys一致，未命中的位置为null
+     */
+    public <T> List<Versioned<T>> get(List<String> keys, Class<T> clazz) {
+        List<Versioned<T>> returnList = new ArrayList<>(keys.size());
+        if (keys.isEmpty()) {
+            return returnList;
+        }
+        long start = System.nanoTime();
+        CacheMetrics metrics = core.getMetrics();
+        List<byte[]> rawKeys = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            rawKeys.add(SafeEncoder.encode(key));
+        }
+        List<byte[]> values = core.getTransport().get(rawKeys);
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            byte[] bytes = values.get(i);
+            metrics.increment(bytes == null ? MetricNames.MISS : MetricNames.HIT, key, 1);
+            returnList.add(bytes == null ? null : decode(key, bytes, clazz));
+        }
+        metrics.record(keys.size() == 1 ? MetricNames.GET_LATENCY : MetricNames.MULTI_GET_LATENCY, keys.get(0),
+                System.nanoTime() - start);
+        return returnList;
+    }
+
+    /**
+     * 当前版本与期望版本一致时写入，版本号加1
+     *
+     * @param key             缓存的键
+     * @param expectedVersion 读取时的版本号，0表示期望键不存在
+     * @param value           需要存储的对象
+     * @param ttl             过期时间 -1 永不过期 ，0或其它负数表示版本一致时删除该键，单位是秒
+     * @return 写入后的版本号，删除时返回0，版本不一致时返回{@link #CONFLICT}
+     */
+    public long compareAndSet(String key, long expectedVersion, Object value, int ttl) {
+        List<String> conflicts = compareAndSet(Collections.singletonMap(key, expectedVersion),
+                Collections.singletonMap(key, value), ttl);
+        if (!conflicts.isEmpty()) {
+            return CONFLICT;
+        }
+        return deletes(ttl) ? 0 : expectedVersion + 1;
+    }
+
+    /**
+     * 在一个lua脚本中原子地比较并写入多个键，任意一个键的版本不一致时全部不写入
+     * 全部写入成功时每个键的版本号为期望版本加1；ttl为0或-1以外的负数时全部删除，之后的写入需要以版本号0比较
+     *
+     * @param expectedVersions 每个键读取时的版本号，0表示期望键不存在，需要包含values中的全部键
+     * @param values           需要写入的键和对象
+     * @param ttl              过期时间 -1 永不过期 ，0或其它负数表示删除这些键，单位是秒
+     * @return 版本不一致的键，为空表示全部写入成功
+     */
+    public List<String> compareAndSet(Map<String, Long> expectedVersions, Map<String, Object> values, int ttl) {
+        if (values.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long start = System.nanoTime();
+        List<String> keys = new ArrayList<>(values.keySet());
+        List<byte[]> rawKeys = new ArrayList<>(keys.size());
+        List<byte[]> args = new ArrayList<>(keys.size() * 3);
+        for (String key : keys) {
+            Long expected = expectedVersions.get(key);
+            if (expected == null || expected < 0) {
+                throw new IllegalArgumentException("没有指定" + key + "的期望版本");
+            }
+            if (expected == Long.MAX_VALUE) {
+                throw new IllegalStateException(key + "的版本号已经达到上限");
+            }
+            rawKeys.add(SafeEncoder.encode(key));
+            args.add(expected == 0 ? ABSENT : header(expected));
+            byte[] serialized = core.serialize(key, values.get(key));
+            byte[] stored = Arrays.copyOf(header(expected + 1), HEADER_LENGTH + serialized.length);
+            System.arraycopy(serialized, 0, stored, HEADER_LENGTH, serialized.length);
+            args.add(stored);
+            args.add(SafeEncoder.encode(String.valueOf(core.getTtlPolicy().apply(ttl))));
+        }
+        Object result;
+        Jedis resource = core.borrow();
+        try {
+            result = COMPARE_AND_SET.eval(resource, rawKeys, args);
+        } finally {
+            resource.close();
+            for (String key : keys) {
+                core.unpin(key);
+            }
+        }
+        List<String> conflicts = new ArrayList<>();
+        for (Object index : (List<?>) result) {
+            String key = keys.get(((Long) index).intValue() - 1);
+            conflicts.add(key);
+            core.getMetrics().increment(MetricNames.CAS_CONFLICT, key, 1);
+        }
+        core.getMetrics().record(keys.size() == 1 ? MetricNames.SET_LATENCY : MetricNames.MULTI_SET_LATENCY,
+                keys.get(0), System.nanoTime() - start);
+        return conflicts;
+    }
+
+    /**
+     * 读取、修改并写回，写入冲突时按照重试策略重新读取并再次调用updater
+     * updater可能被调用多次，不应有副作用
+     *
+     * @param key     缓存的键
+     * @param clazz   缓存对象的类型
+     * @param updater 根据当前对象计算新对象，键不存在时参数为null，不能返回null
+     * @param ttl     过期时间 -1 永不过期 ，0或其它负数表示删除该键，单位是秒
+     * @return 写入的对象和版本号，删除时版本号为0
+     * @throws ConcurrentModificationException 重试策略放弃时抛出
+     */
+    public <T> Versioned<T> update(String key, Class<T> clazz, UnaryOperator<T> updater, int ttl) {
+        for (int attempt = 1; ; attempt++) {
+            Versioned<T> current = get(key, clazz);
+            long version = current == null ? 0 : current.getVersion();
+            T updated = updater.apply(current == null ? null : current.getValue());
+            if (updated == null) {
+                throw new IllegalArgumentException("updater不能返回null");
+            }
+            long written = compareAndSet(key, version, updated, ttl);
+            if (written != CONFLICT) {
+                return new Versioned<>(updated, written);
+            }
+            long backoff = retryPolicy.backoff(attempt);
+            if (backoff < 0) {
+                core.getMetrics().increment(MetricNames.CAS_ABORT, key, 1);
+                throw new ConcurrentModificationException("修改" + key + "冲突" + attempt + "次,放弃");
+            }
+            if (backoff > 0) {
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("等待重试修改" + key + "被中断", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 删除对象，之后的写入需要以版本号0比较
+     *
+     * @param key 缓存的键
+     */
+    public void delete(String key) {
+        core.deleteCache(key);
+    }
+
+    /**
+     * @return 按照{@link com.freestyledash.ranger.provider.CacheProvider#setCache}的约定，该过期时间是否表示删除
+     */
+    private boolean deletes(int ttl) {
+        int expire = core.getTtlPolicy().apply(ttl);
+        return expire < 1 && expire != -1;
+    }
+
+    private <T> Versioned<T> decode(String key, byte[] bytes, Class<T> clazz) {
+        if (bytes.length < HEADER_LENGTH || bytes[0] != MAGIC) {
+            throw new IllegalStateException(key + "不是通过VersionedCache写入的");
+        }
+        long version = 0;
+        for (int i = 1; i < HEADER_LENGTH; i++) {
+            version = (version << 8) | (bytes[i] & 0xFF);
+        }
+        T value = core.deserialize(key, Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length), clazz);
+        return new Versioned<>(value, version);
+    }
+
+    private static byte[] header(long version) {
+        byte[] header = new byte[HEADER_LENGTH];
+        header[0] = MAGIC;
+        for (int i = HEADER_LENGTH - 1; i > 0; i--) {
+            header[i] = (byte) version;
+            version >>>= 8;
+        }
+        return header;
+    }
+
+    /**
+     * 对象和读取时的版本号
+     *
+     * @param <T> 对象的类型
+     */
+    public static final class Versioned<T> {
+
+        private final T value;
+
+        private final long version;
+
+        Versioned(T value, long version) {
+            this.value = value;
+            this.version = version;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * @return 版本号，作为下一次{@link VersionedCache#compareAndSet}的期望版本
+         */
+        public long getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,536 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.metrics.MetricNames;
+import com.freestyledash.ranger.provider.BulkLoader;
+import com.freestyledash.ranger.provider.CacheLoader;
+import com.freestyledash.ranger.provider.CacheProvider;
+import com.freestyledash.ranger.provider.ForwardingCacheProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * 延迟写入的CacheProvider
+ * <p>
+ * setCache和deleteCache只把序列化后的结果放入有界缓冲区，同一个键的多次修改只保留最后一次；
+ * 缓冲区达到flushSize或者距离上次写入超过flushInterval时，由后台线程通过一个pipeline写入redis
+ * 缓冲区已满时调用方阻塞，直到后台线程写完一批
+ * <p>
+ * 本jvm的读取会先查找缓冲区和正在写入的批次，可以读到自己尚未写入redis的修改，包括尚未写入的删除；
+ * 其他jvm在写入之前看不到这些修改
+ * <p>
+ * 写入失败的修改放回缓冲区，下次写入时重试；redis对某条命令返回错误时最多重试{@link #MAX_ATTEMPTS}次；
+ * 放回时缓冲区已满则丢弃这些修改，丢弃的数量可以通过{@link #getDroppedCount()}查看
+ * 进程异常退出时缓冲区中的修改会丢失，正常关闭时{@link #close()}会写入全部修改
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class WriteBehindCacheProvider extends ForwardingCacheProvider {
+
+    private static Logger logger = LoggerFactory.getLogger(WriteBehindCacheProvider.class);
+
+    /**
+     * redis返回错误的修改最多尝试写入的次数
+     */
+    public static final int MAX_ATTEMPTS = 3;
+
+    private final CacheProviderCore core;
+
+    /**
+     * jvm内缓存，写入时在同一个pipeline中广播失效消息，未开启时为null
+     */
+    private final NearCacheProvider nearCacheProvider;
+
+    /**
+     * 堆外缓存，没有jvm内缓存时写入后直接让它的条目失效，未开启时为null
+     */
+    private final OffHeapCacheProvider offHeapCacheProvider;
+
+    private final int capacity;
+
+    private final int flushSize;
+
+    private final long flushIntervalMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notFull = lock.newCondition();
+
+    private final Condition flushNeeded = lock.newCondition();
+
+    /**
+     * 等待写入的修改，按照首次修改的顺序排列
+     */
+    private LinkedHashMap<String, PendingWrite> pending = new LinkedHashMap<>();
+
+    /**
+     * 正在写入的批次，写入完成之前读取仍然需要看到
+     */
+    private Map<String, PendingWrite> flushing = Collections.emptyMap();
+
+    /**
+     * 保证同一时刻只有一个批次在写入，不同批次之间的顺序与修改顺序一致
+     */
+    private final Object flushLock = new Object();
+
+    private final AtomicLong flushCount = new AtomicLong();
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    private final Thread flusher;
+
+    /**
+     * @param delegate            读取使用的provider
+     * @param core                redis缓存
+     * @param nearCacheProvider   jvm内缓存，可以为null
+     * @param offHeapCacheProvider 堆外缓存，可以为null
+     * @param capacity            缓冲区最多容纳的键数量
+     * @param flushSize           缓冲区达到该数量时立即写入
+     * @param flushIntervalMillis 最长等待多久写入一次，单位毫秒
+     */
+    WriteBehindCacheProvider(CacheProvider delegate, CacheProviderCore core, NearCacheProvider nearCacheProvider,
+                             OffHeapCacheProvider offHeapCacheProvider, int capacity, int flushSize,
+                             long flushIntervalMillis) {
+        super(delegate);
+        if (capacity < 1 || flushSize < 1 || flushSize > capacity || flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("capacity、flushSize和flushInterval必须大于0,flushSize不能大于capacity");
+        }
+        this.core = core;
+        this.nearCacheProvider = nearCacheProvider;
+        this.offHeapCacheProvider = offHeapCacheProvider;
+        this.capacity = capacity;
+        this.flushSize = flushSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "ranger-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public <T> T getCache(String key, Class<T> clazz) {
+        PendingWrite write = lookup(key);
+        if (write != null) {
+            return read(key, write, clazz);
+        }
+        return delegate.getCache(key, clazz);
+    }
+
+    @Override
+    public <T> List<T> getCache(List<String> keys, Class<T> clazz) {
+        List<T> returnList = new ArrayList<>(keys.size());
+        List<String> missed = new ArrayList<>();
+        List<Integer> missedIndexes = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            PendingWrite write = lookup(keys.get(i));
+            if (write != null) {
+                returnList.add(read(keys.get(i), write, clazz));
+            } else {
+                returnList.add(null);
+                missed.add(keys.get(i));
+                missedIndexes.add(i);
+            }
+        }
+        if (!missed.isEmpty()) {
+            List<T> values = delegate.getCache(missed, clazz);
+            for (int i = 0; i < missed.size(); i++) {
+                returnList.set(missedIndexes.get(i), values.get(i));
+            }
+        }
+        return returnList;
+    }
+
+    /**
+     * 有尚未写入的修改的键直接回调，其余的键交给delegate分段读取
+     */
+    @Override
+    public <T> void getCache(List<String> keys, Class<T> clazz, BiConsumer<String, T> consumer) {
+        List<String> missed = new ArrayList<>();
+        for (String key : keys) {
+            PendingWrite write = lookup(key);
+            if (write != null) {
+                consumer.accept(key, read(key, write, clazz));
+            } else {
+                missed.add(key);
+            }
+        }
+        if (!missed.isEmpty()) {
+            delegate.getCache(missed, clazz, consumer);
+        }
+    }
+
+    /**
+     * 键有尚未写入的删除时redis中仍是旧值，直接调用loader，加载结果和其它修改一样放入缓冲区
+     */
+    @Override
+    public <T> T getOrLoad(String key, Class<T> clazz, CacheLoader<T> loader, int ttl) {
+        PendingWrite write = lookup(key);
+        if (write == null) {
+            return delegate.getOrLoad(key, clazz, loader, ttl);
+        }
+        if (write.value != null) {
+            return read(key, write, clazz);
+        }
+        T loaded = core.load(key, loader);
+        if (loaded != null) {
+            setCache(key, loaded, ttl);
+        }
+        return loaded;
+    }
+
+    /**
+     * 有尚未写入的删除的键与{@link #getOrLoad}一样直接加载，加载结果放入缓冲区；其余未命中的键由delegate读取和加载
+     */
+    @Override
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> clazz, BulkLoader<T> loader, int ttl) {
+        Map<String, PendingWrite> buffered = new HashMap<>();
+        List<String> deleted = new ArrayList<>();
+        List<String> missed = new ArrayList<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            PendingWrite write = lookup(key);
+            if (write == null) {
+                missed.add(key);
+            } else if (write.value != null) {
+                buffered.put(key, write);
+            } else {
+                deleted.add(key);
+            }
+        }
+        Map<String, T> remote = missed.isEmpty() ? new HashMap<String, T>()
+                : new HashMap<>(delegate.getAll(missed, clazz, loader, ttl));
+        if (!deleted.isEmpty()) {
+            Map<String, T> loaded = CacheProviderCore.loadAll(deleted, loader, core.getMetrics());
+            for (Map.Entry<String, T> entry : loaded.entrySet()) {
+                setCache(entry.getKey(), entry.getValue(), ttl);
+            }
+            remote.putAll(loaded);
+        }
+        Map<String, T> returnMap = new LinkedHashMap<>();
+        for (String key : keys) {
+            T value = buffered.containsKey(key) ? read(key, buffered.get(key), clazz) : remote.get(key);
+            if (value != null) {
+                returnMap.put(key, value);
+            }
+        }
+        return returnMap;
+    }
+
+    @Override
+    public boolean setCache(String key, Object toStore, int ttl) {
+        enqueue(key, new PendingWrite(core.serialize(key, toStore), ttl));
+        return true;
+    }
+
+    @Override
+    public boolean setCache(Map<String, Object> params, int ttl) {
+        for (Map.Entry<String, Object> entry : params.entrySet()) {
+            setCache(entry.getKey(), entry.getValue(), ttl);
+        }
+        return true;
+    }
+
+    @Override
+    public void deleteCache(List<String> keys) {
+        for (String key : keys) {
+            deleteCache(key);
+        }
+    }
+
+    @Override
+    public void deleteCache(String key) {
+        enqueue(key, new PendingWrite(null, 0));
+    }
+
+    private <T> T read(String key, PendingWrite write, Class<T> clazz) {
+        return write.value == null ? null : core.deserialize(key, write.value, clazz);
+    }
+
+    private PendingWrite lookup(String key) {
+        lock.lock();
+        try {
+            PendingWrite write = pending.get(key);
+            return write != null ? write : flushing.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 放入缓冲区，缓冲区已满且键不在缓冲区中时阻塞
+     */
+    private void enqueue(String key, PendingWrite write) {
+        lock.lock();
+        try {
+            while (running && pending.size() >= capacity && !pending.containsKey(key)) {
+                flushNeeded.signal();
+                notFull.await();
+            }
+            if (!running) {
+                throw new IllegalStateException("WriteBehindCacheProvider已关闭");
+            }
+            if (pending.put(key, write) != null) {
+                coalescedCount.incrementAndGet();
+            }
+            if (pending.size() >= flushSize) {
+                flushNeeded.signal();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待写入缓冲区被中断", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 将缓冲区中的全部修改写入redis，返回后调用之前的修改都已经写入，或者因为写入失败被放回缓冲区
+     *
+     * @return 写入的键数量，包括redis返回错误后被放回缓冲区的键
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            final Map<String, PendingWrite> batch;
+            lock.lock();
+            try {
+                if (pending.isEmpty()) {
+                    return 0;
+                }
+                batch = pending;
+                flushing = batch;
+                pending = new LinkedHashMap<>();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            long start = System.nanoTime();
+            Map<String, PendingWrite> failed;
+            try {
+                failed = write(batch);
+            } catch (RuntimeException e) {
+                requeue(batch);
+                throw e;
+            } finally {
+                lock.lock();
+                try {
+                    flushing = Collections.emptyMap();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (!failed.isEmpty()) {
+                requeue(failed);
+            }
+            flushCount.incrementAndGet();
+            core.getMetrics().record(MetricNames.WRITE_BEHIND_FLUSH_SIZE, null, batch.size());
+            core.getMetrics().record(MetricNames.MULTI_SET_LATENCY, batch.keySet().iterator().next(),
+                    System.nanoTime() - start);
+            return batch.size();
+        }
+    }
+
+    /**
+     * 没有被新的修改覆盖的键放回缓冲区，下次重试；缓冲区已满时丢弃
+     */
+    private void requeue(Map<String, PendingWrite> writes) {
+        int dropped = 0;
+        lock.lock();
+        try {
+            for (Map.Entry<String, PendingWrite> entry : writes.entrySet()) {
+                if (pending.containsKey(entry.getKey())) {
+                    continue;
+                }
+                if (pending.size() >= capacity) {
+                    dropped++;
+                } else {
+                    pending.put(entry.getKey(), entry.getValue());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (dropped > 0) {
+            droppedCount.addAndGet(dropped);
+            logger.warn("缓冲区已满,丢弃" + dropped + "个写入失败的修改");
+        }
+    }
+
+    /**
+     * 通过一个pipeline写入一批修改，并检查每条命令的回复
+     *
+     * @return redis返回错误、需要重试的修改，已经达到最多尝试次数的修改被丢弃
+     */
+    private Map<String, PendingWrite> write(Map<String, PendingWrite> batch) {
+        List<Response<?>> responses = new ArrayList<>(batch.size());
+        Jedis resource = core.borrow();
+        try {
+            Pipeline pipeline = resource.pipelined();
+            for (Map.Entry<String, PendingWrite> entry : batch.entrySet()) {
+                byte[] rawKey = SafeEncoder.encode(entry.getKey());
+                PendingWrite write = entry.getValue();
+                if (write.value == null) {
+                    responses.add(pipeline.del(rawKey));
+                } else {
+                    responses.add(core.set(pipeline, rawKey, write.value, write.ttl));
+                }
+                if (nearCacheProvider != null) {
+                    nearCacheProvider.publish(pipeline, entry.getKey());
+                }
+            }
+            pipeline.sync();
+        } finally {
+            resource.close();
+        }
+        Map<String, PendingWrite> failed = new LinkedHashMap<>();
+        int index = 0;
+        for (Map.Entry<String, PendingWrite> entry : batch.entrySet()) {
+            try {
+                responses.get(index++).get();
+            } catch (JedisDataException e) {
+                PendingWrite write = entry.getValue();
+                if (write.attempts + 1 < MAX_ATTEMPTS) {
+                    failed.put(entry.getKey(), new PendingWrite(write.value, write.ttl, write.attempts + 1));
+                } else {
+                    droppedCount.incrementAndGet();
+                    logger.warn("写入" + entry.getKey() + "失败" + MAX_ATTEMPTS + "次,丢弃该修改", e);
+                }
+            }
+        }
+        for (String key : batch.keySet()) {
+            core.unpin(key);
+            if (nearCacheProvider != null) {
+                //同时让堆外缓存的条目失效
+                nearCacheProvider.invalidateLocal(key);
+            } else if (offHeapCacheProvider != null) {
+                offHeapCacheProvider.invalidateLocal(key);
+            }
+        }
+        return failed;
+    }
+
+    private void flushLoop() {
+        while (running) {
+            lock.lock();
+            try {
+                if (running && pending.size() < flushSize) {
+                    flushNeeded.await(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                logger.warn("写入缓冲区中的修改失败,稍后重试", e);
+                try {
+                    Thread.sleep(flushIntervalMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 停止接收修改，写入缓冲区中剩余的修改并停止后台线程，redis返回错误的修改最多重试{@link #MAX_ATTEMPTS}次
+     */
+    public void close() {
+        lock.lock();
+        try {
+            running = false;
+            notFull.signalAll();
+            flushNeeded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (int i = 0; i < MAX_ATTEMPTS && flush() > 0; i++) {
+            //重试被放回缓冲区的修改
+        }
+    }
+
+    /**
+     * @return 等待写入的键数量
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 写入批次的数量
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * @return 被后续修改覆盖、没有单独写入的修改数量
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return 写入失败后没有放回缓冲区的修改数量
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private static final class PendingWrite {
+
+        /**
+         * 序列化后的值，为null表示删除
+         */
+        private final byte[] value;
+
+        private final int ttl;
+
+        /**
+         * redis已经返回错误的次数
+         */
+        private final int attempts;
+
+        private PendingWrite(byte[] value, int ttl) {
+            this(value, ttl, 0);
+        }
+
+        private PendingWrite(byte[] value, int ttl, int attempts) {
+            this.value = value;
+            this.ttl = ttl;
+            this.attempts = attempts;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.freestyledash.ranger.util.serialization;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 类型与整数id的对应关系
+ * 序列化工具使用id代替类名记录对象的类型，减少数据大小，并可以提前准备好类型的schema
+ * 写入数据的jvm与读取数据的jvm必须使用相同的对应关系，id一旦使用不能再分配给其他类型
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class ClassRegistry {
+
+    /**
+     * id的最大值，id使用varint编码，不超过该值时最多占用3个字节
+     */
+    public static final int MAX_ID = (1 << 21) - 1;
+
+    private final Map<Class<?>, Integer> ids = new ConcurrentHashMap<>();
+
+    private final Map<Integer, Class<?>> classes = new ConcurrentHashMap<>();
+
+    /**
+     * 注册类型
+     *
+     * @param id    类型的id，1到{@link #MAX_ID}之间
+     * @param clazz 类型，需要是可以直接实例化的具体类
+     * @return registry
+     */
+    public synchronized ClassRegistry register(int id, Class<?> clazz) {
+        if (id < 1 || id > MAX_ID) {
+            throw new IllegalArgumentException("id必须在1和" + MAX_ID + "之间");
+        }
+        Class<?> registered = classes.get(id);
+        if (registered != null && registered != clazz) {
+            throw new IllegalArgumentException("id " + id + "已经注册为" + registered.getName());
+        }
+        Integer registeredId = ids.get(clazz);
+        if (registeredId != null && registeredId != id) {
+            throw new IllegalArgumentException(clazz.getName() + "已经注册为id " + registeredId);
+        }
+        ids.put(clazz, id);
+        classes.put(id, clazz);
+        return this;
+    }
+
+    /**
+     * @param clazz 类型
+     * @return 类型的id，未注册返回-1
+     */
+    public int getId(Class<?> clazz) {
+        Integer id = ids.get(clazz);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id 类型的id
+     * @return 类型，未注册返回null
+     */
+    public Class<?> getClass(int id) {
+        return classes.get(id);
+    }
+
+    /**
+     * @return 已注册的全部类型
+     */
+    public Map<Integer, Class<?>> getClasses() {
+        return Collections.unmodifiableMap(classes);
+    }
+}
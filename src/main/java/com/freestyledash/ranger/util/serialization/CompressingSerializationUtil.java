@@ -0,0 +1,335 @@
+package com.freestyledash.ranger.util.serialization;
+
+import com.freestyledash.ranger.metrics.CacheMetrics;
+import com.freestyledash.ranger.metrics.MetricNames;
+import com.freestyledash.ranger.metrics.NoopCacheMetrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 对序列化结果进行压缩的序列化工具装饰器
+ * <p>
+ * 序列化结果超过阈值时使用jdk自带的deflate压缩，压缩后没有变小则保存原始数据
+ * 数据前增加两个字节的头：魔数{@link #MAGIC}和压缩方式，反序列化时根据头判断是否需要解压；
+ * 没有头的数据视为开启压缩之前写入的数据，直接交给被装饰的序列化工具处理
+ * <p>
+ * 序列化结果写入每个线程复用的缓冲区，头部预留在缓冲区开头，未压缩的数据只复制一次；
+ * 反序列化时通过{@link SerializationUtil#deserialize(ByteBuffer, Class)}跳过头部读取，不复制数据
+ * <p>
+ * 压缩前后的大小和压缩、解压耗时通过{@link CacheMetrics}记录，用于调整阈值，压缩比例为
+ * cache.compress.output.size与cache.compress.input.size总和的比值
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class CompressingSerializationUtil implements SerializationUtil {
+
+    /**
+     * 头部魔数，protostuff和hessian的序列化结果都不会以该字节开头
+     */
+    static final byte MAGIC = (byte) 0xC7;
+
+    /**
+     * 未压缩
+     */
+    static final byte RAW = 0;
+
+    /**
+     * deflate压缩
+     */
+    static final byte DEFLATE = 1;
+
+    private static final int HEADER_LENGTH = 2;
+
+    /**
+     * 超过该大小的缓冲区使用后不再保留，避免偶尔出现的大对象长期占用内存
+     */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    /**
+     * 每个线程复用的序列化缓冲区
+     */
+    private static final ThreadLocal<Buffer> BUFFERS = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer(512);
+        }
+    };
+
+    private final SerializationUtil delegate;
+
+    /**
+     * 超过该大小的序列化结果才会被压缩，单位字节
+     */
+    private final int threshold;
+
+    private final ThreadLocal<Deflater> deflaters;
+
+    private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private final CacheMetrics metrics;
+
+    private final AtomicLong compressedCount = new AtomicLong();
+
+    private final AtomicLong uncompressedCount = new AtomicLong();
+
+    private final AtomicLong bytesBeforeCompression = new AtomicLong();
+
+    private final AtomicLong bytesAfterCompression = new AtomicLong();
+
+    private final AtomicLong compressNanos = new AtomicLong();
+
+    private final AtomicLong decompressNanos = new AtomicLong();
+
+    /**
+     * @param delegate  被装饰的序列化工具
+     * @param threshold 超过该大小的序列化结果才会被压缩，单位字节
+     */
+    public CompressingSerializationUtil(SerializationUtil delegate, int threshold) {
+        this(delegate, threshold, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param delegate  被装饰的序列化工具
+     * @param threshold 超过该大小的序列化结果才会被压缩，单位字节
+     * @param level     deflate压缩级别，0-9
+     */
+    public CompressingSerializationUtil(SerializationUtil delegate, int threshold, int level) {
+        this(delegate, threshold, level, NoopCacheMetrics.INSTANCE);
+    }
+
+    /**
+     * @param delegate  被装饰的序列化工具
+     * @param threshold 超过该大小的序列化结果才会被压缩，单位字节
+     * @param level     deflate压缩级别，0-9
+     * @param metrics   指标收集
+     */
+    public CompressingSerializationUtil(SerializationUtil delegate, int threshold, final int level,
+                                        CacheMetrics metrics) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate不能为空");
+        }
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold不能小于0");
+        }
+        this.delegate = delegate;
+        this.threshold = threshold;
+        this.metrics = metrics;
+        this.deflaters = new ThreadLocal<Deflater>() {
+            @Override
+            protected Deflater initialValue() {
+                return new Deflater(level);
+            }
+        };
+    }
+
+    /**
+     * 序列化，超过阈值时压缩
+     *
+     * @param toSerialize 将要被序列化的对象
+     * @return 带有头部的数组
+     */
+    @Override
+    public byte[] serialize(Object toSerialize) {
+        Buffer buffer = BUFFERS.get();
+        try {
+            buffer.write(MAGIC);
+            buffer.write(RAW);
+            try {
+                delegate.serialize(toSerialize, buffer);
+            } catch (IOException e) {
+                //写入内存不会出错
+                throw new RuntimeException(e);
+            }
+            int length = buffer.size() - HEADER_LENGTH;
+            if (length > threshold) {
+                long start = System.nanoTime();
+                byte[] compressed = compress(buffer.array(), length);
+                long elapsed = System.nanoTime() - start;
+                compressNanos.addAndGet(elapsed);
+                metrics.record(MetricNames.COMPRESS_TIME, null, elapsed);
+                metrics.record(MetricNames.COMPRESS_INPUT_SIZE, null, length);
+                if (compressed != null) {
+                    compressedCount.incrementAndGet();
+                    bytesBeforeCompression.addAndGet(length);
+                    bytesAfterCompression.addAndGet(compressed.length - HEADER_LENGTH);
+                    metrics.record(MetricNames.COMPRESS_OUTPUT_SIZE, null, compressed.length - HEADER_LENGTH);
+                    return compressed;
+                }
+                //没有变小，按原始大小计入压缩比例
+                metrics.record(MetricNames.COMPRESS_OUTPUT_SIZE, null, length);
+            }
+            uncompressedCount.incrementAndGet();
+            return buffer.toByteArray();
+        } finally {
+            if (buffer.array().length > MAX_RETAINED_BUFFER) {
+                BUFFERS.remove();
+            } else {
+                buffer.reset();
+            }
+        }
+    }
+
+    /**
+     * 反序列化，根据头部判断是否需要解压
+     *
+     * @param data  被反序列化的数组
+     * @param clazz 目标类型对象
+     * @return 反序列化后的对象
+     */
+    @Override
+    public <T> T deserialize(byte[] data, Class<T> clazz) {
+        if (data.length < HEADER_LENGTH || data[0] != MAGIC) {
+            return delegate.deserialize(data, clazz);
+        }
+        if (data[1] == RAW) {
+            return delegate.deserialize(ByteBuffer.wrap(data, HEADER_LENGTH, data.length - HEADER_LENGTH), clazz);
+        }
+        if (data[1] == DEFLATE) {
+            long start = System.nanoTime();
+            Buffer decompressed = decompress(data);
+            long elapsed = System.nanoTime() - start;
+            decompressNanos.addAndGet(elapsed);
+            metrics.record(MetricNames.DECOMPRESS_TIME, null, elapsed);
+            return delegate.deserialize(ByteBuffer.wrap(decompressed.array(), 0, decompressed.size()), clazz);
+        }
+        throw new RuntimeException("未知的压缩方式" + data[1]);
+    }
+
+    /**
+     * @param data   开头预留了头部的序列化结果
+     * @param length 序列化结果的长度，不包括头部
+     * @return 压缩后的数据，没有变小时返回null
+     */
+    private byte[] compress(byte[] data, int length) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(data, HEADER_LENGTH, length);
+        deflater.finish();
+        byte[] buffer = new byte[length + HEADER_LENGTH];
+        buffer[0] = MAGIC;
+        buffer[1] = DEFLATE;
+        int position = HEADER_LENGTH;
+        while (!deflater.finished()) {
+            if (position == buffer.length) {
+                return null;
+            }
+            position += deflater.deflate(buffer, position, buffer.length - position);
+        }
+        if (position >= length + HEADER_LENGTH) {
+            return null;
+        }
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * 直接解压到缓冲区的数组中，反序列化时读取该数组，不再复制
+     */
+    private Buffer decompress(byte[] data) {
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+        Buffer out = new Buffer(Math.max(512, data.length * 4));
+        try {
+            while (!inflater.finished()) {
+                int count = inflater.inflate(out.spare(), out.size(), out.array().length - out.size());
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new RuntimeException("压缩数据不完整");
+                }
+                out.skip(count);
+            }
+        } catch (DataFormatException e) {
+            throw new RuntimeException(e);
+        }
+        return out;
+    }
+
+    /**
+     * @return 被装饰的序列化工具
+     */
+    public SerializationUtil getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return 被压缩的次数
+     */
+    public long getCompressedCount() {
+        return compressedCount.get();
+    }
+
+    /**
+     * @return 未压缩的次数，包括小于阈值和压缩后没有变小的情况
+     */
+    public long getUncompressedCount() {
+        return uncompressedCount.get();
+    }
+
+    /**
+     * @return 被压缩数据压缩后与压缩前大小的比值，没有压缩过时返回1
+     */
+    public double getCompressionRatio() {
+        long before = bytesBeforeCompression.get();
+        if (before == 0) {
+            return 1;
+        }
+        return (double) bytesAfterCompression.get() / before;
+    }
+
+    /**
+     * @return 压缩累计耗时，单位纳秒
+     */
+    public long getCompressNanos() {
+        return compressNanos.get();
+    }
+
+    /**
+     * @return 解压累计耗时，单位纳秒
+     */
+    public long getDecompressNanos() {
+        return decompressNanos.get();
+    }
+
+    /**
+     * 可以直接访问底层数组的输出流
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        /**
+         * @return 至少还有一个空闲字节的底层数组
+         */
+        byte[] spare() {
+            if (count == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            return buf;
+        }
+
+        /**
+         * 直接写入底层数组之后移动写入位置
+         */
+        void skip(int length) {
+            count += length;
+        }
+    }
+}
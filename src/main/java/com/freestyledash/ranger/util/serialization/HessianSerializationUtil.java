@@ -5,6 +5,9 @@ import com.caucho.hessian.io.Hessian2Output;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 
 /**
@@ -39,6 +42,26 @@ public class HessianSerializationUtil implements SerializationUtil {
         return data;
     }
 
+    /**
+     * 序列化并直接写入输出流
+     *
+     * @param toSerialize 将要被序列化的对象
+     * @param out         输出流，不会被关闭
+     * @return 写入的字节数
+     * @throws IOException 写入失败
+     */
+    @Override
+    public int serialize(Object toSerialize, OutputStream out) throws IOException {
+        CountingOutputStream counting = new CountingOutputStream(out);
+        Hessian2Output output = new Hessian2Output(counting);
+        output.startMessage();
+        output.writeInt(1);
+        output.writeObject(toSerialize);
+        output.completeMessage();
+        output.flush();
+        return counting.count;
+    }
+
     /**
      * 返序列化
      *
@@ -74,4 +97,33 @@ public class HessianSerializationUtil implements SerializationUtil {
         return (T) o;
     }
 
+    /**
+     * 记录写入字节数的输出流，不会关闭被包装的流
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private int count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
 }
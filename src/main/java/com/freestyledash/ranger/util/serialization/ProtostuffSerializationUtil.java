@@ -1,31 +1,96 @@
 package com.freestyledash.ranger.util.serialization;
 
+import io.protostuff.CodedInput;
 import io.protostuff.GraphIOUtil;
 import io.protostuff.LinkedBuffer;
+import io.protostuff.ProtostuffIOUtil;
 import io.protostuff.Schema;
+import io.protostuff.runtime.Field;
 import io.protostuff.runtime.RuntimeSchema;
-import org.objenesis.Objenesis;
-import org.objenesis.ObjenesisStd;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
  * protustuff工具实现序列化功能
+ * <p>
+ * 默认将对象放在Wrapper中序列化，数据中带有对象的类名；
+ * 设置{@link ClassRegistry}之后，已注册类型的对象直接使用预先准备的schema序列化，数据以一个标记字节和类型id开头，
+ * 不再包含类名；未注册的类型仍然使用Wrapper，两种格式的数据都可以读取
+ * <p>
+ * {@link #serializeFields}和{@link #deserializeFields}按字段拆分对象，用于redis hash存储，
+ * 每个字段单独保存，可以只读取或只修改其中的几个字段
  *
  * @author zhangyanqi
  * @since 1.0 2017/12/16
  */
 public final class ProtostuffSerializationUtil implements SerializationUtil {
 
+    /**
+     * 每个线程复用的LinkedBuffer，序列化结束后clear，超出初始大小时追加的节点会被释放
+     */
+    private static final ThreadLocal<LinkedBuffer> BUFFERS = new ThreadLocal<LinkedBuffer>() {
+        @Override
+        protected LinkedBuffer initialValue() {
+            return LinkedBuffer.allocate();
+        }
+    };
+
+    /**
+     * 每个线程复用的Wrapper，使用之后清空realObject，避免持有用户对象
+     */
+    private static final ThreadLocal<Wrapper<Object>> WRAPPERS = new ThreadLocal<Wrapper<Object>>() {
+        @Override
+        protected Wrapper<Object> initialValue() {
+            return new Wrapper<>(null);
+        }
+    };
+
+    /**
+     * 使用类型id格式的数据的第一个字节，Wrapper格式的数据总是以Wrapper第一个字段的tag(0x0B)开头，不会冲突
+     */
+    private static final byte REGISTERED = (byte) 0xC6;
+
     private final Map<Class<?>, Schema<?>> cachedSchemas;
 
-    private final Objenesis objenesis;
+    /**
+     * Wrapper的schema，未注册类型的对象都通过它序列化
+     */
+    private final Schema<Wrapper<Object>> wrapperSchema;
+
+    /**
+     * 类型id的对应关系，可以为null
+     */
+    private final ClassRegistry registry;
 
     {
         cachedSchemas = new ConcurrentHashMap<Class<?>, Schema<?>>();
-        objenesis = new ObjenesisStd(true);
+        wrapperSchema = getWrapperSchema();
+    }
+
+    public ProtostuffSerializationUtil() {
+        this(null);
+    }
+
+    /**
+     * @param registry 类型id的对应关系，已注册类型的schema会在这里提前创建
+     */
+    public ProtostuffSerializationUtil(ClassRegistry registry) {
+        this.registry = registry;
+        if (registry != null) {
+            for (Class<?> clazz : registry.getClasses().values()) {
+                getSchema(clazz);
+            }
+        }
     }
 
     /**
@@ -37,13 +102,58 @@ public final class ProtostuffSerializationUtil implements SerializationUtil {
     @Override
     @SuppressWarnings("unchecked")
     public byte[] serialize(Object message) {
-        Wrapper wrapper = new Wrapper(message);
-        Class clazz = wrapper.getClass();
-        LinkedBuffer buffer = LinkedBuffer.allocate();
+        int id = idOf(message);
+        LinkedBuffer buffer = BUFFERS.get();
+        if (id > 0) {
+            try {
+                byte[] header = header(id);
+                byte[] body = GraphIOUtil.toByteArray(message, (Schema<Object>) getSchema(message.getClass()), buffer);
+                byte[] data = new byte[header.length + body.length];
+                System.arraycopy(header, 0, data, 0, header.length);
+                System.arraycopy(body, 0, data, header.length, body.length);
+                return data;
+            } finally {
+                buffer.clear();
+            }
+        }
+        Wrapper<Object> wrapper = WRAPPERS.get();
+        wrapper.realObject = message;
         try {
-            Schema schema = getSchema(clazz);
-            return GraphIOUtil.toByteArray(wrapper, schema, buffer);
+            return GraphIOUtil.toByteArray(wrapper, wrapperSchema, buffer);
         } finally {
+            wrapper.realObject = null;
+            buffer.clear();
+        }
+    }
+
+    /**
+     * 将对象<code>message</code>序列化并直接写入输出流，不产生中间数组
+     *
+     * @param message 要序列化的对象
+     * @param out     输出流，不会被关闭
+     * @return 写入的字节数
+     * @throws IOException 写入失败
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int serialize(Object message, OutputStream out) throws IOException {
+        int id = idOf(message);
+        LinkedBuffer buffer = BUFFERS.get();
+        if (id > 0) {
+            try {
+                byte[] header = header(id);
+                out.write(header);
+                return header.length + GraphIOUtil.writeTo(out, message, (Schema<Object>) getSchema(message.getClass()), buffer);
+            } finally {
+                buffer.clear();
+            }
+        }
+        Wrapper<Object> wrapper = WRAPPERS.get();
+        wrapper.realObject = message;
+        try {
+            return GraphIOUtil.writeTo(out, wrapper, wrapperSchema, buffer);
+        } finally {
+            wrapper.realObject = null;
             buffer.clear();
         }
     }
@@ -58,10 +168,172 @@ public final class ProtostuffSerializationUtil implements SerializationUtil {
      */
     @Override
     public <T> T deserialize(byte[] data, Class<T> clazz) {
-        Wrapper message = objenesis.newInstance(Wrapper.class);
-        Schema<Wrapper> schema = getSchema(Wrapper.class);
-        GraphIOUtil.mergeFrom(data, message, schema);
-        return (T) message.realObject;
+        return deserialize(data, 0, data.length, clazz);
+    }
+
+    /**
+     * 从ByteBuffer中反序列化，堆内的ByteBuffer直接读取底层数组，不产生复制
+     *
+     * @param data  被反序列化的数据
+     * @param clazz 对象类型的Class对象
+     * @param <T>   对象的类型参数
+     * @return 反序列化后的对象
+     */
+    @Override
+    public <T> T deserialize(ByteBuffer data, Class<T> clazz) {
+        if (!data.hasArray()) {
+            return SerializationUtil.super.deserialize(data, clazz);
+        }
+        int length = data.remaining();
+        T result = deserialize(data.array(), data.arrayOffset() + data.position(), length, clazz);
+        data.position(data.position() + length);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T deserialize(byte[] data, int offset, int length, Class<T> clazz) {
+        if (length > 0 && data[offset] == REGISTERED) {
+            int id = 0;
+            int shift = 0;
+            int position = offset + 1;
+            byte b;
+            do {
+                b = data[position++];
+                id |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            //读取方没有注册该id时使用调用方提供的类型
+            Class<?> registered = registry == null ? null : registry.getClass(id);
+            Class<?> type = registered != null ? registered : clazz;
+            Schema<Object> schema = (Schema<Object>) getSchema(type);
+            Object message = schema.newMessage();
+            GraphIOUtil.mergeFrom(data, position, length - (position - offset), message, schema);
+            return (T) message;
+        }
+        Wrapper<Object> message = WRAPPERS.get();
+        try {
+            GraphIOUtil.mergeFrom(data, offset, length, message, wrapperSchema);
+            return (T) message.realObject;
+        } finally {
+            message.realObject = null;
+        }
+    }
+
+    /**
+     * 按顶层字段序列化对象，每个字段的结果包含字段的tag，可以任意选取一部分拼接后反序列化
+     * 不支持循环引用，同一个对象被多个字段引用时会被重复写入
+     *
+     * @param message 要序列化的对象
+     * @return 字段名和该字段的序列化结果，值为null的字段不在map中
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, byte[]> serializeFields(Object message) {
+        Schema<Object> schema = (Schema<Object>) getSchema(message.getClass());
+        LinkedBuffer buffer = BUFFERS.get();
+        byte[] data;
+        try {
+            data = ProtostuffIOUtil.toByteArray(message, schema, buffer);
+        } finally {
+            buffer.clear();
+        }
+        //集合字段的每个元素各占一个tag，同一个字段的多段数据合并在一起
+        Map<String, ByteArrayOutputStream> fields = new LinkedHashMap<>();
+        CodedInput input = CodedInput.newInstance(data);
+        int start = 0;
+        try {
+            for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+                input.skipField(tag);
+                int end = input.getTotalBytesRead();
+                String name = schema.getFieldName(tag >>> 3);
+                ByteArrayOutputStream field = fields.get(name);
+                if (field == null) {
+                    field = new ByteArrayOutputStream(end - start);
+                    fields.put(name, field);
+                }
+                field.write(data, start, end - start);
+                start = end;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("拆分" + message.getClass().getName() + "的字段失败", e);
+        }
+        Map<String, byte[]> result = new LinkedHashMap<>(fields.size() * 2);
+        for (Map.Entry<String, ByteArrayOutputStream> entry : fields.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toByteArray());
+        }
+        return result;
+    }
+
+    /**
+     * 使用{@link #serializeFields}的部分或全部结果还原对象，没有提供的字段保持默认值
+     *
+     * @param fields 字段的序列化结果，null会被忽略
+     * @param clazz  对象类型的Class对象
+     * @param <T>    对象的类型参数
+     * @return 反序列化后的对象
+     */
+    public <T> T deserializeFields(Collection<byte[]> fields, Class<T> clazz) {
+        int length = 0;
+        for (byte[] field : fields) {
+            length += field == null ? 0 : field.length;
+        }
+        byte[] data = new byte[length];
+        int offset = 0;
+        for (byte[] field : fields) {
+            if (field != null) {
+                System.arraycopy(field, 0, data, offset, field.length);
+                offset += field.length;
+            }
+        }
+        Schema<T> schema = getSchema(clazz);
+        T message = schema.newMessage();
+        ProtostuffIOUtil.mergeFrom(data, message, schema);
+        return message;
+    }
+
+    /**
+     * @param clazz 对象类型的Class对象
+     * @return 按字段拆分时使用的字段名
+     */
+    public List<String> getFieldNames(Class<?> clazz) {
+        Schema<?> schema = getSchema(clazz);
+        List<String> names = new ArrayList<>();
+        for (Field<?> field : ((RuntimeSchema<?>) schema).getFields()) {
+            names.add(field.name);
+        }
+        return names;
+    }
+
+    /**
+     * @param clazz 对象类型的Class对象
+     * @param name  字段名
+     * @return 是否为按字段拆分时使用的字段
+     */
+    public boolean hasField(Class<?> clazz, String name) {
+        return getSchema(clazz).getFieldNumber(name) != 0;
+    }
+
+    private int idOf(Object message) {
+        return registry == null || message == null ? -1 : registry.getId(message.getClass());
+    }
+
+    /**
+     * 标记字节和varint编码的类型id
+     */
+    private static byte[] header(int id) {
+        int size = id < (1 << 7) ? 1 : id < (1 << 14) ? 2 : 3;
+        byte[] header = new byte[size + 1];
+        header[0] = REGISTERED;
+        for (int i = 1; i <= size; i++) {
+            header[i] = (byte) (i < size ? (id & 0x7F) | 0x80 : id & 0x7F);
+            id >>>= 7;
+        }
+        return header;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Schema<Wrapper<Object>> getWrapperSchema() {
+        Class<?> clazz = Wrapper.class;
+        return (Schema<Wrapper<Object>>) getSchema(clazz);
     }
 
     @SuppressWarnings("unchecked")
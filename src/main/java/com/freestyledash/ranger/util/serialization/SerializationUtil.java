@@ -1,5 +1,9 @@
 package com.freestyledash.ranger.util.serialization;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
 /**
  * 序列化工具的接口
  *
@@ -26,4 +30,34 @@ public interface SerializationUtil {
      */
     <T> T deserialize(byte[] data, Class<T> clazz);
 
+    /**
+     * 序列化并写入调用方提供的输出流
+     * 默认先序列化为数组再写入，实现类可以直接写入输出流以减少中间数组
+     *
+     * @param toSerialize 将要被序列化的对象
+     * @param out         输出流，不会被关闭
+     * @return 写入的字节数
+     * @throws IOException 写入失败
+     */
+    default int serialize(Object toSerialize, OutputStream out) throws IOException {
+        byte[] data = serialize(toSerialize);
+        out.write(data);
+        return data.length;
+    }
+
+    /**
+     * 从调用方提供的ByteBuffer中反序列化，读取position到limit之间的数据，读取后position移动到limit
+     * 默认先复制为数组再反序列化，实现类可以直接读取ByteBuffer以减少复制
+     *
+     * @param data  被反序列化的数据
+     * @param clazz 目标类型对象
+     * @param <T>   目标类型
+     * @return 反序列化后的对象
+     */
+    default <T> T deserialize(ByteBuffer data, Class<T> clazz) {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return deserialize(bytes, clazz);
+    }
+
 }
@@ -0,0 +1,98 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.benchmark.FakeRedisServer;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * BatchingAsyncCacheProvider的测试
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class BatchingAsyncCacheProviderTest {
+
+    private FakeRedisServer server;
+
+    private JedisPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+        pool = new JedisPool("127.0.0.1", server.getPort());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.destroy();
+        server.close();
+    }
+
+    @Test
+    public void writesInvalidateOffHeapTier() throws Exception {
+        CacheProviderFactory factory = new CacheProviderFactory.Builder().setPool(pool)
+                .setSerializationUtil(new ProtostuffSerializationUtil()).setOffHeapCache(16 << 20, 60).build();
+        try {
+            factory.getProvider().setCache("a", "1", 60);
+            assertEquals("1", factory.getProvider().getCache("a", String.class));
+            assertTrue(factory.getAsyncProvider().setCache("a", "2", 60).get(5, TimeUnit.SECONDS));
+            assertEquals("2", factory.getProvider().getCache("a", String.class));
+            factory.getAsyncProvider().deleteCache("a").get(5, TimeUnit.SECONDS);
+            assertNull(factory.getProvider().getCache("a", String.class));
+        } finally {
+            factory.close();
+        }
+    }
+
+    @Test
+    public void fullQueueFailsInsteadOfBlocking() throws Exception {
+        CacheProviderCore core = new CacheProviderCore(pool, new ProtostuffSerializationUtil());
+        BatchingAsyncCacheProvider provider = new BatchingAsyncCacheProvider(core, null, null, 1, 0, 1, 1,
+                ForkJoinPool.commonPool());
+        try {
+            server.setReplyDelay(300);
+            CompletableFuture<Boolean> first = provider.setCache("a", "1", 60);
+            //等待分发线程取走第一个请求
+            Thread.sleep(100);
+            CompletableFuture<Boolean> second = provider.setCache("b", "2", 60);
+            CompletableFuture<Boolean> third = provider.setCache("c", "3", 60);
+            try {
+                third.get(1, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            assertTrue(first.get(5, TimeUnit.SECONDS));
+            assertTrue(second.get(5, TimeUnit.SECONDS));
+        } finally {
+            server.setReplyDelay(0);
+            provider.close();
+        }
+    }
+
+    @Test
+    public void closedProviderFailsRequests() throws Exception {
+        CacheProviderCore core = new CacheProviderCore(pool, new ProtostuffSerializationUtil());
+        BatchingAsyncCacheProvider provider = new BatchingAsyncCacheProvider(core, null, null, 16, 0, 16, 1,
+                ForkJoinPool.commonPool());
+        provider.close();
+        try {
+            provider.getCache("a", String.class).get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(0, provider.getPendingCount());
+    }
+}
@@ -0,0 +1,171 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.benchmark.FakeRedisServer;
+import com.freestyledash.ranger.metrics.NoopCacheMetrics;
+import com.freestyledash.ranger.provider.BulkLoader;
+import com.freestyledash.ranger.provider.CacheLoader;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * BloomFilterCacheProvider和批量判断的测试
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class BloomFilterCacheProviderTest {
+
+    private FakeRedisServer server;
+
+    private JedisPool pool;
+
+    private RedisBloomFilter filter;
+
+    private CacheProviderCore core;
+
+    private BloomFilterCacheProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+        pool = new JedisPool("127.0.0.1", server.getPort());
+        filter = new RedisBloomFilter(pool, "filter", 10000, 0.01);
+        core = new CacheProviderCore(pool, new ProtostuffSerializationUtil());
+        provider = new BloomFilterCacheProvider(core, filter, NoopCacheMetrics.INSTANCE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.destroy();
+        server.close();
+    }
+
+    @Test
+    public void batchAnswersMatchSingleKeyAnswers() {
+        List<String> added = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            added.add("added" + i);
+            keys.add("added" + i);
+            keys.add("absent" + i);
+        }
+        filter.putAll(added);
+        boolean[] contains = filter.mightContain(keys);
+        int falsePositives = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(keys.get(i), filter.mightContain(keys.get(i)), contains[i]);
+            if (i % 2 == 0) {
+                assertTrue(contains[i]);
+            } else if (contains[i]) {
+                falsePositives++;
+            }
+        }
+        assertTrue("误判" + falsePositives + "次", falsePositives < 100);
+    }
+
+    @Test
+    public void batchReadsRejectAbsentKeys() {
+        provider = new BloomFilterCacheProvider(core, filter, true, NoopCacheMetrics.INSTANCE);
+        Map<String, Object> params = new HashMap<>();
+        params.put("a", "1");
+        params.put("b", "2");
+        provider.setCache(params, 60);
+        assertEquals(Arrays.asList("1", null, "2"), provider.getCache(Arrays.asList("a", "x", "b"), String.class));
+        assertEquals(1, provider.getRejectedCount());
+
+        final List<String> requested = new ArrayList<>();
+        Map<String, String> values = provider.getAll(Arrays.asList("a", "y", "a"), String.class,
+                new BulkLoader<String>() {
+                    @Override
+                    public Map<String, String> load(Collection<String> keys) {
+                        requested.addAll(keys);
+                        return Collections.emptyMap();
+                    }
+                }, 60);
+        assertEquals(Collections.singletonMap("a", "1"), values);
+        assertTrue("过滤器完整时被拒绝的键不会交给loader", requested.isEmpty());
+        assertEquals(2, provider.getRejectedCount());
+    }
+
+    @Test
+    public void streamingReadRejectsAbsentKeys() {
+        provider.setCache("a", "1", 60);
+        provider.setCache("b", "2", 60);
+        final Map<String, String> received = new HashMap<>();
+        provider.getCache(Arrays.asList("a", "x", "b"), String.class, new BiConsumer<String, String>() {
+            @Override
+            public void accept(String key, String value) {
+                received.put(key, value);
+            }
+        });
+        assertEquals(3, received.size());
+        assertEquals("1", received.get("a"));
+        assertEquals("2", received.get("b"));
+        assertNull(received.get("x"));
+        assertEquals(1, provider.getRejectedCount());
+    }
+
+    @Test
+    public void rejectedKeysStillLoadWhenFilterIsNotAuthoritative() {
+        //其他jvm写入的键不在本地过滤器中
+        LocalBloomFilter local = new LocalBloomFilter(10000, 0.01);
+        provider = new BloomFilterCacheProvider(core, local, NoopCacheMetrics.INSTANCE);
+        core.setCache("other", "fromOtherJvm", 60);
+        assertNull("读取时仍然拒绝", provider.getCache("other", String.class));
+        final AtomicInteger calls = new AtomicInteger();
+        CacheLoader<String> loader = new CacheLoader<String>() {
+            @Override
+            public String load(String key) {
+                calls.incrementAndGet();
+                return key.startsWith("absent") ? null : "loaded";
+            }
+        };
+        assertEquals("先读取redis", "fromOtherJvm", provider.getOrLoad("other", String.class, loader, 60));
+        assertEquals("启动之后加入数据源的键", "loaded", provider.getOrLoad("new", String.class, loader, 60));
+        assertEquals(1, calls.get());
+        assertTrue("加载成功后加入过滤器", local.mightContain("other") && local.mightContain("new"));
+        assertEquals("loaded", provider.getCache("new", String.class));
+
+        assertNull(provider.getOrLoad("absent", String.class, loader, 60));
+        assertFalse("不存在的键不加入过滤器", local.mightContain("absent"));
+
+        final List<String> requested = new ArrayList<>();
+        Map<String, String> values = provider.getAll(Arrays.asList("new", "batch", "absent2"), String.class,
+                new BulkLoader<String>() {
+                    @Override
+                    public Map<String, String> load(Collection<String> keys) {
+                        requested.addAll(keys);
+                        return Collections.singletonMap("batch", "loaded");
+                    }
+                }, 60);
+        assertEquals(Arrays.asList("batch", "absent2"), requested);
+        assertEquals(2, values.size());
+        assertEquals("loaded", values.get("batch"));
+        assertTrue(local.mightContain("batch"));
+        assertFalse(local.mightContain("absent2"));
+    }
+
+    @Test
+    public void authoritativeFilterSkipsLoader() {
+        provider = new BloomFilterCacheProvider(core, filter, true, NoopCacheMetrics.INSTANCE);
+        final AtomicInteger calls = new AtomicInteger();
+        assertNull(provider.getOrLoad("a", String.class, new CacheLoader<String>() {
+            @Override
+            public String load(String key) {
+                calls.incrementAndGet();
+                return "loaded";
+            }
+        }, 60));
+        assertEquals(0, calls.get());
+        assertTrue(provider.isAuthoritative());
+    }
+}
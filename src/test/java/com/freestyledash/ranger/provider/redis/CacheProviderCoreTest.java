@@ -0,0 +1,229 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.benchmark.FakeRedisServer;
+import com.freestyledash.ranger.provider.CacheLoader;
+import com.freestyledash.ranger.provider.CacheProvider;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
+import com.freestyledash.ranger.util.serialization.SerializationUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.junit.Assert.*;
+
+/**
+ * CacheProviderCore的测试
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class CacheProviderCoreTest {
+
+    private FakeRedisServer server;
+
+    private JedisPool pool;
+
+    private MultiplexedRedisTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+        pool = new JedisPool("127.0.0.1", server.getPort());
+        transport = new MultiplexedRedisTransport.Builder().setPort(server.getPort()).build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        transport.close();
+        pool.destroy();
+        server.close();
+    }
+
+    @Test
+    public void nonPositiveTtlDeletesKeyWithPoolTransport() {
+        assertNonPositiveTtlDeletes(new CacheProviderCore(pool, new ProtostuffSerializationUtil()));
+    }
+
+    @Test
+    public void nonPositiveTtlDeletesKeyWithMultiplexedTransport() {
+        CacheProviderCore core = new CacheProviderCore(pool, new ProtostuffSerializationUtil());
+        core.setTransport(transport);
+        assertNonPositiveTtlDeletes(core);
+    }
+
+    @Test
+    public void nonPositiveTtlDeletesKeyInAsyncPipeline() throws Exception {
+        CacheProviderFactory factory = new CacheProviderFactory.Builder().setPool(pool)
+                .setSerializationUtil(new ProtostuffSerializationUtil()).build();
+        try {
+            factory.getProvider().setCache("a", "1", 60);
+            assertTrue(factory.getAsyncProvider().setCache("a", "2", 0).get());
+            assertNull(factory.getProvider().getCache("a", String.class));
+        } finally {
+            factory.close();
+        }
+    }
+
+    @Test
+    public void failedChunkDeletesWrittenChunks() {
+        final SerializationUtil protostuff = new ProtostuffSerializationUtil();
+        CacheProviderCore core = new CacheProviderCore(pool, new SerializationUtil() {
+            @Override
+            public byte[] serialize(Object toSerialize) {
+                if ("bad".equals(toSerialize)) {
+                    throw new IllegalArgumentException("无法序列化");
+                }
+                return protostuff.serialize(toSerialize);
+            }
+
+            @Override
+            public <T> T deserialize(byte[] data, Class<T> clazz) {
+                return protostuff.deserialize(data, clazz);
+            }
+        });
+        core.setBatchChunkSize(2);
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("a", "1");
+        params.put("b", "2");
+        params.put("c", "3");
+        params.put("d", "bad");
+        assertFalse(core.setCache(params, 60));
+        assertNull("第一段已经写入，第二段失败后被删除", core.getCache("a", String.class));
+        assertNull(core.getCache("b", String.class));
+        assertNull(core.getCache("c", String.class));
+        assertEquals(0, server.size());
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentLoadsWithDifferentTypesDoNotShareResult() throws Exception {
+        final CacheProviderCore core = new CacheProviderCore(pool, new ProtostuffSerializationUtil());
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> first = executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return core.getOrLoad("key", String.class, new CacheLoader<String>() {
+                        @Override
+                        public String load(String key) {
+                            loading.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            return "value";
+                        }
+                    }, 60);
+                }
+            });
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(1), core.getOrLoad("key", Integer.class, new CacheLoader<Integer>() {
+                @Override
+                public Integer load(String key) {
+                    return 1;
+                }
+            }, 60));
+            release.countDown();
+            assertEquals("value", first.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void lockProxyRethrowsOriginalException() {
+        CacheProviderFactory factory = new CacheProviderFactory.Builder().setPool(pool)
+                .setSerializationUtil(new ProtostuffSerializationUtil())
+                .setLock(new ReentrantReadWriteLock()).build();
+        try {
+            server.failCommand("GET", "ERR get failed");
+            factory.getProvider().getCache("a", String.class);
+            fail();
+        } catch (JedisDataException e) {
+            assertEquals("ERR get failed", e.getMessage());
+        } finally {
+            server.failCommand("GET", null);
+            factory.close();
+        }
+    }
+
+    @Test
+    public void readsLegacyAndNewFormat() {
+        ProtostuffSerializationUtil util = new ProtostuffSerializationUtil();
+        CacheProviderCore core = new CacheProviderCore(pool, util);
+        Jedis jedis = pool.getResource();
+        try {
+            //旧版本将序列化结果转成iso8859-1字符串后写入
+            jedis.set("old", new String(util.serialize(new Item("café", 233)), StandardCharsets.ISO_8859_1));
+        } finally {
+            jedis.close();
+        }
+        assertEquals(new Item("café", 233), core.getCache("old", Item.class));
+        //新格式中拉丁字母的utf-8编码同样是0xC3开头的双字节序列，必须按照新格式读取
+        core.setCache("new", new Item("crème brûlée", 255), -1);
+        assertEquals(new Item("crème brûlée", 255), core.getCache("new", Item.class));
+
+        core.setLegacyCompatible(false);
+        assertEquals(new Item("crème brûlée", 255), core.getCache("new", Item.class));
+    }
+
+    private static void assertNonPositiveTtlDeletes(CacheProvider provider) {
+        provider.setCache("a", "1", 60);
+        assertTrue(provider.setCache("a", "2", 0));
+        assertNull(provider.getCache("a", String.class));
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("b", "1");
+        params.put("c", "1");
+        assertTrue(provider.setCache(params, -1));
+        params.put("b", "2");
+        params.put("c", "2");
+        assertTrue(provider.setCache(params, -5));
+        assertNull(provider.getCache("b", String.class));
+        assertNull(provider.getCache("c", String.class));
+
+        assertTrue(provider.setCache("d", "1", -1));
+        assertEquals("1", provider.getCache("d", String.class));
+    }
+
+    public static class Item {
+
+        private String name;
+
+        private int count;
+
+        public Item() {
+        }
+
+        Item(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Item)) {
+                return false;
+            }
+            Item other = (Item) o;
+            return name.equals(other.name) && count == other.count;
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() * 31 + count;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.metrics.NoopCacheMetrics;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * CircuitBreaker的测试
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 50;
+
+    private final CircuitBreaker breaker = new CircuitBreaker(2, 0.5, 0, OPEN_MILLIS, NoopCacheMetrics.INSTANCE);
+
+    @Test
+    public void successfulProbeCloses() throws Exception {
+        trip();
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+        Thread.sleep(OPEN_MILLIS + 10);
+        long probe = breaker.tryAcquire();
+        assertNotEquals(CircuitBreaker.REJECTED, probe);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertEquals("半开状态只放行一次试探", CircuitBreaker.REJECTED, breaker.tryAcquire());
+        breaker.onResult(probe, false, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertNotEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+        assertEquals(1, breaker.getTripCount());
+    }
+
+    @Test
+    public void failedProbeReopens() throws Exception {
+        trip();
+        Thread.sleep(OPEN_MILLIS + 10);
+        long probe = breaker.tryAcquire();
+        breaker.onResult(probe, true, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getTripCount());
+        assertEquals("重新计算打开时长", CircuitBreaker.REJECTED, breaker.tryAcquire());
+        Thread.sleep(OPEN_MILLIS + 10);
+        assertNotEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+    }
+
+    @Test
+    public void callAdmittedBeforeOpeningIsNotTheProbe() throws Exception {
+        //关闭状态下放行的慢调用，返回之前熔断器已经打开
+        long slow = breaker.tryAcquire();
+        trip();
+        Thread.sleep(OPEN_MILLIS + 10);
+        long probe = breaker.tryAcquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.onResult(slow, false, 0);
+        assertEquals("迟到的结果不会关闭熔断器", CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertEquals("迟到的结果不会放行第二次试探", CircuitBreaker.REJECTED, breaker.tryAcquire());
+
+        breaker.onResult(probe, true, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        breaker.onResult(slow, false, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void probeFromEarlierHalfOpenIsIgnoredAfterClosing() throws Exception {
+        trip();
+        Thread.sleep(OPEN_MILLIS + 10);
+        long probe = breaker.tryAcquire();
+        breaker.onResult(probe, false, 0);
+        //关闭之后重复提交的试探结果不计入统计窗口
+        breaker.onResult(probe, true, 0);
+        breaker.onResult(probe, true, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void slowCallsCountAsFailures() {
+        CircuitBreaker slow = new CircuitBreaker(2, 1, 10, OPEN_MILLIS, NoopCacheMetrics.INSTANCE);
+        slow.onResult(slow.tryAcquire(), false, 20_000_000L);
+        assertEquals(CircuitBreaker.State.CLOSED, slow.getState());
+        slow.onResult(slow.tryAcquire(), false, 20_000_000L);
+        assertEquals(CircuitBreaker.State.OPEN, slow.getState());
+    }
+
+    private void trip() {
+        breaker.onResult(breaker.tryAcquire(), true, 0);
+        breaker.onResult(breaker.tryAcquire(), true, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
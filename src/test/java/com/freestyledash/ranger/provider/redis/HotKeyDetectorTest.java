@@ -0,0 +1,40 @@
+package com.freestyledash.ranger.provider.redis;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * HotKeyDetector的测试
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class HotKeyDetectorTest {
+
+    @Test
+    public void pinsHotKeys() {
+        HotKeyDetector detector = new HotKeyDetector(3, 60000, 1000, 16);
+        long now = System.currentTimeMillis();
+        assertFalse(detector.record("a", now));
+        assertFalse(detector.record("a", now));
+        assertTrue(detector.record("a", now));
+        detector.pin("a", new byte[]{1}, now, detector.stamp("a"));
+        assertArrayEquals(new byte[]{1}, detector.getPinned("a", now));
+        assertNull(detector.getPinned("a", now + 1000));
+    }
+
+    @Test
+    public void unpinDuringReadSkipsPin() {
+        HotKeyDetector detector = new HotKeyDetector(1, 60000, 1000, 16);
+        long now = System.currentTimeMillis();
+        assertTrue(detector.record("a", now));
+        long stamp = detector.stamp("a");
+        //读取redis期间本jvm写入了该键
+        detector.unpin("a");
+        detector.pin("a", new byte[]{1}, now, stamp);
+        assertNull("不保存写入之前读到的旧值", detector.getPinned("a", now));
+        detector.pin("a", new byte[]{2}, now, detector.stamp("a"));
+        assertArrayEquals(new byte[]{2}, detector.getPinned("a", now));
+    }
+}
@@ -0,0 +1,319 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.benchmark.FakeRedisServer;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * MultiplexedRedisTransport的测试，使用jvm内的{@link FakeRedisServer}作为redis替身
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class MultiplexedRedisTransportTest {
+
+    private FakeRedisServer server;
+
+    private List<MultiplexedRedisTransport> transports = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (MultiplexedRedisTransport transport : transports) {
+            transport.close();
+        }
+        server.close();
+    }
+
+    private MultiplexedRedisTransport.Builder builder() {
+        return new MultiplexedRedisTransport.Builder().setPort(server.getPort()).setConnections(1).setTimeout(1000);
+    }
+
+    private MultiplexedRedisTransport open(MultiplexedRedisTransport.Builder builder) {
+        MultiplexedRedisTransport transport = builder.build();
+        transports.add(transport);
+        return transport;
+    }
+
+    @Test
+    public void parseReplySplitAtEveryPosition() {
+        byte[] reply = SafeEncoder.encode("*4\r\n$5\r\nhello\r\n$-1\r\n:-42\r\n+OK\r\n");
+        for (int split = 0; split < reply.length; split++) {
+            ByteBuffer in = ByteBuffer.allocate(reply.length);
+            in.put(reply, 0, split);
+            in.flip();
+            assertSame(MultiplexedRedisTransport.INCOMPLETE, MultiplexedRedisTransport.parse(in));
+            assertEquals("不完整的回复不能移动读取位置", 0, in.position());
+            in.compact();
+            in.put(reply, split, reply.length - split);
+            in.flip();
+            List<?> elements = (List<?>) MultiplexedRedisTransport.parse(in);
+            assertEquals(4, elements.size());
+            assertArrayEquals(SafeEncoder.encode("hello"), (byte[]) elements.get(0));
+            assertNull(elements.get(1));
+            assertEquals(-42L, elements.get(2));
+            assertEquals("OK", elements.get(3));
+            assertFalse(in.hasRemaining());
+        }
+    }
+
+    @Test
+    public void parseNullAndEmptyReplies() {
+        ByteBuffer in = ByteBuffer.wrap(SafeEncoder.encode("$-1\r\n*-1\r\n*0\r\n$0\r\n\r\n"));
+        assertNull(MultiplexedRedisTransport.parse(in));
+        assertNull(MultiplexedRedisTransport.parse(in));
+        assertEquals(Collections.emptyList(), MultiplexedRedisTransport.parse(in));
+        assertArrayEquals(new byte[0], (byte[]) MultiplexedRedisTransport.parse(in));
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    public void parseErrorReply() {
+        ByteBuffer in = ByteBuffer.wrap(SafeEncoder.encode("-WRONGTYPE Operation against a key\r\n"));
+        assertTrue(MultiplexedRedisTransport.parse(in) instanceof MultiplexedRedisTransport.ErrorReply);
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    public void readsRepliesDeliveredByteByByte() {
+        MultiplexedRedisTransport transport = open(builder());
+        server.setFragmentReplies(true);
+        byte[] large = new byte[100 * 1024];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+        transport.set(keys("small", "large"), Arrays.asList(bytes("v"), large), new int[]{-1, 60});
+        long[] pttls = new long[3];
+        List<byte[]> values = transport.getWithTtl(keys("small", "large", "missing"), pttls);
+        assertArrayEquals(bytes("v"), values.get(0));
+        assertArrayEquals(large, values.get(1));
+        assertNull(values.get(2));
+        assertEquals(-1, pttls[0]);
+        assertTrue(pttls[1] > 0);
+        assertEquals(-2, pttls[2]);
+    }
+
+    @Test
+    public void missingKeysAreNull() {
+        MultiplexedRedisTransport transport = open(builder());
+        assertEquals(Arrays.asList((byte[]) null, null), transport.get(keys("a", "b")));
+        assertFalse(transport.exists(bytes("a")));
+    }
+
+    @Test
+    public void errorReplyFailsOnlyThatCall() {
+        MultiplexedRedisTransport transport = open(builder());
+        server.failCommand("SETEX", "ERR invalid expire time in setex");
+        try {
+            transport.set(keys("a", "b"), Arrays.asList(bytes("1"), bytes("2")), new int[]{-1, 60});
+            fail();
+        } catch (JedisDataException e) {
+            assertEquals("ERR invalid expire time in setex", e.getMessage());
+        }
+        server.failCommand("SETEX", null);
+        assertArrayEquals(bytes("1"), transport.get(keys("a")).get(0));
+        assertEquals(1, server.getConnectionCount());
+    }
+
+    @Test
+    public void authenticatesAndSelectsOnConnect() {
+        server.setPassword("secret");
+        MultiplexedRedisTransport transport = open(builder().setPassword("secret").setDatabase(3));
+        transport.set(keys("a"), Collections.singletonList(bytes("1")), new int[]{-1});
+        assertArrayEquals(bytes("1"), transport.get(keys("a")).get(0));
+    }
+
+    @Test
+    public void wrongPasswordFailsCalls() {
+        server.setPassword("secret");
+        MultiplexedRedisTransport transport = open(builder().setPassword("wrong"));
+        try {
+            transport.get(keys("a"));
+            fail();
+        } catch (JedisConnectionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("invalid password"));
+        }
+        server.setPassword("wrong");
+        assertNull("握手失败后下一次调用重新建立连接", transport.get(keys("a")).get(0));
+    }
+
+    @Test
+    public void selectFailureFailsCalls() {
+        server.failCommand("SELECT", "ERR DB index is out of range");
+        MultiplexedRedisTransport transport = open(builder().setDatabase(99));
+        try {
+            transport.get(keys("a"));
+            fail();
+        } catch (JedisConnectionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("DB index is out of range"));
+        }
+    }
+
+    @Test
+    public void timeoutKeepsConnectionAndDiscardsLateReply() throws Exception {
+        final MultiplexedRedisTransport transport = open(builder().setTimeout(200));
+        transport.set(keys("a", "b"), Arrays.asList(bytes("1"), bytes("2")), new int[]{-1, -1});
+        server.setReplyDelay(500);
+        try {
+            transport.get(keys("a"));
+            fail();
+        } catch (JedisConnectionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("超时"));
+        }
+        server.setReplyDelay(0);
+        Thread.sleep(500);
+        assertArrayEquals("迟到的回复不能交给之后的请求", bytes("2"), transport.get(keys("b")).get(0));
+        assertEquals("超时不应断开连接", 1, server.getConnectionCount());
+    }
+
+    @Test
+    public void timeoutDoesNotFailOtherCallsOnConnection() throws Exception {
+        final MultiplexedRedisTransport transport = open(builder().setTimeout(300));
+        transport.set(keys("a"), Collections.singletonList(bytes("1")), new int[]{-1});
+        server.setReplyDelay(200);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            //第一个调用的回复在200ms到达，第二个在400ms到达并超时，第一个调用必须成功
+            Future<List<byte[]>> first = executor.submit(new Callable<List<byte[]>>() {
+                @Override
+                public List<byte[]> call() {
+                    return transport.get(keys("a"));
+                }
+            });
+            Thread.sleep(20);
+            Future<List<byte[]>> second = executor.submit(new Callable<List<byte[]>>() {
+                @Override
+                public List<byte[]> call() {
+                    return transport.get(keys("a"));
+                }
+            });
+            assertArrayEquals(bytes("1"), first.get().get(0));
+            try {
+                second.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof JedisConnectionException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        server.setReplyDelay(0);
+        Thread.sleep(300);
+        assertArrayEquals(bytes("1"), transport.get(keys("a")).get(0));
+        assertEquals(1, server.getConnectionCount());
+    }
+
+    @Test
+    public void reconnectsAfterServerClosesConnection() throws Exception {
+        MultiplexedRedisTransport transport = open(builder());
+        transport.set(keys("a"), Collections.singletonList(bytes("1")), new int[]{-1});
+        server.dropConnections();
+        Thread.sleep(200);
+        assertArrayEquals(bytes("1"), transport.get(keys("a")).get(0));
+        assertEquals(2, server.getConnectionCount());
+    }
+
+    @Test
+    public void closedTransportRejectsCalls() {
+        MultiplexedRedisTransport transport = builder().build();
+        transport.close();
+        try {
+            transport.get(keys("a"));
+            fail();
+        } catch (JedisConnectionException e) {
+            //期望的异常
+        }
+    }
+
+    @Test
+    public void manyConcurrentCallers() throws Exception {
+        final MultiplexedRedisTransport transport = open(builder().setConnections(2).setTimeout(5000));
+        int threads = 64;
+        final int calls = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = 0; i < calls; i++) {
+                        String key = thread + ":" + i;
+                        transport.set(keys(key), Collections.singletonList(bytes(key)), new int[]{60});
+                        List<byte[]> values = transport.get(keys(key, thread + ":missing", key));
+                        assertArrayEquals(bytes(key), values.get(0));
+                        assertNull(values.get(1));
+                        assertArrayEquals(bytes(key), values.get(2));
+                    }
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(threads * calls, server.size());
+        assertEquals(2, server.getConnectionCount());
+        assertTrue(transport.getCommandCount() >= transport.getWriteCount());
+    }
+
+    @Test
+    public void poolTransportFailsBatchesLikeMultiplexed() throws Exception {
+        JedisPool pool = new JedisPool("127.0.0.1", server.getPort());
+        try {
+            JedisPoolTransport transport = new JedisPoolTransport(
+                    new CacheProviderCore(pool, new ProtostuffSerializationUtil()));
+            server.failCommand("DEL", "ERR del failed");
+            try {
+                transport.delete(keys("a", "b"));
+                fail();
+            } catch (JedisDataException e) {
+                assertEquals("ERR del failed", e.getMessage());
+            }
+            server.failCommand("SETEX", "ERR invalid expire time in setex");
+            try {
+                transport.set(keys("a", "b"), Arrays.asList(bytes("1"), bytes("2")), new int[]{-1, 60});
+                fail();
+            } catch (JedisDataException e) {
+                assertEquals("ERR invalid expire time in setex", e.getMessage());
+            }
+        } finally {
+            pool.destroy();
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return SafeEncoder.encode(value);
+    }
+
+    private static List<byte[]> keys(String... keys) {
+        List<byte[]> rawKeys = new ArrayList<>(keys.length);
+        for (String key : keys) {
+            rawKeys.add(bytes(key));
+        }
+        return rawKeys;
+    }
+}
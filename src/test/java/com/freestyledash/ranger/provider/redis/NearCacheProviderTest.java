@@ -0,0 +1,158 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.benchmark.FakeRedisServer;
+import com.freestyledash.ranger.provider.CacheProvider;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * NearCacheProvider的测试，两个factory连接同一个{@link FakeRedisServer}，模拟两个jvm
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class NearCacheProviderTest {
+
+    private FakeRedisServer server;
+
+    private JedisPool pool;
+
+    private List<CacheProviderFactory> factories = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(16);
+        pool = new JedisPool(config, "127.0.0.1", server.getPort());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (CacheProviderFactory factory : factories) {
+            factory.close();
+        }
+        pool.destroy();
+        server.close();
+    }
+
+    private CacheProviderFactory open(int maxEntries) {
+        CacheProviderFactory factory = new CacheProviderFactory.Builder()
+                .setPool(pool)
+                .setSerializationUtil(new ProtostuffSerializationUtil())
+                .setNearCache(maxEntries, 60)
+                .build();
+        factories.add(factory);
+        assertTrue(factory.getNearCacheProvider().awaitSubscribed(5000));
+        return factory;
+    }
+
+    @Test
+    public void secondReadIsServedLocally() {
+        CacheProviderFactory factory = open(100);
+        CacheProvider provider = factory.getProvider();
+        NearCacheProvider nearCache = factory.getNearCacheProvider();
+        provider.setCache("a", "1", 60);
+        assertEquals("1", provider.getCache("a", String.class));
+        long commands = server.getCommandCount();
+        assertEquals("1", provider.getCache("a", String.class));
+        assertEquals(Arrays.asList("1", null), provider.getCache(Arrays.asList("a", "missing"), String.class));
+        assertEquals(2, nearCache.getLocalHitCount());
+        assertEquals(1, nearCache.getRemoteHitCount());
+        //只有missing访问redis，GET和PTTL各一条
+        assertEquals("本地命中不访问redis", commands + 2, server.getCommandCount());
+    }
+
+    @Test
+    public void localWriteInvalidatesImmediately() {
+        CacheProvider provider = open(100).getProvider();
+        provider.setCache("a", "1", 60);
+        assertEquals("1", provider.getCache("a", String.class));
+        provider.setCache("a", "2", 60);
+        assertEquals("2", provider.getCache("a", String.class));
+        provider.deleteCache("a");
+        assertNull(provider.getCache("a", String.class));
+    }
+
+    @Test
+    public void writeByAnotherInstanceInvalidatesLocalCopy() throws Exception {
+        CacheProviderFactory first = open(100);
+        CacheProvider second = open(100).getProvider();
+        //自己发出的失效消息会被忽略，先由first写入，避免second的广播晚于first的读取到达
+        first.getProvider().setCache("a", "1", 60);
+        assertEquals("1", first.getProvider().getCache("a", String.class));
+        assertEquals(1, first.getNearCacheProvider().getLocalSize());
+        second.setCache("a", "2", 60);
+        awaitLocalSize(first.getNearCacheProvider(), 0);
+        assertEquals("2", first.getProvider().getCache("a", String.class));
+        second.deleteCache(Arrays.asList("a"));
+        awaitLocalSize(first.getNearCacheProvider(), 0);
+        assertNull(first.getProvider().getCache("a", String.class));
+    }
+
+    @Test
+    public void localEntriesAreBounded() {
+        CacheProviderFactory factory = open(32);
+        CacheProvider provider = factory.getProvider();
+        for (int i = 0; i < 500; i++) {
+            provider.setCache("key" + i, i, 60);
+            assertEquals(Integer.valueOf(i), provider.getCache("key" + i, Integer.class));
+        }
+        NearCacheProvider nearCache = factory.getNearCacheProvider();
+        assertTrue(nearCache.getLocalSize() <= 32);
+        assertEquals(500 - nearCache.getLocalSize(), nearCache.getEvictionCount());
+    }
+
+    private static void awaitLocalSize(NearCacheProvider nearCache, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (nearCache.getLocalSize() != size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, nearCache.getLocalSize());
+    }
+
+    @Test
+    public void streamingReadUsesLocalTier() {
+        CacheProviderFactory factory = open(100);
+        CacheProvider provider = factory.getProvider();
+        NearCacheProvider nearCache = factory.getNearCacheProvider();
+        provider.setCache("a", "1", 60);
+        provider.setCache("b", "2", 60);
+        assertEquals("1", provider.getCache("a", String.class));
+        final Map<String, String> received = new LinkedHashMap<>();
+        BiConsumer<String, String> consumer = new BiConsumer<String, String>() {
+            @Override
+            public void accept(String key, String value) {
+                received.put(key, value);
+            }
+        };
+        provider.getCache(Arrays.asList("a", "b", "missing"), String.class, consumer);
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("a", "1");
+        expected.put("b", "2");
+        expected.put("missing", null);
+        assertEquals(expected, received);
+        assertEquals(1, nearCache.getLocalHitCount());
+        assertEquals("远程命中放入本地", 2, nearCache.getRemoteHitCount());
+
+        received.clear();
+        long commands = server.getCommandCount();
+        provider.getCache(Arrays.asList("a", "b"), String.class, consumer);
+        assertEquals("1", received.get("a"));
+        assertEquals("2", received.get("b"));
+        assertEquals("全部本地命中时不访问redis", commands, server.getCommandCount());
+    }
+}
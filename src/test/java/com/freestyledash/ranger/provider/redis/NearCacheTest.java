@@ -0,0 +1,101 @@
+package com.freestyledash.ranger.provider.redis;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * NearCache的测试
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class NearCacheTest {
+
+    @Test
+    public void expiredEntriesAreMisses() {
+        NearCache cache = new NearCache(100);
+        cache.put("a", "1", 1000, cache.stamp());
+        cache.put("b", "2", CacheEntry.NEVER, cache.stamp());
+        assertEquals("1", cache.get("a", 999));
+        assertNull(cache.get("a", 1000));
+        assertEquals("2", cache.get("b", Long.MAX_VALUE - 1));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void boundedByMaxEntries() {
+        NearCache cache = new NearCache(64);
+        for (int i = 0; i < 10000; i++) {
+            cache.put("key" + i, i, CacheEntry.NEVER, cache.stamp());
+        }
+        assertTrue(cache.size() <= 64);
+        assertEquals(10000 - cache.size(), cache.getEvictionCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        //每个段最多2个条目
+        NearCache cache = new NearCache(32);
+        List<String> keys = sameSegmentKeys(3);
+        cache.put(keys.get(0), 0, CacheEntry.NEVER, cache.stamp());
+        cache.put(keys.get(1), 1, CacheEntry.NEVER, cache.stamp());
+        assertEquals(0, cache.get(keys.get(0), 0));
+        cache.put(keys.get(2), 2, CacheEntry.NEVER, cache.stamp());
+        assertEquals(0, cache.get(keys.get(0), 0));
+        assertNull("最久未访问的条目被淘汰", cache.get(keys.get(1), 0));
+        assertEquals(2, cache.get(keys.get(2), 0));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void putAfterInvalidationIsDropped() {
+        NearCache cache = new NearCache(100);
+        //读取远程数据之前取得stamp，读取期间其它线程让键失效
+        long stamp = cache.stamp();
+        cache.invalidate("a");
+        cache.put("a", "stale", CacheEntry.NEVER, stamp);
+        assertNull(cache.get("a", 0));
+        cache.put("a", "fresh", CacheEntry.NEVER, cache.stamp());
+        assertEquals("fresh", cache.get("a", 0));
+    }
+
+    @Test
+    public void putAfterClearIsDropped() {
+        NearCache cache = new NearCache(100);
+        long stamp = cache.stamp();
+        cache.clear();
+        cache.put("a", "stale", CacheEntry.NEVER, stamp);
+        assertNull(cache.get("a", 0));
+    }
+
+    @Test
+    public void replaceOnlyMatchingValue() {
+        NearCache cache = new NearCache(100);
+        Object original = new Object();
+        cache.put("a", original, 5000, cache.stamp());
+        cache.replace("a", new Object(), "other");
+        assertSame(original, cache.get("a", 0));
+        cache.replace("a", original, "replaced");
+        assertEquals("replaced", cache.get("a", 4999));
+        assertNull("替换不改变过期时间", cache.get("a", 5000));
+    }
+
+    /**
+     * 按照NearCache的分段方式找出落在同一个段的键
+     */
+    private static List<String> sameSegmentKeys(int count) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; keys.size() < count; i++) {
+            String key = "key" + i;
+            int h = key.hashCode();
+            if (((h ^ (h >>> 16)) & 15) == 0) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,94 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.benchmark.FakeRedisServer;
+import com.freestyledash.ranger.provider.CacheLoader;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * OffHeapCacheProvider和OffHeapStore的测试
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class OffHeapCacheProviderTest {
+
+    private FakeRedisServer server;
+
+    private JedisPool pool;
+
+    private OffHeapCacheProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+        pool = new JedisPool("127.0.0.1", server.getPort());
+        CacheProviderCore core = new CacheProviderCore(pool, new ProtostuffSerializationUtil());
+        provider = new OffHeapCacheProvider(core, 16 << 20, OffHeapStore.DEFAULT_PAGE_SIZE, 60);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        provider.close();
+        pool.destroy();
+        server.close();
+    }
+
+    @Test
+    public void getOrLoadFillsLocalTier() {
+        final AtomicInteger calls = new AtomicInteger();
+        CacheLoader<String> loader = new CacheLoader<String>() {
+            @Override
+            public String load(String key) {
+                calls.incrementAndGet();
+                return "loaded";
+            }
+        };
+        assertEquals("loaded", provider.getOrLoad("a", String.class, loader, 60));
+        long commands = server.getCommandCount();
+        assertEquals("loaded", provider.getOrLoad("a", String.class, loader, 60));
+        assertEquals(1, calls.get());
+        assertEquals("加载的对象放入本地", commands, server.getCommandCount());
+        assertEquals(1, provider.getLocalHitCount());
+    }
+
+    @Test
+    public void getOrLoadStoresRemoteHits() {
+        provider.setCache("a", "cached", 60);
+        CacheLoader<String> loader = new CacheLoader<String>() {
+            @Override
+            public String load(String key) {
+                throw new AssertionError("redis命中时不应调用loader");
+            }
+        };
+        assertEquals("cached", provider.getOrLoad("a", String.class, loader, 60));
+        long commands = server.getCommandCount();
+        assertEquals("cached", provider.getOrLoad("a", String.class, loader, 60));
+        assertEquals(commands, server.getCommandCount());
+        provider.setCache("a", "changed", 60);
+        assertEquals("本jvm的写入让本地条目失效", "changed", provider.getOrLoad("a", String.class, loader, 60));
+    }
+
+    @Test
+    public void everySizeClassFitsAtMinimumCapacity() {
+        int pageSize = 4096;
+        //每段只有一页
+        OffHeapStore store = new OffHeapStore(16L * pageSize, pageSize);
+        for (int i = 0; i < 200; i++) {
+            assertTrue(store.put("small" + i, new byte[10], CacheEntry.NEVER, store.stamp()));
+        }
+        for (int i = 0; i < 200; i++) {
+            String key = "large" + i;
+            assertTrue(key, store.put(key, new byte[1000], CacheEntry.NEVER, store.stamp()));
+            assertEquals(1000, store.get(key, System.currentTimeMillis()).getValue().length);
+        }
+        assertEquals(0, store.getRejectionCount());
+    }
+}
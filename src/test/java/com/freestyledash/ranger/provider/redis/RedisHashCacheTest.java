@@ -0,0 +1,150 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.benchmark.FakeRedisServer;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * RedisHashCache的测试，部分修改的lua脚本由FakeRedisServer解释执行
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class RedisHashCacheTest {
+
+    private FakeRedisServer server;
+
+    private JedisPool pool;
+
+    private RedisHashCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+        pool = new JedisPool("127.0.0.1", server.getPort());
+        ProtostuffSerializationUtil util = new ProtostuffSerializationUtil();
+        cache = new RedisHashCache(new CacheProviderCore(pool, util), util);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.destroy();
+        server.close();
+    }
+
+    @Test
+    public void setReplacesWholeObject() {
+        assertTrue(cache.set("a", new Order(1, "alice", "NEW", Arrays.asList("x", "y")), 60));
+        assertEquals(new Order(1, "alice", "NEW", Arrays.asList("x", "y")), cache.get("a", Order.class));
+        assertTrue(cache.set("a", new Order(2, "bob", null, null), -1));
+        assertEquals("旧对象的字段被删除", new Order(2, "bob", null, null), cache.get("a", Order.class));
+        try (Jedis jedis = pool.getResource()) {
+            assertEquals(2, jedis.hgetAll("a").size());
+            assertEquals(-1, jedis.pttl("a").longValue());
+        }
+        assertNull(cache.get("missing", Order.class));
+    }
+
+    @Test
+    public void failedTransactionIsReported() {
+        cache.set("a", new Order(1, "alice", "NEW", null), 60);
+        server.failCommand("HMSET", "ERR injected");
+        try {
+            assertFalse("事务中的命令出错", cache.set("a", new Order(2, "bob", "NEW", null), 60));
+        } finally {
+            server.failCommand("HMSET", null);
+        }
+        server.failCommand("EXEC", "EXECABORT injected");
+        try {
+            assertFalse("事务被放弃", cache.set("b", new Order(2, "bob", "NEW", null), 60));
+        } finally {
+            server.failCommand("EXEC", null);
+        }
+        assertNull(cache.get("b", Order.class));
+        assertTrue(cache.set("b", new Order(2, "bob", "NEW", null), 60));
+    }
+
+    @Test
+    public void projectionDistinguishesMissingKeyFromMissingField() {
+        cache.set("a", new Order(1, "alice", null, Arrays.asList("x")), 60);
+        Order projected = cache.get("a", Order.class, "id", "customer");
+        assertEquals(new Order(1, "alice", null, null), projected);
+
+        Order onlyMissingField = cache.get("a", Order.class, "status");
+        assertNotNull("键存在，只是字段为null", onlyMissingField);
+        assertNull(onlyMissingField.status);
+        assertEquals(0, onlyMissingField.id);
+
+        assertNull("键不存在", cache.get("missing", Order.class, "status"));
+        try {
+            cache.get("a", Order.class, "unknown");
+            fail();
+        } catch (IllegalArgumentException e) {
+            //schema中没有该字段
+        }
+    }
+
+    @Test
+    public void updateWritesAndDeletesOnlyTheGivenFields() {
+        Order change = new Order(0, null, "PAID", null);
+        assertFalse("键不存在时不创建残缺的对象", cache.update("a", change, "status"));
+        assertNull(cache.get("a", Order.class));
+
+        cache.set("a", new Order(1, "alice", "NEW", Arrays.asList("x")), 60);
+        assertTrue(cache.update("a", change, "status", "items"));
+        assertEquals("其他字段不变，为null的字段被删除", new Order(1, "alice", "PAID", null), cache.get("a", Order.class));
+        try (Jedis jedis = pool.getResource()) {
+            assertNull(jedis.hget("a", "items"));
+            assertTrue("保留原来的过期时间", jedis.pttl("a") > 0);
+        }
+    }
+
+    public static class Order {
+
+        private int id;
+
+        private String customer;
+
+        private String status;
+
+        private List<String> items;
+
+        public Order() {
+        }
+
+        Order(int id, String customer, String status, List<String> items) {
+            this.id = id;
+            this.customer = customer;
+            this.status = status;
+            this.items = items;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Order)) {
+                return false;
+            }
+            Order other = (Order) o;
+            return id == other.id && equal(customer, other.customer) && equal(status, other.status)
+                    && equal(items, other.items);
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.benchmark.FakeRedisServer;
+import com.freestyledash.ranger.metrics.NoopCacheMetrics;
+import com.freestyledash.ranger.provider.CacheLoader;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * RedisLeaseLock以及CacheProviderCore在租约下加载的测试
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class RedisLeaseLockTest {
+
+    private FakeRedisServer server;
+
+    private JedisPool pool;
+
+    private RedisLeaseLock lock;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+        pool = new JedisPool("127.0.0.1", server.getPort());
+        lock = new RedisLeaseLock(pool, 10000);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        lock.close();
+        pool.destroy();
+        server.close();
+    }
+
+    @Test
+    public void onlyHolderCanRelease() {
+        RedisLeaseLock.Lease first = lock.tryAcquire("a");
+        assertNotNull(first);
+        assertNull("已被占用", lock.tryAcquire("a"));
+        assertNotNull("不同的键互不影响", lock.tryAcquire("b"));
+        assertTrue(first.release());
+        assertFalse("已经释放", first.release());
+
+        RedisLeaseLock.Lease second = lock.tryAcquire("a");
+        assertNotNull(second);
+        assertTrue(second.getFencingToken() > first.getFencingToken());
+        assertFalse("旧的租约不能释放新持有者的租约", first.release());
+        assertNull(lock.tryAcquire("a"));
+        assertTrue(second.release());
+    }
+
+    @Test
+    public void leaseExpires() throws Exception {
+        RedisLeaseLock shortLock = new RedisLeaseLock(pool, RedisLeaseLock.DEFAULT_PREFIX, 100,
+                NoopCacheMetrics.INSTANCE);
+        RedisLeaseLock.Lease stale = shortLock.tryAcquire("a");
+        assertNotNull(stale);
+        Thread.sleep(200);
+        RedisLeaseLock.Lease current = shortLock.tryAcquire("a");
+        assertNotNull("过期后其他持有者可以获取", current);
+        assertFalse(stale.extend());
+        assertFalse(stale.release());
+        assertNull("过期的持有者释放时不影响新的持有者", shortLock.tryAcquire("a"));
+        assertTrue(current.release());
+    }
+
+    @Test
+    public void keepAliveRenewsUntilReleased() throws Exception {
+        RedisLeaseLock shortLock = new RedisLeaseLock(pool, RedisLeaseLock.DEFAULT_PREFIX, 150,
+                NoopCacheMetrics.INSTANCE);
+        try {
+            RedisLeaseLock.Lease lease = shortLock.tryAcquire("a");
+            lease.keepAlive();
+            Thread.sleep(500);
+            assertNull("续约期间不会过期", shortLock.tryAcquire("a"));
+            assertTrue(lease.release());
+            assertNotNull(shortLock.tryAcquire("a"));
+        } finally {
+            shortLock.close();
+        }
+    }
+
+    @Test
+    public void slowLoadKeepsLease() throws Exception {
+        final RedisLeaseLock shortLock = new RedisLeaseLock(pool, RedisLeaseLock.DEFAULT_PREFIX, 150,
+                NoopCacheMetrics.INSTANCE);
+        final CacheProviderCore core = new CacheProviderCore(pool, new ProtostuffSerializationUtil());
+        core.setLeaseLock(shortLock, 1000);
+        final CountDownLatch loading = new CountDownLatch(1);
+        try {
+            Future<String> result = executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return core.getOrLoad("a", String.class, new CacheLoader<String>() {
+                        @Override
+                        public String load(String key) {
+                            loading.countDown();
+                            try {
+                                Thread.sleep(500);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            return "loaded";
+                        }
+                    }, 60);
+                }
+            });
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Thread.sleep(300);
+            assertNull("加载时间超过租约时长时租约仍然有效", shortLock.tryAcquire("a"));
+            assertEquals("loaded", result.get(5, TimeUnit.SECONDS));
+            assertNotNull("加载完成后释放", shortLock.tryAcquire("a"));
+        } finally {
+            shortLock.close();
+        }
+    }
+
+    @Test
+    public void waiterReadsValueWrittenByHolder() throws Exception {
+        final CacheProviderCore other = new CacheProviderCore(pool, new ProtostuffSerializationUtil());
+        final CacheProviderCore core = new CacheProviderCore(pool, new ProtostuffSerializationUtil());
+        core.setLeaseLock(lock, 5000);
+        //其他节点持有租约，正在加载
+        RedisLeaseLock.Lease holder = lock.tryAcquire("a");
+        final AtomicInteger calls = new AtomicInteger();
+        Future<String> result = executor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return core.getOrLoad("a", String.class, new CacheLoader<String>() {
+                    @Override
+                    public String load(String key) {
+                        calls.incrementAndGet();
+                        return "loaded";
+                    }
+                }, 60);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse("持有者完成之前一直等待", result.isDone());
+        other.setCache("a", "fromHolder", 60);
+        assertEquals("fromHolder", result.get(5, TimeUnit.SECONDS));
+        assertEquals(0, calls.get());
+        holder.release();
+    }
+
+    @Test
+    public void waiterLoadsAfterTimeout() {
+        CacheProviderCore core = new CacheProviderCore(pool, new ProtostuffSerializationUtil());
+        core.setLeaseLock(lock, 100);
+        RedisLeaseLock.Lease holder = lock.tryAcquire("a");
+        long start = System.nanoTime();
+        String loaded = core.getOrLoad("a", String.class, new CacheLoader<String>() {
+            @Override
+            public String load(String key) {
+                return "loaded";
+            }
+        }, 60);
+        assertEquals("loaded", loaded);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+        assertEquals("loaded", core.getCache("a", String.class));
+        holder.release();
+    }
+}
@@ -0,0 +1,128 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.benchmark.FakeRedisServer;
+import com.freestyledash.ranger.provider.CacheLoader;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * RefreshAhead以及CacheProviderCore提前刷新的测试
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class RefreshAheadTest {
+
+    private FakeRedisServer server;
+
+    private JedisPool pool;
+
+    private RefreshAhead refreshAhead;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+        pool = new JedisPool("127.0.0.1", server.getPort());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (refreshAhead != null) {
+            refreshAhead.close();
+        }
+        pool.destroy();
+        server.close();
+    }
+
+    @Test
+    public void loadTimeIsTrackedPerKey() {
+        final List<Long> seen = new ArrayList<>();
+        refreshAhead = new RefreshAhead(new RefreshPolicy() {
+            @Override
+            public boolean shouldRefresh(long remainingMillis, long ttlMillis, long loadMillis) {
+                seen.add(loadMillis);
+                return false;
+            }
+        }, 1, 16);
+        refreshAhead.recordLoad("slow", TimeUnit.MILLISECONDS.toNanos(500));
+        for (int i = 0; i < 100; i++) {
+            refreshAhead.recordLoad("fast", TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        CacheEntry<String> entry = new CacheEntry<>("value", System.currentTimeMillis() + 10000);
+        long now = System.currentTimeMillis();
+        refreshAhead.shouldRefresh("slow", entry, 60, now);
+        refreshAhead.shouldRefresh("fast", entry, 60, now);
+        assertEquals("频繁的快速加载不影响慢的键", 500L, seen.get(0).longValue());
+        assertEquals(1L, seen.get(1).longValue());
+        long unknown = refreshAhead.getLoadMillis("unknown");
+        assertTrue("没有加载过的键使用全部键的平均值", unknown >= 1 && unknown < 500);
+    }
+
+    @Test
+    public void trackedKeysAreBounded() {
+        refreshAhead = new RefreshAhead(RefreshPolicy.fraction(0.5), 1, 16);
+        for (int i = 0; i < RefreshAhead.MAX_TRACKED_KEYS + 100; i++) {
+            refreshAhead.recordLoad("key" + i, TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        assertEquals(RefreshAhead.MAX_TRACKED_KEYS, refreshAhead.getTrackedKeyCount());
+        assertEquals(5, refreshAhead.getLoadMillis("key" + (RefreshAhead.MAX_TRACKED_KEYS + 99)));
+    }
+
+    @Test
+    public void nearExpiryReadRefreshesOnceAndServesStaleValue() throws Exception {
+        refreshAhead = new RefreshAhead(new RefreshPolicy() {
+            @Override
+            public boolean shouldRefresh(long remainingMillis, long ttlMillis, long loadMillis) {
+                return remainingMillis <= ttlMillis / 2;
+            }
+        }, 2, 16);
+        CacheProviderCore core = new CacheProviderCore(pool, new ProtostuffSerializationUtil());
+        core.setRefreshAhead(refreshAhead);
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        CacheLoader<String> loader = new CacheLoader<String>() {
+            @Override
+            public String load(String key) {
+                calls.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "new";
+            }
+        };
+        core.setCache("fresh", "old", 60);
+        assertEquals("old", core.getOrLoad("fresh", String.class, loader, 60));
+        assertEquals("剩余时间充足时不刷新", 0, calls.get());
+
+        //剩余存活时间不足写入时的一半
+        core.setCache("a", "old", 20);
+        assertEquals("old", core.getOrLoad("a", String.class, loader, 60));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            assertEquals("刷新完成之前返回旧的对象", "old", core.getOrLoad("a", String.class, loader, 60));
+        }
+        assertEquals("同一个键只有一个刷新任务", 1, calls.get());
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!"new".equals(core.getCache("a", String.class)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("new", core.getOrLoad("a", String.class, loader, 60));
+        assertEquals(1, calls.get());
+    }
+}
@@ -0,0 +1,133 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.benchmark.FakeRedisServer;
+import com.freestyledash.ranger.metrics.NoopCacheMetrics;
+import com.freestyledash.ranger.provider.CacheLoader;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * ResilientCacheProvider的测试
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class ResilientCacheProviderTest {
+
+    private FakeRedisServer server;
+
+    private JedisPool pool;
+
+    private CacheProviderCore core;
+
+    private ResilientCacheProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+        pool = new JedisPool("127.0.0.1", server.getPort());
+        core = new CacheProviderCore(pool, new ProtostuffSerializationUtil());
+        provider = new ResilientCacheProvider(core, null, 0, 0, 100, null, NoopCacheMetrics.INSTANCE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.setReplyDelay(0);
+        provider.close();
+        pool.destroy();
+        server.close();
+    }
+
+    @Test
+    public void writeWithinDeadlineIsKept() {
+        assertTrue(provider.setCache("a", "1", 60));
+        assertEquals("1", provider.getCache("a", String.class));
+    }
+
+    @Test
+    public void lateWriteDeletesItsKey() throws Exception {
+        assertTrue(provider.setCache("a", "1", 60));
+        assertTrue(provider.setCache("b", "1", 60));
+        assertTrue(provider.setCache("c", "1", 60));
+        server.setReplyDelay(300);
+        assertFalse(provider.setCache("a", "2", 60));
+        Map<String, Object> params = new HashMap<>();
+        params.put("b", "2");
+        params.put("c", "2");
+        assertFalse(provider.setCache(params, 60));
+        assertEquals(2, provider.getTimeoutCount());
+        server.setReplyDelay(0);
+        //迟到的写入先覆盖原来的值，完成后删除写入的键
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && (core.getCache("a", String.class) != null
+                || core.getCache("b", String.class) != null || core.getCache("c", String.class) != null)) {
+            Thread.sleep(10);
+        }
+        assertNull("迟到的写入完成后删除写入的键", core.getCache("a", String.class));
+        assertNull(core.getCache("b", String.class));
+        assertNull(core.getCache("c", String.class));
+    }
+
+    @Test
+    public void hedgedReadWins() throws Exception {
+        FakeRedisServer replica = new FakeRedisServer();
+        JedisPool replicaPool = new JedisPool("127.0.0.1", replica.getPort());
+        CacheProviderCore replicaCore = new CacheProviderCore(replicaPool, new ProtostuffSerializationUtil());
+        ResilientCacheProvider hedged = new ResilientCacheProvider(core, replicaCore, 20, 1000, 0, null,
+                NoopCacheMetrics.INSTANCE);
+        try {
+            core.setCache("a", "primary", 60);
+            replicaCore.setCache("a", "replica", 60);
+            assertEquals("主读取及时返回时不对冲", "primary", hedged.getCache("a", String.class));
+            assertEquals(0, hedged.getHedgeCount());
+
+            server.setReplyDelay(300);
+            assertEquals("replica", hedged.getCache("a", String.class));
+            assertEquals(1, hedged.getHedgeCount());
+            assertEquals(1, hedged.getHedgeWinCount());
+            assertEquals(0, hedged.getTimeoutCount());
+        } finally {
+            hedged.close();
+            replicaPool.destroy();
+            replica.close();
+        }
+    }
+
+    @Test
+    public void getOrLoadFallsBackToLoaderAfterDeadline() throws Exception {
+        ResilientCacheProvider bounded = new ResilientCacheProvider(core, null, 0, 100, 0, null,
+                NoopCacheMetrics.INSTANCE);
+        final AtomicInteger calls = new AtomicInteger();
+        CacheLoader<String> loader = new CacheLoader<String>() {
+            @Override
+            public String load(String key) {
+                calls.incrementAndGet();
+                return "loaded";
+            }
+        };
+        try {
+            server.setReplyDelay(300);
+            long start = System.nanoTime();
+            assertEquals("loaded", bounded.getOrLoad("a", String.class, loader, 60));
+            assertTrue("不等待redis返回", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 300);
+            assertEquals(1, bounded.getTimeoutCount());
+            server.setReplyDelay(0);
+            //redis返回未命中之后不会再次调用loader，也不会写入缓存
+            Thread.sleep(400);
+            assertEquals(1, calls.get());
+            assertNull(core.getCache("a", String.class));
+        } finally {
+            bounded.close();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.benchmark.FakeRedisServer;
+import com.freestyledash.ranger.provider.BulkLoader;
+import com.freestyledash.ranger.provider.CacheLoader;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * ShardedCacheProvider的测试，每个节点是一个jvm内的{@link FakeRedisServer}
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class ShardedCacheProviderTest {
+
+    private static final int SHARDS = 3;
+
+    private final List<FakeRedisServer> servers = new ArrayList<>();
+
+    private final List<JedisPool> pools = new ArrayList<>();
+
+    private final List<ShardedCacheProvider> providers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(16);
+        for (int i = 0; i < SHARDS; i++) {
+            FakeRedisServer server = new FakeRedisServer();
+            servers.add(server);
+            pools.add(new JedisPool(config, "127.0.0.1", server.getPort()));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (ShardedCacheProvider provider : providers) {
+            provider.close();
+        }
+        for (JedisPool pool : pools) {
+            pool.destroy();
+        }
+        for (FakeRedisServer server : servers) {
+            server.close();
+        }
+    }
+
+    private ShardedCacheProvider.Builder builder() {
+        ShardedCacheProvider.Builder builder = new ShardedCacheProvider.Builder()
+                .setSerializationUtil(new ProtostuffSerializationUtil())
+                .setParallelism(SHARDS);
+        for (int i = 0; i < SHARDS; i++) {
+            builder.addShard("redis-" + i, pools.get(i));
+        }
+        return builder;
+    }
+
+    private ShardedCacheProvider open(ShardedCacheProvider.Builder builder) {
+        ShardedCacheProvider provider = builder.build();
+        providers.add(provider);
+        return provider;
+    }
+
+    @Test
+    public void keysAreSpreadOverAllShards() {
+        ShardedCacheProvider provider = open(builder());
+        int keys = 3000;
+        for (int i = 0; i < keys; i++) {
+            assertTrue(provider.setCache("key" + i, i, 60));
+        }
+        int total = 0;
+        for (int i = 0; i < SHARDS; i++) {
+            int size = servers.get(i).size();
+            assertTrue("节点" + i + "只有" + size + "个键", size > keys / SHARDS / 2);
+            total += size;
+        }
+        assertEquals(keys, total);
+        for (int i = 0; i < keys; i++) {
+            assertEquals(Integer.valueOf(i), provider.getCache("key" + i, Integer.class));
+        }
+    }
+
+    @Test
+    public void distributionDependsOnShardNamesNotOrder() {
+        ShardedCacheProvider provider = open(builder());
+        ShardedCacheProvider.Builder reversed = new ShardedCacheProvider.Builder()
+                .setSerializationUtil(new ProtostuffSerializationUtil());
+        for (int i = SHARDS - 1; i >= 0; i--) {
+            reversed.addShard("redis-" + i, pools.get(i));
+        }
+        ShardedCacheProvider other = open(reversed);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(SHARDS - 1 - provider.shardOf("key" + i), other.shardOf("key" + i));
+        }
+    }
+
+    @Test
+    public void hashTagKeepsKeysOnOneShard() {
+        ShardedCacheProvider provider = open(builder());
+        Map<String, Object> params = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            params.put("{user:42}:field" + i, i);
+        }
+        assertTrue(provider.setCache(params, 60));
+        int shard = provider.shardOf("user:42");
+        for (int i = 0; i < SHARDS; i++) {
+            assertEquals(i == shard ? 100 : 0, servers.get(i).size());
+        }
+        assertEquals(shard, provider.shardOf("prefix{user:42}suffix"));
+        //空的hash tag使用整个键计算
+        assertEquals(provider.shardOf("{}a"), provider.shardOf("{}a"));
+    }
+
+    @Test
+    public void batchesKeepInputOrderAcrossShards() {
+        ShardedCacheProvider provider = open(builder());
+        Map<String, Object> params = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            params.put("key" + i, "value" + i);
+            keys.add("key" + (299 - i));
+            keys.add("missing" + i);
+        }
+        assertTrue(provider.setCache(params, 60));
+        List<String> values = provider.getCache(keys, String.class);
+        for (int i = 0; i < 300; i++) {
+            assertEquals("value" + (299 - i), values.get(i * 2));
+            assertNull(values.get(i * 2 + 1));
+        }
+        provider.deleteCache(keys);
+        for (FakeRedisServer server : servers) {
+            assertEquals(0, server.size());
+        }
+    }
+
+    @Test
+    public void shardPipelinesRunInParallel() {
+        ShardedCacheProvider provider = open(builder());
+        List<String> keys = new ArrayList<>();
+        Set<Integer> covered = new HashSet<>();
+        for (int i = 0; covered.size() < SHARDS; i++) {
+            if (covered.add(provider.shardOf("key" + i))) {
+                keys.add("key" + i);
+            }
+        }
+        for (FakeRedisServer server : servers) {
+            server.setReplyDelay(300);
+        }
+        long start = System.nanoTime();
+        assertEquals(Arrays.asList(null, null, null), provider.getCache(keys, String.class));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue("三个节点串行执行需要900ms，实际" + elapsedMillis + "ms", elapsedMillis < 800);
+    }
+
+    @Test
+    public void getAllLoadsMissesFromAllShardsOnce() {
+        ShardedCacheProvider provider = open(builder());
+        for (int i = 0; i < 50; i++) {
+            provider.setCache("key" + i, "cached" + i, 60);
+        }
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add("key" + i);
+        }
+        final AtomicInteger calls = new AtomicInteger();
+        final List<String> requested = new ArrayList<>();
+        BulkLoader<String> loader = new BulkLoader<String>() {
+            @Override
+            public Map<String, String> load(Collection<String> loadKeys) {
+                calls.incrementAndGet();
+                requested.addAll(loadKeys);
+                Map<String, String> loaded = new HashMap<>();
+                for (String key : loadKeys) {
+                    if (!key.equals("key99")) {
+                        loaded.put(key, "loaded" + key.substring(3));
+                    }
+                }
+                return loaded;
+            }
+        };
+        Map<String, String> values = provider.getAll(keys, String.class, loader, 60);
+        assertEquals(1, calls.get());
+        assertEquals(50, requested.size());
+        assertEquals(99, values.size());
+        assertEquals(new ArrayList<>(keys.subList(0, 99)), new ArrayList<>(values.keySet()));
+        assertEquals("cached0", values.get("key0"));
+        assertEquals("loaded50", values.get("key50"));
+        Set<Integer> loadedShards = new HashSet<>();
+        for (int i = 50; i < 99; i++) {
+            loadedShards.add(provider.shardOf("key" + i));
+            assertEquals("loaded" + i, provider.getCache("key" + i, String.class));
+        }
+        assertEquals("加载的键分布在全部节点", SHARDS, loadedShards.size());
+
+        requested.clear();
+        values = provider.getAll(keys, String.class, loader, 60);
+        assertEquals(Collections.singletonList("key99"), requested);
+        assertEquals(99, values.size());
+    }
+
+    @Test
+    public void negativeCachingAppliesToShards() {
+        ShardedCacheProvider provider = open(builder().setNegativeCaching(30));
+        final AtomicInteger calls = new AtomicInteger();
+        CacheLoader<String> loader = new CacheLoader<String>() {
+            @Override
+            public String load(String key) {
+                calls.incrementAndGet();
+                return null;
+            }
+        };
+        for (int i = 0; i < 20; i++) {
+            assertNull(provider.getOrLoad("absent" + i, String.class, loader, 60));
+            assertNull(provider.getOrLoad("absent" + i, String.class, loader, 60));
+        }
+        assertEquals(20, calls.get());
+        for (int i = 0; i < 20; i++) {
+            assertNull(provider.getCache("absent" + i, String.class));
+        }
+    }
+
+    @Test
+    public void streamingReadCallsBackAsEachShardCompletes() {
+        ShardedCacheProvider provider = open(builder());
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            provider.setCache("key" + i, i, 60);
+            keys.add("key" + i);
+        }
+        keys.add("missing");
+        //第一个节点很慢，其他节点的结果不需要等待它
+        servers.get(0).setReplyDelay(500);
+        final long start = System.nanoTime();
+        final long[] firstCallback = new long[1];
+        final Map<String, Integer> received = new HashMap<>();
+        try {
+            provider.getCache(keys, Integer.class, new BiConsumer<String, Integer>() {
+                @Override
+                public void accept(String key, Integer value) {
+                    if (received.isEmpty()) {
+                        firstCallback[0] = System.nanoTime() - start;
+                    }
+                    assertNull("每个键只回调一次", received.put(key, value));
+                }
+            });
+        } finally {
+            servers.get(0).setReplyDelay(0);
+        }
+        assertEquals(keys.size(), received.size());
+        for (int i = 0; i < 300; i++) {
+            assertEquals(Integer.valueOf(i), received.get("key" + i));
+        }
+        assertTrue(received.containsKey("missing"));
+        assertNull(received.get("missing"));
+        assertTrue("首次回调用时" + TimeUnit.NANOSECONDS.toMillis(firstCallback[0]) + "ms",
+                TimeUnit.NANOSECONDS.toMillis(firstCallback[0]) < 400);
+    }
+}
@@ -0,0 +1,166 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.benchmark.FakeRedisServer;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import static org.junit.Assert.*;
+
+/**
+ * VersionedCache的测试，比较并写入的lua脚本由FakeRedisServer解释执行
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class VersionedCacheTest {
+
+    private FakeRedisServer server;
+
+    private JedisPool pool;
+
+    private CacheProviderCore core;
+
+    private VersionedCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+        pool = new JedisPool("127.0.0.1", server.getPort());
+        core = new CacheProviderCore(pool, new ProtostuffSerializationUtil());
+        cache = new VersionedCache(core, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.destroy();
+        server.close();
+    }
+
+    @Test
+    public void staleVersionConflicts() {
+        assertEquals(1, cache.compareAndSet("a", 0, "1", 60));
+        assertEquals(VersionedCache.CONFLICT, cache.compareAndSet("a", 0, "x", 60));
+        assertEquals(2, cache.compareAndSet("a", 1, "2", 60));
+        assertEquals(VersionedCache.CONFLICT, cache.compareAndSet("a", 1, "x", 60));
+        VersionedCache.Versioned<String> current = cache.get("a", String.class);
+        assertEquals("2", current.getValue());
+        assertEquals(2, current.getVersion());
+
+        core.setCache("plain", "1", 60);
+        assertEquals("没有版本头的值总是冲突", VersionedCache.CONFLICT, cache.compareAndSet("plain", 1, "x", 60));
+    }
+
+    @Test
+    public void expectedVersionZeroRequiresMissingKey() {
+        assertEquals(VersionedCache.CONFLICT, cache.compareAndSet("a", 1, "x", 60));
+        assertNull(cache.get("a", String.class));
+        assertEquals(1, cache.compareAndSet("a", 0, "1", 60));
+        assertEquals(VersionedCache.CONFLICT, cache.compareAndSet("a", 0, "x", 60));
+        assertEquals("1", cache.get("a", String.class).getValue());
+        cache.delete("a");
+        assertEquals(1, cache.compareAndSet("a", 0, "2", 60));
+    }
+
+    @Test
+    public void batchIsAllOrNothing() {
+        cache.compareAndSet("a", 0, "a1", 60);
+        cache.compareAndSet("b", 0, "b1", 60);
+        cache.compareAndSet("b", 1, "b2", 60);
+        Map<String, Long> expected = new HashMap<>();
+        expected.put("a", 1L);
+        expected.put("b", 1L);
+        expected.put("c", 0L);
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("a", "a2");
+        values.put("b", "b3");
+        values.put("c", "c1");
+        assertEquals(Collections.singletonList("b"), cache.compareAndSet(expected, values, 60));
+        assertEquals("a1", cache.get("a", String.class).getValue());
+        assertEquals(1, cache.get("a", String.class).getVersion());
+        assertNull("冲突时没有键被写入", cache.get("c", String.class));
+
+        expected.put("b", 2L);
+        assertTrue(cache.compareAndSet(expected, values, 60).isEmpty());
+        List<VersionedCache.Versioned<String>> written = cache.get(Arrays.asList("a", "b", "c"), String.class);
+        assertEquals(2, written.get(0).getVersion());
+        assertEquals(3, written.get(1).getVersion());
+        assertEquals(1, written.get(2).getVersion());
+        assertEquals("b3", written.get(1).getValue());
+    }
+
+    @Test
+    public void ttlFollowsSetCacheContract() {
+        assertEquals(1, cache.compareAndSet("a", 0, "1", -1));
+        assertEquals(1, cache.compareAndSet("b", 0, "1", 60));
+        try (Jedis jedis = pool.getResource()) {
+            assertEquals(-1, jedis.pttl("a").longValue());
+            assertTrue(jedis.pttl("b") > 0);
+        }
+        assertEquals("ttl为0时删除", 0, cache.compareAndSet("a", 1, "2", 0));
+        assertNull(cache.get("a", String.class));
+        assertEquals("其它负数也删除", 0, cache.compareAndSet("b", 1, "2", -2));
+        assertNull(cache.get("b", String.class));
+        assertEquals(1, cache.compareAndSet("c", 0, "1", 60));
+        assertEquals("版本不一致时不删除", VersionedCache.CONFLICT, cache.compareAndSet("c", 5, "x", 0));
+        assertEquals("1", cache.get("c", String.class).getValue());
+    }
+
+    @Test
+    public void updateRetriesUntilPolicyGivesUp() {
+        final List<Integer> attempts = new ArrayList<>();
+        cache = new VersionedCache(core, new RetryPolicy() {
+            @Override
+            public long backoff(int attempt) {
+                attempts.add(attempt);
+                return attempt < 3 ? 0 : -1;
+            }
+        });
+        cache.compareAndSet("a", 0, 0, 60);
+        final AtomicInteger calls = new AtomicInteger();
+        //每次计算期间都有其他写入方修改该键
+        UnaryOperator<Integer> contended = new UnaryOperator<Integer>() {
+            @Override
+            public Integer apply(Integer value) {
+                calls.incrementAndGet();
+                VersionedCache.Versioned<Integer> current = cache.get("a", Integer.class);
+                cache.compareAndSet("a", current.getVersion(), current.getValue() + 10, 60);
+                return value + 1;
+            }
+        };
+        try {
+            cache.update("a", Integer.class, contended, 60);
+            fail();
+        } catch (ConcurrentModificationException e) {
+            //重试策略放弃
+        }
+        assertEquals(3, calls.get());
+        assertEquals(Arrays.asList(1, 2, 3), attempts);
+        assertEquals(30, cache.get("a", Integer.class).getValue().intValue());
+
+        //只冲突一次时重试后成功
+        calls.set(0);
+        attempts.clear();
+        VersionedCache.Versioned<Integer> updated = cache.update("a", Integer.class, new UnaryOperator<Integer>() {
+            @Override
+            public Integer apply(Integer value) {
+                if (calls.incrementAndGet() == 1) {
+                    VersionedCache.Versioned<Integer> current = cache.get("a", Integer.class);
+                    cache.compareAndSet("a", current.getVersion(), current.getValue() + 10, 60);
+                }
+                return value + 1;
+            }
+        }, 60);
+        assertEquals(2, calls.get());
+        assertEquals(Collections.singletonList(1), attempts);
+        assertEquals(41, updated.getValue().intValue());
+        assertEquals(cache.get("a", Integer.class).getVersion(), updated.getVersion());
+    }
+}
@@ -0,0 +1,177 @@
+package com.freestyledash.ranger.provider.redis;
+
+import com.freestyledash.ranger.benchmark.FakeRedisServer;
+import com.freestyledash.ranger.provider.BulkLoader;
+import com.freestyledash.ranger.provider.CacheLoader;
+import com.freestyledash.ranger.util.serialization.ProtostuffSerializationUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * WriteBehindCacheProvider的测试，后台线程的写入间隔足够长，由测试调用{@link WriteBehindCacheProvider#flush()}写入
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class WriteBehindCacheProviderTest {
+
+    private FakeRedisServer server;
+
+    private JedisPool pool;
+
+    private CacheProviderCore core;
+
+    private WriteBehindCacheProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+        pool = new JedisPool("127.0.0.1", server.getPort());
+        core = new CacheProviderCore(pool, new ProtostuffSerializationUtil());
+        provider = new WriteBehindCacheProvider(core, core, null, null, 4, 4, 60000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.failCommand("SETEX", null);
+        provider.close();
+        pool.destroy();
+        server.close();
+    }
+
+    @Test
+    public void pendingDeleteLoadsInsteadOfReadingRedis() {
+        core.setCache("key", "stale", 60);
+        provider.deleteCache("key");
+        final AtomicInteger calls = new AtomicInteger();
+        CacheLoader<String> loader = new CacheLoader<String>() {
+            @Override
+            public String load(String key) {
+                calls.incrementAndGet();
+                return "fresh";
+            }
+        };
+        assertEquals("fresh", provider.getOrLoad("key", String.class, loader, 60));
+        assertEquals(1, calls.get());
+        assertEquals("加载结果放入缓冲区", "fresh", provider.getCache("key", String.class));
+        assertEquals("stale", core.getCache("key", String.class));
+        provider.flush();
+        assertEquals("fresh", core.getCache("key", String.class));
+    }
+
+    @Test
+    public void getAllLoadsPendingDeletes() {
+        core.setCache("deleted", "stale", 60);
+        core.setCache("cached", "cached", 60);
+        provider.deleteCache("deleted");
+        final List<Collection<String>> requests = new ArrayList<>();
+        BulkLoader<String> loader = new BulkLoader<String>() {
+            @Override
+            public Map<String, String> load(Collection<String> keys) {
+                requests.add(new ArrayList<>(keys));
+                Map<String, String> loaded = new HashMap<>();
+                for (String key : keys) {
+                    loaded.put(key, "loaded");
+                }
+                return loaded;
+            }
+        };
+        Map<String, String> values = provider.getAll(Arrays.asList("deleted", "cached", "missing"),
+                String.class, loader, 60);
+        assertEquals(Arrays.asList("deleted", "cached", "missing"), new ArrayList<>(values.keySet()));
+        assertEquals("loaded", values.get("deleted"));
+        assertEquals("cached", values.get("cached"));
+        assertEquals("loaded", values.get("missing"));
+        assertTrue(requests.contains(Collections.singletonList("deleted")));
+        provider.flush();
+        assertEquals("loaded", core.getCache("deleted", String.class));
+    }
+
+    @Test
+    public void failedCommandsAreRequeued() {
+        provider.setCache("a", "1", 60);
+        provider.setCache("b", "2", -1);
+        server.failCommand("SETEX", "ERR setex failed");
+        assertEquals(2, provider.flush());
+        assertEquals("SET成功的键不再等待写入", 1, provider.getPendingCount());
+        assertEquals("2", core.getCache("b", String.class));
+        assertNull(core.getCache("a", String.class));
+        assertEquals("1", provider.getCache("a", String.class));
+
+        server.failCommand("SETEX", null);
+        assertEquals(1, provider.flush());
+        assertEquals(0, provider.getPendingCount());
+        assertEquals("1", core.getCache("a", String.class));
+        assertEquals(0, provider.getDroppedCount());
+    }
+
+    @Test
+    public void commandsFailingRepeatedlyAreDropped() {
+        provider.setCache("a", "1", 60);
+        server.failCommand("SETEX", "ERR setex failed");
+        for (int i = 0; i < WriteBehindCacheProvider.MAX_ATTEMPTS; i++) {
+            assertEquals(1, provider.flush());
+        }
+        assertEquals(0, provider.getPendingCount());
+        assertEquals(1, provider.getDroppedCount());
+    }
+
+    @Test
+    public void requeueRespectsCapacity() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            provider.setCache("old" + i, i, 60);
+        }
+        server.failCommand("SETEX", "ERR setex failed");
+        final WriteBehindCacheProvider target = provider;
+        //写入失败返回之前又有3个新的修改，只能放回一个写入失败的修改
+        server.setReplyDelay(200);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 3; i++) {
+                    target.setCache("new" + i, i, 60);
+                }
+            }
+        });
+        writer.start();
+        provider.flush();
+        writer.join();
+        server.setReplyDelay(0);
+        assertEquals(4, provider.getPendingCount());
+        assertEquals(1, provider.getDroppedCount());
+    }
+
+    @Test
+    public void streamingReadSeesPendingWrites() {
+        core.setCache("a", "stale", 60);
+        core.setCache("b", "stale", 60);
+        core.setCache("c", "redis", 60);
+        provider.setCache("a", "pending", 60);
+        provider.deleteCache("b");
+        final Map<String, String> received = new HashMap<>();
+        provider.getCache(Arrays.asList("a", "b", "c", "missing"), String.class, new BiConsumer<String, String>() {
+            @Override
+            public void accept(String key, String value) {
+                received.put(key, value);
+            }
+        });
+        assertEquals(4, received.size());
+        assertEquals("pending", received.get("a"));
+        assertNull("尚未写入的删除", received.get("b"));
+        assertEquals("redis", received.get("c"));
+        assertNull(received.get("missing"));
+    }
+}
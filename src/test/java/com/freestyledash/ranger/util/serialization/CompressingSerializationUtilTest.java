@@ -0,0 +1,122 @@
+package com.freestyledash.ranger.util.serialization;
+
+import com.freestyledash.ranger.metrics.CacheMetrics;
+import com.freestyledash.ranger.metrics.MetricNames;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * CompressingSerializationUtil的测试
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class CompressingSerializationUtilTest {
+
+    private static final int THRESHOLD = 100;
+
+    private final Map<String, List<Long>> recorded = new HashMap<>();
+
+    private final CompressingSerializationUtil util = new CompressingSerializationUtil(new BytesSerializationUtil(),
+            THRESHOLD, 1, new CacheMetrics() {
+        @Override
+        public void increment(String name, String key, long delta) {
+        }
+
+        @Override
+        public void record(String name, String key, long value) {
+            List<Long> values = recorded.get(name);
+            if (values == null) {
+                values = new ArrayList<>();
+                recorded.put(name, values);
+            }
+            values.add(value);
+        }
+    });
+
+    @Test
+    public void compressesOnlyAboveThreshold() {
+        byte[] atThreshold = new byte[THRESHOLD];
+        byte[] stored = util.serialize(atThreshold);
+        assertEquals(CompressingSerializationUtil.MAGIC, stored[0]);
+        assertEquals("等于阈值时不压缩", CompressingSerializationUtil.RAW, stored[1]);
+        assertEquals(THRESHOLD + 2, stored.length);
+        assertArrayEquals(atThreshold, util.deserialize(stored, byte[].class));
+        assertNull(recorded.get(MetricNames.COMPRESS_TIME));
+
+        byte[] aboveThreshold = new byte[THRESHOLD + 1];
+        stored = util.serialize(aboveThreshold);
+        assertEquals(CompressingSerializationUtil.DEFLATE, stored[1]);
+        assertTrue(stored.length < aboveThreshold.length);
+        assertArrayEquals(aboveThreshold, util.deserialize(stored, byte[].class));
+        assertEquals(1, util.getCompressedCount());
+        assertEquals(1, util.getUncompressedCount());
+        assertEquals(Arrays.asList((long) THRESHOLD + 1), recorded.get(MetricNames.COMPRESS_INPUT_SIZE));
+        assertEquals(Arrays.asList((long) stored.length - 2), recorded.get(MetricNames.COMPRESS_OUTPUT_SIZE));
+        assertEquals(1, recorded.get(MetricNames.COMPRESS_TIME).size());
+        assertEquals(1, recorded.get(MetricNames.DECOMPRESS_TIME).size());
+    }
+
+    @Test
+    public void incompressibleDataIsStoredRaw() {
+        byte[] random = new byte[THRESHOLD * 10];
+        new Random(1).nextBytes(random);
+        byte[] stored = util.serialize(random);
+        assertEquals(CompressingSerializationUtil.RAW, stored[1]);
+        assertEquals(random.length + 2, stored.length);
+        assertArrayEquals(random, util.deserialize(stored, byte[].class));
+        assertEquals(0, util.getCompressedCount());
+        assertEquals(1, util.getUncompressedCount());
+        assertEquals("没有变小时按原始大小记录", recorded.get(MetricNames.COMPRESS_INPUT_SIZE),
+                recorded.get(MetricNames.COMPRESS_OUTPUT_SIZE));
+    }
+
+    @Test
+    public void payloadWithoutHeaderIsPassedThrough() {
+        byte[] legacy = new byte[]{1, 2, 3};
+        assertArrayEquals(legacy, util.deserialize(legacy, byte[].class));
+        assertArrayEquals(new byte[0], util.deserialize(new byte[0], byte[].class));
+        assertArrayEquals("只有魔数的单字节数据没有头", new byte[]{CompressingSerializationUtil.MAGIC},
+                util.deserialize(new byte[]{CompressingSerializationUtil.MAGIC}, byte[].class));
+    }
+
+    @Test
+    public void roundTripsThroughProtostuff() {
+        ProtostuffSerializationUtil protostuff = new ProtostuffSerializationUtil();
+        CompressingSerializationUtil compressing = new CompressingSerializationUtil(protostuff, THRESHOLD);
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            large.append("value");
+        }
+        for (String value : Arrays.asList("small", large.toString())) {
+            assertEquals(value, compressing.deserialize(compressing.serialize(value), String.class));
+            assertEquals("开启压缩之前写入的数据", value, compressing.deserialize(protostuff.serialize(value), String.class));
+        }
+        //大对象之后复用的缓冲区不会残留数据
+        assertEquals("small", compressing.deserialize(compressing.serialize("small"), String.class));
+    }
+
+    /**
+     * 原样返回字节数组的序列化工具，便于精确控制序列化结果的大小
+     */
+    private static final class BytesSerializationUtil implements SerializationUtil {
+
+        @Override
+        public byte[] serialize(Object toSerialize) {
+            return (byte[]) toSerialize;
+        }
+
+        @Override
+        public <T> T deserialize(byte[] data, Class<T> clazz) {
+            return clazz.cast(data);
+        }
+    }
+}
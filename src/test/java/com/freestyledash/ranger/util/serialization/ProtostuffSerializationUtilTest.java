@@ -0,0 +1,131 @@
+package com.freestyledash.ranger.util.serialization;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * ProtostuffSerializationUtil按类型id序列化以及按字段拆分的测试
+ *
+ * @author zhangyanqi
+ * @since 1.1.1 2026/10/18
+ */
+public class ProtostuffSerializationUtilTest {
+
+    private final ProtostuffSerializationUtil plain = new ProtostuffSerializationUtil();
+
+    @Test
+    public void registeredClassRoundTripsWithSmallerPayload() {
+        ProtostuffSerializationUtil registered = new ProtostuffSerializationUtil(
+                new ClassRegistry().register(1, User.class));
+        User user = new User(1, "name", Arrays.asList("a", "b"));
+        byte[] withId = registered.serialize(user);
+        byte[] withClassName = plain.serialize(user);
+        assertTrue("不包含类名", withId.length < withClassName.length);
+        assertEquals(user, registered.deserialize(withId, User.class));
+        assertEquals("读取方已注册时不依赖调用方提供的类型", user, registered.deserialize(withId, Object.class));
+
+        //未注册的类型仍然使用类名
+        assertEquals("value", registered.deserialize(registered.serialize("value"), String.class));
+    }
+
+    @Test
+    public void idsOfEveryLengthRoundTrip() {
+        for (int id : new int[]{127, 128, 16383, 16384, ClassRegistry.MAX_ID}) {
+            ProtostuffSerializationUtil registered = new ProtostuffSerializationUtil(
+                    new ClassRegistry().register(id, User.class));
+            User user = new User(id, "name", null);
+            assertEquals(user, registered.deserialize(registered.serialize(user), User.class));
+        }
+    }
+
+    @Test
+    public void unknownIdFallsBackToRequestedClass() {
+        ProtostuffSerializationUtil writer = new ProtostuffSerializationUtil(
+                new ClassRegistry().register(7, User.class));
+        User user = new User(1, "name", Arrays.asList("a"));
+        byte[] data = writer.serialize(user);
+        assertEquals("读取方没有注册表", user, plain.deserialize(data, User.class));
+        ProtostuffSerializationUtil otherIds = new ProtostuffSerializationUtil(
+                new ClassRegistry().register(8, String.class));
+        assertEquals("读取方没有注册该id", user, otherIds.deserialize(data, User.class));
+    }
+
+    @Test
+    public void payloadWithoutHeaderStillDecodes() {
+        ProtostuffSerializationUtil registered = new ProtostuffSerializationUtil(
+                new ClassRegistry().register(1, User.class));
+        User user = new User(1, "name", Arrays.asList("a", "b"));
+        byte[] legacy = plain.serialize(user);
+        assertEquals(user, registered.deserialize(legacy, User.class));
+
+        //ByteBuffer从数组中间开始读取
+        byte[] padded = new byte[legacy.length + 3];
+        System.arraycopy(legacy, 0, padded, 2, legacy.length);
+        ByteBuffer buffer = ByteBuffer.wrap(padded, 2, legacy.length);
+        assertEquals(user, registered.deserialize(buffer, User.class));
+        assertEquals(legacy.length + 2, buffer.position());
+        byte[] withId = registered.serialize(user);
+        padded = new byte[withId.length + 2];
+        System.arraycopy(withId, 0, padded, 2, withId.length);
+        assertEquals(user, registered.deserialize(ByteBuffer.wrap(padded, 2, withId.length), User.class));
+    }
+
+    @Test
+    public void fieldsRoundTrip() {
+        User user = new User(1, "name", Arrays.asList("a", "b", "c"));
+        Map<String, byte[]> fields = plain.serializeFields(user);
+        assertEquals("集合的多个元素合并为一个字段", Arrays.asList("id", "name", "tags"), new ArrayList<>(fields.keySet()));
+        assertEquals(plain.getFieldNames(User.class), new ArrayList<>(fields.keySet()));
+        assertEquals(user, plain.deserializeFields(fields.values(), User.class));
+
+        //只使用部分字段，其他字段保持默认值，null被忽略
+        User partial = plain.deserializeFields(Arrays.asList(fields.get("tags"), null, fields.get("id")), User.class);
+        assertEquals(1, partial.id);
+        assertNull(partial.name);
+        assertEquals(Arrays.asList("a", "b", "c"), partial.tags);
+
+        assertFalse("值为null的字段不在结果中", plain.serializeFields(new User(2, "name", null)).containsKey("tags"));
+        assertTrue(plain.hasField(User.class, "tags"));
+        assertFalse(plain.hasField(User.class, "missing"));
+    }
+
+    public static class User {
+
+        private int id;
+
+        private String name;
+
+        private List<String> tags;
+
+        public User() {
+        }
+
+        User(int id, String name, List<String> tags) {
+            this.id = id;
+            this.name = name;
+            this.tags = tags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof User)) {
+                return false;
+            }
+            User other = (User) o;
+            return id == other.id && name.equals(other.name)
+                    && (tags == null ? other.tags == null : tags.equals(other.tags));
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+    }
+}